@@ -21,6 +21,7 @@ package org.killbill.billing.account.api.svcs;
 import java.util.List;
 import java.util.UUID;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 
 import org.killbill.billing.ErrorCode;
@@ -47,12 +48,16 @@ import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
 import org.killbill.billing.util.cache.CacheLoaderArgument;
 import org.killbill.billing.util.dao.NonEntityDao;
+import org.killbill.billing.util.entity.Pagination;
+import org.killbill.billing.util.entity.dao.DefaultPaginationHelper.SourcePaginationBuilder;
 
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
 
+import static org.killbill.billing.util.entity.dao.DefaultPaginationHelper.getEntityPaginationNoException;
+
 public class DefaultAccountInternalApi extends DefaultAccountApiBase implements AccountInternalApi {
 
     private final ImmutableAccountInternalApi immutableAccountInternalApi;
@@ -188,4 +193,22 @@ public class DefaultAccountInternalApi extends DefaultAccountApiBase implements
                                                                         }
                                                                     }));
     }
+
+    @Override
+    public Pagination<Account> getAccounts(final Long offset, @Nullable final Long lastRecordId, final Long limit, final InternalTenantContext context) {
+        return getEntityPaginationNoException(limit,
+                                              new SourcePaginationBuilder<AccountModelDao, AccountApiException>() {
+                                                  @Override
+                                                  public Pagination<AccountModelDao> build() {
+                                                      return accountDao.get(offset, lastRecordId, limit, context);
+                                                  }
+                                              },
+                                              new Function<AccountModelDao, Account>() {
+                                                  @Override
+                                                  public Account apply(final AccountModelDao accountModelDao) {
+                                                      return new DefaultAccount(accountModelDao);
+                                                  }
+                                              }
+                                             );
+    }
 }
@@ -27,6 +27,7 @@ import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.util.audit.ChangeType;
 import org.killbill.billing.util.entity.dao.Audited;
 import org.killbill.billing.util.entity.dao.EntitySqlDao;
+import org.killbill.billing.util.entity.dao.RequestCachable;
 import org.killbill.commons.jdbi.template.KillBillSqlDaoStringTemplate;
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.killbill.commons.jdbi.binder.SmartBindBean;
@@ -44,7 +45,9 @@ public interface AccountSqlDao extends EntitySqlDao<AccountModelDao, Account> {
     public UUID getIdFromKey(@Bind("externalKey") final String key,
                              @SmartBindBean final InternalTenantContext context);
 
+    // Not cached by the BCD cache until the BCD is set, i.e. during the first invoice runs
     @SqlQuery
+    @RequestCachable
     public Integer getBCD(@Bind("id") String accountId,
                           @SmartBindBean final InternalTenantContext context);
 
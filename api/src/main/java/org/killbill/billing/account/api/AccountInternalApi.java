@@ -21,8 +21,11 @@ package org.killbill.billing.account.api;
 import java.util.List;
 import java.util.UUID;
 
+import javax.annotation.Nullable;
+
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.util.entity.Pagination;
 
 public interface AccountInternalApi extends ImmutableAccountInternalApi {
 
@@ -45,4 +48,7 @@ public interface AccountInternalApi extends ImmutableAccountInternalApi {
     UUID getByRecordId(Long recordId, InternalTenantContext context) throws AccountApiException;
 
     List<Account> getChildrenAccounts(UUID parentAccountId, InternalCallContext context) throws AccountApiException;
+
+    // Seeks past lastRecordId (if not null) instead of scanning offset records
+    Pagination<Account> getAccounts(Long offset, @Nullable Long lastRecordId, Long limit, InternalTenantContext context);
 }
@@ -19,6 +19,8 @@
 package org.killbill.billing.callcontext;
 
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.Nullable;
 
@@ -34,6 +36,10 @@ public class InternalTenantContext extends TimeAwareContext {
     protected final Long tenantRecordId;
     protected final Long accountRecordId;
 
+    // Results of the read-only DAO calls made with this context, i.e. for the duration of the API call or bus event
+    // (see RequestCachable): not part of the identity of the context. Created on first use, as most contexts never need it
+    private volatile ConcurrentMap<Object, Object> requestCache;
+
     public InternalTenantContext(final Long tenantRecordId,
                                  @Nullable final Long accountRecordId,
                                  @Nullable final DateTimeZone fixedOffsetTimeZone,
@@ -59,6 +65,20 @@ public class InternalTenantContext extends TimeAwareContext {
         return tenantRecordId;
     }
 
+    public ConcurrentMap<Object, Object> getRequestCache() {
+        ConcurrentMap<Object, Object> result = requestCache;
+        if (result == null) {
+            synchronized (this) {
+                result = requestCache;
+                if (result == null) {
+                    result = new ConcurrentHashMap<Object, Object>();
+                    requestCache = result;
+                }
+            }
+        }
+        return result;
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder();
@@ -18,6 +18,7 @@
 
 package org.killbill.billing.entitlement;
 
+import java.util.Map;
 import java.util.UUID;
 
 import org.joda.time.LocalDate;
@@ -26,6 +27,7 @@ import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.api.BillingActionPolicy;
 import org.killbill.billing.entitlement.api.Entitlement;
 import org.killbill.billing.entitlement.api.EntitlementApiException;
+import org.killbill.billing.entitlement.api.EntitlementSpecifier;
 import org.killbill.billing.payment.api.PluginProperty;
 
 public interface EntitlementInternalApi {
@@ -34,9 +36,20 @@ public interface EntitlementInternalApi {
 
     Entitlement getEntitlementForId(final UUID uuid, final InternalTenantContext tenantContext) throws EntitlementApiException;
 
+    // Only the requested entitlements are built: they must all belong to the account of the context
+    Map<UUID, Entitlement> getEntitlementsForIds(Iterable<UUID> entitlementIds, InternalTenantContext tenantContext) throws EntitlementApiException;
+
     void pause(UUID bundleId, LocalDate effectiveDate, Iterable<PluginProperty> properties, InternalCallContext context) throws EntitlementApiException;
 
     void resume(UUID bundleId, LocalDate localEffectiveDate, Iterable<PluginProperty> properties, InternalCallContext context) throws EntitlementApiException;
 
+    // Bulk variants (the bundles and entitlements must all belong to the account of the context): the account lock is taken once
+    // and all the blocking states are recorded in a single transaction
+    void pause(Iterable<UUID> bundleIds, LocalDate effectiveDate, Iterable<PluginProperty> properties, InternalCallContext context) throws EntitlementApiException;
+
+    void resume(Iterable<UUID> bundleIds, LocalDate effectiveDate, Iterable<PluginProperty> properties, InternalCallContext context) throws EntitlementApiException;
+
     void cancel(Iterable<Entitlement> entitlements, LocalDate effectiveDate, BillingActionPolicy billingPolicy, Iterable<PluginProperty> properties, InternalCallContext context) throws EntitlementApiException;
+
+    void changePlan(Map<UUID, EntitlementSpecifier> specifiers, BillingActionPolicy billingPolicy, Iterable<PluginProperty> properties, InternalCallContext context) throws EntitlementApiException;
 }
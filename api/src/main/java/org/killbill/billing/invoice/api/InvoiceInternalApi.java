@@ -24,12 +24,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
+import javax.annotation.Nullable;
+
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.api.Currency;
 import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.entity.Pagination;
 
 public interface InvoiceInternalApi {
 
@@ -87,4 +90,7 @@ public interface InvoiceInternalApi {
     public List<InvoicePayment> getInvoicePaymentsByInvoice(UUID invoiceId, InternalTenantContext context);
 
     public InvoicePayment getInvoicePaymentByCookieId(String cookieId, TenantContext context);
+
+    // Shallow invoices (without items nor payments), seeking past lastRecordId (if not null) instead of scanning offset records
+    public Pagination<Invoice> getInvoices(Long offset, @Nullable Long lastRecordId, Long limit, InternalTenantContext context);
 }
@@ -73,6 +73,9 @@ public interface SubscriptionBaseInternalApi {
 
     public Map<UUID, List<SubscriptionBase>> getSubscriptionsForAccount(final Catalog catalog, final InternalTenantContext context) throws SubscriptionBaseApiException;
 
+    // Copy of the subscription, which can be updated in place (e.g. by the user APIs) without affecting the original one
+    public SubscriptionBase copySubscription(SubscriptionBase subscription);
+
     public SubscriptionBase getBaseSubscription(UUID bundleId, InternalTenantContext context) throws SubscriptionBaseApiException;
 
     public SubscriptionBase getSubscriptionFromId(UUID id, InternalTenantContext context) throws SubscriptionBaseApiException;
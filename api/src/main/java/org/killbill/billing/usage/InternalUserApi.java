@@ -17,13 +17,36 @@
 
 package org.killbill.billing.usage;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import org.joda.time.LocalDate;
 import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.entitlement.api.EntitlementApiException;
+import org.killbill.billing.usage.api.SubscriptionUsageRecord;
+import org.killbill.billing.usage.api.UsageApiException;
+import org.killbill.billing.util.callcontext.CallContext;
 
 public interface InternalUserApi {
 
     public List<RawUsage> getRawUsageForAccount(final LocalDate stateDate, final LocalDate endDate, final InternalTenantContext tenantContext);
+
+    /**
+     * Usage of a subscription for the given unit types, with one usage per unit type and day (sorted by day and unit type): the amount is the total
+     * of the records and the max amount their maximum. The records are streamed out of the database and don't carry any tracking id, see getTrackingIdsForSubscription.
+     */
+    public Iterator<RawUsage> getAggregatedRawUsageForSubscription(final UUID subscriptionId, final LocalDate startDate, final LocalDate endDate, final Set<String> unitTypes, final InternalTenantContext tenantContext);
+
+    /**
+     * Tracking ids of the usage of a subscription for the given unit types, with one usage per unit type and day: only the tracking ids are populated, not the amounts.
+     */
+    public List<RawUsage> getTrackingIdsForSubscription(final UUID subscriptionId, final LocalDate startDate, final LocalDate endDate, final Set<String> unitTypes, final InternalTenantContext tenantContext);
+
+    /**
+     * Record the usage of multiple subscriptions (across accounts) at once: either all records are written, or none if one of the tracking ids was already recorded
+     * or if one of the subscriptions isn't active on its highest record date.
+     */
+    public void recordRolledUpUsage(final Iterable<SubscriptionUsageRecord> records, final CallContext context) throws UsageApiException, EntitlementApiException;
 }
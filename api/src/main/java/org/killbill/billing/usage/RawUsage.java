@@ -17,6 +17,7 @@
 
 package org.killbill.billing.usage;
 
+import java.util.Set;
 import java.util.UUID;
 
 import org.joda.time.LocalDate;
@@ -31,5 +32,12 @@ public interface RawUsage {
 
     Long getAmount();
 
+    // Max amount of the records behind that usage (same as the amount for a single record)
+    Long getMaxAmount();
+
+    // First tracking id of the records behind that usage
     String getTrackingId();
+
+    // Tracking ids of the records behind that usage
+    Set<String> getTrackingIds();
 }
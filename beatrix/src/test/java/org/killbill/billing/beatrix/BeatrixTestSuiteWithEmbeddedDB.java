@@ -31,6 +31,9 @@ public abstract class BeatrixTestSuiteWithEmbeddedDB extends GuicyKillbillTestSu
     protected static final Map<String, String> DEFAULT_BEATRIX_PROPERTIES = ImmutableMap.<String, String>builder().put("org.killbill.catalog.uri", "catalogs/default/catalogTest.xml")
                                                                                                                   .put("org.killbill.invoice.maxDailyNumberOfItemsSafetyBound", "30")
                                                                                                                   .put("org.killbill.payment.retry.days", "8,8,8,8,8,8,8,8")
+                                                                                                                  // Verify the cached billing events against a full recomputation on each invoice run
+                                                                                                                  .put("org.killbill.junction.billingEvents.cache.enabled", "true")
+                                                                                                                  .put("org.killbill.junction.billingEvents.cache.consistencyCheck", "true")
                                                                                                                   .put("org.killbill.osgi.bundle.install.dir", "/var/tmp/beatrix-bundles")
                                                                                                                   // The default value is 50, i.e. wait 50 x 100ms = 5s to get the lock. This isn't always enough and can lead to random tests failures
                                                                                                                   // in the listener status: after moving the clock, if there are two notifications triggering an invoice run, we typically expect
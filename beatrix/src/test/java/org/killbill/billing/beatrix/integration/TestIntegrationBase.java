@@ -1082,11 +1082,36 @@ public class TestIntegrationBase extends BeatrixTestSuiteWithEmbeddedDB implemen
             return defaultInvoiceConfig.getMaxRawUsagePreviousPeriod();
         }
 
+        @Override
+        public boolean isRawUsageAggregationEnabled() {
+            return defaultInvoiceConfig.isRawUsageAggregationEnabled();
+        }
+
+        @Override
+        public int getMaxInvoiceHistoryMonths() {
+            return defaultInvoiceConfig.getMaxInvoiceHistoryMonths();
+        }
+
+        @Override
+        public int getMaxInvoiceHistoryMonths(final InternalTenantContext tenantContext) {
+            return defaultInvoiceConfig.getMaxInvoiceHistoryMonths();
+        }
+
         @Override
         public int getMaxGlobalLockRetries() {
             return defaultInvoiceConfig.getMaxGlobalLockRetries();
         }
 
+        @Override
+        public int getBillingRunNbThreads() {
+            return defaultInvoiceConfig.getBillingRunNbThreads();
+        }
+
+        @Override
+        public boolean isIntervalIndexEnabled() {
+            return defaultInvoiceConfig.isIntervalIndexEnabled();
+        }
+
         @Override
         public List<String> getInvoicePluginNames() {
             return defaultInvoiceConfig.getInvoicePluginNames();
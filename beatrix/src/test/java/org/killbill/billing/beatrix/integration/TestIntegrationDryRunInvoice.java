@@ -44,6 +44,8 @@ import org.killbill.billing.invoice.api.InvoiceApiException;
 import org.killbill.billing.invoice.api.InvoiceItemType;
 import org.killbill.billing.payment.api.PluginProperty;
 import org.killbill.billing.subscription.api.user.DefaultSubscriptionBase;
+import org.killbill.commons.profiling.Profiling;
+import org.killbill.commons.profiling.ProfilingData.ProfilingDataItem;
 import org.testng.annotations.Test;
 
 import com.google.common.collect.ImmutableList;
@@ -51,6 +53,7 @@ import com.google.common.collect.ImmutableList;
 import static com.tc.util.Assert.fail;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
 
 public class TestIntegrationDryRunInvoice extends TestIntegrationBase {
 
@@ -618,4 +621,40 @@ public class TestIntegrationDryRunInvoice extends TestIntegrationBase {
                                     new ExpectedInvoiceItemCheck(new LocalDate(2017, 12, 25), new LocalDate(2017, 12, 25), InvoiceItemType.CBA_ADJ, new BigDecimal("-56.44")));
 
     }
+
+    @Test(groups = "slow")
+    public void testDryRunReadsBlockingStatesOnce() throws Exception {
+        final DateTime initialCreationDate = new DateTime(2015, 5, 15, 0, 0, 0, 0, testTimeZone);
+        clock.setTime(initialCreationDate);
+
+        final Account account = createAccountWithNonOsgiPaymentMethod(getAccountData(14));
+
+        createBaseEntitlementAndCheckForCompletion(account.getId(), "bundleKey1", "Shotgun", ProductCategory.BASE, BillingPeriod.MONTHLY, NextEvent.CREATE, NextEvent.BLOCK, NextEvent.INVOICE);
+        createBaseEntitlementAndCheckForCompletion(account.getId(), "bundleKey2", "Shotgun", ProductCategory.BASE, BillingPeriod.MONTHLY, NextEvent.CREATE, NextEvent.BLOCK, NextEvent.INVOICE);
+
+        // The invoice run is done in this thread, and the blocking states are needed both by the billing events and the events streams of each subscription
+        Profiling.setPerThreadProfilingData("DAO_DETAILS");
+        final List<ProfilingDataItem> queries;
+        try {
+            final Invoice dryRunInvoice = invoiceUserApi.triggerDryRunInvoiceGeneration(account.getId(), null, DRY_RUN_UPCOMING_INVOICE_ARG, callContext);
+            assertEquals(dryRunInvoice.getInvoiceItems().size(), 2);
+            queries = Profiling.getPerThreadProfilingData().getRawData();
+        } finally {
+            Profiling.resetPerThreadProfilingData();
+        }
+
+        // Each query is profiled with a start and an end item
+        assertEquals(countQueries(queries, "BlockingStateSqlDao (raw): getByAccountRecordId"), 2);
+        assertTrue(countQueries(queries, "AccountSqlDao (raw): getBCD") <= 2);
+    }
+
+    private int countQueries(final Iterable<ProfilingDataItem> queries, final String profilingId) {
+        int count = 0;
+        for (final ProfilingDataItem query : queries) {
+            if (query.getKey().endsWith(profilingId)) {
+                count++;
+            }
+        }
+        return count;
+    }
 }
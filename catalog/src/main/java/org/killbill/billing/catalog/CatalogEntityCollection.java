@@ -32,6 +32,8 @@ import com.google.common.collect.Ordering;
 
 public class CatalogEntityCollection<T extends CatalogEntity> implements Collection<T>, Externalizable {
 
+    private static final long serialVersionUID = -5830963297290553271L;
+
     private final Map<String, T> data;
 
     public CatalogEntityCollection() {
@@ -199,11 +201,20 @@ public class CatalogEntityCollection<T extends CatalogEntity> implements Collect
 
     @Override
     public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
-        data.putAll((Map<? extends String, ? extends T>) in.readObject());
+        final int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            final String name = CatalogExternalizableHelper.readName(in);
+            data.put(name, (T) in.readObject());
+        }
     }
 
     @Override
     public void writeExternal(final ObjectOutput oo) throws IOException {
-        oo.writeObject(data);
+        // The names are written as shared strings (see CatalogExternalizableHelper), not as part of a TreeMap
+        oo.writeInt(data.size());
+        for (final Map.Entry<String, T> entry : data.entrySet()) {
+            CatalogExternalizableHelper.writeName(oo, entry.getKey());
+            oo.writeObject(entry.getValue());
+        }
     }
 }
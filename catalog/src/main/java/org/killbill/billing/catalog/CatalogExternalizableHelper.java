@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.catalog;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+//
+// Compact binary forms for the catalog entries stored in the caches (Ehcache off-heap, Redis).
+//
+// Catalogs with thousands of plans repeat the same names (plan, product, price list, catalog names) and the same prices
+// over and over: names are interned, so that Java serialization only writes each of them once per stream and uses
+// back-references afterwards. Decoded price values are immutable and interned as well, so that decoded catalogs share
+// them (the DefaultPrice instances themselves are mutable and are never shared).
+//
+public abstract class CatalogExternalizableHelper {
+
+    private static final byte NULL_DECIMAL = 0;
+    private static final byte COMPACT_DECIMAL = 1;
+    private static final byte BIG_DECIMAL = 2;
+
+    private static final Interner<BigDecimal> DECODED_DECIMALS = Interners.newWeakInterner();
+
+    public static void writeName(final ObjectOutput out, @Nullable final String name) throws IOException {
+        out.writeObject(name == null ? null : name.intern());
+    }
+
+    public static String readName(final ObjectInput in) throws IOException, ClassNotFoundException {
+        return (String) in.readObject();
+    }
+
+    // BigDecimal#writeObject inflates the value into a BigInteger object graph: most prices fit in a long instead
+    public static void writeDecimal(final ObjectOutput out, @Nullable final BigDecimal value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL_DECIMAL);
+        } else if (value.unscaledValue().bitLength() < Long.SIZE) {
+            out.writeByte(COMPACT_DECIMAL);
+            out.writeInt(value.scale());
+            out.writeLong(value.unscaledValue().longValue());
+        } else {
+            out.writeByte(BIG_DECIMAL);
+            out.writeInt(value.scale());
+            final byte[] unscaledValue = value.unscaledValue().toByteArray();
+            out.writeInt(unscaledValue.length);
+            out.write(unscaledValue);
+        }
+    }
+
+    public static BigDecimal readDecimal(final ObjectInput in) throws IOException {
+        final byte type = in.readByte();
+        switch (type) {
+            case NULL_DECIMAL:
+                return null;
+            case COMPACT_DECIMAL:
+                final int compactScale = in.readInt();
+                return DECODED_DECIMALS.intern(BigDecimal.valueOf(in.readLong(), compactScale));
+            case BIG_DECIMAL:
+                final int scale = in.readInt();
+                final byte[] unscaledValue = new byte[in.readInt()];
+                in.readFully(unscaledValue);
+                return DECODED_DECIMALS.intern(new BigDecimal(new BigInteger(unscaledValue), scale));
+            default:
+                throw new StreamCorruptedException("Unexpected decimal type " + type);
+        }
+    }
+
+    public static void writeDate(final ObjectOutput out, @Nullable final Date date) throws IOException {
+        out.writeBoolean(date != null);
+        if (date != null) {
+            out.writeLong(date.getTime());
+        }
+    }
+
+    public static Date readDate(final ObjectInput in) throws IOException {
+        return in.readBoolean() ? new Date(in.readLong()) : null;
+    }
+}
@@ -62,7 +62,7 @@ import com.google.common.annotations.VisibleForTesting;
 @XmlAccessorType(XmlAccessType.NONE)
 public class DefaultPlan extends ValidatingConfig<StandaloneCatalog> implements Plan, Externalizable {
 
-    private static final long serialVersionUID = -4159932819592790086L;
+    private static final long serialVersionUID = -2620263473413526519L;
 
     @XmlAttribute(required = true)
     @XmlID
@@ -412,22 +412,22 @@ public class DefaultPlan extends ValidatingConfig<StandaloneCatalog> implements
 
     @Override
     public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
-        this.name = in.readUTF();
-        this.prettyName = in.readUTF();
-        this.effectiveDateForExistingSubscriptions = (Date) in.readObject();
+        this.name = CatalogExternalizableHelper.readName(in);
+        this.prettyName = CatalogExternalizableHelper.readName(in);
+        this.effectiveDateForExistingSubscriptions = CatalogExternalizableHelper.readDate(in);
         this.product = (DefaultProduct) in.readObject();
         this.recurringBillingMode = in.readBoolean() ? BillingMode.valueOf(in.readUTF()) : null;
         this.initialPhases = (DefaultPlanPhase[]) in.readObject();
         this.finalPhase = (DefaultPlanPhase) in.readObject();
         this.plansAllowedInBundle = in.readInt();
-        this.priceListName = in.readUTF();
+        this.priceListName = CatalogExternalizableHelper.readName(in);
     }
 
     @Override
     public void writeExternal(final ObjectOutput oo) throws IOException {
-        oo.writeUTF(name);
-        oo.writeUTF(prettyName);
-        oo.writeObject(effectiveDateForExistingSubscriptions);
+        CatalogExternalizableHelper.writeName(oo, name);
+        CatalogExternalizableHelper.writeName(oo, prettyName);
+        CatalogExternalizableHelper.writeDate(oo, effectiveDateForExistingSubscriptions);
         oo.writeObject(product);
         oo.writeBoolean(recurringBillingMode != null);
         if (recurringBillingMode != null) {
@@ -436,6 +436,6 @@ public class DefaultPlan extends ValidatingConfig<StandaloneCatalog> implements
         oo.writeObject(initialPhases);
         oo.writeObject(finalPhase);
         oo.writeInt(plansAllowedInBundle);
-        oo.writeUTF(priceListName);
+        CatalogExternalizableHelper.writeName(oo, priceListName);
     }
 }
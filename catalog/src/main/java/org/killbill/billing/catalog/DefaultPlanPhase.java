@@ -53,6 +53,8 @@ import com.google.common.collect.Iterables;
 @XmlAccessorType(XmlAccessType.NONE)
 public class DefaultPlanPhase extends ValidatingConfig<StandaloneCatalog> implements PlanPhase, Externalizable {
 
+    private static final long serialVersionUID = -5328424553961426549L;
+
     @XmlAttribute(required = false)
     private String prettyName;
 
@@ -301,10 +303,7 @@ public class DefaultPlanPhase extends ValidatingConfig<StandaloneCatalog> implem
 
     @Override
     public void writeExternal(final ObjectOutput out) throws IOException {
-        out.writeBoolean(prettyName != null);
-        if (prettyName != null) {
-            out.writeUTF(prettyName);
-        }
+        CatalogExternalizableHelper.writeName(out, prettyName);
         out.writeBoolean(type != null);
         if (type != null) {
             out.writeUTF(type.name());
@@ -313,19 +312,19 @@ public class DefaultPlanPhase extends ValidatingConfig<StandaloneCatalog> implem
         out.writeObject(fixed);
         out.writeObject(recurring);
         out.writeObject(usages);
-        out.writeUTF(planName);
+        CatalogExternalizableHelper.writeName(out, planName);
         out.writeObject(product);
     }
 
     @Override
     public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
-        this.prettyName = in.readBoolean() ? in.readUTF() : null;
+        this.prettyName = CatalogExternalizableHelper.readName(in);
         this.type = in.readBoolean() ? PhaseType.valueOf(in.readUTF()) : null;
         this.duration = (DefaultDuration) in.readObject();
         this.fixed = (DefaultFixed) in.readObject();
         this.recurring = (DefaultRecurring) in.readObject();
         this.usages = (DefaultUsage[]) in.readObject();
-        this.planName = in.readUTF();
+        this.planName = CatalogExternalizableHelper.readName(in);
         this.product = (Product) in.readObject();
     }
 }
@@ -38,6 +38,8 @@ import org.killbill.xmlloader.ValidationErrors;
 @XmlAccessorType(XmlAccessType.NONE)
 public class DefaultPrice extends ValidatingConfig<StandaloneCatalog> implements Price, Externalizable {
 
+    private static final long serialVersionUID = 2412580592493398813L;
+
     @XmlElement(required = true)
     private Currency currency;
 
@@ -118,16 +120,13 @@ public class DefaultPrice extends ValidatingConfig<StandaloneCatalog> implements
 
     @Override
     public void writeExternal(final ObjectOutput out) throws IOException {
-        out.writeBoolean(currency != null);
-        if (currency != null) {
-            out.writeUTF(currency.name());
-        }
-        out.writeObject(value);
+        out.writeObject(currency);
+        CatalogExternalizableHelper.writeDecimal(out, value);
     }
 
     @Override
     public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
-        this.currency = in.readBoolean() ? Currency.valueOf(in.readUTF()) : null;
-        this.value = (BigDecimal) in.readObject();
+        this.currency = (Currency) in.readObject();
+        this.value = CatalogExternalizableHelper.readDecimal(in);
     }
 }
@@ -45,6 +45,8 @@ import org.killbill.xmlloader.ValidationErrors;
 @XmlAccessorType(XmlAccessType.NONE)
 public class DefaultPriceList extends ValidatingConfig<StandaloneCatalog> implements PriceList, Externalizable {
 
+    private static final long serialVersionUID = 8718461651357208125L;
+
     @XmlAttribute(required = true)
     @XmlID
     private String name;
@@ -161,21 +163,15 @@ public class DefaultPriceList extends ValidatingConfig<StandaloneCatalog> implem
 
     @Override
     public void writeExternal(final ObjectOutput out) throws IOException {
-        out.writeBoolean(name != null);
-        if (name != null) {
-            out.writeUTF(name);
-        }
-        out.writeBoolean(prettyName != null);
-        if (prettyName != null) {
-            out.writeUTF(prettyName);
-        }
+        CatalogExternalizableHelper.writeName(out, name);
+        CatalogExternalizableHelper.writeName(out, prettyName);
         out.writeObject(plans);
     }
 
     @Override
     public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
-        this.name = in.readBoolean() ? in.readUTF() : null;
-        this.prettyName = in.readBoolean() ? in.readUTF() : null;
+        this.name = CatalogExternalizableHelper.readName(in);
+        this.prettyName = CatalogExternalizableHelper.readName(in);
         this.plans = (CatalogEntityCollection<Plan>) in.readObject();
     }
 }
@@ -43,6 +43,8 @@ import org.killbill.xmlloader.ValidationErrors;
 @XmlAccessorType(XmlAccessType.NONE)
 public class DefaultProduct extends ValidatingConfig<StandaloneCatalog> implements Product, Externalizable {
 
+    private static final long serialVersionUID = -2235404385564406735L;
+
     @XmlAttribute(required = true)
     @XmlID
     private String name;
@@ -274,18 +276,9 @@ public class DefaultProduct extends ValidatingConfig<StandaloneCatalog> implemen
 
     @Override
     public void writeExternal(final ObjectOutput out) throws IOException {
-        out.writeBoolean(catalogName != null);
-        if (catalogName != null) {
-            out.writeUTF(catalogName);
-        }
-        out.writeBoolean(name != null);
-        if (name != null) {
-            out.writeUTF(name);
-        }
-        out.writeBoolean(prettyName != null);
-        if (prettyName != null) {
-            out.writeUTF(prettyName);
-        }
+        CatalogExternalizableHelper.writeName(out, catalogName);
+        CatalogExternalizableHelper.writeName(out, name);
+        CatalogExternalizableHelper.writeName(out, prettyName);
         out.writeBoolean(category != null);
         if (category != null) {
             out.writeUTF(category.name());
@@ -297,9 +290,9 @@ public class DefaultProduct extends ValidatingConfig<StandaloneCatalog> implemen
 
     @Override
     public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
-        this.catalogName = in.readBoolean() ? in.readUTF() : null;
-        this.name = in.readBoolean() ? in.readUTF() : null;
-        this.prettyName = in.readBoolean() ? in.readUTF() : null;
+        this.catalogName = CatalogExternalizableHelper.readName(in);
+        this.name = CatalogExternalizableHelper.readName(in);
+        this.prettyName = CatalogExternalizableHelper.readName(in);
         this.category = in.readBoolean() ? ProductCategory.valueOf(in.readUTF()) : null;
         this.included = (CatalogEntityCollection<Product>) in.readObject();
         this.available = (CatalogEntityCollection<Product>) in.readObject();
@@ -38,6 +38,8 @@ import org.killbill.xmlloader.ValidationErrors;
 @XmlAccessorType(XmlAccessType.NONE)
 public class DefaultRecurring extends ValidatingConfig<StandaloneCatalog> implements Recurring, Externalizable {
 
+    private static final long serialVersionUID = 4960823467935212208L;
+
     @XmlElement(required = true)
     private BillingPeriod billingPeriod;
 
@@ -162,7 +164,7 @@ public class DefaultRecurring extends ValidatingConfig<StandaloneCatalog> implem
             out.writeUTF(billingPeriod.name());
         }
         out.writeObject(recurringPrice);
-        out.writeUTF(planName);
+        CatalogExternalizableHelper.writeName(out, planName);
         out.writeBoolean(phaseType != null);
         if (phaseType != null) {
             out.writeUTF(phaseType.name());
@@ -173,7 +175,7 @@ public class DefaultRecurring extends ValidatingConfig<StandaloneCatalog> implem
     public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
         this.billingPeriod = in.readBoolean() ? BillingPeriod.valueOf(in.readUTF()) : null;
         this.recurringPrice = (DefaultInternationalPrice) in.readObject();
-        this.planName = in.readUTF();
+        this.planName = CatalogExternalizableHelper.readName(in);
         this.phaseType = in.readBoolean() ? PhaseType.valueOf(in.readUTF()) : null;
     }
 }
@@ -67,7 +67,7 @@ import org.killbill.xmlloader.ValidationErrors;
 @XmlAccessorType(XmlAccessType.NONE)
 public class DefaultVersionedCatalog extends ValidatingConfig<DefaultVersionedCatalog> implements VersionedCatalog<StandaloneCatalog>, Externalizable {
 
-    private static final long serialVersionUID = 3181874902672322725L;
+    private static final long serialVersionUID = -8154358541498127066L;
 
     private Clock clock;
 
@@ -455,17 +455,14 @@ public class DefaultVersionedCatalog extends ValidatingConfig<DefaultVersionedCa
 
     @Override
     public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
-        this.catalogName = in.readBoolean() ? in.readUTF() : null;
+        this.catalogName = CatalogExternalizableHelper.readName(in);
         this.versions.addAll((Collection<? extends StandaloneCatalog>) in.readObject());
     }
 
     @Override
     public void writeExternal(final ObjectOutput oo) throws IOException {
-        oo.writeBoolean(catalogName != null);
-        if (catalogName != null) {
-            // Can be null for placeholder XML
-            oo.writeUTF(catalogName);
-        }
+        // Can be null for placeholder XML
+        CatalogExternalizableHelper.writeName(oo, catalogName);
         oo.writeObject(versions);
     }
 
@@ -63,6 +63,8 @@ import org.killbill.xmlloader.ValidationErrors;
 @XmlAccessorType(XmlAccessType.NONE)
 public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> implements StaticCatalog, Externalizable {
 
+    private static final long serialVersionUID = 6911380548271633213L;
+
     @XmlElement(required = true)
     private Date effectiveDate;
 
@@ -439,8 +441,8 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
 
     @Override
     public void writeExternal(final ObjectOutput out) throws IOException {
-        out.writeObject(effectiveDate);
-        out.writeUTF(catalogName);
+        CatalogExternalizableHelper.writeDate(out, effectiveDate);
+        CatalogExternalizableHelper.writeName(out, catalogName);
         out.writeBoolean(recurringBillingMode != null);
         if (recurringBillingMode != null) {
             out.writeUTF(recurringBillingMode.name());
@@ -455,8 +457,8 @@ public class StandaloneCatalog extends ValidatingConfig<StandaloneCatalog> imple
 
     @Override
     public void readExternal(final ObjectInput in) throws IOException, ClassNotFoundException {
-        this.effectiveDate = (Date) in.readObject();
-        this.catalogName = in.readUTF();
+        this.effectiveDate = CatalogExternalizableHelper.readDate(in);
+        this.catalogName = CatalogExternalizableHelper.readName(in);
         this.recurringBillingMode = in.readBoolean() ? BillingMode.valueOf(in.readUTF()) : null;
         this.supportedCurrencies = (Currency[]) in.readObject();
         this.units = (DefaultUnit[]) in.readObject();
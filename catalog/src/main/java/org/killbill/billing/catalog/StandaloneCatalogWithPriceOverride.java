@@ -41,6 +41,8 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 
 public class StandaloneCatalogWithPriceOverride extends StandaloneCatalog implements StaticCatalog, Externalizable {
 
+    private static final long serialVersionUID = -1347398232393437046L;
+
     private Long tenantRecordId;
 
     /* Since we offer endpoints that attempt to serialize catalog objects, we need to explicitly tell Jackson to ignore those fields */
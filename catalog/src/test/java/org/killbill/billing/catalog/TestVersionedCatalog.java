@@ -208,4 +208,22 @@ public class TestVersionedCatalog extends CatalogTestSuiteNoDB {
         final StandaloneCatalog standaloneCatalog = (StandaloneCatalog) codec.getValueDecoder().decode(byteBuf, null);
         Assert.assertEquals(standaloneCatalog, vc.getVersions().get(0));
     }
+
+    @Test(groups = "fast")
+    public void testVersionedCatalogExternalizable() throws Exception {
+        final Codec codec = new SerializationCodec();
+
+        final ByteBuf byteBuf = codec.getValueEncoder().encode(vc);
+        final DefaultVersionedCatalog versionedCatalog = (DefaultVersionedCatalog) codec.getValueDecoder().decode(byteBuf, null);
+
+        Assert.assertEquals(versionedCatalog, vc);
+
+        // Names and price values are shared across the decoded entries
+        // laser-scope-monthly and extra-ammo-monthly both cost $1999.95
+        final Plan laserScopeMonthly = versionedCatalog.getVersions().get(0).findCurrentPlan("laser-scope-monthly");
+        final Plan extraAmmoMonthly = versionedCatalog.getVersions().get(0).findCurrentPlan("extra-ammo-monthly");
+        Assert.assertSame(laserScopeMonthly.getPriceListName(), extraAmmoMonthly.getPriceListName());
+        Assert.assertSame(laserScopeMonthly.getFinalPhase().getRecurring().getRecurringPrice().getPrices()[0].getValue(),
+                          extraAmmoMonthly.getFinalPhase().getRecurring().getRecurringPrice().getPrices()[0].getValue());
+    }
 }
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -33,12 +34,18 @@ import javax.inject.Inject;
 
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
+import org.killbill.billing.ErrorCode;
+import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.account.api.AccountInternalApi;
 import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.api.BillingActionPolicy;
+import org.killbill.billing.catalog.api.CatalogApiException;
 import org.killbill.billing.entitlement.DefaultEntitlementService;
 import org.killbill.billing.entitlement.EntitlementInternalApi;
+import org.killbill.billing.entitlement.EventsStream;
 import org.killbill.billing.entitlement.api.BaseEntitlementWithAddOnsSpecifier;
+import org.killbill.billing.entitlement.api.BlockingApiException;
 import org.killbill.billing.entitlement.api.BlockingState;
 import org.killbill.billing.entitlement.api.BlockingStateType;
 import org.killbill.billing.entitlement.api.DefaultBaseEntitlementWithAddOnsSpecifier;
@@ -51,6 +58,7 @@ import org.killbill.billing.entitlement.api.EntitlementApi;
 import org.killbill.billing.entitlement.api.EntitlementApiException;
 import org.killbill.billing.entitlement.api.EntitlementPluginExecution;
 import org.killbill.billing.entitlement.api.EntitlementPluginExecution.WithEntitlementPlugin;
+import org.killbill.billing.entitlement.api.EntitlementSpecifier;
 import org.killbill.billing.entitlement.block.BlockingChecker;
 import org.killbill.billing.entitlement.dao.BlockingStateDao;
 import org.killbill.billing.entitlement.engine.core.EntitlementUtils;
@@ -64,10 +72,16 @@ import org.killbill.billing.security.api.SecurityApi;
 import org.killbill.billing.subscription.api.SubscriptionBase;
 import org.killbill.billing.subscription.api.SubscriptionBaseInternalApi;
 import org.killbill.billing.subscription.api.user.SubscriptionBaseApiException;
+import org.killbill.billing.subscription.api.user.SubscriptionBaseBundle;
 import org.killbill.billing.util.callcontext.CallContext;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.config.definition.EntitlementConfig;
+import org.killbill.billing.util.globallocker.LockerType;
 import org.killbill.bus.api.PersistentBus;
 import org.killbill.clock.Clock;
+import org.killbill.commons.locker.GlobalLock;
+import org.killbill.commons.locker.GlobalLocker;
+import org.killbill.commons.locker.LockFailedException;
 import org.killbill.notificationq.api.NotificationEvent;
 import org.killbill.notificationq.api.NotificationQueue;
 import org.killbill.notificationq.api.NotificationQueueService;
@@ -79,6 +93,8 @@ import com.google.common.collect.ImmutableMap;
 public class DefaultEntitlementInternalApi extends DefaultEntitlementApiBase implements EntitlementInternalApi {
 
     private final BlockingStateDao blockingStateDao;
+    private final GlobalLocker locker;
+    private final EntitlementConfig entitlementConfig;
 
     @Inject
     public DefaultEntitlementInternalApi(final PersistentBus eventBus,
@@ -87,9 +103,24 @@ public class DefaultEntitlementInternalApi extends DefaultEntitlementApiBase imp
                                          final SubscriptionBaseInternalApi subscriptionInternalApi,
                                          final AccountInternalApi accountApi, final BlockingStateDao blockingStateDao, final Clock clock,
                                          final BlockingChecker checker, final NotificationQueueService notificationQueueService,
-                                         final EventsStreamBuilder eventsStreamBuilder, final EntitlementUtils entitlementUtils, final SecurityApi securityApi) {
+                                         final EventsStreamBuilder eventsStreamBuilder, final EntitlementUtils entitlementUtils, final SecurityApi securityApi,
+                                         final GlobalLocker locker, final EntitlementConfig entitlementConfig) {
         super(eventBus, entitlementApi, pluginExecution, internalCallContextFactory, subscriptionInternalApi, accountApi, blockingStateDao, clock, checker, notificationQueueService, eventsStreamBuilder, entitlementUtils, securityApi);
         this.blockingStateDao = blockingStateDao;
+        this.locker = locker;
+        this.entitlementConfig = entitlementConfig;
+    }
+
+    @Override
+    public Map<UUID, Entitlement> getEntitlementsForIds(final Iterable<UUID> entitlementIds, final InternalTenantContext tenantContext) throws EntitlementApiException {
+        final Map<UUID, Entitlement> result = new HashMap<UUID, Entitlement>();
+        for (final EventsStream eventsStream : eventsStreamBuilder.buildForEntitlements(entitlementIds, tenantContext).values()) {
+            final Entitlement entitlement = new DefaultEntitlement(eventsStream, eventsStreamBuilder, entitlementApi, pluginExecution,
+                                                                   blockingStateDao, subscriptionInternalApi, checker, notificationQueueService,
+                                                                   entitlementUtils, dateHelper, clock, securityApi, tenantContext, internalCallContextFactory);
+            result.put(entitlement.getId(), entitlement);
+        }
+        return result;
     }
 
     @Override
@@ -99,6 +130,15 @@ public class DefaultEntitlementInternalApi extends DefaultEntitlementApiBase imp
             return;
         }
 
+        final GlobalLock lock = lockAccount(internalCallContext);
+        try {
+            doCancel(entitlements, effectiveDate, billingPolicy, properties, internalCallContext);
+        } finally {
+            lock.release();
+        }
+    }
+
+    private void doCancel(final Iterable<Entitlement> entitlements, @Nullable final LocalDate effectiveDate, final BillingActionPolicy billingPolicy, final Iterable<PluginProperty> properties, final InternalCallContext internalCallContext) throws EntitlementApiException {
         final CallContext callContext = internalCallContextFactory.createCallContext(internalCallContext);
 
         final ImmutableMap.Builder<BlockingState, Optional<UUID>> blockingStates = new ImmutableMap.Builder<BlockingState, Optional<UUID>>();
@@ -148,8 +188,85 @@ public class DefaultEntitlementInternalApi extends DefaultEntitlementApiBase imp
 
         pluginExecution.executeWithPlugin(preCallbacksCallback, callbacks, pluginContexts);
 
+        recordBlockingStatesAndNotifications(blockingStates.build(), notificationEvents, internalCallContext);
+    }
+
+    @Override
+    public void changePlan(final Map<UUID, EntitlementSpecifier> specifiers, final BillingActionPolicy billingPolicy, final Iterable<PluginProperty> properties, final InternalCallContext internalCallContext) throws EntitlementApiException {
+        if (specifiers.isEmpty()) {
+            return;
+        }
+
+        final GlobalLock lock = lockAccount(internalCallContext);
+        try {
+            doChangePlan(specifiers, billingPolicy, properties, internalCallContext);
+        } finally {
+            lock.release();
+        }
+    }
+
+    // Each subscription change is still written by the subscription module, but the add-on blocking states (and their bus events) are
+    // recorded in a single transaction for all entitlements
+    private void doChangePlan(final Map<UUID, EntitlementSpecifier> specifiers, final BillingActionPolicy billingPolicy, final Iterable<PluginProperty> properties, final InternalCallContext internalCallContext) throws EntitlementApiException {
+        final CallContext callContext = internalCallContextFactory.createCallContext(internalCallContext);
+
+        final ImmutableMap.Builder<BlockingState, Optional<UUID>> blockingStates = new ImmutableMap.Builder<BlockingState, Optional<UUID>>();
+        final Map<DateTime, Collection<NotificationEvent>> notificationEvents = new HashMap<DateTime, Collection<NotificationEvent>>();
+        final Collection<EntitlementContext> pluginContexts = new LinkedList<EntitlementContext>();
+        final List<WithEntitlementPlugin> callbacks = new LinkedList<WithEntitlementPlugin>();
+
+        final Map<UUID, Entitlement> entitlements = getEntitlementsForIds(specifiers.keySet(), internalCallContext);
+        for (final UUID entitlementId : specifiers.keySet()) {
+            final Entitlement entitlement = entitlements.get(entitlementId);
+            if (entitlement == null) {
+                throw new EntitlementApiException(ErrorCode.SUB_INVALID_SUBSCRIPTION_ID, entitlementId);
+            }
+
+            final BaseEntitlementWithAddOnsSpecifier baseEntitlementWithAddOnsSpecifier = new DefaultBaseEntitlementWithAddOnsSpecifier(
+                    entitlement.getBundleId(),
+                    entitlement.getExternalKey(),
+                    null,
+                    null,
+                    null,
+                    false);
+            final List<BaseEntitlementWithAddOnsSpecifier> baseEntitlementWithAddOnsSpecifierList = new ArrayList<BaseEntitlementWithAddOnsSpecifier>();
+            baseEntitlementWithAddOnsSpecifierList.add(baseEntitlementWithAddOnsSpecifier);
+
+            final EntitlementContext pluginContext = new DefaultEntitlementContext(OperationType.CHANGE_PLAN,
+                                                                                   entitlement.getAccountId(),
+                                                                                   null,
+                                                                                   baseEntitlementWithAddOnsSpecifierList,
+                                                                                   billingPolicy,
+                                                                                   properties,
+                                                                                   callContext);
+            pluginContexts.add(pluginContext);
+
+            final WithEntitlementPlugin<Entitlement> changePlanWithPlugin = new WithPolicyEntitlementPlanChanger((DefaultEntitlement) entitlement,
+                                                                                                                specifiers.get(entitlementId),
+                                                                                                                billingPolicy,
+                                                                                                                blockingStates,
+                                                                                                                notificationEvents,
+                                                                                                                callContext,
+                                                                                                                internalCallContext);
+            callbacks.add(changePlanWithPlugin);
+        }
+
+        final Callable<Void> preCallbacksCallback = new Callable<Void>() {
+            @Override
+            public Void call() {
+                return null;
+            }
+        };
+        pluginExecution.executeWithPlugin(preCallbacksCallback, callbacks, pluginContexts);
+
+        recordBlockingStatesAndNotifications(blockingStates.build(), notificationEvents, internalCallContext);
+    }
+
+    private void recordBlockingStatesAndNotifications(final Map<BlockingState, Optional<UUID>> blockingStates,
+                                                      final Map<DateTime, Collection<NotificationEvent>> notificationEvents,
+                                                      final InternalCallContext internalCallContext) {
         // Record the new states first, then insert the notifications to avoid race conditions
-        blockingStateDao.setBlockingStatesAndPostBlockingTransitionEvent(blockingStates.build(), internalCallContext);
+        blockingStateDao.setBlockingStatesAndPostBlockingTransitionEvent(blockingStates, internalCallContext);
         for (final DateTime effectiveDateForNotification : notificationEvents.keySet()) {
             for (final NotificationEvent notificationEvent : notificationEvents.get(effectiveDateForNotification)) {
                 recordFutureNotification(effectiveDateForNotification, notificationEvent, internalCallContext);
@@ -157,6 +274,127 @@ public class DefaultEntitlementInternalApi extends DefaultEntitlementApiBase imp
         }
     }
 
+    @Override
+    public void pause(final Iterable<UUID> bundleIds, @Nullable final LocalDate localEffectiveDate, final Iterable<PluginProperty> properties, final InternalCallContext internalCallContext) throws EntitlementApiException {
+        blockUnblockBundles(bundleIds, OperationType.PAUSE_BUNDLE, DefaultEntitlementApi.ENT_STATE_BLOCKED, localEffectiveDate, true, properties, internalCallContext);
+    }
+
+    @Override
+    public void resume(final Iterable<UUID> bundleIds, @Nullable final LocalDate localEffectiveDate, final Iterable<PluginProperty> properties, final InternalCallContext internalCallContext) throws EntitlementApiException {
+        blockUnblockBundles(bundleIds, OperationType.RESUME_BUNDLE, DefaultEntitlementApi.ENT_STATE_CLEAR, localEffectiveDate, false, properties, internalCallContext);
+    }
+
+    // Similar to DefaultEntitlementApiBase#pause and DefaultEntitlementApiBase#resume, except that the plugins are invoked once and
+    // the blocking states are recorded (and the bus events posted) in a single transaction for all bundles
+    private void blockUnblockBundles(final Iterable<UUID> bundleIds,
+                                     final OperationType operationType,
+                                     final String stateName,
+                                     @Nullable final LocalDate localEffectiveDate,
+                                     final boolean block,
+                                     final Iterable<PluginProperty> properties,
+                                     final InternalCallContext internalCallContext) throws EntitlementApiException {
+        if (!bundleIds.iterator().hasNext()) {
+            return;
+        }
+
+        final GlobalLock lock = lockAccount(internalCallContext);
+        try {
+            doBlockUnblockBundles(bundleIds, operationType, stateName, localEffectiveDate, block, properties, internalCallContext);
+        } finally {
+            lock.release();
+        }
+    }
+
+    private void doBlockUnblockBundles(final Iterable<UUID> bundleIds,
+                                       final OperationType operationType,
+                                       final String stateName,
+                                       @Nullable final LocalDate localEffectiveDate,
+                                       final boolean block,
+                                       final Iterable<PluginProperty> properties,
+                                       final InternalCallContext internalCallContext) throws EntitlementApiException {
+        final UUID accountId = getAccountId(internalCallContext);
+        final CallContext callContext = internalCallContextFactory.createCallContext(internalCallContext);
+        final DateTime effectiveDate = dateHelper.fromLocalDateAndReferenceTime(localEffectiveDate, internalCallContext.getCreatedDate(), internalCallContext);
+
+        final Map<BlockingState, UUID> blockingStates = new LinkedHashMap<BlockingState, UUID>();
+        final Collection<EntitlementContext> pluginContexts = new LinkedList<EntitlementContext>();
+        final List<WithEntitlementPlugin> callbacks = new LinkedList<WithEntitlementPlugin>();
+        for (final UUID bundleId : bundleIds) {
+            // Same validation as the single bundle calls (the bundle needs a base subscription), and the bundle must belong to the account
+            final SubscriptionBaseBundle bundle;
+            try {
+                subscriptionInternalApi.getBaseSubscription(bundleId, internalCallContext);
+                bundle = subscriptionInternalApi.getBundleFromId(bundleId, internalCallContext);
+            } catch (final SubscriptionBaseApiException e) {
+                throw new EntitlementApiException(e);
+            }
+            if (!accountId.equals(bundle.getAccountId())) {
+                throw new EntitlementApiException(ErrorCode.SUB_GET_INVALID_BUNDLE_ID, bundleId);
+            }
+
+            // Same plugin contexts as the single bundle calls: the specifiers are only passed when resuming
+            final List<BaseEntitlementWithAddOnsSpecifier> baseEntitlementWithAddOnsSpecifierList;
+            if (block) {
+                baseEntitlementWithAddOnsSpecifierList = null;
+            } else {
+                baseEntitlementWithAddOnsSpecifierList = new ArrayList<BaseEntitlementWithAddOnsSpecifier>();
+                baseEntitlementWithAddOnsSpecifierList.add(new DefaultBaseEntitlementWithAddOnsSpecifier(bundleId,
+                                                                                                         null,
+                                                                                                         null,
+                                                                                                         localEffectiveDate,
+                                                                                                         localEffectiveDate,
+                                                                                                         false));
+            }
+
+            final EntitlementContext pluginContext = new DefaultEntitlementContext(operationType,
+                                                                                   null,
+                                                                                   null,
+                                                                                   baseEntitlementWithAddOnsSpecifierList,
+                                                                                   null,
+                                                                                   properties,
+                                                                                   callContext);
+            pluginContexts.add(pluginContext);
+
+            final WithEntitlementPlugin<Void> blockUnblockBundleWithPlugin = new WithEntitlementPlugin<Void>() {
+                @Override
+                public Void doCall(final EntitlementApi entitlementApi, final EntitlementContext updatedPluginContext) throws EntitlementApiException {
+                    final BlockingState state = new DefaultBlockingState(bundleId, BlockingStateType.SUBSCRIPTION_BUNDLE, stateName, KILLBILL_SERVICES.ENTITLEMENT_SERVICE.getServiceName(), block, block, block, effectiveDate);
+                    blockingStates.put(state, bundleId);
+                    return null;
+                }
+            };
+            callbacks.add(blockUnblockBundleWithPlugin);
+        }
+
+        final Callable<Void> preCallbacksCallback = new Callable<Void>() {
+            @Override
+            public Void call() {
+                return null;
+            }
+        };
+        pluginExecution.executeWithPlugin(preCallbacksCallback, callbacks, pluginContexts);
+
+        entitlementUtils.setBlockingStateAndPostBlockingTransitionEvent(blockingStates, internalCallContext);
+    }
+
+    private UUID getAccountId(final InternalTenantContext internalTenantContext) throws EntitlementApiException {
+        try {
+            return accountApi.getByRecordId(internalTenantContext.getAccountRecordId(), internalTenantContext);
+        } catch (final AccountApiException e) {
+            throw new EntitlementApiException(e);
+        }
+    }
+
+    // Same lock as the invoice and payment modules, taken once for the whole bulk operation
+    private GlobalLock lockAccount(final InternalCallContext internalCallContext) throws EntitlementApiException {
+        final UUID accountId = getAccountId(internalCallContext);
+        try {
+            return locker.lockWithNumberOfTries(LockerType.ACCNT_INV_PAY.toString(), accountId.toString(), entitlementConfig.getMaxGlobalLockRetries());
+        } catch (final LockFailedException e) {
+            throw new EntitlementApiException(e, ErrorCode.UNEXPECTED_ERROR, String.format("Failed to grab the lock for accountId='%s'", accountId));
+        }
+    }
+
     private void recordFutureNotification(final DateTime effectiveDate,
                                           final NotificationEvent notificationEvent,
                                           final InternalCallContext context) {
@@ -256,4 +494,72 @@ public class DefaultEntitlementInternalApi extends DefaultEntitlementApiBase imp
             return null;
         }
     }
+
+    // Note that the implementation is similar to DefaultEntitlement#changePlanOverrideBillingPolicy but the add-on states aren't persisted on disk
+    private class WithPolicyEntitlementPlanChanger implements WithEntitlementPlugin<Entitlement> {
+
+        private final DefaultEntitlement entitlement;
+        private final EntitlementSpecifier spec;
+        private final BillingActionPolicy billingPolicy;
+        private final ImmutableMap.Builder<BlockingState, Optional<UUID>> blockingStates;
+        private final Map<DateTime, Collection<NotificationEvent>> notificationEventsWithEffectiveDate;
+        private final CallContext callContext;
+        private final InternalCallContext internalCallContext;
+
+        public WithPolicyEntitlementPlanChanger(final DefaultEntitlement entitlement,
+                                                final EntitlementSpecifier spec,
+                                                final BillingActionPolicy billingPolicy,
+                                                final ImmutableMap.Builder<BlockingState, Optional<UUID>> blockingStates,
+                                                final Map<DateTime, Collection<NotificationEvent>> notificationEventsWithEffectiveDate,
+                                                final CallContext callContext,
+                                                final InternalCallContext internalCallContext) {
+            this.entitlement = entitlement;
+            this.spec = spec;
+            this.billingPolicy = billingPolicy;
+            this.blockingStates = blockingStates;
+            this.notificationEventsWithEffectiveDate = notificationEventsWithEffectiveDate;
+            this.callContext = callContext;
+            this.internalCallContext = internalCallContext;
+        }
+
+        @Override
+        public Entitlement doCall(final EntitlementApi entitlementApi, final EntitlementContext updatedPluginContext) throws EntitlementApiException {
+            final DateTime resultingEffectiveDate;
+            try {
+                resultingEffectiveDate = subscriptionInternalApi.getDryRunChangePlanEffectiveDate(entitlement.getSubscriptionBase(), spec, null, billingPolicy, internalCallContext);
+            } catch (final SubscriptionBaseApiException e) {
+                throw new EntitlementApiException(e, e.getCode(), e.getMessage());
+            } catch (final CatalogApiException e) {
+                throw new EntitlementApiException(e, e.getCode(), e.getMessage());
+            }
+            try {
+                checker.checkBlockedChange(entitlement.getSubscriptionBase(), resultingEffectiveDate, internalCallContext);
+            } catch (final BlockingApiException e) {
+                throw new EntitlementApiException(e, e.getCode(), e.getMessage());
+            }
+
+            try {
+                entitlement.getSubscriptionBase().changePlanWithPolicy(spec, billingPolicy, callContext);
+            } catch (final SubscriptionBaseApiException e) {
+                throw new EntitlementApiException(e);
+            }
+
+            final Collection<NotificationEvent> notificationEvents = new ArrayList<NotificationEvent>();
+            final Collection<BlockingState> addOnsBlockingStates = entitlement.computeAddOnBlockingStates(resultingEffectiveDate, notificationEvents, callContext, internalCallContext);
+
+            final Optional<UUID> bundleIdOptional = Optional.<UUID>fromNullable(entitlement.getBundleId());
+            for (final BlockingState blockingState : addOnsBlockingStates) {
+                blockingStates.put(blockingState, bundleIdOptional);
+            }
+
+            if (notificationEventsWithEffectiveDate.get(resultingEffectiveDate) == null) {
+                notificationEventsWithEffectiveDate.put(resultingEffectiveDate, notificationEvents);
+            } else {
+                notificationEventsWithEffectiveDate.get(resultingEffectiveDate).addAll(notificationEvents);
+            }
+
+            // Unable to return the new state (not on disk yet)
+            return null;
+        }
+    }
 }
@@ -29,6 +29,7 @@ import org.killbill.billing.entitlement.api.BlockingStateType;
 import org.killbill.billing.util.audit.ChangeType;
 import org.killbill.billing.util.entity.dao.Audited;
 import org.killbill.billing.util.entity.dao.EntitySqlDao;
+import org.killbill.billing.util.entity.dao.RequestCachable;
 import org.killbill.commons.jdbi.binder.SmartBindBean;
 import org.killbill.commons.jdbi.template.KillBillSqlDaoStringTemplate;
 import org.skife.jdbi.v2.sqlobject.Bind;
@@ -38,6 +39,12 @@ import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 @KillBillSqlDaoStringTemplate
 public interface BlockingStateSqlDao extends EntitySqlDao<BlockingStateModelDao, BlockingState> {
 
+    // Read several times per invoice run (billing events and entitlement events streams)
+    @Override
+    @SqlQuery
+    @RequestCachable
+    public List<BlockingStateModelDao> getByAccountRecordId(@SmartBindBean final InternalTenantContext context);
+
     @SqlQuery
     public abstract BlockingStateModelDao getBlockingStateForService(@Bind("blockableId") UUID blockableId,
                                                                      @Bind("service") String serviceName,
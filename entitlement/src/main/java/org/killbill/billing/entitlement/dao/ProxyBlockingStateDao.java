@@ -214,6 +214,11 @@ public class ProxyBlockingStateDao implements BlockingStateDao {
         return delegate.get(offset, limit, context);
     }
 
+    @Override
+    public Pagination<BlockingStateModelDao> get(final Long offset, final Long lastRecordId, final Long limit, final InternalTenantContext context) {
+        return delegate.get(offset, lastRecordId, limit, context);
+    }
+
     @Override
     public Long getCount(final InternalTenantContext context) {
         return delegate.getCount(context);
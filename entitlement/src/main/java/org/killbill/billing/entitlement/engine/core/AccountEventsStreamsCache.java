@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.entitlement.engine.core;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.catalog.api.Catalog;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Local cache of the AccountEventsStreamsSnapshot objects, keyed by account record id.
+ * <p/>
+ * A snapshot is only served if:
+ * <ul>
+ * <li>the account version (see EntityWriteVersions) didn't change, i.e. nothing was written for that account on this
+ * node since the snapshot was built. Because writes made by other nodes aren't seen, snapshots aren't served while
+ * more than one node is registered (see EventsStreamBuilder)</li>
+ * <li>the catalog is the same (a new catalog version invalidates the cached catalog)</li>
+ * <li>no subscription event or blocking state became effective since the snapshot was built (the blocking states
+ * of the add-ons are computed against the time at which it was built)</li>
+ * </ul>
+ */
+public class AccountEventsStreamsCache {
+
+    private final Cache<Long, Snapshot> snapshots;
+
+    public AccountEventsStreamsCache(final long maxEntries) {
+        this.snapshots = CacheBuilder.newBuilder()
+                                     .maximumSize(maxEntries)
+                                     .build();
+    }
+
+    public boolean hasSnapshot(final Long accountRecordId) {
+        return snapshots.getIfPresent(accountRecordId) != null;
+    }
+
+    @Nullable
+    public AccountEventsStreamsSnapshot get(final Long accountRecordId, final Long version, final Catalog catalog, final DateTime utcNow) {
+        final Snapshot snapshot = snapshots.getIfPresent(accountRecordId);
+        if (snapshot == null) {
+            return null;
+        }
+
+        if (snapshot.getVersion().equals(version) && snapshot.getCatalog() == catalog && utcNow.isBefore(snapshot.getExpirationDate())) {
+            return snapshot.getAccountEventsStreamsSnapshot();
+        } else {
+            // Drop it right away, to free up the memory
+            invalidate(accountRecordId, snapshot);
+            return null;
+        }
+    }
+
+    public void put(final Long accountRecordId, final Long version, final Catalog catalog, final DateTime expirationDate, final AccountEventsStreamsSnapshot accountEventsStreamsSnapshot) {
+        final Snapshot newSnapshot = new Snapshot(version, catalog, expirationDate, accountEventsStreamsSnapshot);
+        final Snapshot existingSnapshot = snapshots.asMap().putIfAbsent(accountRecordId, newSnapshot);
+        // Never replace a snapshot with an older one (builds can race)
+        if (existingSnapshot != null && existingSnapshot.getVersion() <= version) {
+            snapshots.asMap().replace(accountRecordId, existingSnapshot, newSnapshot);
+        }
+    }
+
+    public void invalidate(final Long accountRecordId) {
+        snapshots.invalidate(accountRecordId);
+    }
+
+    public long size() {
+        return snapshots.size();
+    }
+
+    private void invalidate(final Long accountRecordId, final Snapshot snapshot) {
+        snapshots.asMap().remove(accountRecordId, snapshot);
+    }
+
+    private static final class Snapshot {
+
+        private final Long version;
+        private final Catalog catalog;
+        private final DateTime expirationDate;
+        private final AccountEventsStreamsSnapshot accountEventsStreamsSnapshot;
+
+        private Snapshot(final Long version, final Catalog catalog, final DateTime expirationDate, final AccountEventsStreamsSnapshot accountEventsStreamsSnapshot) {
+            this.version = version;
+            this.catalog = catalog;
+            this.expirationDate = expirationDate;
+            this.accountEventsStreamsSnapshot = accountEventsStreamsSnapshot;
+        }
+
+        public Long getVersion() {
+            return version;
+        }
+
+        public Catalog getCatalog() {
+            return catalog;
+        }
+
+        public DateTime getExpirationDate() {
+            return expirationDate;
+        }
+
+        public AccountEventsStreamsSnapshot getAccountEventsStreamsSnapshot() {
+            return accountEventsStreamsSnapshot;
+        }
+    }
+}
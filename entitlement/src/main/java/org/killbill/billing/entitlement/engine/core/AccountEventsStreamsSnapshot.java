@@ -0,0 +1,85 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.entitlement.engine.core;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.killbill.billing.account.api.ImmutableAccountData;
+import org.killbill.billing.entitlement.api.BlockingState;
+import org.killbill.billing.subscription.api.SubscriptionBase;
+import org.killbill.billing.subscription.api.user.SubscriptionBaseBundle;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Data needed to build the EventsStream objects of an account, as cached by AccountEventsStreamsCache.
+ * <p/>
+ * The subscriptions are never handed out (the user APIs update SubscriptionBase objects in place): each read builds
+ * its EventsStream objects from copies of them. The other objects are immutable.
+ */
+public class AccountEventsStreamsSnapshot {
+
+    private final ImmutableAccountData account;
+    private final int accountBCD;
+    private final Map<UUID, SubscriptionBaseBundle> bundles;
+    private final Map<UUID, List<SubscriptionBase>> subscriptionsPerBundle;
+    // Merged account, bundle and subscription blocking states (including the ones not on disk for add-ons), per subscription
+    private final Map<UUID, List<BlockingState>> blockingStatesPerSubscription;
+
+    public AccountEventsStreamsSnapshot(final ImmutableAccountData account,
+                                        final int accountBCD,
+                                        final Map<UUID, SubscriptionBaseBundle> bundles,
+                                        final Map<UUID, List<SubscriptionBase>> subscriptionsPerBundle,
+                                        final Map<UUID, List<BlockingState>> blockingStatesPerSubscription) {
+        this.account = account;
+        this.accountBCD = accountBCD;
+        this.bundles = ImmutableMap.<UUID, SubscriptionBaseBundle>copyOf(bundles);
+        this.subscriptionsPerBundle = ImmutableMap.<UUID, List<SubscriptionBase>>copyOf(subscriptionsPerBundle);
+        this.blockingStatesPerSubscription = ImmutableMap.<UUID, List<BlockingState>>copyOf(blockingStatesPerSubscription);
+    }
+
+    public ImmutableAccountData getAccount() {
+        return account;
+    }
+
+    public int getAccountBCD() {
+        return accountBCD;
+    }
+
+    public Map<UUID, SubscriptionBaseBundle> getBundles() {
+        return bundles;
+    }
+
+    // Not to be handed out, see above
+    public Map<UUID, List<SubscriptionBase>> getSubscriptionsPerBundle() {
+        return subscriptionsPerBundle;
+    }
+
+    public List<BlockingState> getBlockingStates(final UUID subscriptionId) {
+        final List<BlockingState> blockingStates = blockingStatesPerSubscription.get(subscriptionId);
+        return blockingStates == null ? ImmutableList.<BlockingState>of() : blockingStates;
+    }
+
+    public Collection<List<BlockingState>> getAllBlockingStates() {
+        return blockingStatesPerSubscription.values();
+    }
+}
@@ -20,17 +20,22 @@ package org.killbill.billing.entitlement.engine.core;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.joda.time.DateTime;
+import org.killbill.billing.ErrorCode;
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.account.api.AccountInternalApi;
@@ -63,14 +68,21 @@ import org.killbill.billing.util.bcd.BillCycleDayCalculator;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 import org.killbill.billing.util.callcontext.TenantContext;
+import org.killbill.billing.util.config.definition.EntitlementConfig;
 import org.killbill.billing.util.dao.NonEntityDao;
+import org.killbill.billing.util.entity.dao.EntityWriteVersions;
+import org.killbill.billing.util.nodes.dao.NodeInfoDao;
 import org.killbill.bus.api.PersistentBus;
 import org.killbill.clock.Clock;
 import org.killbill.notificationq.api.NotificationQueueService;
 import org.skife.jdbi.v2.IDBI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 
@@ -79,6 +91,8 @@ import static org.killbill.billing.util.glue.IDBISetup.MAIN_RO_IDBI_NAMED;
 @Singleton
 public class EventsStreamBuilder {
 
+    private static final Logger log = LoggerFactory.getLogger(EventsStreamBuilder.class);
+
     private final AccountInternalApi accountInternalApi;
     private final SubscriptionBaseInternalApi subscriptionInternalApi;
     private final CatalogInternalApi catalogInternalApi;
@@ -87,6 +101,11 @@ public class EventsStreamBuilder {
     private final DefaultBlockingStateDao defaultBlockingStateDao;
     private final Clock clock;
     private final InternalCallContextFactory internalCallContextFactory;
+    private final EntitlementConfig entitlementConfig;
+    // Null if disabled
+    private final AccountEventsStreamsCache accountEventsStreamsCache;
+    // Snapshots are only invalidated by the writes made on this node: they aren't served while other nodes are running
+    private final Supplier<Boolean> isSingleNode;
 
     @Inject
     public EventsStreamBuilder(final AccountInternalApi accountInternalApi,
@@ -100,13 +119,30 @@ public class EventsStreamBuilder {
                                final PersistentBus eventBus,
                                final CacheControllerDispatcher cacheControllerDispatcher,
                                final NonEntityDao nonEntityDao,
-                               final InternalCallContextFactory internalCallContextFactory) {
+                               final InternalCallContextFactory internalCallContextFactory,
+                               final NodeInfoDao nodeInfoDao,
+                               final EntitlementConfig entitlementConfig) {
         this.accountInternalApi = accountInternalApi;
         this.subscriptionInternalApi = subscriptionInternalApi;
         this.catalogInternalApi = catalogInternalApi;
         this.checker = checker;
         this.clock = clock;
         this.internalCallContextFactory = internalCallContextFactory;
+        this.entitlementConfig = entitlementConfig;
+        this.accountEventsStreamsCache = entitlementConfig.isAccountEventsStreamsCacheEnabled() ? new AccountEventsStreamsCache(entitlementConfig.getAccountEventsStreamsCacheMaxEntries()) : null;
+        // Nodes joining the cluster are noticed within the snapshot time to live
+        this.isSingleNode = Suppliers.memoizeWithExpiration(new Supplier<Boolean>() {
+                                                                @Override
+                                                                public Boolean get() {
+                                                                    final int nbNodes = nodeInfoDao.getAll().size();
+                                                                    if (nbNodes > 1 && accountEventsStreamsCache != null) {
+                                                                        log.warn("EventsStream snapshots cache disabled: {} nodes are running", nbNodes);
+                                                                    }
+                                                                    return nbNodes <= 1;
+                                                                }
+                                                            },
+                                                            entitlementConfig.getAccountEventsStreamsCacheTimeToLive().getMillis(),
+                                                            TimeUnit.MILLISECONDS);
         this.defaultBlockingStateDao = new DefaultBlockingStateDao(dbi, roDbi, clock, notificationQueueService, eventBus, cacheControllerDispatcher, nonEntityDao, internalCallContextFactory);
         this.blockingStateDao = new OptimizedProxyBlockingStateDao(this, subscriptionInternalApi, dbi, roDbi, clock, notificationQueueService, eventBus, cacheControllerDispatcher, nonEntityDao, internalCallContextFactory);
     }
@@ -133,10 +169,29 @@ public class EventsStreamBuilder {
     }
 
     public AccountEventsStreams buildForAccount(final InternalTenantContext internalTenantContext) throws EntitlementApiException {
+        final Catalog catalog = getCatalog(internalTenantContext);
+        if (!isAccountEventsStreamsCacheUsable()) {
+            return buildForAccount(catalog, internalTenantContext);
+        }
+
+        // Note: the version needs to be retrieved before building the snapshot, so that concurrent writes are detected on the next read
+        final Long version = EntityWriteVersions.getVersion(internalTenantContext);
+        final AccountEventsStreamsSnapshot cachedSnapshot = accountEventsStreamsCache.get(internalTenantContext.getAccountRecordId(), version, catalog, clock.getUTCNow());
+        if (cachedSnapshot != null) {
+            return buildForAccount(cachedSnapshot, catalog, internalTenantContext);
+        }
+
+        final DateTime utcNow = clock.getUTCNow();
+        final AccountEventsStreams accountEventsStreams = buildForAccount(catalog, internalTenantContext);
+        final AccountEventsStreamsSnapshot snapshot = createSnapshot(accountEventsStreams, internalTenantContext);
+        accountEventsStreamsCache.put(internalTenantContext.getAccountRecordId(), version, catalog, computeSnapshotExpirationDate(snapshot, utcNow, internalTenantContext), snapshot);
+        return accountEventsStreams;
+    }
+
+    private AccountEventsStreams buildForAccount(final Catalog catalog, final InternalTenantContext internalTenantContext) throws EntitlementApiException {
         // Retrieve the subscriptions (map bundle id -> subscriptions)
         final Map<UUID, List<SubscriptionBase>> subscriptions;
         try {
-            final Catalog catalog = getCatalog(internalTenantContext);
             subscriptions = subscriptionInternalApi.getSubscriptionsForAccount(catalog, internalTenantContext);
             return buildForAccount(subscriptions, catalog, internalTenantContext);
         } catch (final SubscriptionBaseApiException e) {
@@ -144,6 +199,106 @@ public class EventsStreamBuilder {
         }
     }
 
+    // Each read gets its own copies of the subscriptions, the EventsStream objects being built against the current time
+    private AccountEventsStreams buildForAccount(final AccountEventsStreamsSnapshot snapshot, final Catalog catalog, final InternalTenantContext internalTenantContext) throws EntitlementApiException {
+        final Map<UUID, Integer> bcdCache = new HashMap<UUID, Integer>();
+        final Map<UUID, Collection<EventsStream>> eventsStreamPerBundle = new HashMap<UUID, Collection<EventsStream>>();
+        final Map<UUID, Collection<SubscriptionBase>> subscriptionsPerBundle = new HashMap<UUID, Collection<SubscriptionBase>>();
+        for (final UUID bundleId : snapshot.getSubscriptionsPerBundle().keySet()) {
+            final List<SubscriptionBase> allSubscriptionsForBundle = copySubscriptions(snapshot.getSubscriptionsPerBundle().get(bundleId));
+            final Collection<EventsStream> eventsStreams = new LinkedList<EventsStream>();
+            for (final SubscriptionBase subscription : allSubscriptionsForBundle) {
+                eventsStreams.add(buildForEntitlement(snapshot, bundleId, subscription, allSubscriptionsForBundle, bcdCache, catalog, internalTenantContext));
+            }
+            subscriptionsPerBundle.put(bundleId, allSubscriptionsForBundle);
+            eventsStreamPerBundle.put(bundleId, eventsStreams);
+        }
+        return new DefaultAccountEventsStreams(snapshot.getAccount(), snapshot.getBundles().values(), subscriptionsPerBundle, eventsStreamPerBundle);
+    }
+
+    private EventsStream buildForEntitlement(final AccountEventsStreamsSnapshot snapshot,
+                                             final UUID bundleId,
+                                             final SubscriptionBase subscription,
+                                             final List<SubscriptionBase> allSubscriptionsForBundle,
+                                             final Map<UUID, Integer> bcdCache,
+                                             final Catalog catalog,
+                                             final InternalTenantContext internalTenantContext) throws EntitlementApiException {
+        return buildForEntitlement(snapshot.getAccount(),
+                                   snapshot.getBundles().get(bundleId),
+                                   findBaseSubscription(allSubscriptionsForBundle),
+                                   subscription,
+                                   allSubscriptionsForBundle,
+                                   snapshot.getBlockingStates(subscription.getId()),
+                                   snapshot.getAccountBCD(),
+                                   bcdCache,
+                                   catalog,
+                                   internalTenantContext);
+    }
+
+    // The snapshot keeps its own copies of the subscriptions, as the ones of accountEventsStreams are handed out
+    private AccountEventsStreamsSnapshot createSnapshot(final AccountEventsStreams accountEventsStreams, final InternalTenantContext internalTenantContext) throws EntitlementApiException {
+        final int accountBCD;
+        try {
+            accountBCD = accountInternalApi.getBCD(internalTenantContext);
+        } catch (final AccountApiException e) {
+            throw new EntitlementApiException(e);
+        }
+
+        final Map<UUID, List<SubscriptionBase>> subscriptionsPerBundle = new HashMap<UUID, List<SubscriptionBase>>();
+        for (final Entry<UUID, Collection<SubscriptionBase>> entry : accountEventsStreams.getSubscriptions().entrySet()) {
+            subscriptionsPerBundle.put(entry.getKey(), copySubscriptions(entry.getValue()));
+        }
+
+        final Map<UUID, List<BlockingState>> blockingStatesPerSubscription = new HashMap<UUID, List<BlockingState>>();
+        for (final Collection<EventsStream> eventsStreams : accountEventsStreams.getEventsStreams().values()) {
+            for (final EventsStream eventsStream : eventsStreams) {
+                blockingStatesPerSubscription.put(eventsStream.getEntitlementId(), ImmutableList.<BlockingState>copyOf(eventsStream.getBlockingStates()));
+            }
+        }
+
+        return new AccountEventsStreamsSnapshot(accountEventsStreams.getAccount(), accountBCD, accountEventsStreams.getBundles(), subscriptionsPerBundle, blockingStatesPerSubscription);
+    }
+
+    private List<SubscriptionBase> copySubscriptions(final Iterable<SubscriptionBase> subscriptions) {
+        final List<SubscriptionBase> result = new LinkedList<SubscriptionBase>();
+        for (final SubscriptionBase subscription : subscriptions) {
+            result.add(subscriptionInternalApi.copySubscription(subscription));
+        }
+        return result;
+    }
+
+    // The blocking histories of the add-ons are computed against utcNow: the snapshot is stale as soon as the next event becomes effective (or the day changes)
+    private DateTime computeSnapshotExpirationDate(final AccountEventsStreamsSnapshot snapshot, final DateTime utcNow, final InternalTenantContext internalTenantContext) {
+        DateTime expirationDate = utcNow.plus(entitlementConfig.getAccountEventsStreamsCacheTimeToLive().getMillis());
+
+        final DateTime nextDay = internalTenantContext.toLocalDate(utcNow).plusDays(1).toDateTimeAtStartOfDay(internalTenantContext.getFixedOffsetTimeZone());
+        if (nextDay.isBefore(expirationDate)) {
+            expirationDate = nextDay;
+        }
+
+        for (final List<SubscriptionBase> subscriptions : snapshot.getSubscriptionsPerBundle().values()) {
+            for (final SubscriptionBase subscription : subscriptions) {
+                for (final SubscriptionBaseTransition transition : subscription.getAllTransitions()) {
+                    expirationDate = earliestFutureDate(expirationDate, transition.getEffectiveTransitionTime(), utcNow);
+                }
+            }
+        }
+        for (final List<BlockingState> blockingStates : snapshot.getAllBlockingStates()) {
+            for (final BlockingState blockingState : blockingStates) {
+                expirationDate = earliestFutureDate(expirationDate, blockingState.getEffectiveDate(), utcNow);
+            }
+        }
+        return expirationDate;
+    }
+
+    private DateTime earliestFutureDate(final DateTime expirationDate, @Nullable final DateTime effectiveDate, final DateTime utcNow) {
+        if (effectiveDate != null && effectiveDate.isAfter(utcNow) && effectiveDate.isBefore(expirationDate)) {
+            return effectiveDate;
+        } else {
+            return expirationDate;
+        }
+    }
+
     // Special signature for ProxyBlockingStateDao to save a DAO call
     public AccountEventsStreams buildForAccount(final Map<UUID, List<SubscriptionBase>> subscriptions, final Catalog catalog, final InternalTenantContext internalTenantContext) throws EntitlementApiException {
         // Retrieve the account
@@ -258,6 +413,11 @@ public class EventsStreamBuilder {
     }
 
     public EventsStream buildForEntitlement(final UUID entitlementId, final InternalTenantContext internalTenantContext) throws EntitlementApiException {
+        final EventsStream cachedEventsStream = getFromAccountEventsStreamsSnapshot(entitlementId, internalTenantContext);
+        if (cachedEventsStream != null) {
+            return cachedEventsStream;
+        }
+
         final SubscriptionBaseBundle bundle;
         final SubscriptionBase subscription;
         final List<SubscriptionBase> subscriptionsForBundle;
@@ -272,6 +432,63 @@ public class EventsStreamBuilder {
         return buildForEntitlement(bundle, subscription, subscriptionsForBundle, internalTenantContext);
     }
 
+    // Only the requested entitlements are built (the account data, the catalog and the blocking states are loaded once): they must all belong to the account of the context
+    public Map<UUID, EventsStream> buildForEntitlements(final Iterable<UUID> entitlementIds, final InternalTenantContext internalTenantContext) throws EntitlementApiException {
+        final ImmutableAccountData account;
+        final int accountBCD;
+        try {
+            account = accountInternalApi.getImmutableAccountDataByRecordId(internalTenantContext.getAccountRecordId(), internalTenantContext);
+            accountBCD = accountInternalApi.getBCD(internalTenantContext);
+        } catch (final AccountApiException e) {
+            throw new EntitlementApiException(e);
+        }
+
+        final Catalog catalog = getCatalog(internalTenantContext);
+
+        // Retrieve the blocking states
+        final List<BlockingState> blockingStatesForAccount = defaultBlockingStateDao.getBlockingAllForAccountRecordId(catalog, internalTenantContext);
+
+        final Map<UUID, SubscriptionBaseBundle> bundlesPerId = new HashMap<UUID, SubscriptionBaseBundle>();
+        final Map<UUID, List<SubscriptionBase>> subscriptionsPerBundle = new HashMap<UUID, List<SubscriptionBase>>();
+        final Map<UUID, Integer> bcdCache = new HashMap<UUID, Integer>();
+        final Map<UUID, EventsStream> result = new LinkedHashMap<UUID, EventsStream>();
+        for (final UUID entitlementId : entitlementIds) {
+            if (result.containsKey(entitlementId)) {
+                continue;
+            }
+
+            final SubscriptionBase subscription;
+            try {
+                subscription = subscriptionInternalApi.getSubscriptionFromId(entitlementId, internalTenantContext);
+                if (bundlesPerId.get(subscription.getBundleId()) == null) {
+                    bundlesPerId.put(subscription.getBundleId(), subscriptionInternalApi.getBundleFromId(subscription.getBundleId(), internalTenantContext));
+                    subscriptionsPerBundle.put(subscription.getBundleId(), subscriptionInternalApi.getSubscriptionsForBundle(subscription.getBundleId(), null, internalTenantContext));
+                }
+            } catch (final SubscriptionBaseApiException e) {
+                throw new EntitlementApiException(e);
+            }
+
+            final SubscriptionBaseBundle bundle = bundlesPerId.get(subscription.getBundleId());
+            if (!account.getId().equals(bundle.getAccountId())) {
+                throw new EntitlementApiException(ErrorCode.SUB_INVALID_SUBSCRIPTION_ID, entitlementId);
+            }
+
+            final List<SubscriptionBase> allSubscriptionsForBundle = subscriptionsPerBundle.get(subscription.getBundleId());
+            final EventsStream eventsStream = buildForEntitlement(blockingStatesForAccount,
+                                                                  account,
+                                                                  bundle,
+                                                                  findBaseSubscription(allSubscriptionsForBundle),
+                                                                  subscription,
+                                                                  allSubscriptionsForBundle,
+                                                                  accountBCD,
+                                                                  bcdCache,
+                                                                  catalog,
+                                                                  internalTenantContext);
+            result.put(entitlementId, eventsStream);
+        }
+        return result;
+    }
+
     public EventsStream buildForEntitlement(final SubscriptionBaseBundle bundle,
                                             final SubscriptionBase subscription,
                                             final Collection<SubscriptionBase> allSubscriptionsForBundle,
@@ -423,6 +640,41 @@ public class EventsStreamBuilder {
         }
     }
 
+    private boolean isAccountEventsStreamsCacheUsable() {
+        return accountEventsStreamsCache != null && isSingleNode.get();
+    }
+
+    // Only looked up if the account snapshot was built already (i.e. by a previous buildForAccount call)
+    @Nullable
+    private EventsStream getFromAccountEventsStreamsSnapshot(final UUID entitlementId, final InternalTenantContext internalTenantContext) throws EntitlementApiException {
+        if (!isAccountEventsStreamsCacheUsable() ||
+            internalTenantContext.getAccountRecordId() == null ||
+            !accountEventsStreamsCache.hasSnapshot(internalTenantContext.getAccountRecordId())) {
+            return null;
+        }
+
+        final Catalog catalog = getCatalog(internalTenantContext);
+        final Long version = EntityWriteVersions.getVersion(internalTenantContext);
+        final AccountEventsStreamsSnapshot snapshot = accountEventsStreamsCache.get(internalTenantContext.getAccountRecordId(), version, catalog, clock.getUTCNow());
+        if (snapshot == null) {
+            return null;
+        }
+
+        for (final Entry<UUID, List<SubscriptionBase>> entry : snapshot.getSubscriptionsPerBundle().entrySet()) {
+            for (final SubscriptionBase subscription : entry.getValue()) {
+                if (entitlementId.equals(subscription.getId())) {
+                    final List<SubscriptionBase> allSubscriptionsForBundle = copySubscriptions(entry.getValue());
+                    for (final SubscriptionBase subscriptionCopy : allSubscriptionsForBundle) {
+                        if (entitlementId.equals(subscriptionCopy.getId())) {
+                            return buildForEntitlement(snapshot, entry.getKey(), subscriptionCopy, allSubscriptionsForBundle, new HashMap<UUID, Integer>(), catalog, internalTenantContext);
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
     private PlanPhaseSpecifier createPlanPhaseSpecifier(final SubscriptionBase subscription) {
         final String planName;
         final PhaseType phaseType;
@@ -39,8 +39,10 @@ import org.killbill.billing.glue.EntitlementModule;
 import org.killbill.billing.junction.BlockingInternalApi;
 import org.killbill.billing.osgi.api.OSGIServiceRegistration;
 import org.killbill.billing.platform.api.KillbillConfigSource;
+import org.killbill.billing.util.config.definition.EntitlementConfig;
 import org.killbill.billing.util.glue.KillBillModule;
 import org.killbill.billing.util.glue.SecurityModule;
+import org.skife.config.ConfigurationObjectFactory;
 
 import com.google.inject.TypeLiteral;
 
@@ -55,8 +57,14 @@ public class DefaultEntitlementModule extends KillBillModule implements Entitlem
         bind(EntitlementPluginExecution.class).asEagerSingleton();
     }
 
+    protected void installConfig() {
+        final EntitlementConfig config = new ConfigurationObjectFactory(skifeConfigSource).build(EntitlementConfig.class);
+        bind(EntitlementConfig.class).toInstance(config);
+    }
+
     @Override
     protected void configure() {
+        installConfig();
         installBlockingStateDao();
         installBlockingApi();
         installEntitlementApi();
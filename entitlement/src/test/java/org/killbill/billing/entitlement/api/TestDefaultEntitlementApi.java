@@ -28,6 +28,7 @@ import org.killbill.billing.ErrorCode;
 import org.killbill.billing.account.api.Account;
 import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.api.TestApiListener.NextEvent;
+import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.catalog.api.BillingActionPolicy;
 import org.killbill.billing.catalog.api.BillingPeriod;
 import org.killbill.billing.catalog.api.PlanPhasePriceOverride;
@@ -43,6 +44,7 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNull;
@@ -443,6 +445,81 @@ public class TestDefaultEntitlementApi extends EntitlementTestSuiteWithEmbeddedD
         }
     }
 
+    @Test(groups = "slow", description = "Test bulk pause / unpause")
+    public void testBulkPauseUnpause() throws AccountApiException, EntitlementApiException {
+        final LocalDate initialDate = new LocalDate(2013, 8, 7);
+        clock.setDay(initialDate);
+
+        final Account account = createAccount(getAccountData(7));
+        final PlanPhaseSpecifier spec = new PlanPhaseSpecifier("Shotgun", BillingPeriod.ANNUAL, PriceListSet.DEFAULT_PRICELIST_NAME, null);
+
+        testListener.pushExpectedEvents(NextEvent.CREATE, NextEvent.BLOCK);
+        final UUID firstEntitlementId = entitlementApi.createBaseEntitlement(account.getId(), new DefaultEntitlementSpecifier(spec), UUID.randomUUID().toString(), null, null, false, true, ImmutableList.<PluginProperty>of(), callContext);
+        assertListenerStatus();
+        testListener.pushExpectedEvents(NextEvent.CREATE, NextEvent.BLOCK);
+        final UUID secondEntitlementId = entitlementApi.createBaseEntitlement(account.getId(), new DefaultEntitlementSpecifier(spec), UUID.randomUUID().toString(), null, null, false, true, ImmutableList.<PluginProperty>of(), callContext);
+        assertListenerStatus();
+        final List<UUID> bundleIds = ImmutableList.<UUID>of(entitlementApi.getEntitlementForId(firstEntitlementId, callContext).getBundleId(),
+                                                            entitlementApi.getEntitlementForId(secondEntitlementId, callContext).getBundleId());
+
+        clock.addDays(5);
+        final InternalCallContext internalCallContextWithAccountRecordId = internalCallContextFactory.createInternalCallContext(account.getId(), callContext);
+
+        testListener.pushExpectedEvents(NextEvent.BLOCK, NextEvent.BLOCK);
+        entitlementInternalApi.pause(bundleIds, new LocalDate(clock.getUTCNow()), ImmutableList.<PluginProperty>of(), internalCallContextWithAccountRecordId);
+        assertListenerStatus();
+        assertEquals(entitlementApi.getEntitlementForId(firstEntitlementId, callContext).getState(), EntitlementState.BLOCKED);
+        assertEquals(entitlementApi.getEntitlementForId(secondEntitlementId, callContext).getState(), EntitlementState.BLOCKED);
+
+        clock.addDays(3);
+
+        testListener.pushExpectedEvents(NextEvent.BLOCK, NextEvent.BLOCK);
+        entitlementInternalApi.resume(bundleIds, new LocalDate(clock.getUTCNow()), ImmutableList.<PluginProperty>of(), internalCallContextWithAccountRecordId);
+        assertListenerStatus();
+        assertEquals(entitlementApi.getEntitlementForId(firstEntitlementId, callContext).getState(), EntitlementState.ACTIVE);
+        assertEquals(entitlementApi.getEntitlementForId(secondEntitlementId, callContext).getState(), EntitlementState.ACTIVE);
+
+        // Bundles of other accounts are rejected
+        final Account otherAccount = createAccount(getAccountData(7));
+        testListener.pushExpectedEvents(NextEvent.CREATE, NextEvent.BLOCK);
+        final UUID otherEntitlementId = entitlementApi.createBaseEntitlement(otherAccount.getId(), new DefaultEntitlementSpecifier(spec), UUID.randomUUID().toString(), null, null, false, true, ImmutableList.<PluginProperty>of(), callContext);
+        assertListenerStatus();
+        final UUID otherBundleId = entitlementApi.getEntitlementForId(otherEntitlementId, callContext).getBundleId();
+        try {
+            entitlementInternalApi.pause(ImmutableList.<UUID>of(bundleIds.get(0), otherBundleId), new LocalDate(clock.getUTCNow()), ImmutableList.<PluginProperty>of(), internalCallContextWithAccountRecordId);
+            fail("Bundle belongs to another account");
+        } catch (final EntitlementApiException e) {
+            assertEquals(e.getCode(), ErrorCode.SUB_GET_INVALID_BUNDLE_ID.getCode());
+        }
+        assertEquals(entitlementApi.getEntitlementForId(firstEntitlementId, callContext).getState(), EntitlementState.ACTIVE);
+    }
+
+    @Test(groups = "slow", description = "Test bulk change plan")
+    public void testBulkChangePlan() throws AccountApiException, EntitlementApiException {
+        final LocalDate initialDate = new LocalDate(2013, 8, 7);
+        clock.setDay(initialDate);
+
+        final Account account = createAccount(getAccountData(7));
+        final PlanPhaseSpecifier spec = new PlanPhaseSpecifier("Shotgun", BillingPeriod.MONTHLY, PriceListSet.DEFAULT_PRICELIST_NAME, null);
+
+        testListener.pushExpectedEvents(NextEvent.CREATE, NextEvent.BLOCK);
+        final UUID firstEntitlementId = entitlementApi.createBaseEntitlement(account.getId(), new DefaultEntitlementSpecifier(spec), UUID.randomUUID().toString(), null, null, false, true, ImmutableList.<PluginProperty>of(), callContext);
+        assertListenerStatus();
+        testListener.pushExpectedEvents(NextEvent.CREATE, NextEvent.BLOCK);
+        final UUID secondEntitlementId = entitlementApi.createBaseEntitlement(account.getId(), new DefaultEntitlementSpecifier(spec), UUID.randomUUID().toString(), null, null, false, true, ImmutableList.<PluginProperty>of(), callContext);
+        assertListenerStatus();
+
+        clock.addDays(5);
+        final InternalCallContext internalCallContextWithAccountRecordId = internalCallContextFactory.createInternalCallContext(account.getId(), callContext);
+
+        final EntitlementSpecifier newSpec = new DefaultEntitlementSpecifier(new PlanPhaseSpecifier("Pistol", BillingPeriod.MONTHLY, PriceListSet.DEFAULT_PRICELIST_NAME, null));
+        testListener.pushExpectedEvents(NextEvent.CHANGE, NextEvent.CHANGE);
+        entitlementInternalApi.changePlan(ImmutableMap.<UUID, EntitlementSpecifier>of(firstEntitlementId, newSpec, secondEntitlementId, newSpec), BillingActionPolicy.IMMEDIATE, ImmutableList.<PluginProperty>of(), internalCallContextWithAccountRecordId);
+        assertListenerStatus();
+        assertEquals(entitlementApi.getEntitlementForId(firstEntitlementId, callContext).getLastActiveProduct().getName(), "Pistol");
+        assertEquals(entitlementApi.getEntitlementForId(secondEntitlementId, callContext).getLastActiveProduct().getName(), "Pistol");
+    }
+
     @Test(groups = "slow", description = "Test pause / unpause in the future")
     public void testPauseUnpauseInTheFuture() throws AccountApiException, EntitlementApiException, SubscriptionApiException {
         final LocalDate initialDate = new LocalDate(2013, 8, 7);
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.entitlement.engine.core;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.account.api.ImmutableAccountData;
+import org.killbill.billing.catalog.api.Catalog;
+import org.killbill.billing.entitlement.EntitlementTestSuiteNoDB;
+import org.killbill.billing.entitlement.api.BlockingState;
+import org.killbill.billing.subscription.api.SubscriptionBase;
+import org.killbill.billing.subscription.api.user.SubscriptionBaseBundle;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+public class TestAccountEventsStreamsCache extends EntitlementTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testSnapshotValidity() throws Exception {
+        final AccountEventsStreamsCache cache = new AccountEventsStreamsCache(10);
+        final Catalog catalog = Mockito.mock(Catalog.class);
+        final AccountEventsStreamsSnapshot snapshot = createSnapshot();
+        final DateTime utcNow = clock.getUTCNow();
+        final DateTime expirationDate = utcNow.plusDays(1);
+
+        Assert.assertFalse(cache.hasSnapshot(1L));
+        Assert.assertNull(cache.get(1L, 10L, catalog, utcNow));
+
+        cache.put(1L, 10L, catalog, expirationDate, snapshot);
+        Assert.assertTrue(cache.hasSnapshot(1L));
+        Assert.assertSame(cache.get(1L, 10L, catalog, utcNow), snapshot);
+        Assert.assertSame(cache.get(1L, 10L, catalog, expirationDate.minusMillis(1)), snapshot);
+        Assert.assertNull(cache.get(2L, 10L, catalog, utcNow));
+
+        // Next event effective
+        Assert.assertNull(cache.get(1L, 10L, catalog, expirationDate));
+        Assert.assertFalse(cache.hasSnapshot(1L));
+
+        // Write for that account
+        cache.put(1L, 10L, catalog, expirationDate, snapshot);
+        Assert.assertNull(cache.get(1L, 11L, catalog, utcNow));
+        Assert.assertFalse(cache.hasSnapshot(1L));
+
+        // New catalog
+        cache.put(1L, 10L, catalog, expirationDate, snapshot);
+        Assert.assertNull(cache.get(1L, 10L, Mockito.mock(Catalog.class), utcNow));
+        Assert.assertFalse(cache.hasSnapshot(1L));
+    }
+
+    @Test(groups = "fast")
+    public void testRacingBuilds() throws Exception {
+        final AccountEventsStreamsCache cache = new AccountEventsStreamsCache(10);
+        final Catalog catalog = Mockito.mock(Catalog.class);
+        final AccountEventsStreamsSnapshot olderSnapshot = createSnapshot();
+        final AccountEventsStreamsSnapshot newerSnapshot = createSnapshot();
+        final DateTime utcNow = clock.getUTCNow();
+
+        cache.put(1L, 11L, catalog, utcNow.plusDays(1), newerSnapshot);
+        // A build which started before the last write finishes last
+        cache.put(1L, 10L, catalog, utcNow.plusDays(1), olderSnapshot);
+        Assert.assertSame(cache.get(1L, 11L, catalog, utcNow), newerSnapshot);
+
+        cache.invalidate(1L);
+        Assert.assertEquals(cache.size(), 0);
+    }
+
+    private AccountEventsStreamsSnapshot createSnapshot() {
+        return new AccountEventsStreamsSnapshot(Mockito.mock(ImmutableAccountData.class),
+                                                1,
+                                                ImmutableMap.<UUID, SubscriptionBaseBundle>of(),
+                                                ImmutableMap.<UUID, List<SubscriptionBase>>of(),
+                                                ImmutableMap.<UUID, List<BlockingState>>of());
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.entitlement.engine.core;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.account.api.Account;
+import org.killbill.billing.api.TestApiListener.NextEvent;
+import org.killbill.billing.catalog.api.BillingActionPolicy;
+import org.killbill.billing.catalog.api.BillingPeriod;
+import org.killbill.billing.catalog.api.PlanPhaseSpecifier;
+import org.killbill.billing.catalog.api.PriceListSet;
+import org.killbill.billing.entitlement.EntitlementTestSuiteWithEmbeddedDB;
+import org.killbill.billing.entitlement.api.DefaultEntitlement;
+import org.killbill.billing.entitlement.api.DefaultEntitlementSpecifier;
+import org.killbill.billing.entitlement.api.Entitlement;
+import org.killbill.billing.entitlement.api.Entitlement.EntitlementState;
+import org.killbill.billing.payment.api.PluginProperty;
+import org.killbill.billing.platform.api.KillbillConfigSource;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestEventsStreamBuilderWithCache extends EntitlementTestSuiteWithEmbeddedDB {
+
+    @Override
+    protected KillbillConfigSource getConfigSource(final Map<String, String> extraProperties) {
+        final Map<String, String> allExtraProperties = new HashMap<String, String>(extraProperties);
+        allExtraProperties.put("org.killbill.entitlement.eventsStreams.cache.enabled", "true");
+        return getConfigSource("/entitlement.properties", allExtraProperties);
+    }
+
+    @Test(groups = "slow")
+    public void testReadsAfterWrites() throws Exception {
+        final LocalDate initialDate = new LocalDate(2013, 8, 7);
+        clock.setDay(initialDate);
+
+        final Account account = createAccount(getAccountData(7));
+
+        final PlanPhaseSpecifier spec = new PlanPhaseSpecifier("Shotgun", BillingPeriod.MONTHLY, PriceListSet.DEFAULT_PRICELIST_NAME, null);
+        testListener.pushExpectedEvents(NextEvent.CREATE, NextEvent.BLOCK);
+        final UUID entitlementId = entitlementApi.createBaseEntitlement(account.getId(), new DefaultEntitlementSpecifier(spec), account.getExternalKey(), null, null, false, true, ImmutableList.<PluginProperty>of(), callContext);
+        assertListenerStatus();
+
+        // Builds the snapshot
+        final List<Entitlement> firstRead = entitlementApi.getAllEntitlementsForAccountId(account.getId(), callContext);
+        Assert.assertEquals(firstRead.size(), 1);
+        Assert.assertEquals(firstRead.get(0).getState(), EntitlementState.ACTIVE);
+
+        // Served from the snapshot, but each read gets its own subscription objects
+        final List<Entitlement> secondRead = entitlementApi.getAllEntitlementsForAccountId(account.getId(), callContext);
+        Assert.assertEquals(secondRead.size(), 1);
+        Assert.assertEquals(secondRead.get(0).getState(), EntitlementState.ACTIVE);
+        Assert.assertNotSame(((DefaultEntitlement) secondRead.get(0)).getSubscriptionBase(), ((DefaultEntitlement) firstRead.get(0)).getSubscriptionBase());
+        final Entitlement entitlement = entitlementApi.getEntitlementForId(entitlementId, callContext);
+        Assert.assertNotSame(((DefaultEntitlement) entitlement).getSubscriptionBase(), ((DefaultEntitlement) secondRead.get(0)).getSubscriptionBase());
+
+        clock.addDays(3);
+
+        testListener.pushExpectedEvents(NextEvent.CANCEL, NextEvent.BLOCK);
+        entitlement.cancelEntitlementWithDateOverrideBillingPolicy(clock.getUTCToday(), BillingActionPolicy.IMMEDIATE, ImmutableList.<PluginProperty>of(), callContext);
+        assertListenerStatus();
+
+        // The objects handed out before the write aren't updated
+        Assert.assertEquals(firstRead.get(0).getState(), EntitlementState.ACTIVE);
+
+        // The write invalidated the snapshot
+        Assert.assertEquals(entitlementApi.getEntitlementForId(entitlementId, callContext).getState(), EntitlementState.CANCELLED);
+        final List<Entitlement> readAfterWrite = entitlementApi.getAllEntitlementsForAccountId(account.getId(), callContext);
+        Assert.assertEquals(readAfterWrite.size(), 1);
+        Assert.assertEquals(readAfterWrite.get(0).getState(), EntitlementState.CANCELLED);
+        Assert.assertEquals(entitlementApi.getEntitlementForId(entitlementId, callContext).getState(), EntitlementState.CANCELLED);
+    }
+}
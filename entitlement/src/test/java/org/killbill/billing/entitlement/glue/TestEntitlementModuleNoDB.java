@@ -27,7 +27,9 @@ import org.killbill.billing.mock.glue.MockNonEntityDaoModule;
 import org.killbill.billing.mock.glue.MockSubscriptionModule;
 import org.killbill.billing.mock.glue.MockTagModule;
 import org.killbill.billing.platform.api.KillbillConfigSource;
+import org.killbill.billing.util.nodes.dao.NodeInfoDao;
 import org.killbill.clock.ClockMock;
+import org.mockito.Mockito;
 
 public class TestEntitlementModuleNoDB extends TestEntitlementModule {
 
@@ -47,6 +49,7 @@ public class TestEntitlementModuleNoDB extends TestEntitlementModule {
         install(new MockSubscriptionModule(configSource));
         install(new MockCatalogModule(configSource));
         install(new MockAccountModule(configSource));
+        bind(NodeInfoDao.class).toInstance(Mockito.mock(NodeInfoDao.class));
     }
 
     @Override
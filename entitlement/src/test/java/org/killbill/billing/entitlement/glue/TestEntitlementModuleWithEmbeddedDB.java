@@ -27,6 +27,8 @@ import org.killbill.billing.subscription.glue.DefaultSubscriptionModule;
 import org.killbill.billing.util.glue.AuditModule;
 import org.killbill.billing.util.glue.NonEntityDaoModule;
 import org.killbill.billing.util.glue.TagStoreModule;
+import org.killbill.billing.util.nodes.dao.DefaultNodeInfoDao;
+import org.killbill.billing.util.nodes.dao.NodeInfoDao;
 import org.killbill.clock.ClockMock;
 
 public class TestEntitlementModuleWithEmbeddedDB extends TestEntitlementModule {
@@ -48,6 +50,7 @@ public class TestEntitlementModuleWithEmbeddedDB extends TestEntitlementModule {
         install(new CatalogModule(configSource));
         install(new DefaultSubscriptionModule(configSource));
         install(new AuditModule(configSource));
+        bind(NodeInfoDao.class).to(DefaultNodeInfoDao.class).asEagerSingleton();
 
         bind(TestApiListener.class).asEagerSingleton();
     }
@@ -75,6 +75,7 @@ import org.killbill.billing.invoice.generator.InvoiceWithMetadata;
 import org.killbill.billing.invoice.generator.InvoiceWithMetadata.SubscriptionFutureNotificationDates;
 import org.killbill.billing.invoice.generator.InvoiceWithMetadata.SubscriptionFutureNotificationDates.UsageDef;
 import org.killbill.billing.invoice.generator.InvoiceWithMetadata.TrackingRecordId;
+import org.killbill.billing.invoice.generator.PartialInvoiceHistory;
 import org.killbill.billing.invoice.model.DefaultInvoice;
 import org.killbill.billing.invoice.model.InvoiceItemFactory;
 import org.killbill.billing.invoice.model.ItemAdjInvoiceItem;
@@ -113,6 +114,7 @@ import com.google.common.base.Joiner;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -337,20 +339,27 @@ public class InvoiceDispatcher {
                 return null;
             }
 
+            // Only pull the recent invoice history if configured so (the full history is loaded, once, when required)
+            final PartialInvoiceHistory candidatePartialInvoiceHistory = billingEvents.isAccountAutoInvoiceOff() ? null : createPartialInvoiceHistory(inputTargetDate, context);
+
             // Avoid pulling all invoices when AUTO_INVOICING_OFF is set since we will disable invoicing later
             // (Note that we can't return right away as we send a NullInvoice event)
-            final List<Invoice> existingInvoices = billingEvents.isAccountAutoInvoiceOff() ?
-                                                   ImmutableList.<Invoice>of() :
-                                                   ImmutableList.<Invoice>copyOf(Collections2.transform(invoiceDao.getInvoicesByAccount(false, context),
-                                                                                                        new Function<InvoiceModelDao, Invoice>() {
-                                                                                                            @Override
-                                                                                                            public Invoice apply(final InvoiceModelDao input) {
-                                                                                                                return new DefaultInvoice(input);
-                                                                                                            }
-                                                                                                        }));
+            final List<Invoice> loadedInvoices = billingEvents.isAccountAutoInvoiceOff() ?
+                                                 ImmutableList.<Invoice>of() :
+                                                 toInvoices(candidatePartialInvoiceHistory != null ?
+                                                            invoiceDao.getInvoicesByAccountWithServicePeriodAfter(candidatePartialInvoiceHistory.getCutoffDate(), context) :
+                                                            invoiceDao.getInvoicesByAccount(false, context));
+
+            // Billing changes effective before the cutoff date need the full history to be repaired or invoiced again
+            final boolean isFullHistoryRequired = candidatePartialInvoiceHistory != null && candidatePartialInvoiceHistory.hasChangesPriorToCutoffDate(billingEvents, loadedInvoices, context);
+            if (isFullHistoryRequired) {
+                log.info("Billing changes prior to cutoffDate='{}' for accountId='{}', using the full invoice history", candidatePartialInvoiceHistory.getCutoffDate(), accountId);
+            }
+            final PartialInvoiceHistory partialInvoiceHistory = isFullHistoryRequired ? null : candidatePartialInvoiceHistory;
+            final List<Invoice> existingInvoices = isFullHistoryRequired ? candidatePartialInvoiceHistory.getFullInvoiceHistory(null) : loadedInvoices;
             final Invoice invoice;
             if (!isDryRun) {
-                final InvoiceWithFutureNotifications invoiceWithFutureNotifications = processAccountWithLockAndInputTargetDate(accountId, inputTargetDate, billingEvents, existingInvoices, false, isRescheduled, context);
+                final InvoiceWithFutureNotifications invoiceWithFutureNotifications = processAccountWithLockAndInputTargetDate(accountId, inputTargetDate, billingEvents, existingInvoices, partialInvoiceHistory, false, isRescheduled, context);
                 invoice = invoiceWithFutureNotifications != null ? invoiceWithFutureNotifications.getInvoice() : null;
                 if (parkedAccount) {
                     try {
@@ -382,12 +391,12 @@ public class InvoiceDispatcher {
                                                                          getUpcomingInvoiceCandidateDates(futureNotifications, nextScheduledSubscriptionsEventMap, filteredSubscriptionIdsForDryRun, context);
 
                     if (Iterables.isEmpty(filteredSubscriptionIdsForDryRun)) {
-                        invoice = processDryRun_UPCOMING_INVOICE_Invoice(accountId, allCandidateTargetDates, billingEvents, existingInvoices, context);
+                        invoice = processDryRun_UPCOMING_INVOICE_Invoice(accountId, allCandidateTargetDates, billingEvents, existingInvoices, partialInvoiceHistory, context);
                     } else {
-                        invoice = processDryRun_UPCOMING_INVOICE_FILTERING_Invoice(accountId, filteredCandidateTargetDates, allCandidateTargetDates, billingEvents, existingInvoices, context);
+                        invoice = processDryRun_UPCOMING_INVOICE_FILTERING_Invoice(accountId, filteredCandidateTargetDates, allCandidateTargetDates, billingEvents, existingInvoices, partialInvoiceHistory, context);
                     }
                 } else /* DryRunType.TARGET_DATE, SUBSCRIPTION_ACTION */ {
-                    invoice = processDryRun_TARGET_DATE_Invoice(accountId, inputTargetDate, allCandidateTargetDates, billingEvents, existingInvoices, context);
+                    invoice = processDryRun_TARGET_DATE_Invoice(accountId, inputTargetDate, allCandidateTargetDates, billingEvents, existingInvoices, partialInvoiceHistory, context);
                 }
             }
             return invoice;
@@ -420,6 +429,40 @@ public class InvoiceDispatcher {
         }
     }
 
+    private PartialInvoiceHistory createPartialInvoiceHistory(@Nullable final LocalDate targetDate, final InternalCallContext context) {
+        final int maxInvoiceHistoryMonths = invoiceConfig.getMaxInvoiceHistoryMonths(context);
+        if (maxInvoiceHistoryMonths < 0) {
+            return null;
+        }
+        final LocalDate today = context.toLocalDate(clock.getUTCNow());
+        final LocalDate referenceDate = targetDate != null && targetDate.isBefore(today) ? targetDate : today;
+        return new PartialInvoiceHistory(referenceDate.minusMonths(maxInvoiceHistoryMonths),
+                                         new Supplier<List<Invoice>>() {
+                                             @Override
+                                             public List<Invoice> get() {
+                                                 return toInvoices(invoiceDao.getInvoicesByAccount(false, context));
+                                             }
+                                         });
+    }
+
+    private List<Invoice> toInvoices(final List<InvoiceModelDao> invoiceModelDaos) {
+        return ImmutableList.<Invoice>copyOf(Collections2.transform(invoiceModelDaos,
+                                                                    new Function<InvoiceModelDao, Invoice>() {
+                                                                        @Override
+                                                                        public Invoice apply(final InvoiceModelDao input) {
+                                                                            return new DefaultInvoice(input);
+                                                                        }
+                                                                    }));
+    }
+
+    // Invoice plugins always see the full invoice history, whether or not the generator only needs the recent one
+    private List<Invoice> getExistingInvoicesForPlugins(final List<Invoice> existingInvoices, @Nullable final PartialInvoiceHistory partialInvoiceHistory, final InternalTenantContext context) {
+        if (partialInvoiceHistory == null || !invoicePluginDispatcher.hasInvoicePlugins(context)) {
+            return existingInvoices;
+        }
+        return partialInvoiceHistory.getFullInvoiceHistory(existingInvoices);
+    }
+
     // Return a map of subscriptionId / localDate identifying what is the next upcoming billing transition (PHASE, PAUSE, ..)
     private Map<UUID, DateTime> getNextTransitionsForSubscriptions(final BillingEventSet billingEvents) {
 
@@ -439,9 +482,9 @@ public class InvoiceDispatcher {
         return result;
     }
 
-    private Invoice processDryRun_UPCOMING_INVOICE_Invoice(final UUID accountId, final Set<LocalDate> allCandidateTargetDates, final BillingEventSet billingEvents, final List<Invoice> existingInvoices, final InternalCallContext context) throws InvoiceApiException {
+    private Invoice processDryRun_UPCOMING_INVOICE_Invoice(final UUID accountId, final Set<LocalDate> allCandidateTargetDates, final BillingEventSet billingEvents, final List<Invoice> existingInvoices, @Nullable final PartialInvoiceHistory partialInvoiceHistory, final InternalCallContext context) throws InvoiceApiException {
         for (final LocalDate curTargetDate : allCandidateTargetDates) {
-            final InvoiceWithFutureNotifications invoiceWithFutureNotifications = processAccountWithLockAndInputTargetDate(accountId, curTargetDate, billingEvents, existingInvoices, true, false, context);
+            final InvoiceWithFutureNotifications invoiceWithFutureNotifications = processAccountWithLockAndInputTargetDate(accountId, curTargetDate, billingEvents, existingInvoices, partialInvoiceHistory, true, false, context);
             final Invoice invoice = invoiceWithFutureNotifications != null ? invoiceWithFutureNotifications.getInvoice() : null;
             if (invoice != null) {
                 return invoice;
@@ -450,9 +493,9 @@ public class InvoiceDispatcher {
         return null;
     }
 
-    private Invoice processDryRun_UPCOMING_INVOICE_FILTERING_Invoice(final UUID accountId, final Set<LocalDate> filteringCandidateTargetDates, final Set<LocalDate> allCandidateTargetDates, final BillingEventSet billingEvents, final List<Invoice> existingInvoices, final InternalCallContext context) throws InvoiceApiException {
+    private Invoice processDryRun_UPCOMING_INVOICE_FILTERING_Invoice(final UUID accountId, final Set<LocalDate> filteringCandidateTargetDates, final Set<LocalDate> allCandidateTargetDates, final BillingEventSet billingEvents, final List<Invoice> existingInvoices, @Nullable final PartialInvoiceHistory partialInvoiceHistory, final InternalCallContext context) throws InvoiceApiException {
         for (final LocalDate curTargetDate : filteringCandidateTargetDates) {
-            final Invoice invoice = processDryRun_TARGET_DATE_Invoice(accountId, curTargetDate, allCandidateTargetDates, billingEvents, existingInvoices, context);
+            final Invoice invoice = processDryRun_TARGET_DATE_Invoice(accountId, curTargetDate, allCandidateTargetDates, billingEvents, existingInvoices, partialInvoiceHistory, context);
             if (invoice != null) {
                 return invoice;
             }
@@ -460,7 +503,7 @@ public class InvoiceDispatcher {
         return null;
     }
 
-    private Invoice processDryRun_TARGET_DATE_Invoice(final UUID accountId, final LocalDate targetDate, final Set<LocalDate> allCandidateTargetDates, final BillingEventSet billingEvents, final List<Invoice> existingInvoices, final InternalCallContext context) throws InvoiceApiException {
+    private Invoice processDryRun_TARGET_DATE_Invoice(final UUID accountId, final LocalDate targetDate, final Set<LocalDate> allCandidateTargetDates, final BillingEventSet billingEvents, final List<Invoice> existingInvoices, @Nullable final PartialInvoiceHistory partialInvoiceHistory, final InternalCallContext context) throws InvoiceApiException {
 
 
         final PriorityQueue<LocalDate> pq = new PriorityQueue<LocalDate>(allCandidateTargetDates);
@@ -475,7 +518,7 @@ public class InvoiceDispatcher {
                 break;
             }
             // Loop through each boundary date prior to our given targetDate
-            final InvoiceWithFutureNotifications result = processAccountWithLockAndInputTargetDate(accountId, cur, billingEvents, augmentedExistingInvoices, true, false, context);
+            final InvoiceWithFutureNotifications result = processAccountWithLockAndInputTargetDate(accountId, cur, billingEvents, augmentedExistingInvoices, partialInvoiceHistory, true, false, context);
             additionalInvoice = result != null ? result.getInvoice() : null;
             if (additionalInvoice != null) {
                 for (LocalDate k : result.getNotifications().getNotificationsForTrigger().keySet()) {
@@ -487,7 +530,7 @@ public class InvoiceDispatcher {
             }
         }
 
-        final InvoiceWithFutureNotifications invoiceWithFutureNotifications = processAccountWithLockAndInputTargetDate(accountId, targetDate, billingEvents, augmentedExistingInvoices, true, false, context);
+        final InvoiceWithFutureNotifications invoiceWithFutureNotifications = processAccountWithLockAndInputTargetDate(accountId, targetDate, billingEvents, augmentedExistingInvoices, partialInvoiceHistory, true, false, context);
         final Invoice targetInvoice = invoiceWithFutureNotifications != null ? invoiceWithFutureNotifications.getInvoice() : null;
         return targetInvoice != null ? targetInvoice : additionalInvoice;
     }
@@ -528,21 +571,23 @@ public class InvoiceDispatcher {
                                                              final LocalDate targetDate,
                                                              final BillingEventSet billingEvents,
                                                              final List<Invoice> existingInvoices,
+                                                             @Nullable final PartialInvoiceHistory partialInvoiceHistory,
                                                              final boolean isDryRun,
                                                              final boolean isRescheduled,
                                                              final InternalCallContext internalCallContext) throws InvoiceApiException {
         final CallContext callContext = buildCallContext(internalCallContext);
+        final List<Invoice> existingInvoicesForPlugins = getExistingInvoicesForPlugins(existingInvoices, partialInvoiceHistory, internalCallContext);
 
         final ImmutableAccountData account;
         try {
             account = accountApi.getImmutableAccountDataById(accountId, internalCallContext);
         } catch (final AccountApiException e) {
             log.error("Unable to generate invoice for accountId='{}', a future notification has NOT been recorded", accountId, e);
-            invoicePluginDispatcher.onFailureCall(targetDate, null, existingInvoices, isDryRun, isRescheduled, callContext, ImmutableList.<PluginProperty>of(), internalCallContext);
+            invoicePluginDispatcher.onFailureCall(targetDate, null, existingInvoicesForPlugins, isDryRun, isRescheduled, callContext, ImmutableList.<PluginProperty>of(), internalCallContext);
             return null;
         }
 
-        final DateTime rescheduleDate = invoicePluginDispatcher.priorCall(targetDate, existingInvoices, isDryRun, isRescheduled, callContext, ImmutableList.<PluginProperty>of(), internalCallContext);
+        final DateTime rescheduleDate = invoicePluginDispatcher.priorCall(targetDate, existingInvoicesForPlugins, isDryRun, isRescheduled, callContext, ImmutableList.<PluginProperty>of(), internalCallContext);
         if (rescheduleDate != null) {
             if (isDryRun) {
                 log.warn("Ignoring rescheduleDate='{}', delayed scheduling is unsupported in dry-run", rescheduleDate);
@@ -553,7 +598,7 @@ public class InvoiceDispatcher {
             return null;
         }
 
-        final InvoiceWithMetadata invoiceWithMetadata = generateKillBillInvoice(account, targetDate, billingEvents, existingInvoices, internalCallContext);
+        final InvoiceWithMetadata invoiceWithMetadata = generateKillBillInvoice(account, targetDate, billingEvents, existingInvoices, partialInvoiceHistory, internalCallContext);
         final DefaultInvoice invoice = invoiceWithMetadata.getInvoice();
 
         // Compute future notifications
@@ -561,7 +606,7 @@ public class InvoiceDispatcher {
 
         // If invoice comes back null, there is nothing new to generate, we can bail early
         if (invoice == null) {
-            invoicePluginDispatcher.onSuccessCall(targetDate, null, existingInvoices, isDryRun, isRescheduled, callContext, ImmutableList.<PluginProperty>of(), internalCallContext);
+            invoicePluginDispatcher.onSuccessCall(targetDate, null, existingInvoicesForPlugins, isDryRun, isRescheduled, callContext, ImmutableList.<PluginProperty>of(), internalCallContext);
 
             if (isDryRun) {
                 log.info("Generated null dryRun invoice for accountId='{}', targetDate='{}'", accountId, targetDate);
@@ -640,16 +685,16 @@ public class InvoiceDispatcher {
 
             if (isDryRun || success) {
                 final DefaultInvoice refreshedInvoice = isDryRun ? invoice : new DefaultInvoice(invoiceDao.getById(invoice.getId(), internalCallContext));
-                invoicePluginDispatcher.onSuccessCall(targetDate, refreshedInvoice, existingInvoices, isDryRun, isRescheduled, callContext,  ImmutableList.<PluginProperty>of(),internalCallContext);
+                invoicePluginDispatcher.onSuccessCall(targetDate, refreshedInvoice, existingInvoicesForPlugins, isDryRun, isRescheduled, callContext,  ImmutableList.<PluginProperty>of(),internalCallContext);
             } else {
-                invoicePluginDispatcher.onFailureCall(targetDate, invoice, existingInvoices, isDryRun, isRescheduled, callContext, ImmutableList.<PluginProperty>of(), internalCallContext);
+                invoicePluginDispatcher.onFailureCall(targetDate, invoice, existingInvoicesForPlugins, isDryRun, isRescheduled, callContext, ImmutableList.<PluginProperty>of(), internalCallContext);
             }
         }
 
         return new InvoiceWithFutureNotifications(invoice, futureAccountNotifications);
     }
 
-    private InvoiceWithMetadata generateKillBillInvoice(final ImmutableAccountData account, final LocalDate targetDate, final BillingEventSet billingEvents, final List<Invoice> existingInvoices, final InternalCallContext context) throws InvoiceApiException {
+    private InvoiceWithMetadata generateKillBillInvoice(final ImmutableAccountData account, final LocalDate targetDate, final BillingEventSet billingEvents, final List<Invoice> existingInvoices, @Nullable final PartialInvoiceHistory partialInvoiceHistory, final InternalCallContext context) throws InvoiceApiException {
         final UUID targetInvoiceId;
         // Filter out DRAFT invoices for computation  of existing items unless Account is in AUTO_INVOICING_REUSE_DRAFT
         if (billingEvents.isAccountAutoInvoiceReuseDraft()) {
@@ -664,7 +709,7 @@ public class InvoiceDispatcher {
             targetInvoiceId = null;
         }
 
-        return generator.generateInvoice(account, billingEvents, existingInvoices, targetInvoiceId, targetDate, account.getCurrency(), context);
+        return generator.generateInvoice(account, billingEvents, existingInvoices, partialInvoiceHistory, targetInvoiceId, targetDate, account.getCurrency(), context);
     }
 
     private FutureAccountNotifications createNextFutureNotificationDate(final DateTime rescheduleDate, final BillingEventSet billingEvents, final InternalCallContext context) {
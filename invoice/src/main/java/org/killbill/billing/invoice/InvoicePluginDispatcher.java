@@ -273,6 +273,10 @@ public class InvoicePluginDispatcher {
         return existingValue;
     }
 
+    boolean hasInvoicePlugins(final InternalTenantContext tenantContext) {
+        return !getResultingPluginNameList(tenantContext).isEmpty();
+    }
+
     @VisibleForTesting
     Map<String, InvoicePluginApi> getInvoicePlugins(final InternalTenantContext tenantContext) {
         final Collection<String> resultingPluginList = getResultingPluginNameList(tenantContext);
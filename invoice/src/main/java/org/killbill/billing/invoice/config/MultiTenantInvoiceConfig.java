@@ -111,6 +111,25 @@ public class MultiTenantInvoiceConfig extends MultiTenantConfigBase implements I
         return getMaxRawUsagePreviousPeriod();
     }
 
+    @Override
+    public boolean isRawUsageAggregationEnabled() {
+        return staticConfig.isRawUsageAggregationEnabled();
+    }
+
+    @Override
+    public int getMaxInvoiceHistoryMonths() {
+        return staticConfig.getMaxInvoiceHistoryMonths();
+    }
+
+    @Override
+    public int getMaxInvoiceHistoryMonths(final InternalTenantContext tenantContext) {
+        final String result = getStringTenantConfig("getMaxInvoiceHistoryMonths", tenantContext);
+        if (result != null) {
+            return Integer.parseInt(result);
+        }
+        return getMaxInvoiceHistoryMonths();
+    }
+
     @Override
     public boolean isEmailNotificationsEnabled() {
         return staticConfig.isEmailNotificationsEnabled();
@@ -121,6 +140,16 @@ public class MultiTenantInvoiceConfig extends MultiTenantConfigBase implements I
         return staticConfig.getMaxGlobalLockRetries();
     }
 
+    @Override
+    public int getBillingRunNbThreads() {
+        return staticConfig.getBillingRunNbThreads();
+    }
+
+    @Override
+    public boolean isIntervalIndexEnabled() {
+        return staticConfig.isIntervalIndexEnabled();
+    }
+
     @Override
     public List<String> getInvoicePluginNames() {
         return staticConfig.getInvoicePluginNames();
@@ -19,10 +19,12 @@
 package org.killbill.billing.invoice.dao;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -87,6 +89,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Ordering;
@@ -98,6 +101,9 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
 
     private static final Logger log = LoggerFactory.getLogger(DefaultInvoiceDao.class);
 
+    // Maximum number of ids in a single IN clause
+    private static final int MAX_IDS_PER_QUERY = 1000;
+
     private static final Ordering<InvoiceModelDao> INVOICE_MODEL_DAO_ORDERING = Ordering.natural()
                                                                                         .onResultOf(new Function<InvoiceModelDao, Comparable>() {
                                                                                             @Override
@@ -210,6 +216,28 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
         });
     }
 
+    @Override
+    public List<InvoiceModelDao> getInvoicesByAccountWithServicePeriodAfter(final LocalDate cutoffDate, final InternalTenantContext context) {
+        final List<Tag> invoicesTags = getInvoicesTags(context);
+
+        return transactionalSqlDao.execute(true, new EntitySqlDaoTransactionWrapper<List<InvoiceModelDao>>() {
+            @Override
+            public List<InvoiceModelDao> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                final InvoiceSqlDao invoiceSqlDao = entitySqlDaoWrapperFactory.become(InvoiceSqlDao.class);
+                final List<InvoiceModelDao> invoices = ImmutableList.<InvoiceModelDao>copyOf(INVOICE_MODEL_DAO_ORDERING.sortedCopy(Iterables.<InvoiceModelDao>filter(invoiceSqlDao.getInvoicesByAccountWithServicePeriodAfter(cutoffDate.toDate(), context),
+                                                                                                                                                                     new Predicate<InvoiceModelDao>() {
+                                                                                                                                                                         @Override
+                                                                                                                                                                         public boolean apply(final InvoiceModelDao invoice) {
+                                                                                                                                                                             return !invoice.isMigrated() && !InvoiceStatus.VOID.equals(invoice.getStatus());
+                                                                                                                                                                         }
+                                                                                                                                                                     })));
+                invoiceDaoHelper.populateChildrenWithItemsByInvoiceIds(invoices, invoicesTags, entitySqlDaoWrapperFactory, context);
+
+                return invoices;
+            }
+        });
+    }
+
     private List<InvoiceModelDao> getAllNonMigratedInvoicesByAccountAfterDate(final Boolean includeVoidedInvoices, final InvoiceSqlDao invoiceSqlDao, final LocalDate fromDate, final InternalTenantContext context) {
         return ImmutableList.<InvoiceModelDao>copyOf(INVOICE_MODEL_DAO_ORDERING.sortedCopy(Iterables.<InvoiceModelDao>filter(invoiceSqlDao.getByAccountRecordId(context),
                                                                                                                              new Predicate<InvoiceModelDao>() {
@@ -370,13 +398,17 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
                     }
 
                     // Create the invoice items if needed (note: they may not necessarily belong to that invoice)
+                    final Map<UUID, InvoiceItemModelDao> existingInvoiceItems = getInvoiceItemsByIds(transInvoiceItemSqlDao, invoiceModelDao.getInvoiceItems(), context);
+                    final Map<UUID, InvoiceItemModelDao> invoiceItemsToCreate = new LinkedHashMap<UUID, InvoiceItemModelDao>();
                     for (final InvoiceItemModelDao invoiceItemModelDao : invoiceModelDao.getInvoiceItems()) {
-                        final InvoiceItemModelDao existingInvoiceItem = transInvoiceItemSqlDao.getById(invoiceItemModelDao.getId().toString(), context);
+                        final InvoiceItemModelDao existingInvoiceItem = existingInvoiceItems.get(invoiceItemModelDao.getId());
                         // Because of AUTO_INVOICING_REUSE_DRAFT we expect an invoice were items might already exist.
                         // Also for ALLOWED_INVOICE_ITEM_TYPES, we expect plugins to potentially modify the amount
                         if (existingInvoiceItem == null) {
-                            createdInvoiceItems.add(createInvoiceItemFromTransaction(transInvoiceItemSqlDao, invoiceItemModelDao, context));
-                            allInvoiceIds.add(invoiceItemModelDao.getInvoiceId());
+                            if (!invoiceItemsToCreate.containsKey(invoiceItemModelDao.getId())) {
+                                invoiceItemsToCreate.put(invoiceItemModelDao.getId(), invoiceItemModelDao);
+                                allInvoiceIds.add(invoiceItemModelDao.getInvoiceId());
+                            }
                         } else if (InvoicePluginDispatcher.ALLOWED_INVOICE_ITEM_TYPES.contains(invoiceItemModelDao.getType()) &&
                                    // The restriction on the amount is to deal with https://github.com/killbill/killbill/issues/993 - and esnure that duplicate
                                    // items would not be re-written
@@ -386,6 +418,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
                             }
                         }
                     }
+                    createdInvoiceItems.addAll(createInvoiceItemsFromTransaction(transInvoiceItemSqlDao, invoiceItemsToCreate, context));
 
                     final boolean wasInvoiceCreatedOrCommitted = createdInvoiceIds.contains(invoiceModelDao.getId()) ||
                                                                  committedReusedInvoiceId.contains(invoiceModelDao.getId());
@@ -425,7 +458,7 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
 
                 if (trackingIds != null && !trackingIds.isEmpty()) {
                     final InvoiceTrackingSqlDao trackingIdsSqlDao = entitySqlDaoWrapperFactory.become(InvoiceTrackingSqlDao.class);
-                    trackingIdsSqlDao.create(trackingIds, context);
+                    trackingIdsSqlDao.createTrackingIds(trackingIds, context);
                 }
 
                 return createdInvoiceItems;
@@ -1135,6 +1168,55 @@ public class DefaultInvoiceDao extends EntityDaoBase<InvoiceModelDao, Invoice, I
         return createAndRefresh(invoiceItemSqlDao, invoiceItemModelDao, context);
     }
 
+    // PERF: the items are inserted using a single batch (including their history and audit rows)
+    private List<InvoiceItemModelDao> createInvoiceItemsFromTransaction(final InvoiceItemSqlDao invoiceItemSqlDao, final Map<UUID, InvoiceItemModelDao> invoiceItemsToCreate, final InternalCallContext context) throws EntityPersistenceException, InvoiceApiException {
+        if (invoiceItemsToCreate.isEmpty()) {
+            return ImmutableList.<InvoiceItemModelDao>of();
+        } else if (invoiceItemsToCreate.size() == 1) {
+            return ImmutableList.<InvoiceItemModelDao>of(createInvoiceItemFromTransaction(invoiceItemSqlDao, invoiceItemsToCreate.values().iterator().next(), context));
+        }
+
+        for (final InvoiceItemModelDao invoiceItemModelDao : invoiceItemsToCreate.values()) {
+            if (InvoiceItemType.ITEM_ADJ.equals(invoiceItemModelDao.getType())) {
+                Preconditions.checkNotNull(invoiceItemModelDao.getLinkedItemId(), "LinkedItemId cannot be null for ITEM_ADJ item: " + invoiceItemModelDao);
+                // The item to be adjusted may be part of the batch
+                final InvoiceItemModelDao invoiceItemToBeAdjusted = invoiceItemsToCreate.get(invoiceItemModelDao.getLinkedItemId());
+                if (invoiceItemToBeAdjusted == null) {
+                    validateInvoiceItemToBeAdjusted(invoiceItemSqlDao, invoiceItemModelDao, context);
+                } else if (!INVOICE_ITEM_TYPES_ADJUSTABLE.contains(invoiceItemToBeAdjusted.getType())) {
+                    throw new InvoiceApiException(ErrorCode.INVOICE_ITEM_ADJUSTMENT_ITEM_INVALID, invoiceItemToBeAdjusted.getId());
+                }
+            }
+        }
+
+        invoiceItemSqlDao.create(invoiceItemsToCreate.values(), context);
+
+        final Map<UUID, InvoiceItemModelDao> createdInvoiceItems = getInvoiceItemsByIds(invoiceItemSqlDao, invoiceItemsToCreate.values(), context);
+        final List<InvoiceItemModelDao> result = new ArrayList<InvoiceItemModelDao>(invoiceItemsToCreate.size());
+        for (final UUID invoiceItemId : invoiceItemsToCreate.keySet()) {
+            result.add(createdInvoiceItems.get(invoiceItemId));
+        }
+        return result;
+    }
+
+    private Map<UUID, InvoiceItemModelDao> getInvoiceItemsByIds(final InvoiceItemSqlDao invoiceItemSqlDao, final Iterable<InvoiceItemModelDao> invoiceItems, final InternalTenantContext context) {
+        final Set<String> invoiceItemIds = new HashSet<String>();
+        for (final InvoiceItemModelDao invoiceItemModelDao : invoiceItems) {
+            invoiceItemIds.add(invoiceItemModelDao.getId().toString());
+        }
+        if (invoiceItemIds.isEmpty()) {
+            return ImmutableMap.<UUID, InvoiceItemModelDao>of();
+        }
+
+        final Map<UUID, InvoiceItemModelDao> result = new HashMap<UUID, InvoiceItemModelDao>();
+        for (final List<String> invoiceItemIdsChunk : Iterables.partition(invoiceItemIds, MAX_IDS_PER_QUERY)) {
+            for (final InvoiceItemModelDao invoiceItemModelDao : invoiceItemSqlDao.getByIds(invoiceItemIdsChunk, context)) {
+                result.put(invoiceItemModelDao.getId(), invoiceItemModelDao);
+            }
+        }
+        return result;
+    }
+
     private void validateInvoiceItemToBeAdjusted(final InvoiceItemSqlDao invoiceItemSqlDao, final InvoiceItemModelDao invoiceItemModelDao, final InternalCallContext context) throws InvoiceApiException {
         Preconditions.checkNotNull(invoiceItemModelDao.getLinkedItemId(), "LinkedItemId cannot be null for ITEM_ADJ item: " + invoiceItemModelDao);
         // Note: this assumes the linked item has already been created in or prior to the transaction, which should almost always be the case
@@ -61,6 +61,9 @@ public interface InvoiceDao extends EntityDao<InvoiceModelDao, Invoice, InvoiceA
 
     List<InvoiceModelDao> getInvoicesByAccount(final Boolean includeVoidedInvoices, LocalDate fromDate, InternalTenantContext context);
 
+    // Non voided invoices with at least one item whose service period ends on or after the cutoffDate (including the invoices holding the items linked to those)
+    List<InvoiceModelDao> getInvoicesByAccountWithServicePeriodAfter(LocalDate cutoffDate, InternalTenantContext context);
+
     List<InvoiceModelDao> getInvoicesBySubscription(UUID subscriptionId, InternalTenantContext context);
 
     Pagination<InvoiceModelDao> searchInvoices(String searchKey, Long offset, Long limit, InternalTenantContext context);
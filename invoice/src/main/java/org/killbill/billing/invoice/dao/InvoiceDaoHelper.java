@@ -41,6 +41,7 @@ import org.killbill.billing.invoice.api.InvoiceApiException;
 import org.killbill.billing.invoice.api.InvoiceItemType;
 import org.killbill.billing.invoice.api.InvoiceStatus;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory.ObjectDoesNotExist;
 import org.killbill.billing.util.entity.dao.EntitySqlDaoWrapperFactory;
 import org.killbill.billing.util.tag.ControlTagType;
 import org.killbill.billing.util.tag.Tag;
@@ -228,11 +229,20 @@ public class InvoiceDaoHelper {
     }
 
     public void populateChildren(final Iterable<InvoiceModelDao> invoices, final List<Tag> invoicesTags, final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory, final InternalTenantContext context) {
+        populateChildren(invoices, invoicesTags, false, entitySqlDaoWrapperFactory, context);
+    }
+
+    // Only fetch the items of the specified invoices, instead of all items for the account (useful when only a subset of the invoices is populated)
+    public void populateChildrenWithItemsByInvoiceIds(final Iterable<InvoiceModelDao> invoices, final List<Tag> invoicesTags, final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory, final InternalTenantContext context) {
+        populateChildren(invoices, invoicesTags, true, entitySqlDaoWrapperFactory, context);
+    }
+
+    private void populateChildren(final Iterable<InvoiceModelDao> invoices, final List<Tag> invoicesTags, final boolean fetchItemsByInvoiceIds, final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory, final InternalTenantContext context) {
         if (Iterables.isEmpty(invoices)) {
             return;
         }
 
-        getInvoiceItemsWithinTransaction(invoices, entitySqlDaoWrapperFactory, context);
+        getInvoiceItemsWithinTransaction(invoices, fetchItemsByInvoiceIds, entitySqlDaoWrapperFactory, context);
         getInvoicePaymentsWithinTransaction(invoices, entitySqlDaoWrapperFactory, context);
         setInvoicesWrittenOff(invoices, invoicesTags);
 
@@ -268,9 +278,18 @@ public class InvoiceDaoHelper {
         return amount == null ? BigDecimal.ZERO : amount;
     }
 
-    private void getInvoiceItemsWithinTransaction(final Iterable<InvoiceModelDao> invoices, final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory, final InternalTenantContext context) {
+    private void getInvoiceItemsWithinTransaction(final Iterable<InvoiceModelDao> invoices, final boolean fetchItemsByInvoiceIds, final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory, final InternalTenantContext context) {
         final InvoiceItemSqlDao invoiceItemSqlDao = entitySqlDaoWrapperFactory.become(InvoiceItemSqlDao.class);
-        final List<InvoiceItemModelDao> invoiceItemsForAccount = invoiceItemSqlDao.getByAccountRecordId(context);
+        final List<InvoiceItemModelDao> invoiceItemsForAccount;
+        if (fetchItemsByInvoiceIds) {
+            final Collection<String> invoiceIds = new HashSet<String>();
+            for (final InvoiceModelDao invoice : invoices) {
+                invoiceIds.add(invoice.getId().toString());
+            }
+            invoiceItemsForAccount = invoiceItemSqlDao.getInvoiceItemsByInvoiceIds(invoiceIds, context);
+        } else {
+            invoiceItemsForAccount = invoiceItemSqlDao.getByAccountRecordId(context);
+        }
 
         final Map<UUID, List<InvoiceItemModelDao>> invoiceItemsPerInvoiceId = new HashMap<UUID, List<InvoiceItemModelDao>>();
         for (final InvoiceItemModelDao item : invoiceItemsForAccount) {
@@ -377,10 +396,16 @@ public class InvoiceDaoHelper {
             parentInvoiceByParentInvoiceId.put(parentInvoice.getId(), parentInvoice);
         }
 
+        // Resolve all parent account record ids at once
+        final Map<UUID, Long> parentAccountRecordIds = internalCallContextFactory.getRecordIdsFromObjects(parentInvoicesGroupedByParentAccountId.keySet(), ObjectType.ACCOUNT, internalCallContextFactory.createTenantContext(childContext));
+
         // DAO: populate the parent invoices in bulk
         for (final UUID parentAccountId : parentInvoicesGroupedByParentAccountId.keySet()) {
             final List<InvoiceModelDao> parentInvoicesForOneParentAccountId = parentInvoicesGroupedByParentAccountId.get(parentAccountId);
-            final Long parentAccountRecordId = internalCallContextFactory.getRecordIdFromObject(parentAccountId, ObjectType.ACCOUNT, internalCallContextFactory.createTenantContext(childContext));
+            final Long parentAccountRecordId = parentAccountRecordIds.get(parentAccountId);
+            if (parentAccountRecordId == null) {
+                throw new ObjectDoesNotExist(String.format("Parent account id=%s doesn't exist!", parentAccountId));
+            }
             final InternalTenantContext parentContext = internalCallContextFactory.createInternalTenantContext(childContext.getTenantRecordId(), parentAccountRecordId);
             // Note the misnomer here, populateChildren simply populates the content of these invoices (unrelated to HA)
             populateChildren(parentInvoicesForOneParentAccountId, invoicesTags, entitySqlDaoWrapperFactory, parentContext);
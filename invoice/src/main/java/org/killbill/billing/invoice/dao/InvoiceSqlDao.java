@@ -19,6 +19,7 @@
 package org.killbill.billing.invoice.dao;
 
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
@@ -42,6 +43,10 @@ public interface InvoiceSqlDao extends EntitySqlDao<InvoiceModelDao, Invoice> {
     List<InvoiceModelDao> getInvoicesBySubscription(@Bind("subscriptionId") final String subscriptionId,
                                                     @SmartBindBean final InternalTenantContext context);
 
+    @SqlQuery
+    List<InvoiceModelDao> getInvoicesByAccountWithServicePeriodAfter(@Bind("cutoffDate") final Date cutoffDate,
+                                                                     @SmartBindBean final InternalTenantContext context);
+
     @SqlQuery
     UUID getInvoiceIdByPaymentId(@Bind("paymentId") final String paymentId,
                                  @SmartBindBean final InternalTenantContext context);
@@ -34,9 +34,10 @@ import org.skife.jdbi.v2.sqlobject.SqlQuery;
 @KillBillSqlDaoStringTemplate
 public interface InvoiceTrackingSqlDao extends EntitySqlDao<InvoiceTrackingModelDao, Entity> {
 
+    // Not audited: not to be confused with EntitySqlDao#create
     @SqlBatch
-    void create(@SmartBindBean Iterable<InvoiceTrackingModelDao> trackings,
-                @InternalTenantContextBinder final InternalCallContext context);
+    void createTrackingIds(@SmartBindBean Iterable<InvoiceTrackingModelDao> trackings,
+                           @InternalTenantContextBinder final InternalCallContext context);
 
     @SqlQuery
     List<InvoiceTrackingModelDao> getTrackingsByDateRange(@Bind("startDate") final Date startDate,
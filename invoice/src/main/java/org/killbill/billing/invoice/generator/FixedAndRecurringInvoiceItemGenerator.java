@@ -83,32 +83,34 @@ public class FixedAndRecurringInvoiceItemGenerator extends InvoiceItemGenerator
         this.clock = clock;
     }
 
+    @Override
     public InvoiceGeneratorResult generateItems(final ImmutableAccountData account, final UUID invoiceId, final BillingEventSet eventSet,
-                                                @Nullable final Iterable<Invoice> existingInvoices, final LocalDate targetDate,
-                                                final Currency targetCurrency, final Map<UUID, SubscriptionFutureNotificationDates> perSubscriptionFutureNotificationDate,
+                                                @Nullable final Iterable<Invoice> existingInvoices, @Nullable final PartialInvoiceHistory partialInvoiceHistory,
+                                                final LocalDate targetDate, final Currency targetCurrency, final Map<UUID, SubscriptionFutureNotificationDates> perSubscriptionFutureNotificationDate,
                                                 final InternalCallContext internalCallContext) throws InvoiceApiException {
         final Multimap<UUID, LocalDate> createdItemsPerDayPerSubscription = LinkedListMultimap.<UUID, LocalDate>create();
 
-        final AccountItemTree accountItemTree = new AccountItemTree(account.getId(), invoiceId);
-        if (existingInvoices != null) {
-            for (final Invoice invoice : existingInvoices) {
-                for (final InvoiceItem item : invoice.getInvoiceItems()) {
-                    if (item.getSubscriptionId() == null || // Always include migration invoices, credits, external charges etc.
-                        !eventSet.getSubscriptionIdsWithAutoInvoiceOff()
-                                 .contains(item.getSubscriptionId())) { //don't add items with auto_invoice_off tag
-                        accountItemTree.addExistingItem(item);
-
-                        trackInvoiceItemCreatedDay(item, createdItemsPerDayPerSubscription, internalCallContext);
-                    }
-                }
-            }
-        }
-
         // Generate list of proposed invoice items based on billing events from junction-- proposed items are ALL items since beginning of time
         final List<InvoiceItem> proposedItems = new ArrayList<InvoiceItem>();
         processRecurringBillingEvents(invoiceId, account.getId(), eventSet, targetDate, targetCurrency, proposedItems, perSubscriptionFutureNotificationDate, internalCallContext);
         processFixedBillingEvents(invoiceId, account.getId(), eventSet, targetDate, targetCurrency, proposedItems, internalCallContext);
 
+        List<InvoiceItem> existingItems = extractExistingItems(existingInvoices, eventSet);
+        if (partialInvoiceHistory != null) {
+            final InvoiceHistoryWindow invoiceHistoryWindow = new InvoiceHistoryWindow(partialInvoiceHistory.getCutoffDate(), eventSet);
+            if (!invoiceHistoryWindow.filterItems(existingItems, proposedItems)) {
+                log.info("Invoice history since cutoffDate='{}' isn't sufficient for accountId='{}', using the full history", partialInvoiceHistory.getCutoffDate(), account.getId());
+                existingItems = extractExistingItems(partialInvoiceHistory.getFullInvoiceHistory(existingInvoices), eventSet);
+            }
+        }
+
+        final AccountItemTree accountItemTree = new AccountItemTree(account.getId(), invoiceId, config.isIntervalIndexEnabled());
+        for (final InvoiceItem item : existingItems) {
+            accountItemTree.addExistingItem(item);
+
+            trackInvoiceItemCreatedDay(item, createdItemsPerDayPerSubscription, internalCallContext);
+        }
+
         try {
             accountItemTree.mergeWithProposedItems(proposedItems);
         } catch (final IllegalStateException e) {
@@ -122,6 +124,22 @@ public class FixedAndRecurringInvoiceItemGenerator extends InvoiceItemGenerator
         return new InvoiceGeneratorResult(resultingItems, ImmutableSet.of());
     }
 
+    private List<InvoiceItem> extractExistingItems(@Nullable final Iterable<Invoice> existingInvoices, final BillingEventSet eventSet) {
+        final List<InvoiceItem> existingItems = new ArrayList<InvoiceItem>();
+        if (existingInvoices != null) {
+            for (final Invoice invoice : existingInvoices) {
+                for (final InvoiceItem item : invoice.getInvoiceItems()) {
+                    if (item.getSubscriptionId() == null || // Always include migration invoices, credits, external charges etc.
+                        !eventSet.getSubscriptionIdsWithAutoInvoiceOff()
+                                 .contains(item.getSubscriptionId())) { //don't add items with auto_invoice_off tag
+                        existingItems.add(item);
+                    }
+                }
+            }
+        }
+        return existingItems;
+    }
+
     private void processRecurringBillingEvents(final UUID invoiceId, final UUID accountId, final BillingEventSet events,
                                                final LocalDate targetDate, final Currency currency, final List<InvoiceItem> proposedItems,
                                                final Map<UUID, SubscriptionFutureNotificationDates> perSubscriptionFutureNotificationDate,
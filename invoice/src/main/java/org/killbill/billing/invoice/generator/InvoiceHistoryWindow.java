@@ -0,0 +1,195 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.generator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.catalog.api.BillingPeriod;
+import org.killbill.billing.invoice.api.InvoiceItem;
+import org.killbill.billing.invoice.api.InvoiceItemType;
+import org.killbill.billing.junction.BillingEvent;
+import org.killbill.billing.junction.BillingEventSet;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Restricts the recurring and fixed items reconciled by the tree when only the invoices with items whose service period ends
+ * on or after a cutoff date have been loaded (see org.killbill.invoice.maxInvoiceHistoryMonths). It is only used when no billing change
+ * effective before the cutoff date was made since the last invoice (see PartialInvoiceHistory#hasChangesPriorToCutoffDate).
+ * <p/>
+ * For each subscription, existing and proposed items ending on or before a reconciliation date are left out, so that periods prior to
+ * that date are neither repaired nor invoiced again. The reconciliation date starts one (largest) billing period after the cutoff date
+ * and moves backward to the start date of every item overlapping it: both sides of the tree always see the same overlapping items.
+ * If the reconciliation date ends up before the cutoff date, some of the items needed may not have been loaded and the full
+ * history is required.
+ */
+public class InvoiceHistoryWindow {
+
+    private static final Comparator<InvoiceItem> SERVICE_PERIOD_END_DATE_DESC = new Comparator<InvoiceItem>() {
+        @Override
+        public int compare(final InvoiceItem o1, final InvoiceItem o2) {
+            return getServicePeriodEndDate(o2).compareTo(getServicePeriodEndDate(o1));
+        }
+    };
+
+    private final LocalDate cutoffDate;
+    private final LocalDate initialReconciliationDate;
+
+    public InvoiceHistoryWindow(final LocalDate cutoffDate, final BillingEventSet eventSet) {
+        this.cutoffDate = cutoffDate;
+        this.initialReconciliationDate = computeInitialReconciliationDate(cutoffDate, eventSet);
+    }
+
+    /**
+     * Remove (in place) the existing and proposed items which can't be affected anymore.
+     *
+     * @param existingItems existing items for the account
+     * @param proposedItems proposed items for the account
+     * @return false if the loaded history isn't sufficient (the lists are then left untouched)
+     */
+    public boolean filterItems(final List<InvoiceItem> existingItems, final List<InvoiceItem> proposedItems) {
+        final Map<UUID, LocalDate> reconciliationDates = computeReconciliationDates(existingItems, proposedItems);
+        if (reconciliationDates == null) {
+            return false;
+        }
+
+        final Map<UUID, InvoiceItem> existingItemsById = new HashMap<UUID, InvoiceItem>();
+        for (final InvoiceItem existingItem : existingItems) {
+            existingItemsById.put(existingItem.getId(), existingItem);
+        }
+
+        final Set<UUID> removedItemIds = new HashSet<UUID>();
+        final Iterator<InvoiceItem> existingIterator = existingItems.iterator();
+        while (existingIterator.hasNext()) {
+            final InvoiceItem existingItem = existingIterator.next();
+            if (isReconciledItem(existingItem) && !isWithinWindow(existingItem, reconciliationDates)) {
+                removedItemIds.add(existingItem.getId());
+                existingIterator.remove();
+            }
+        }
+
+        // Adjustments and repairs follow their linked item
+        final Iterator<InvoiceItem> linkedIterator = existingItems.iterator();
+        while (linkedIterator.hasNext()) {
+            final InvoiceItem existingItem = linkedIterator.next();
+            if (existingItem.getInvoiceItemType() != InvoiceItemType.REPAIR_ADJ &&
+                existingItem.getInvoiceItemType() != InvoiceItemType.ITEM_ADJ) {
+                continue;
+            }
+            if (!existingItemsById.containsKey(existingItem.getLinkedItemId()) || removedItemIds.contains(existingItem.getLinkedItemId())) {
+                linkedIterator.remove();
+            }
+        }
+
+        final Iterator<InvoiceItem> proposedIterator = proposedItems.iterator();
+        while (proposedIterator.hasNext()) {
+            final InvoiceItem proposedItem = proposedIterator.next();
+            if (isReconciledItem(proposedItem) && !isWithinWindow(proposedItem, reconciliationDates)) {
+                proposedIterator.remove();
+            }
+        }
+        return true;
+    }
+
+    @VisibleForTesting
+    LocalDate getInitialReconciliationDate() {
+        return initialReconciliationDate;
+    }
+
+    @VisibleForTesting
+    Map<UUID, LocalDate> computeReconciliationDates(final Iterable<InvoiceItem> existingItems, final Iterable<InvoiceItem> proposedItems) {
+        final Map<UUID, List<InvoiceItem>> perSubscriptionItems = new HashMap<UUID, List<InvoiceItem>>();
+        addReconciledItems(existingItems, perSubscriptionItems);
+        addReconciledItems(proposedItems, perSubscriptionItems);
+
+        final Map<UUID, LocalDate> result = new HashMap<UUID, LocalDate>();
+        for (final UUID subscriptionId : perSubscriptionItems.keySet()) {
+            final List<InvoiceItem> items = perSubscriptionItems.get(subscriptionId);
+            Collections.sort(items, SERVICE_PERIOD_END_DATE_DESC);
+
+            // Items are sorted by descending end date: once an item doesn't overlap the reconciliation date, none of the next ones will
+            LocalDate reconciliationDate = initialReconciliationDate;
+            for (final InvoiceItem item : items) {
+                if (!getServicePeriodEndDate(item).isAfter(reconciliationDate)) {
+                    break;
+                }
+                if (item.getStartDate().isBefore(reconciliationDate)) {
+                    reconciliationDate = item.getStartDate();
+                }
+            }
+
+            if (reconciliationDate.isBefore(cutoffDate)) {
+                return null;
+            }
+            result.put(subscriptionId, reconciliationDate);
+        }
+        return result;
+    }
+
+    private static void addReconciledItems(final Iterable<InvoiceItem> items, final Map<UUID, List<InvoiceItem>> perSubscriptionItems) {
+        for (final InvoiceItem item : items) {
+            if (!isReconciledItem(item)) {
+                continue;
+            }
+            List<InvoiceItem> subscriptionItems = perSubscriptionItems.get(item.getSubscriptionId());
+            if (subscriptionItems == null) {
+                subscriptionItems = new ArrayList<InvoiceItem>();
+                perSubscriptionItems.put(item.getSubscriptionId(), subscriptionItems);
+            }
+            subscriptionItems.add(item);
+        }
+    }
+
+    private static boolean isWithinWindow(final InvoiceItem item, final Map<UUID, LocalDate> reconciliationDates) {
+        return getServicePeriodEndDate(item).isAfter(reconciliationDates.get(item.getSubscriptionId()));
+    }
+
+    private static boolean isReconciledItem(final InvoiceItem item) {
+        return item.getSubscriptionId() != null &&
+               (item.getInvoiceItemType() == InvoiceItemType.RECURRING || item.getInvoiceItemType() == InvoiceItemType.FIXED);
+    }
+
+    private static LocalDate getServicePeriodEndDate(final InvoiceItem item) {
+        return item.getEndDate() != null ? item.getEndDate() : item.getStartDate();
+    }
+
+    private static LocalDate computeInitialReconciliationDate(final LocalDate cutoffDate, final BillingEventSet eventSet) {
+        LocalDate result = cutoffDate;
+        for (final BillingEvent event : eventSet) {
+            final BillingPeriod billingPeriod = event.getBillingPeriod();
+            if (billingPeriod == null || billingPeriod == BillingPeriod.NO_BILLING_PERIOD) {
+                continue;
+            }
+            final LocalDate candidate = InvoiceDateUtils.advanceByNPeriods(cutoffDate, billingPeriod, 1);
+            if (candidate.isAfter(result)) {
+                result = candidate;
+            }
+        }
+        return result;
+    }
+}
@@ -39,10 +39,19 @@ import org.slf4j.Logger;
 
 public abstract class InvoiceItemGenerator {
 
+    public InvoiceGeneratorResult generateItems(final ImmutableAccountData account, final UUID invoiceId, final BillingEventSet eventSet,
+                                                @Nullable final Iterable<Invoice> existingInvoices, final LocalDate targetDate,
+                                                final Currency targetCurrency, final Map<UUID, SubscriptionFutureNotificationDates> perSubscriptionFutureNotificationDate,
+                                                final InternalCallContext context) throws InvoiceApiException {
+        return generateItems(account, invoiceId, eventSet, existingInvoices, null, targetDate, targetCurrency, perSubscriptionFutureNotificationDate, context);
+    }
 
+    /**
+     * @param partialInvoiceHistory if not null, existingInvoices only contains the recent history (see {@link PartialInvoiceHistory})
+     */
     public abstract InvoiceGeneratorResult generateItems(final ImmutableAccountData account, final UUID invoiceId, final BillingEventSet eventSet,
-                                                         @Nullable final Iterable<Invoice> existingInvoices, final LocalDate targetDate,
-                                                         final Currency targetCurrency, Map<UUID, SubscriptionFutureNotificationDates> perSubscriptionFutureNotificationDate,
+                                                         @Nullable final Iterable<Invoice> existingInvoices, @Nullable final PartialInvoiceHistory partialInvoiceHistory,
+                                                         final LocalDate targetDate, final Currency targetCurrency, Map<UUID, SubscriptionFutureNotificationDates> perSubscriptionFutureNotificationDate,
                                                          final InternalCallContext context) throws InvoiceApiException;
 
 
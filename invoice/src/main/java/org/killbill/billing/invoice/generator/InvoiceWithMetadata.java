@@ -142,6 +142,13 @@ public class InvoiceWithMetadata {
                    Objects.equal(recordDate, that.recordDate);
         }
 
+        //
+        // Two records are similar if and only if their keys are equal: this allows to index the records instead of comparing them pairwise.
+        //
+        public SimilarRecordKey getSimilarRecordKey() {
+            return new SimilarRecordKey(trackingId, subscriptionId, unitType, recordDate);
+        }
+
         @Override
         public boolean equals(final Object o) {
             if (this == o) {
@@ -162,6 +169,41 @@ public class InvoiceWithMetadata {
         public int hashCode() {
             return Objects.hashCode(trackingId, invoiceId, subscriptionId, unitType, recordDate);
         }
+
+        public static final class SimilarRecordKey {
+
+            private final String trackingId;
+            private final UUID subscriptionId;
+            private final String unitType;
+            private final LocalDate recordDate;
+
+            private SimilarRecordKey(final String trackingId, final UUID subscriptionId, final String unitType, final LocalDate recordDate) {
+                this.trackingId = trackingId;
+                this.subscriptionId = subscriptionId;
+                this.unitType = unitType;
+                this.recordDate = recordDate;
+            }
+
+            @Override
+            public boolean equals(final Object o) {
+                if (this == o) {
+                    return true;
+                }
+                if (o == null || getClass() != o.getClass()) {
+                    return false;
+                }
+                final SimilarRecordKey that = (SimilarRecordKey) o;
+                return Objects.equal(trackingId, that.trackingId) &&
+                       Objects.equal(subscriptionId, that.subscriptionId) &&
+                       Objects.equal(unitType, that.unitType) &&
+                       Objects.equal(recordDate, that.recordDate);
+            }
+
+            @Override
+            public int hashCode() {
+                return Objects.hashCode(trackingId, subscriptionId, unitType, recordDate);
+            }
+        }
     }
 
     public static class SubscriptionFutureNotificationDates {
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.generator;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.junction.BillingEvent;
+import org.killbill.billing.junction.BillingEventSet;
+import org.killbill.billing.subscription.api.SubscriptionBaseTransitionType;
+import org.killbill.billing.subscription.api.user.SubscriptionBaseTransition;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+
+/**
+ * Describes the existing invoices of an invoice run when only the recent history has been loaded (see org.killbill.invoice.maxInvoiceHistoryMonths):
+ * the existing invoices only contain the invoices with items whose service period ends on or after the cutoff date. The full history is
+ * loaded on demand, at most once per run.
+ * <p/>
+ * The recent history is only sufficient if the periods prior to the cutoff date didn't change since they were last invoiced: a billing
+ * change effective before the cutoff date (e.g. a backdated change plan, cancellation or pause) requires the full history, so that these
+ * periods are repaired or invoiced again (see hasChangesPriorToCutoffDate).
+ */
+public class PartialInvoiceHistory {
+
+    private final LocalDate cutoffDate;
+    private final Supplier<List<Invoice>> invoicesOnDisk;
+
+    public PartialInvoiceHistory(final LocalDate cutoffDate, final Supplier<List<Invoice>> invoicesOnDisk) {
+        this.cutoffDate = cutoffDate;
+        this.invoicesOnDisk = Suppliers.memoize(invoicesOnDisk);
+    }
+
+    public LocalDate getCutoffDate() {
+        return cutoffDate;
+    }
+
+    /**
+     * @param eventSet        billing events for the account
+     * @param invoicesOnDisk  invoices loaded for the recent history
+     * @param context         call context
+     * @return true if a billing event effective before the cutoff date may have been recorded after the last invoice
+     */
+    public boolean hasChangesPriorToCutoffDate(final BillingEventSet eventSet, final Iterable<Invoice> invoicesOnDisk, final InternalTenantContext context) {
+        DateTime lastInvoiceCreatedDate = null;
+        for (final Invoice invoice : invoicesOnDisk) {
+            if (invoice.getCreatedDate() != null && (lastInvoiceCreatedDate == null || invoice.getCreatedDate().isAfter(lastInvoiceCreatedDate))) {
+                lastInvoiceCreatedDate = invoice.getCreatedDate();
+            }
+        }
+
+        final Set<UUID> checkedSubscriptionIds = new HashSet<UUID>();
+        for (final BillingEvent event : eventSet) {
+            if (!context.toLocalDate(event.getEffectiveDate()).isBefore(cutoffDate)) {
+                continue;
+            }
+
+            // Nothing recent was invoiced: there is no reference to tell old and new changes apart
+            if (lastInvoiceCreatedDate == null) {
+                return true;
+            }
+
+            // These events are computed from blocking states, which don't surface their creation date
+            if (event.getTransitionType() == SubscriptionBaseTransitionType.START_BILLING_DISABLED ||
+                event.getTransitionType() == SubscriptionBaseTransitionType.END_BILLING_DISABLED) {
+                return true;
+            }
+
+            if (!checkedSubscriptionIds.add(event.getSubscription().getId())) {
+                continue;
+            }
+            for (final SubscriptionBaseTransition transition : event.getSubscription().getAllTransitions()) {
+                if (context.toLocalDate(transition.getEffectiveTransitionTime()).isBefore(cutoffDate) &&
+                    (transition.getCreatedDate() == null || transition.getCreatedDate().isAfter(lastInvoiceCreatedDate))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Full history on disk, plus the invoices only known in memory (e.g. previously generated dry-run invoices)
+    public List<Invoice> getFullInvoiceHistory(@Nullable final Iterable<Invoice> existingInvoices) {
+        final List<Invoice> result = new ArrayList<Invoice>(invoicesOnDisk.get());
+        final Set<UUID> invoiceIdsOnDisk = new HashSet<UUID>();
+        for (final Invoice invoice : result) {
+            invoiceIdsOnDisk.add(invoice.getId());
+        }
+        if (existingInvoices != null) {
+            for (final Invoice invoice : existingInvoices) {
+                if (!invoiceIdsOnDisk.contains(invoice.getId())) {
+                    result.add(invoice);
+                }
+            }
+        }
+        return result;
+    }
+}
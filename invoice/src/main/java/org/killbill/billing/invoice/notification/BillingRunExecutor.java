@@ -0,0 +1,408 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.notification;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.util.config.definition.InvoiceConfig;
+import org.killbill.clock.Clock;
+import org.killbill.commons.concurrent.WithProfilingThreadPoolExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Fans out the due NEXT_BILLING_DATE notifications across a bounded pool of single-threaded lanes (see org.killbill.invoice.billingRun.nbThreads).
+ * <p/>
+ * All the notifications for a given account are processed by the same lane, in the order they were claimed, so that
+ * invoice runs for the same account don't compete for the account lock. Identical runs (same account, target date and kind)
+ * waiting in a lane are coalesced: since the invoice generation is account-wide, the first one covers all the others.
+ * <p/>
+ * The caller (notification queue thread) waits for the run to complete, so that a notification is only acknowledged once its run
+ * is done: failures are retried by the notification queue and nothing is lost on shutdown. The number of notifications claimed and
+ * dispatched concurrently is driven by the notification queue configuration, the lanes bound the number of concurrent runs.
+ * <p/>
+ * Each billing run (target date) keeps a throughput/latency report, logged when the run drains, to help size the pool.
+ */
+public class BillingRunExecutor {
+
+    private static final Logger log = LoggerFactory.getLogger(BillingRunExecutor.class);
+
+    private static final long TIMEOUT_EXECUTOR_SEC = 3L;
+    private static final int MAX_RUN_REPORTS = 10;
+
+    private static final String BILLING_RUN_THREAD_PREFIX = "BillingRun-th-";
+    private static final String BILLING_RUN_TH_GROUP_NAME = "billing-run-grp";
+
+    private final InvoiceConfig invoiceConfig;
+    private final Clock clock;
+
+    private final ConcurrentMap<BillingRunKey, PendingRun> pendingRuns = new ConcurrentHashMap<BillingRunKey, PendingRun>();
+    // Reports for the most recent runs, keyed by run (target) date
+    private final Map<DateTime, BillingRunReport> runReports = new LinkedHashMap<DateTime, BillingRunReport>() {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<DateTime, BillingRunReport> eldest) {
+            return size() > MAX_RUN_REPORTS;
+        }
+    };
+
+    private volatile ThreadPoolExecutor[] lanes;
+
+    @Inject
+    public BillingRunExecutor(final InvoiceConfig invoiceConfig, final Clock clock) {
+        this.invoiceConfig = invoiceConfig;
+        this.clock = clock;
+    }
+
+    public void initialize() {
+        final int nbThreads = invoiceConfig.getBillingRunNbThreads();
+        if (nbThreads <= 0) {
+            return;
+        }
+
+        final ThreadPoolExecutor[] newLanes = new ThreadPoolExecutor[nbThreads];
+        for (int i = 0; i < nbThreads; i++) {
+            newLanes[i] = createLane();
+        }
+        lanes = newLanes;
+    }
+
+    public void stop() throws InterruptedException {
+        final ThreadPoolExecutor[] currentLanes = lanes;
+        if (currentLanes == null) {
+            return;
+        }
+        lanes = null;
+
+        for (final ThreadPoolExecutor lane : currentLanes) {
+            // Release the callers waiting for runs which won't be processed
+            for (final Runnable notStarted : lane.shutdownNow()) {
+                if (notStarted instanceof FutureTask) {
+                    ((FutureTask<?>) notStarted).cancel(false);
+                }
+            }
+        }
+        for (final ThreadPoolExecutor lane : currentLanes) {
+            lane.awaitTermination(TIMEOUT_EXECUTOR_SEC, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Run the invoice run for that notification and wait for its completion.
+     *
+     * @param accountRecordId account record id of the notification
+     * @param targetDate      target date of the notification, which identifies the billing run
+     * @param eventDate       effective date of the notification, to compute the latency
+     * @param kind            kind of invoice run (e.g. invoice generation vs dry-run invoice notification)
+     * @param task            the invoice run
+     */
+    public void execute(final Long accountRecordId, final DateTime targetDate, final DateTime eventDate, final String kind, final Runnable task) {
+        final ThreadPoolExecutor[] currentLanes = lanes;
+        if (currentLanes == null) {
+            task.run();
+            return;
+        }
+
+        final BillingRunReport report = getOrCreateRunReport(targetDate);
+        final BillingRunKey key = new BillingRunKey(accountRecordId, targetDate, kind);
+
+        PendingRun pendingRun = new PendingRun(key, report, task);
+        final PendingRun existingRun = pendingRuns.putIfAbsent(key, pendingRun);
+        if (existingRun != null) {
+            pendingRun = existingRun;
+            report.onCoalesced();
+        } else {
+            report.onSubmitted();
+        }
+
+        try {
+            if (existingRun == null) {
+                try {
+                    currentLanes[getLane(accountRecordId, currentLanes.length)].execute(pendingRun);
+                } catch (final RejectedExecutionException e) {
+                    // Shutting down
+                    pendingRuns.remove(key, pendingRun);
+                    throw e;
+                }
+            }
+            pendingRun.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            report.onCompleted(eventDate, clock.getUTCNow());
+        }
+    }
+
+    public List<BillingRunReport> getRunReports() {
+        synchronized (runReports) {
+            return ImmutableList.<BillingRunReport>copyOf(runReports.values());
+        }
+    }
+
+    private BillingRunReport getOrCreateRunReport(final DateTime targetDate) {
+        synchronized (runReports) {
+            BillingRunReport report = runReports.get(targetDate);
+            if (report == null) {
+                report = new BillingRunReport(targetDate);
+                runReports.put(targetDate, report);
+            }
+            return report;
+        }
+    }
+
+    private static int getLane(final Long accountRecordId, final int nbLanes) {
+        // Notifications without account (shouldn't happen) are all processed by the first lane
+        return accountRecordId == null ? 0 : (int) (Math.abs(accountRecordId % nbLanes));
+    }
+
+    private ThreadPoolExecutor createLane() {
+        return new WithProfilingThreadPoolExecutor(1,
+                                                   1,
+                                                   0,
+                                                   TimeUnit.MILLISECONDS,
+                                                   new LinkedBlockingQueue<Runnable>(),
+                                                   new ThreadFactory() {
+
+                                                       @Override
+                                                       public Thread newThread(final Runnable r) {
+                                                           final Thread th = new Thread(new ThreadGroup(BILLING_RUN_TH_GROUP_NAME), r);
+                                                           th.setName(BILLING_RUN_THREAD_PREFIX + th.getId());
+                                                           return th;
+                                                       }
+                                                   });
+    }
+
+    private final class PendingRun extends FutureTask<Void> {
+
+        private final BillingRunKey key;
+        private final BillingRunReport report;
+
+        private PendingRun(final BillingRunKey key, final BillingRunReport report, final Runnable task) {
+            super(task, null);
+            this.key = key;
+            this.report = report;
+        }
+
+        @Override
+        public void run() {
+            // Notifications received from now on can't be coalesced with this run anymore
+            pendingRuns.remove(key, this);
+
+            final long ini = System.nanoTime();
+            try {
+                super.run();
+            } finally {
+                report.onProcessed(System.nanoTime() - ini, isFailed());
+            }
+        }
+
+        private boolean isFailed() {
+            try {
+                get();
+                return false;
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return true;
+            } catch (final ExecutionException e) {
+                return true;
+            }
+        }
+    }
+
+    private static final class BillingRunKey {
+
+        private final Long accountRecordId;
+        private final DateTime targetDate;
+        private final String kind;
+
+        private BillingRunKey(final Long accountRecordId, final DateTime targetDate, final String kind) {
+            this.accountRecordId = accountRecordId;
+            this.targetDate = targetDate;
+            this.kind = kind;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final BillingRunKey that = (BillingRunKey) o;
+            return Objects.equal(accountRecordId, that.accountRecordId) &&
+                   Objects.equal(targetDate, that.targetDate) &&
+                   Objects.equal(kind, that.kind);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(accountRecordId, targetDate, kind);
+        }
+    }
+
+    /**
+     * Throughput and latency of the notifications sharing the same target date.
+     */
+    public static final class BillingRunReport {
+
+        private final DateTime targetDate;
+
+        private int inFlight;
+        private long nbNotifications;
+        private long nbRuns;
+        private long nbCoalesced;
+        private long nbFailed;
+        private long processingTimeNanos;
+        private long maxProcessingTimeNanos;
+        private long totalLatencyMillis;
+        private long maxLatencyMillis;
+        private long firstSubmissionMillis = -1;
+        private long lastCompletionMillis = -1;
+
+        private BillingRunReport(final DateTime targetDate) {
+            this.targetDate = targetDate;
+        }
+
+        public DateTime getTargetDate() {
+            return targetDate;
+        }
+
+        public synchronized long getNbNotifications() {
+            return nbNotifications;
+        }
+
+        public synchronized long getNbRuns() {
+            return nbRuns;
+        }
+
+        public synchronized long getNbCoalesced() {
+            return nbCoalesced;
+        }
+
+        public synchronized long getNbFailed() {
+            return nbFailed;
+        }
+
+        public synchronized double getAvgProcessingTimeMillis() {
+            return nbRuns == 0 ? 0 : processingTimeNanos / 1000000.0 / nbRuns;
+        }
+
+        public synchronized double getMaxProcessingTimeMillis() {
+            return maxProcessingTimeNanos / 1000000.0;
+        }
+
+        // Time elapsed between the notification effective date and the completion of its run
+        public synchronized double getAvgLatencyMillis() {
+            return nbNotifications == 0 ? 0 : (double) totalLatencyMillis / nbNotifications;
+        }
+
+        public synchronized long getMaxLatencyMillis() {
+            return maxLatencyMillis;
+        }
+
+        // Completed notifications per second, between the first submission and the last completion
+        public synchronized double getThroughput() {
+            final long elapsedMillis = lastCompletionMillis - firstSubmissionMillis;
+            return elapsedMillis <= 0 ? 0 : nbNotifications * 1000.0 / elapsedMillis;
+        }
+
+        private synchronized void onSubmitted() {
+            onReceived();
+            nbRuns++;
+        }
+
+        private synchronized void onCoalesced() {
+            onReceived();
+            nbCoalesced++;
+        }
+
+        private void onReceived() {
+            if (firstSubmissionMillis < 0) {
+                firstSubmissionMillis = System.currentTimeMillis();
+            }
+            inFlight++;
+        }
+
+        private synchronized void onProcessed(final long durationNanos, final boolean failed) {
+            processingTimeNanos += durationNanos;
+            maxProcessingTimeNanos = Math.max(maxProcessingTimeNanos, durationNanos);
+            if (failed) {
+                nbFailed++;
+            }
+        }
+
+        private void onCompleted(final DateTime eventDate, final DateTime now) {
+            final boolean drained;
+            synchronized (this) {
+                nbNotifications++;
+                final long latencyMillis = Math.max(0, now.getMillis() - eventDate.getMillis());
+                totalLatencyMillis += latencyMillis;
+                maxLatencyMillis = Math.max(maxLatencyMillis, latencyMillis);
+                lastCompletionMillis = System.currentTimeMillis();
+                inFlight--;
+                drained = inFlight == 0;
+            }
+
+            if (drained) {
+                log.info("Billing run drained: {}", this);
+            }
+        }
+
+        @Override
+        public synchronized String toString() {
+            return MoreObjects.toStringHelper(this)
+                              .add("targetDate", targetDate)
+                              .add("nbNotifications", nbNotifications)
+                              .add("nbRuns", nbRuns)
+                              .add("nbCoalesced", nbCoalesced)
+                              .add("nbFailed", nbFailed)
+                              .add("throughput", String.format("%.2f/s", getThroughput()))
+                              .add("avgProcessingTimeMs", String.format("%.2f", getAvgProcessingTimeMillis()))
+                              .add("maxProcessingTimeMs", String.format("%.2f", getMaxProcessingTimeMillis()))
+                              .add("avgLatencyMs", String.format("%.2f", getAvgLatencyMillis()))
+                              .add("maxLatencyMs", maxLatencyMillis)
+                              .toString();
+        }
+    }
+}
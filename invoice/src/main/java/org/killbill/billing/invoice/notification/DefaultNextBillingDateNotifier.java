@@ -46,11 +46,17 @@ public class DefaultNextBillingDateNotifier extends RetryableService implements
 
     private static final Logger log = LoggerFactory.getLogger(DefaultNextBillingDateNotifier.class);
 
+    // Kinds of invoice runs, for the BillingRunExecutor
+    private static final String INVOICE_GENERATION_RUN = "INVOICE_GENERATION";
+    private static final String RESCHEDULED_INVOICE_GENERATION_RUN = "RESCHEDULED_INVOICE_GENERATION";
+    private static final String DRY_RUN_INVOICE_NOTIFICATION_RUN = "DRY_RUN_INVOICE_NOTIFICATION";
+
     private final Clock clock;
     private final NotificationQueueService notificationQueueService;
     private final SubscriptionBaseInternalApi subscriptionApi;
     private final InvoiceListener listener;
     private final InternalCallContextFactory internalCallContextFactory;
+    private final BillingRunExecutor billingRunExecutor;
 
     private NotificationQueue nextBillingQueue;
 
@@ -59,13 +65,15 @@ public class DefaultNextBillingDateNotifier extends RetryableService implements
                                           final NotificationQueueService notificationQueueService,
                                           final SubscriptionBaseInternalApi subscriptionApi,
                                           final InvoiceListener listener,
-                                          final InternalCallContextFactory internalCallContextFactory) {
+                                          final InternalCallContextFactory internalCallContextFactory,
+                                          final BillingRunExecutor billingRunExecutor) {
         super(notificationQueueService);
         this.clock = clock;
         this.notificationQueueService = notificationQueueService;
         this.subscriptionApi = subscriptionApi;
         this.listener = listener;
         this.internalCallContextFactory = internalCallContextFactory;
+        this.billingRunExecutor = billingRunExecutor;
     }
 
     @Override
@@ -85,10 +93,20 @@ public class DefaultNextBillingDateNotifier extends RetryableService implements
                 final UUID firstSubscriptionId = key.getUuidKeys().iterator().next();
                 if (key.isDryRunForInvoiceNotification() != null && // Just to ensure compatibility with json that might not have that field (old versions < 0.13.6)
                     key.isDryRunForInvoiceNotification()) {
-                    processEventForInvoiceNotification(firstSubscriptionId, targetDate, userToken, accountRecordId, tenantRecordId);
+                    billingRunExecutor.execute(accountRecordId, targetDate, eventDate, DRY_RUN_INVOICE_NOTIFICATION_RUN, new Runnable() {
+                        @Override
+                        public void run() {
+                            processEventForInvoiceNotification(firstSubscriptionId, targetDate, userToken, accountRecordId, tenantRecordId);
+                        }
+                    });
                 } else {
                     final boolean isRescheduled = key.isRescheduled() == Boolean.TRUE; // Handle null value (old versions < 0.19.7)
-                    processEventForInvoiceGeneration(firstSubscriptionId, targetDate, isRescheduled, userToken, accountRecordId, tenantRecordId);
+                    billingRunExecutor.execute(accountRecordId, targetDate, eventDate, isRescheduled ? RESCHEDULED_INVOICE_GENERATION_RUN : INVOICE_GENERATION_RUN, new Runnable() {
+                        @Override
+                        public void run() {
+                            processEventForInvoiceGeneration(firstSubscriptionId, targetDate, isRescheduled, userToken, accountRecordId, tenantRecordId);
+                        }
+                    });
                 }
             }
         };
@@ -105,6 +123,7 @@ public class DefaultNextBillingDateNotifier extends RetryableService implements
     public void start() {
         super.start();
 
+        billingRunExecutor.initialize();
         nextBillingQueue.startQueue();
     }
 
@@ -115,6 +134,12 @@ public class DefaultNextBillingDateNotifier extends RetryableService implements
             notificationQueueService.deleteNotificationQueue(nextBillingQueue.getServiceName(), nextBillingQueue.getQueueName());
         }
 
+        try {
+            billingRunExecutor.stop();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
         super.stop();
     }
 
@@ -51,6 +51,7 @@ public class AccountItemTree {
 
     private final UUID accountId;
     private final UUID targetInvoiceId;
+    private final boolean useIntervalIndex;
     private final Map<UUID, SubscriptionItemTree> subscriptionItemTree;
     private final List<InvoiceItem> allExistingItems;
     private List<InvoiceItem> pendingItemAdj;
@@ -58,8 +59,16 @@ public class AccountItemTree {
     private boolean isBuilt;
 
     public AccountItemTree(final UUID accountId, final UUID targetInvoiceId) {
+        this(accountId, targetInvoiceId, false);
+    }
+
+    /**
+     * @param useIntervalIndex whether the subscription trees should be backed by an ItemsIntervalIndex
+     */
+    public AccountItemTree(final UUID accountId, final UUID targetInvoiceId, final boolean useIntervalIndex) {
         this.accountId = accountId;
         this.targetInvoiceId = targetInvoiceId;
+        this.useIntervalIndex = useIntervalIndex;
         this.subscriptionItemTree = new HashMap<UUID, SubscriptionItemTree>();
         this.isBuilt = false;
         this.allExistingItems = new LinkedList<InvoiceItem>();
@@ -140,7 +149,7 @@ public class AccountItemTree {
         }
 
         if (!subscriptionItemTree.containsKey(subscriptionId)) {
-            subscriptionItemTree.put(subscriptionId, new SubscriptionItemTree(subscriptionId, targetInvoiceId));
+            subscriptionItemTree.put(subscriptionId, new SubscriptionItemTree(subscriptionId, targetInvoiceId, useIntervalIndex));
         }
         final SubscriptionItemTree tree = subscriptionItemTree.get(subscriptionId);
         tree.addItem(existingItem);
@@ -162,7 +171,7 @@ public class AccountItemTree {
             final UUID subscriptionId = getSubscriptionId(item, null);
             SubscriptionItemTree tree = subscriptionItemTree.get(subscriptionId);
             if (tree == null) {
-                tree = new SubscriptionItemTree(subscriptionId, targetInvoiceId);
+                tree = new SubscriptionItemTree(subscriptionId, targetInvoiceId, useIntervalIndex);
                 subscriptionItemTree.put(subscriptionId, tree);
             }
             tree.mergeProposedItem(item);
@@ -239,12 +239,11 @@ public class ItemsInterval {
     }
 
     private void checkDoubleBilling(final Set<UUID> addItemsCancelled, final Set<UUID> addItemsToBeCancelled) {
-        final ItemsNodeInterval parentNodeInterval = (ItemsNodeInterval) interval.getParent();
-        if (parentNodeInterval == null) {
+        final ItemsInterval parentItemsInterval = getParentItemsInterval();
+        if (parentItemsInterval == null) {
             Preconditions.checkState(addItemsCancelled.equals(addItemsToBeCancelled), "Double billing detected: addItemsCancelled=%s, addItemsToBeCancelled=%s", addItemsCancelled, addItemsToBeCancelled);
             return;
         }
-        final ItemsInterval parentItemsInterval = parentNodeInterval.getItemsInterval();
 
         final Item parentAddItem = parentItemsInterval.getResulting_ADD_Item();
         if (parentAddItem != null) {
@@ -261,6 +260,14 @@ public class ItemsInterval {
         parentItemsInterval.checkDoubleBilling(addItemsCancelled, addItemsToBeCancelled);
     }
 
+    /**
+     * @return the items of the enclosing interval or null for the root interval
+     */
+    protected ItemsInterval getParentItemsInterval() {
+        final ItemsNodeInterval parentNodeInterval = (ItemsNodeInterval) interval.getParent();
+        return parentNodeInterval == null ? null : parentNodeInterval.getItemsInterval();
+    }
+
     private Item findItem(final ItemAction itemAction) {
         final Collection<Item> matchingItems = findItems(itemAction);
         return matchingItems.size() == 1 ? matchingItems.iterator().next() : null;
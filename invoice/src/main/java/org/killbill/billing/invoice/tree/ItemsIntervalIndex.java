@@ -0,0 +1,747 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.tree;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+import org.killbill.billing.invoice.api.InvoiceItem;
+import org.killbill.billing.invoice.tree.Item.ItemAction;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Array backed alternative to the ItemsNodeInterval tree, used by the SubscriptionItemTree when
+ * org.killbill.invoice.tree.intervalIndex is enabled.
+ * <p/>
+ * Nodes are identified by their index: the interval bounds are kept as epoch days in primitive arrays
+ * and the children of each node in an int array, ordered by start date. When the children of a node are
+ * sorted by both their start and end dates (the common case), the insertion point of a new node is found
+ * with a binary search instead of walking the siblings. Items are located by id through a lookup table
+ * instead of a depth first search of the tree.
+ * <p/>
+ * The build, merge and pruning logic mirrors the one from ItemsNodeInterval and NodeInterval and the
+ * resulting items are the same.
+ */
+public class ItemsIntervalIndex {
+
+    private static final LocalDate EPOCH = new LocalDate(1970, 1, 1);
+
+    private static final int ROOT = 0;
+    private static final int NO_NODE = -1;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int[] NO_CHILDREN = new int[0];
+
+    private int nbNodes;
+    private int[] starts;
+    private int[] ends;
+    private LocalDate[] startDates;
+    private LocalDate[] endDates;
+    private int[] parents;
+    private int[][] children;
+    private int[] nbChildren;
+    // Whether the children are sorted by both start and end dates
+    private boolean[] sortedChildren;
+    private ItemsInterval[] items;
+
+    // Nodes (in depth first order) per item id and per linked item id (CANCEL items), lazily computed and reset when nodes are added
+    private Map<UUID, List<Integer>> nodesByItemId;
+    private Map<UUID, List<Integer>> nodesByLinkedId;
+
+    public ItemsIntervalIndex() {
+        this.starts = new int[INITIAL_CAPACITY];
+        this.ends = new int[INITIAL_CAPACITY];
+        this.startDates = new LocalDate[INITIAL_CAPACITY];
+        this.endDates = new LocalDate[INITIAL_CAPACITY];
+        this.parents = new int[INITIAL_CAPACITY];
+        this.children = new int[INITIAL_CAPACITY][];
+        this.nbChildren = new int[INITIAL_CAPACITY];
+        this.sortedChildren = new boolean[INITIAL_CAPACITY];
+        this.items = new ItemsInterval[INITIAL_CAPACITY];
+
+        final int root = newNode(null);
+        // The root interval is computed as nodes get added
+        starts[root] = Integer.MAX_VALUE;
+        ends[root] = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Add existing item into the index
+     *
+     * @param item an existing item
+     * @see ItemsNodeInterval#addExistingItem(ItemsNodeInterval)
+     */
+    public void addExistingItem(final Item item) {
+        addNode(item, new AddNodeCallback() {
+            @Override
+            public boolean onExistingNode(final int existingNode) {
+                // There is no new node added but instead we just populate the list of items for the already existing node
+                items[existingNode].add(item);
+                return false;
+            }
+
+            @Override
+            public boolean shouldInsertNode(final int insertionNode) {
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Add proposed item into the (flattened and reversed) index
+     *
+     * @param item a new proposed item
+     * @return true if the item was merged and will trigger a repair or false if the proposed item should be kept as such and no repair generated
+     * @see ItemsNodeInterval#addProposedItem(ItemsNodeInterval)
+     */
+    public boolean addProposedItem(final Item item) {
+        return addNode(item, new AddNodeCallback() {
+            @Override
+            public boolean onExistingNode(final int existingNode) {
+                if (isSameKind(existingNode)) {
+                    items[existingNode].cancelItems(item);
+                    return true;
+                } else {
+                    return false;
+                }
+            }
+
+            @Override
+            public boolean shouldInsertNode(final int insertionNode) {
+                // Proposed items overlapping any existing item are kept as-is, outside of the index
+                if (insertionNode == ROOT) {
+                    return false;
+                }
+                return isSameKind(insertionNode);
+            }
+
+            private boolean isSameKind(final int node) {
+                final List<Item> nodeItems = items[node].getItems();
+                Preconditions.checkState(nodeItems.size() == 1, "Expected existing node to have only one item");
+                return nodeItems.get(0).isSameKind(item);
+            }
+        });
+    }
+
+    /**
+     * @param output          result list of built items
+     * @param targetInvoiceId the new invoice id being generated
+     * @see ItemsNodeInterval#buildForExistingItems(Collection, UUID)
+     */
+    public void buildForExistingItems(final Collection<Item> output, final UUID targetInvoiceId) {
+        // We start by pruning useless entries to simplify the build phase.
+        pruneAndValidateTree(ROOT);
+
+        build(ROOT, output, targetInvoiceId, false);
+    }
+
+    /**
+     * @param output          result list of built items
+     * @param targetInvoiceId the new invoice id being generated
+     * @see ItemsNodeInterval#mergeExistingAndProposed(Collection, UUID)
+     */
+    public void mergeExistingAndProposed(final Collection<Item> output, final UUID targetInvoiceId) {
+        build(ROOT, output, targetInvoiceId, true);
+    }
+
+    /**
+     * Add the adjustment amount on the item specified by the targetId.
+     *
+     * @return linked item if fully adjusted, null otherwise
+     * @see ItemsNodeInterval#addAdjustment(InvoiceItem, UUID)
+     */
+    public Item addAdjustment(final InvoiceItem item, final UUID targetInvoiceId) {
+        final UUID targetId = item.getLinkedItemId();
+
+        ItemsInterval targetItemsInterval = null;
+        for (final Integer node : getNodes(getNodesByItemId(), targetId)) {
+            if (items[node].findItem(targetId) != null) {
+                targetItemsInterval = items[node];
+                break;
+            }
+        }
+        Preconditions.checkNotNull(targetItemsInterval, "Unable to find item interval for id='%s', tree=%s", targetId, this);
+
+        final Item targetItem = targetItemsInterval.findItem(targetId);
+        Preconditions.checkNotNull(targetItem, "Unable to find item with id='%s', itemsInterval=%s", targetId, targetItemsInterval);
+
+        final BigDecimal adjustmentAmount = item.getAmount().negate();
+        if (targetItem.getAmount().compareTo(adjustmentAmount) == 0) {
+            // Full item adjustment - treat it like a repair
+            addExistingItem(new Item(item, targetItem.getStartDate(), targetItem.getEndDate(), targetInvoiceId, ItemAction.CANCEL));
+            return targetItem;
+        } else {
+            targetItem.incrementAdjustedAmount(adjustmentAmount);
+            return null;
+        }
+    }
+
+    private boolean addNode(final Item item, final AddNodeCallback callback) {
+        nodesByItemId = null;
+        nodesByLinkedId = null;
+
+        final int newNode = newNode(item);
+        final boolean result = addNode(ROOT, newNode, callback);
+        if (parents[newNode] == NO_NODE) {
+            // The node wasn't inserted, release it
+            items[newNode] = null;
+            nbNodes--;
+        }
+        return result;
+    }
+
+    // See NodeInterval#addNode
+    private boolean addNode(final int curNode, final int newNode, final AddNodeCallback callback) {
+        if (curNode != ROOT && starts[newNode] == starts[curNode] && ends[newNode] == ends[curNode]) {
+            return callback.onExistingNode(curNode);
+        }
+
+        computeRootInterval(curNode, newNode);
+
+        // Children before that index are neither containing nor overlapping the new node, nor starting after it
+        for (int i = findFirstCandidateChild(curNode, newNode); i < nbChildren[curNode]; i++) {
+            final int curChild = children[curNode][i];
+            if (isItemContained(curChild, newNode)) {
+                return addNode(curChild, newNode, callback);
+            }
+
+            if (isItemOverlap(curChild, newNode)) {
+                rebalance(curNode, i, newNode);
+                return callback.shouldInsertNode(curNode);
+            }
+
+            if (starts[newNode] < starts[curChild]) {
+                Preconditions.checkState(ends[newNode] <= ends[curNode]);
+                return insertChild(curNode, i, newNode, callback);
+            }
+        }
+
+        return insertChild(curNode, nbChildren[curNode], newNode, callback);
+    }
+
+    private int findFirstCandidateChild(final int curNode, final int newNode) {
+        if (!sortedChildren[curNode]) {
+            return 0;
+        }
+
+        final int[] curChildren = children[curNode];
+
+        // First child starting after the new node
+        int low = 0;
+        int high = nbChildren[curNode];
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (starts[curChildren[mid]] > starts[newNode]) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        // A child starting on the same day either contains or is overlapped by the new node
+        if (low > 0 && starts[curChildren[low - 1]] == starts[newNode]) {
+            low--;
+        }
+
+        // First child starting before the new node which contains it
+        high = low;
+        low = 0;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (ends[curChildren[mid]] >= ends[newNode]) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private boolean insertChild(final int curNode, final int index, final int newNode, final AddNodeCallback callback) {
+        if (!callback.shouldInsertNode(curNode)) {
+            return false;
+        }
+
+        ensureChildrenCapacity(curNode, nbChildren[curNode] + 1);
+        final int[] curChildren = children[curNode];
+        System.arraycopy(curChildren, index, curChildren, index + 1, nbChildren[curNode] - index);
+        curChildren[index] = newNode;
+        nbChildren[curNode]++;
+        parents[newNode] = curNode;
+        updateSortedChildren(curNode, index);
+        return true;
+    }
+
+    // See NodeInterval#rebalance: the new node replaces the (contiguous) children it overlaps, which become its own children
+    private void rebalance(final int curNode, final int from, final int newNode) {
+        final int[] curChildren = children[curNode];
+        int to = from;
+        while (to < nbChildren[curNode] && isItemOverlap(curChildren[to], newNode)) {
+            to++;
+        }
+
+        children[newNode] = Arrays.copyOfRange(curChildren, from, to);
+        nbChildren[newNode] = to - from;
+        for (final int rebalanced : children[newNode]) {
+            parents[rebalanced] = newNode;
+        }
+        sortedChildren[newNode] = sortedChildren[curNode] || computeSortedChildren(newNode);
+
+        curChildren[from] = newNode;
+        System.arraycopy(curChildren, to, curChildren, from + 1, nbChildren[curNode] - to);
+        nbChildren[curNode] -= to - from - 1;
+        parents[newNode] = curNode;
+        updateSortedChildren(curNode, from);
+    }
+
+    // See NodeInterval#removeChild: the children of the removed node take its place
+    private void removeChild(final int curNode, final int toBeRemoved) {
+        final int index = indexOfChild(curNode, toBeRemoved);
+        if (index == NO_NODE) {
+            return;
+        }
+
+        final int nbPromoted = nbChildren[toBeRemoved];
+        ensureChildrenCapacity(curNode, nbChildren[curNode] - 1 + nbPromoted);
+        final int[] curChildren = children[curNode];
+        System.arraycopy(curChildren, index + 1, curChildren, index + nbPromoted, nbChildren[curNode] - index - 1);
+        System.arraycopy(children[toBeRemoved], 0, curChildren, index, nbPromoted);
+        for (int i = index; i < index + nbPromoted; i++) {
+            parents[curChildren[i]] = curNode;
+        }
+        nbChildren[curNode] += nbPromoted - 1;
+        sortedChildren[curNode] = computeSortedChildren(curNode);
+
+        parents[toBeRemoved] = NO_NODE;
+        children[toBeRemoved] = NO_CHILDREN;
+        nbChildren[toBeRemoved] = 0;
+    }
+
+    // See ItemsNodeInterval#build and NodeInterval#build
+    private void build(final int curNode, final Collection<Item> output, final UUID targetInvoiceId, final boolean mergeMode) {
+        if (nbChildren[curNode] == 0) {
+            items[curNode].buildFromItems(output, mergeMode);
+            return;
+        }
+
+        int curDay = starts[curNode];
+        LocalDate curDate = startDates[curNode];
+        for (int i = 0; i < nbChildren[curNode]; i++) {
+            final int curChild = children[curNode][i];
+            if (starts[curChild] > curDay) {
+                items[curNode].buildForMissingInterval(curDate, startDates[curChild], targetInvoiceId, output, mergeMode);
+            }
+            build(curChild, output, targetInvoiceId, mergeMode);
+            // Note that skip to child endDate, meaning that we always consider the child [start end]
+            curDay = ends[curChild];
+            curDate = endDates[curChild];
+        }
+
+        // Finally if there is a hole at the end, we build the missing piece from ourselves
+        if (curDay < ends[curNode]) {
+            items[curNode].buildForMissingInterval(curDate, endDates[curNode], targetInvoiceId, output, mergeMode);
+        }
+    }
+
+    // Depth first walk, see ItemsNodeInterval#pruneAndValidateTree for the details
+    private void pruneAndValidateTree(final int curNode) {
+        if (curNode != ROOT) {
+            pruneAndValidateNode(curNode);
+        }
+
+        int i = 0;
+        while (i < nbChildren[curNode]) {
+            final int curChild = children[curNode][i];
+            pruneAndValidateTree(curChild);
+            // The child may have removed itself from its parent
+            if (i < nbChildren[curNode] && children[curNode][i] == curChild) {
+                i++;
+            }
+        }
+    }
+
+    private void pruneAndValidateNode(final int curNode) {
+        final ItemsInterval curNodeItems = items[curNode];
+
+        // Case A:
+        final boolean isEmpty = curNodeItems.mergeCancellingPairs();
+        if (isEmpty && nbChildren[curNode] == 0) {
+            removeChild(parents[curNode], curNode);
+        }
+
+        for (final Item curCancelItem : curNodeItems.get_CANCEL_items()) {
+            final List<Integer> nodesForCancelledItem = getNodes(getNodesByItemId(), curCancelItem.getLinkedId());
+
+            // Sanity: cancelled items should only be in the same node or parents (as ItemsNodeInterval, only the subtree of the first child is verified)
+            if (nbChildren[curNode] > 0) {
+                final int firstChild = children[curNode][0];
+                for (final Integer node : nodesForCancelledItem) {
+                    if (isInSubtree(node, firstChild)) {
+                        final Item cancelledItem = items[node].getCancelledItemIfExists(curCancelItem.getLinkedId());
+                        Preconditions.checkState(cancelledItem == null, "Invalid cancelledItem=%s for cancelItem=%s", cancelledItem, curCancelItem);
+                    }
+                }
+            }
+
+            // Sanity: make sure the CANCEL item points to an ADD item
+            boolean foundCancelledItem = false;
+            for (final Integer node : nodesForCancelledItem) {
+                if (items[node].getCancelledItemIfExists(curCancelItem.getLinkedId()) != null) {
+                    foundCancelledItem = true;
+                    break;
+                }
+            }
+            Preconditions.checkState(foundCancelledItem, "Missing cancelledItem for cancelItem=%s", curCancelItem);
+        }
+
+        for (final Item curAddItem : curNodeItems.get_ADD_items()) {
+            // Sanity: verify the item hasn't been adjusted too much
+            if (nbChildren[curNode] > 0) {
+                final int firstChild = children[curNode][0];
+                BigDecimal totalRepaired = BigDecimal.ZERO;
+                int prevNode = NO_NODE;
+                for (final Integer node : getNodes(getNodesByLinkedId(), curAddItem.getId())) {
+                    // A node is listed once per CANCEL item
+                    if (node == prevNode) {
+                        continue;
+                    }
+                    prevNode = node;
+
+                    if (isInSubtree(node, firstChild)) {
+                        final Item cancellingItem = items[node].getCancellingItemIfExists(curAddItem.getId());
+                        if (cancellingItem != null) {
+                            totalRepaired = totalRepaired.add(cancellingItem.getAmount());
+                        }
+                    }
+                }
+                Preconditions.checkState(curAddItem.getNetAmount().compareTo(totalRepaired) >= 0, "Item %s overly repaired", curAddItem);
+            }
+        }
+
+        if (!isPartitionedByChildren(curNode)) {
+            return;
+        }
+
+        // Case B
+        final List<Item> curNodeItemsToBeRemoved = new ArrayList<Item>();
+        for (final Item curAddItem : curNodeItems.get_ADD_items()) {
+            // We already know the children partition fully the curNode interval, we just need to see if for each piece
+            // we find a matching CANCEL item pointing to this curAddItem
+            final int nbCurChildren = nbChildren[curNode];
+            final int[] childrenCancelling = new int[nbCurChildren];
+            final Item[] childrenCancellingItems = new Item[nbCurChildren];
+
+            // Note that because of previous iterations, curNode could now have no children
+            boolean foundFullRepairByParts = nbCurChildren > 0;
+            for (int i = 0; i < nbCurChildren; i++) {
+                final int curChild = children[curNode][i];
+                final Item cancellingItem = items[curChild].getCancellingItemIfExists(curAddItem.getId());
+                if (cancellingItem == null) {
+                    foundFullRepairByParts = false;
+                    break;
+                }
+                childrenCancelling[i] = curChild;
+                childrenCancellingItems[i] = cancellingItem;
+            }
+
+            if (foundFullRepairByParts) {
+                for (int i = 0; i < nbCurChildren; i++) {
+                    final ItemsInterval curChildItems = items[childrenCancelling[i]];
+                    curChildItems.remove(childrenCancellingItems[i]);
+                    if (curChildItems.getItems().isEmpty()) {
+                        removeChild(curNode, childrenCancelling[i]);
+                    }
+                }
+                curNodeItemsToBeRemoved.add(curAddItem);
+            }
+        }
+        // Execute the removal outside of the upper loop so as to not trigger ConcurrentModificationException
+        for (final Item curNodeItemsRemoval : curNodeItemsToBeRemoved) {
+            curNodeItems.remove(curNodeItemsRemoval);
+        }
+    }
+
+    private boolean isPartitionedByChildren(final int curNode) {
+        if (nbChildren[curNode] == 0) {
+            return false;
+        }
+
+        int curDay = starts[curNode];
+        for (int i = 0; i < nbChildren[curNode]; i++) {
+            final int curChild = children[curNode][i];
+            if (starts[curChild] > curDay) {
+                return false;
+            }
+            curDay = ends[curChild];
+        }
+        return curDay == ends[curNode];
+    }
+
+    private boolean isInSubtree(final int node, final int subtreeRoot) {
+        for (int curNode = node; curNode != NO_NODE; curNode = parents[curNode]) {
+            if (curNode == subtreeRoot) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isItemContained(final int curNode, final int newNode) {
+        return starts[newNode] >= starts[curNode] &&
+               starts[newNode] <= ends[curNode] &&
+               ends[newNode] >= starts[curNode] &&
+               ends[newNode] <= ends[curNode];
+    }
+
+    private boolean isItemOverlap(final int curNode, final int newNode) {
+        return (starts[newNode] < starts[curNode] && ends[newNode] >= ends[curNode]) ||
+               (starts[newNode] <= starts[curNode] && ends[newNode] > ends[curNode]);
+    }
+
+    private void computeRootInterval(final int curNode, final int newNode) {
+        if (curNode != ROOT) {
+            return;
+        }
+        if (starts[newNode] < starts[ROOT]) {
+            starts[ROOT] = starts[newNode];
+            startDates[ROOT] = startDates[newNode];
+        }
+        if (ends[newNode] > ends[ROOT]) {
+            ends[ROOT] = ends[newNode];
+            endDates[ROOT] = endDates[newNode];
+        }
+    }
+
+    private void updateSortedChildren(final int curNode, final int index) {
+        if (!sortedChildren[curNode]) {
+            return;
+        }
+        final int[] curChildren = children[curNode];
+        sortedChildren[curNode] = (index == 0 || isSorted(curChildren[index - 1], curChildren[index])) &&
+                                  (index == nbChildren[curNode] - 1 || isSorted(curChildren[index], curChildren[index + 1]));
+    }
+
+    private boolean computeSortedChildren(final int curNode) {
+        final int[] curChildren = children[curNode];
+        for (int i = 1; i < nbChildren[curNode]; i++) {
+            if (!isSorted(curChildren[i - 1], curChildren[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isSorted(final int previousNode, final int nextNode) {
+        return starts[previousNode] < starts[nextNode] && ends[previousNode] <= ends[nextNode];
+    }
+
+    private int indexOfChild(final int curNode, final int child) {
+        for (int i = 0; i < nbChildren[curNode]; i++) {
+            if (children[curNode][i] == child) {
+                return i;
+            }
+        }
+        return NO_NODE;
+    }
+
+    private void ensureChildrenCapacity(final int curNode, final int capacity) {
+        if (children[curNode].length < capacity) {
+            children[curNode] = Arrays.copyOf(children[curNode], Math.max(capacity, 2 * children[curNode].length));
+        }
+    }
+
+    private int newNode(@Nullable final Item item) {
+        if (nbNodes == parents.length) {
+            final int capacity = 2 * parents.length;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            startDates = Arrays.copyOf(startDates, capacity);
+            endDates = Arrays.copyOf(endDates, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            children = Arrays.copyOf(children, capacity);
+            nbChildren = Arrays.copyOf(nbChildren, capacity);
+            sortedChildren = Arrays.copyOf(sortedChildren, capacity);
+            items = Arrays.copyOf(items, capacity);
+        }
+
+        final int node = nbNodes++;
+        if (item != null) {
+            starts[node] = toEpochDay(item.getStartDate());
+            ends[node] = toEpochDay(item.getEndDate());
+            startDates[node] = item.getStartDate();
+            endDates[node] = item.getEndDate();
+        }
+        parents[node] = NO_NODE;
+        children[node] = NO_CHILDREN;
+        nbChildren[node] = 0;
+        sortedChildren[node] = true;
+        items[node] = new IndexedItemsInterval(node, item);
+        return node;
+    }
+
+    private Map<UUID, List<Integer>> getNodesByItemId() {
+        indexItems();
+        return nodesByItemId;
+    }
+
+    private Map<UUID, List<Integer>> getNodesByLinkedId() {
+        indexItems();
+        return nodesByLinkedId;
+    }
+
+    private void indexItems() {
+        if (nodesByItemId != null) {
+            return;
+        }
+        nodesByItemId = new HashMap<UUID, List<Integer>>();
+        nodesByLinkedId = new HashMap<UUID, List<Integer>>();
+        indexItems(ROOT);
+    }
+
+    private void indexItems(final int curNode) {
+        for (final Item item : items[curNode].getItems()) {
+            indexNode(nodesByItemId, item.getId(), curNode);
+            if (item.getAction() == ItemAction.CANCEL && item.getLinkedId() != null) {
+                indexNode(nodesByLinkedId, item.getLinkedId(), curNode);
+            }
+        }
+        for (int i = 0; i < nbChildren[curNode]; i++) {
+            indexItems(children[curNode][i]);
+        }
+    }
+
+    private static void indexNode(final Map<UUID, List<Integer>> nodesById, final UUID id, final int node) {
+        List<Integer> nodes = nodesById.get(id);
+        if (nodes == null) {
+            nodes = new ArrayList<Integer>(1);
+            nodesById.put(id, nodes);
+        }
+        nodes.add(node);
+    }
+
+    private static List<Integer> getNodes(final Map<UUID, List<Integer>> nodesById, final UUID id) {
+        final List<Integer> nodes = nodesById.get(id);
+        return nodes == null ? ImmutableList.<Integer>of() : nodes;
+    }
+
+    private static int toEpochDay(final LocalDate date) {
+        return Days.daysBetween(EPOCH, date).getDays();
+    }
+
+    // Value equality: same intervals (children are ordered by start date), holding the same items
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final ItemsIntervalIndex that = (ItemsIntervalIndex) o;
+        return isSameNode(ROOT, that, ROOT);
+    }
+
+    private boolean isSameNode(final int curNode, final ItemsIntervalIndex that, final int thatNode) {
+        if (!Objects.equal(startDates[curNode], that.startDates[thatNode]) ||
+            !Objects.equal(endDates[curNode], that.endDates[thatNode]) ||
+            !items[curNode].getItems().equals(that.items[thatNode].getItems()) ||
+            nbChildren[curNode] != that.nbChildren[thatNode]) {
+            return false;
+        }
+        for (int i = 0; i < nbChildren[curNode]; i++) {
+            if (!isSameNode(children[curNode][i], that, children[thatNode][i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode(ROOT);
+    }
+
+    private int hashCode(final int curNode) {
+        int result = startDates[curNode] != null ? startDates[curNode].hashCode() : 0;
+        result = 31 * result + (endDates[curNode] != null ? endDates[curNode].hashCode() : 0);
+        result = 31 * result + items[curNode].getItems().hashCode();
+        for (int i = 0; i < nbChildren[curNode]; i++) {
+            result = 31 * result + hashCode(children[curNode][i]);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("ItemsIntervalIndex{");
+        sb.append("nodes=[");
+        appendNode(sb, ROOT);
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    private void appendNode(final StringBuilder sb, final int curNode) {
+        if (curNode != ROOT) {
+            sb.append("{start=").append(startDates[curNode])
+              .append(", end=").append(endDates[curNode])
+              .append(", items=").append(items[curNode])
+              .append("}");
+        }
+        for (int i = 0; i < nbChildren[curNode]; i++) {
+            if (curNode != ROOT || i > 0) {
+                sb.append(", ");
+            }
+            appendNode(sb, children[curNode][i]);
+        }
+    }
+
+    private interface AddNodeCallback {
+
+        public boolean onExistingNode(final int existingNode);
+
+        public boolean shouldInsertNode(final int insertionNode);
+    }
+
+    private final class IndexedItemsInterval extends ItemsInterval {
+
+        private final int node;
+
+        private IndexedItemsInterval(final int node, @Nullable final Item initialItem) {
+            super(null, initialItem);
+            this.node = node;
+        }
+
+        @Override
+        protected ItemsInterval getParentItemsInterval() {
+            final int parent = parents[node];
+            return parent == NO_NODE ? null : items[parent];
+        }
+    }
+}
@@ -51,8 +51,11 @@ public class SubscriptionItemTree {
 
     private final UUID targetInvoiceId;
     private final UUID subscriptionId;
+    private final boolean useIntervalIndex;
 
-    private ItemsNodeInterval root =new ItemsNodeInterval();
+    private ItemsNodeInterval root;
+    // Array backed alternative to the root tree
+    private ItemsIntervalIndex intervalIndex;
     private boolean isBuilt = false;
     private boolean isMerged = false;
 
@@ -78,8 +81,14 @@ public class SubscriptionItemTree {
 
     // targetInvoiceId is the new invoice id being generated
     public SubscriptionItemTree(final UUID subscriptionId, final UUID targetInvoiceId) {
+        this(subscriptionId, targetInvoiceId, false);
+    }
+
+    public SubscriptionItemTree(final UUID subscriptionId, final UUID targetInvoiceId, final boolean useIntervalIndex) {
         this.subscriptionId = subscriptionId;
         this.targetInvoiceId = targetInvoiceId;
+        this.useIntervalIndex = useIntervalIndex;
+        resetTree();
     }
 
     /**
@@ -96,12 +105,12 @@ public class SubscriptionItemTree {
                     // Nothing to repair -- https://github.com/killbill/killbill/issues/783
                     existingIgnoredItems.add(invoiceItem);
                 } else {
-                    root.addExistingItem(new ItemsNodeInterval(root, new Item(invoiceItem, targetInvoiceId, ItemAction.ADD)));
+                    addExistingItem(new Item(invoiceItem, targetInvoiceId, ItemAction.ADD));
                 }
                 break;
 
             case REPAIR_ADJ:
-                root.addExistingItem(new ItemsNodeInterval(root, new Item(invoiceItem, targetInvoiceId, ItemAction.CANCEL)));
+                addExistingItem(new Item(invoiceItem, targetInvoiceId, ItemAction.CANCEL));
                 break;
 
             case FIXED:
@@ -132,7 +141,7 @@ public class SubscriptionItemTree {
                 }
             }).orNull();
             if (ignoredLinkedItem == null) {
-                final Item fullyAdjustedItem = root.addAdjustment(item, targetInvoiceId);
+                final Item fullyAdjustedItem = intervalIndex != null ? intervalIndex.addAdjustment(item, targetInvoiceId) : root.addAdjustment(item, targetInvoiceId);
                 if (fullyAdjustedItem != null) {
                     existingFullyAdjustedItems.add(fullyAdjustedItem);
                 }
@@ -140,7 +149,11 @@ public class SubscriptionItemTree {
         }
         pendingItemAdj.clear();
 
-        root.buildForExistingItems(items, targetInvoiceId);
+        if (intervalIndex != null) {
+            intervalIndex.buildForExistingItems(items, targetInvoiceId);
+        } else {
+            root.buildForExistingItems(items, targetInvoiceId);
+        }
         isBuilt = true;
     }
 
@@ -156,10 +169,10 @@ public class SubscriptionItemTree {
             build();
         }
 
-        root = new ItemsNodeInterval();
+        resetTree();
         for (final Item item : items) {
             Preconditions.checkState(item.getAction() == ItemAction.ADD);
-            root.addExistingItem(new ItemsNodeInterval(root, new Item(item, reverse ? ItemAction.CANCEL : ItemAction.ADD)));
+            addExistingItem(new Item(item, reverse ? ItemAction.CANCEL : ItemAction.ADD));
         }
         items.clear();
         isBuilt = false;
@@ -187,7 +200,8 @@ public class SubscriptionItemTree {
         switch (invoiceItem.getInvoiceItemType()) {
             case RECURRING:
                 // merged means we've either matched the proposed to an existing, or triggered a repair
-                final boolean merged = root.addProposedItem(new ItemsNodeInterval(root, new Item(invoiceItem, targetInvoiceId, ItemAction.ADD)));
+                final Item proposedItem = new Item(invoiceItem, targetInvoiceId, ItemAction.ADD);
+                final boolean merged = intervalIndex != null ? intervalIndex.addProposedItem(proposedItem) : root.addProposedItem(new ItemsNodeInterval(root, proposedItem));
                 if (!merged) {
                     items.add(new Item(invoiceItem, targetInvoiceId, ItemAction.ADD));
                 }
@@ -205,7 +219,11 @@ public class SubscriptionItemTree {
     // Build tree post merge
     public void buildForMerge() {
         Preconditions.checkState(!isBuilt, "Tree already built");
-        root.mergeExistingAndProposed(items, targetInvoiceId);
+        if (intervalIndex != null) {
+            intervalIndex.mergeExistingAndProposed(items, targetInvoiceId);
+        } else {
+            root.mergeExistingAndProposed(items, targetInvoiceId);
+        }
         isBuilt = true;
         isMerged = true;
     }
@@ -256,6 +274,22 @@ public class SubscriptionItemTree {
         return result;
     }
 
+    private void resetTree() {
+        if (useIntervalIndex) {
+            intervalIndex = new ItemsIntervalIndex();
+        } else {
+            root = new ItemsNodeInterval();
+        }
+    }
+
+    private void addExistingItem(final Item item) {
+        if (intervalIndex != null) {
+            intervalIndex.addExistingItem(item);
+        } else {
+            root.addExistingItem(new ItemsNodeInterval(root, item));
+        }
+    }
+
     // Verify there is no double billing, and no double repair (credits)
     private void checkItemsListState(final List<InvoiceItem> orderedList) {
 
@@ -291,7 +325,7 @@ public class SubscriptionItemTree {
         final StringBuilder sb = new StringBuilder("SubscriptionItemTree{");
         sb.append("targetInvoiceId=").append(targetInvoiceId);
         sb.append(", subscriptionId=").append(subscriptionId);
-        sb.append(", root=").append(root);
+        sb.append(", root=").append(intervalIndex != null ? intervalIndex : root);
         sb.append(", isBuilt=").append(isBuilt);
         sb.append(", isMerged=").append(isMerged);
         sb.append(", items=").append(items);
@@ -317,6 +351,9 @@ public class SubscriptionItemTree {
         if (root != null ? !root.equals(that.root) : that.root != null) {
             return false;
         }
+        if (intervalIndex != null ? !intervalIndex.equals(that.intervalIndex) : that.intervalIndex != null) {
+            return false;
+        }
         if (subscriptionId != null ? !subscriptionId.equals(that.subscriptionId) : that.subscriptionId != null) {
             return false;
         }
@@ -328,6 +365,7 @@ public class SubscriptionItemTree {
     public int hashCode() {
         int result = subscriptionId != null ? subscriptionId.hashCode() : 0;
         result = 31 * result + (root != null ? root.hashCode() : 0);
+        result = 31 * result + (intervalIndex != null ? intervalIndex.hashCode() : 0);
         return result;
     }
 
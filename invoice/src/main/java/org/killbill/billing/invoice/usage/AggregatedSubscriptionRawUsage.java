@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.usage;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.usage.InternalUserApi;
+import org.killbill.billing.usage.RawUsage;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Sets;
+
+/**
+ * Usage of a subscription, aggregated per unit type and day, which is streamed out of the database on each iteration
+ * (the aggregated rows don't carry any tracking id, these are looked up separately through getTrackingIds).
+ */
+public class AggregatedSubscriptionRawUsage implements Iterable<RawUsage> {
+
+    private final InternalUserApi usageApi;
+    private final UUID subscriptionId;
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private final Set<String> unitTypes;
+    private final InternalTenantContext internalTenantContext;
+
+    public AggregatedSubscriptionRawUsage(final InternalUserApi usageApi,
+                                          final UUID subscriptionId,
+                                          final LocalDate startDate,
+                                          final LocalDate endDate,
+                                          final Set<String> unitTypes,
+                                          final InternalTenantContext internalTenantContext) {
+        this.usageApi = usageApi;
+        this.subscriptionId = subscriptionId;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.unitTypes = unitTypes;
+        this.internalTenantContext = internalTenantContext;
+    }
+
+    @Override
+    public Iterator<RawUsage> iterator() {
+        return getRawUsage(unitTypes, startDate, endDate);
+    }
+
+    /**
+     * Usage for the given unit types in [from, to), sorted by day and unit type.
+     */
+    public Iterator<RawUsage> getRawUsage(final Set<String> requestedUnitTypes, final LocalDate from, final LocalDate to) {
+        final Set<String> filteredUnitTypes = Sets.intersection(unitTypes, requestedUnitTypes);
+        final LocalDate filteredFrom = from.compareTo(startDate) > 0 ? from : startDate;
+        final LocalDate filteredTo = to.compareTo(endDate) < 0 ? to : endDate;
+        if (filteredUnitTypes.isEmpty() || filteredFrom.compareTo(filteredTo) >= 0) {
+            return Iterators.<RawUsage>emptyIterator();
+        }
+        return usageApi.getAggregatedRawUsageForSubscription(subscriptionId, filteredFrom, filteredTo, filteredUnitTypes, internalTenantContext);
+    }
+
+    /**
+     * Tracking ids of the usage for the given unit types in [from, to), one entry per unit type and day.
+     */
+    public List<RawUsage> getTrackingIds(final Set<String> requestedUnitTypes, final LocalDate from, final LocalDate to) {
+        final Set<String> filteredUnitTypes = Sets.intersection(unitTypes, requestedUnitTypes);
+        final LocalDate filteredFrom = from.compareTo(startDate) > 0 ? from : startDate;
+        final LocalDate filteredTo = to.compareTo(endDate) < 0 ? to : endDate;
+        if (filteredUnitTypes.isEmpty() || filteredFrom.compareTo(filteredTo) >= 0) {
+            return ImmutableList.<RawUsage>of();
+        }
+        return usageApi.getTrackingIdsForSubscription(subscriptionId, filteredFrom, filteredTo, filteredUnitTypes, internalTenantContext);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("AggregatedSubscriptionRawUsage{");
+        sb.append("subscriptionId=").append(subscriptionId);
+        sb.append(", startDate=").append(startDate);
+        sb.append(", endDate=").append(endDate);
+        sb.append(", unitTypes=").append(unitTypes);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -65,7 +65,7 @@ public class ContiguousIntervalConsumableUsageInArrear extends ContiguousInterva
     public ContiguousIntervalConsumableUsageInArrear(final Usage usage,
                                                      final UUID accountId,
                                                      final UUID invoiceId,
-                                                     final List<RawUsage> rawSubscriptionUsage,
+                                                     final Iterable<RawUsage> rawSubscriptionUsage,
                                                      final Set<TrackingRecordId> existingTrackingId,
                                                      final LocalDate targetDate,
                                                      final LocalDate rawUsageStartDate,
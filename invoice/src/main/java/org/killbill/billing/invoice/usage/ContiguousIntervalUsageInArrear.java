@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -42,6 +43,7 @@ import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.invoice.api.InvoiceItemType;
 import org.killbill.billing.invoice.generator.BillingIntervalDetail;
 import org.killbill.billing.invoice.generator.InvoiceWithMetadata.TrackingRecordId;
+import org.killbill.billing.invoice.generator.InvoiceWithMetadata.TrackingRecordId.SimilarRecordKey;
 import org.killbill.billing.invoice.model.UsageInvoiceItem;
 import org.killbill.billing.invoice.usage.details.UsageInArrearAggregate;
 import org.killbill.billing.junction.BillingEvent;
@@ -61,8 +63,8 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 
 import static org.killbill.billing.invoice.usage.UsageUtils.getCapacityInArrearUnitTypes;
 import static org.killbill.billing.invoice.usage.UsageUtils.getConsumableInArrearUnitTypes;
@@ -80,7 +82,7 @@ public abstract class ContiguousIntervalUsageInArrear {
 
     protected final Usage usage;
     protected final Set<String> unitTypes;
-    protected final List<RawUsage> rawSubscriptionUsage;
+    protected final Iterable<RawUsage> rawSubscriptionUsage;
     protected final Set<TrackingRecordId> allExistingTrackingIds;
     protected final LocalDate targetDate;
     protected final UUID accountId;
@@ -94,7 +96,7 @@ public abstract class ContiguousIntervalUsageInArrear {
     public ContiguousIntervalUsageInArrear(final Usage usage,
                                            final UUID accountId,
                                            final UUID invoiceId,
-                                           final List<RawUsage> rawSubscriptionUsage,
+                                           final Iterable<RawUsage> rawSubscriptionUsage,
                                            final Set<TrackingRecordId> existingTrackingIds,
                                            final LocalDate targetDate,
                                            final LocalDate rawUsageStartDate,
@@ -104,7 +106,7 @@ public abstract class ContiguousIntervalUsageInArrear {
         this.accountId = accountId;
         this.invoiceId = invoiceId;
         this.unitTypes = usage.getUsageType() == UsageType.CAPACITY ? getCapacityInArrearUnitTypes(usage) : getConsumableInArrearUnitTypes(usage);
-        this.rawSubscriptionUsage = filterInputRawUsage(rawSubscriptionUsage);
+        this.rawSubscriptionUsage = rawSubscriptionUsage;
         this.allExistingTrackingIds = existingTrackingIds;
         this.targetDate = targetDate;
         this.rawUsageStartDate = rawUsageStartDate;
@@ -199,21 +201,15 @@ public abstract class ContiguousIntervalUsageInArrear {
 
         final Set<TrackingRecordId> allTrackingIds = allUsageWithTracking.getTrackingIds();
 
-        final Set<TrackingRecordId> existingTrackingIds = extractTrackingIds(allExistingTrackingIds);
+        final Set<SimilarRecordKey> existingTrackingRecordKeys = extractTrackingRecordKeys(allExistingTrackingIds);
 
-
-        final Set<TrackingRecordId> newTrackingIds = Sets.filter(allTrackingIds, new Predicate<TrackingRecordId>() {
-            @Override
-            public boolean apply(final TrackingRecordId allRecord) {
-
-                return ! Iterables.any(existingTrackingIds, new Predicate<TrackingRecordId>() {
-                    @Override
-                    public boolean apply(final TrackingRecordId existingRecord) {
-                        return existingRecord.isSimilarRecord(allRecord);
-                    }
-                });
+        // Only keep the records which haven't been billed yet (regardless of the invoice they were attached to)
+        final Set<TrackingRecordId> newTrackingIds = new LinkedHashSet<TrackingRecordId>();
+        for (final TrackingRecordId trackingRecordId : allTrackingIds) {
+            if (!existingTrackingRecordKeys.contains(trackingRecordId.getSimilarRecordKey())) {
+                newTrackingIds.add(trackingRecordId);
             }
-        });
+        }
 
 
         // Each RolledUpUsage 'ru' is for a specific time period and across all units
@@ -284,7 +280,7 @@ public abstract class ContiguousIntervalUsageInArrear {
         final List<RolledUpUsage> result = new ArrayList<RolledUpUsage>();
         final Set<TrackingRecordId> trackingIds = new HashSet<>();
 
-        final Iterator<RawUsage> rawUsageIterator = rawSubscriptionUsage.iterator();
+        final Iterator<RawUsage> rawUsageIterator = getInputRawUsage();
         if (!rawUsageIterator.hasNext()) {
             return new RolledUpUnitsWithTracking(getEmptyRolledUpUsage(), ImmutableSet.of());
         }
@@ -326,9 +322,9 @@ public abstract class ContiguousIntervalUsageInArrear {
                 if (prevRawUsage != null) {
                     if (prevRawUsage.getDate().compareTo(prevDate) >= 0 && prevRawUsage.getDate().compareTo(curDate) < 0) {
                         final Long currentAmount = perRangeUnitToAmount.get(prevRawUsage.getUnitType());
-                        final Long updatedAmount = computeUpdatedAmount(currentAmount, prevRawUsage.getAmount());
+                        final Long updatedAmount = computeUpdatedAmount(currentAmount, prevRawUsage);
                         perRangeUnitToAmount.put(prevRawUsage.getUnitType(), updatedAmount);
-                        trackingIds.add(new TrackingRecordId(prevRawUsage.getTrackingId(), invoiceId, prevRawUsage.getSubscriptionId(), prevRawUsage.getUnitType(), prevRawUsage.getDate()));
+                        addTrackingIds(trackingIds, prevRawUsage);
                         prevRawUsage = null;
                     }
                 }
@@ -348,9 +344,9 @@ public abstract class ContiguousIntervalUsageInArrear {
                         }
 
                         final Long currentAmount = perRangeUnitToAmount.get(curRawUsage.getUnitType());
-                        final Long updatedAmount = computeUpdatedAmount(currentAmount, curRawUsage.getAmount());
+                        final Long updatedAmount = computeUpdatedAmount(currentAmount, curRawUsage);
                         perRangeUnitToAmount.put(curRawUsage.getUnitType(), updatedAmount);
-                        trackingIds.add(new TrackingRecordId(curRawUsage.getTrackingId(), invoiceId, curRawUsage.getSubscriptionId(), curRawUsage.getUnitType(), curRawUsage.getDate()));
+                        addTrackingIds(trackingIds, curRawUsage);
                     }
                 }
 
@@ -365,6 +361,14 @@ public abstract class ContiguousIntervalUsageInArrear {
             }
             prevDate = curDate;
         }
+
+        // The aggregated usage doesn't carry the tracking ids: look them up once, for the whole interval
+        if (rawSubscriptionUsage instanceof AggregatedSubscriptionRawUsage) {
+            final List<RawUsage> rawUsageWithTrackingIds = ((AggregatedSubscriptionRawUsage) rawSubscriptionUsage).getTrackingIds(unitTypes, transitionTimes.get(0), transitionTimes.get(transitionTimes.size() - 1));
+            for (final RawUsage rawUsage : rawUsageWithTrackingIds) {
+                addTrackingIds(trackingIds, rawUsage);
+            }
+        }
         return new RolledUpUnitsWithTracking(result, trackingIds);
     }
 
@@ -385,40 +389,51 @@ public abstract class ContiguousIntervalUsageInArrear {
      * Based on usage type compute new amount
      *
      * @param currentAmount
-     * @param newAmount
+     * @param rawUsage
      * @return
      */
-    private Long computeUpdatedAmount(@Nullable Long currentAmount, @Nullable Long newAmount) {
+    private Long computeUpdatedAmount(@Nullable Long currentAmount, final RawUsage rawUsage) {
 
         currentAmount = currentAmount == null ? 0L : currentAmount;
-        newAmount = newAmount == null ? 0L : newAmount;
 
         if (usage.getUsageType() == UsageType.CAPACITY) {
+            // Compacted usage records carry the max of the original records
+            final Long newAmount = rawUsage.getMaxAmount() == null ? 0L : rawUsage.getMaxAmount();
             return Math.max(currentAmount, newAmount);
         } else /* UsageType.CONSUMABLE */ {
+            final Long newAmount = rawUsage.getAmount() == null ? 0L : rawUsage.getAmount();
             return currentAmount + newAmount;
         }
     }
 
-    private List<RawUsage> filterInputRawUsage(final List<RawUsage> rawSubscriptionUsage) {
-        final Iterable<RawUsage> filteredList = Iterables.filter(rawSubscriptionUsage, new Predicate<RawUsage>() {
+    private void addTrackingIds(final Set<TrackingRecordId> trackingIds, final RawUsage rawUsage) {
+        // Aggregated raw usage carries the tracking ids of all the records of that day
+        for (final String trackingId : rawUsage.getTrackingIds()) {
+            trackingIds.add(new TrackingRecordId(trackingId, invoiceId, rawUsage.getSubscriptionId(), rawUsage.getUnitType(), rawUsage.getDate()));
+        }
+    }
+
+    private Iterator<RawUsage> getInputRawUsage() {
+        if (rawSubscriptionUsage instanceof AggregatedSubscriptionRawUsage) {
+            // Only stream the usage of that section
+            return ((AggregatedSubscriptionRawUsage) rawSubscriptionUsage).getRawUsage(unitTypes, transitionTimes.get(0), transitionTimes.get(transitionTimes.size() - 1));
+        }
+        return Iterators.filter(rawSubscriptionUsage.iterator(), new Predicate<RawUsage>() {
             @Override
             public boolean apply(final RawUsage input) {
                 return unitTypes.contains(input.getUnitType());
             }
         });
-        return ImmutableList.copyOf(filteredList);
     }
 
-    private Set<TrackingRecordId> extractTrackingIds(final Set<TrackingRecordId> input) {
-
-        return ImmutableSet.copyOf(Iterables.filter(input, new Predicate<TrackingRecordId>() {
-            @Override
-            public boolean apply(final TrackingRecordId input) {
-                return input.getSubscriptionId().equals(getSubscriptionId());
+    private Set<SimilarRecordKey> extractTrackingRecordKeys(final Set<TrackingRecordId> input) {
+        final Set<SimilarRecordKey> result = new HashSet<SimilarRecordKey>();
+        for (final TrackingRecordId trackingRecordId : input) {
+            if (trackingRecordId.getSubscriptionId().equals(getSubscriptionId())) {
+                result.add(trackingRecordId.getSimilarRecordKey());
             }
-        }));
-
+        }
+        return result;
     }
 
     /**
@@ -17,18 +17,23 @@
 
 package org.killbill.billing.invoice.usage;
 
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 
 import org.joda.time.LocalDate;
 import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.catalog.api.BillingMode;
 import org.killbill.billing.catalog.api.BillingPeriod;
 import org.killbill.billing.catalog.api.Usage;
+import org.killbill.billing.catalog.api.UsageType;
 import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.invoice.dao.InvoiceDao;
 import org.killbill.billing.invoice.dao.InvoiceTrackingModelDao;
@@ -44,10 +49,14 @@ import org.slf4j.LoggerFactory;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Ordering;
 
+import static org.killbill.billing.invoice.usage.UsageUtils.getCapacityInArrearUnitTypes;
+import static org.killbill.billing.invoice.usage.UsageUtils.getConsumableInArrearUnitTypes;
+
 public class RawUsageOptimizer {
 
     private static final Ordering<InvoiceItem> USAGE_ITEM_ORDERING = Ordering.natural()
@@ -58,6 +67,23 @@ public class RawUsageOptimizer {
                                                                                  }
                                                                              });
 
+    private static final Comparator<RawUsage> RAW_USAGE_DATE_COMPARATOR = new Comparator<RawUsage>() {
+        @Override
+        public int compare(final RawUsage o1, final RawUsage o2) {
+            int compared = o1.getDate().compareTo(o2.getDate());
+            if (compared != 0) {
+                return compared;
+            } else {
+                compared = o1.getUnitType().compareTo(o2.getUnitType());
+                if (compared != 0) {
+                    return compared;
+                } else {
+                    return o1.hashCode() != o2.hashCode() ? o1.hashCode() - o2.hashCode() : 0;
+                }
+            }
+        }
+    };
+
     private static final Logger log = LoggerFactory.getLogger(RawUsageOptimizer.class);
 
     private final InternalUserApi usageApi;
@@ -75,7 +101,7 @@ public class RawUsageOptimizer {
         final LocalDate targetStartDate = config.getMaxRawUsagePreviousPeriod(internalCallContext) >= 0 ? getOptimizedRawUsageStartDate(firstEventStartDate, targetDate, existingUsageItems, knownUsage, internalCallContext) : firstEventStartDate;
         log.debug("ConsumableInArrear accountRecordId='{}', rawUsageStartDate='{}', firstEventStartDate='{}'",
                   internalCallContext.getAccountRecordId(), targetStartDate, firstEventStartDate);
-        final List<RawUsage> rawUsageData = usageApi.getRawUsageForAccount(targetStartDate, targetDate, internalCallContext);
+        final Function<UUID, Iterable<RawUsage>> rawUsageData = config.isRawUsageAggregationEnabled() ? getAggregatedRawUsage(targetStartDate, targetDate, knownUsage, internalCallContext) : getRawUsage(targetStartDate, targetDate, internalCallContext);
 
         final List<InvoiceTrackingModelDao> trackingIds = invoiceDao.getTrackingsByDateRange(targetStartDate, targetDate, internalCallContext);
         final Set<TrackingRecordId> existingTrackingIds = ImmutableSet.copyOf(Iterables.transform(trackingIds, new Function<InvoiceTrackingModelDao, TrackingRecordId>() {
@@ -87,6 +113,44 @@ public class RawUsageOptimizer {
         return new RawUsageOptimizerResult(targetStartDate, rawUsageData, existingTrackingIds);
     }
 
+    private Function<UUID, Iterable<RawUsage>> getRawUsage(final LocalDate targetStartDate, final LocalDate targetDate, final InternalCallContext internalCallContext) {
+        final List<RawUsage> rawUsage = usageApi.getRawUsageForAccount(targetStartDate, targetDate, internalCallContext);
+        return new Function<UUID, Iterable<RawUsage>>() {
+            @Override
+            public Iterable<RawUsage> apply(final UUID subscriptionId) {
+                // Extract raw usage for that subscription and sort it by date
+                return Ordering.<RawUsage>from(RAW_USAGE_DATE_COMPARATOR).sortedCopy(Iterables.filter(rawUsage, new Predicate<RawUsage>() {
+                    @Override
+                    public boolean apply(final RawUsage input) {
+                        return input.getSubscriptionId().equals(subscriptionId);
+                    }
+                }));
+            }
+        };
+    }
+
+    private Function<UUID, Iterable<RawUsage>> getAggregatedRawUsage(final LocalDate targetStartDate, final LocalDate targetDate, final Map<String, Usage> knownUsage, final InternalCallContext internalCallContext) {
+        final Set<String> unitTypes = new HashSet<String>();
+        for (final Usage usage : knownUsage.values()) {
+            if (usage.getBillingMode() != BillingMode.IN_ARREAR) {
+                continue;
+            }
+            if (usage.getUsageType() == UsageType.CAPACITY) {
+                unitTypes.addAll(getCapacityInArrearUnitTypes(usage));
+            } else {
+                unitTypes.addAll(getConsumableInArrearUnitTypes(usage));
+            }
+        }
+
+        // Nothing is loaded upfront: each usage interval streams the usage of its subscription, one entry per unit type and day
+        return new Function<UUID, Iterable<RawUsage>>() {
+            @Override
+            public Iterable<RawUsage> apply(final UUID subscriptionId) {
+                return new AggregatedSubscriptionRawUsage(usageApi, subscriptionId, targetStartDate, targetDate, unitTypes, internalCallContext);
+            }
+        };
+    }
+
     @VisibleForTesting
     LocalDate getOptimizedRawUsageStartDate(final LocalDate firstEventStartDate, final LocalDate targetDate, final Iterable<InvoiceItem> existingUsageItems, final Map<String, Usage> knownUsage, final InternalCallContext internalCallContext) {
         if (!existingUsageItems.iterator().hasNext()) {
@@ -165,10 +229,10 @@ public class RawUsageOptimizer {
     public static class RawUsageOptimizerResult {
 
         private final LocalDate rawUsageStartDate;
-        private final List<RawUsage> rawUsage;
+        private final Function<UUID, Iterable<RawUsage>> rawUsage;
         private final Set<TrackingRecordId> existingTrackingIds;
 
-        public RawUsageOptimizerResult(final LocalDate rawUsageStartDate, final List<RawUsage> rawUsage, final Set<TrackingRecordId> existingTrackingIds) {
+        public RawUsageOptimizerResult(final LocalDate rawUsageStartDate, final Function<UUID, Iterable<RawUsage>> rawUsage, final Set<TrackingRecordId> existingTrackingIds) {
             this.rawUsageStartDate = rawUsageStartDate;
             this.rawUsage = rawUsage;
             this.existingTrackingIds = existingTrackingIds;
@@ -178,8 +242,11 @@ public class RawUsageOptimizer {
             return rawUsageStartDate;
         }
 
-        public List<RawUsage> getRawUsage() {
-            return rawUsage;
+        /**
+         * Raw usage of that subscription, sorted by date.
+         */
+        public Iterable<RawUsage> getRawUsage(final UUID subscriptionId) {
+            return rawUsage.apply(subscriptionId);
         }
 
         public Set<TrackingRecordId> getExistingTrackingIds() {
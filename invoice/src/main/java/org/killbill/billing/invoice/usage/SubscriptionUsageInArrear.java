@@ -18,7 +18,6 @@
 package org.killbill.billing.invoice.usage;
 
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -45,39 +44,19 @@ import org.killbill.billing.util.config.definition.InvoiceConfig.UsageDetailMode
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
-import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Ordering;
 
 /**
  * There is one such class created for each subscriptionId referenced in the billingEvents.
  */
 public class SubscriptionUsageInArrear {
 
-    private static final Comparator<RawUsage> RAW_USAGE_DATE_COMPARATOR = new Comparator<RawUsage>() {
-        @Override
-        public int compare(final RawUsage o1, final RawUsage o2) {
-            int compared = o1.getDate().compareTo(o2.getDate());
-            if (compared != 0) {
-                return compared;
-            } else {
-                compared = o1.getUnitType().compareTo(o2.getUnitType());
-                if (compared != 0) {
-                    return compared;
-                } else {
-                    return o1.hashCode() != o2.hashCode() ? o1.hashCode() - o2.hashCode() : 0;
-                }
-            }
-        }
-    };
-
     private final UUID accountId;
     private final UUID invoiceId;
     private final List<BillingEvent> subscriptionBillingEvents;
     private final LocalDate targetDate;
-    private final List<RawUsage> rawSubscriptionUsage;
+    private final Iterable<RawUsage> rawSubscriptionUsage;
     private final Set<TrackingRecordId> existingTrackingIds;
     private final LocalDate rawUsageStartDate;
     private final InternalTenantContext internalTenantContext;
@@ -86,7 +65,7 @@ public class SubscriptionUsageInArrear {
     public SubscriptionUsageInArrear(final UUID accountId,
                                      final UUID invoiceId,
                                      final List<BillingEvent> subscriptionBillingEvents,
-                                     final List<RawUsage> rawUsage,
+                                     final Iterable<RawUsage> rawSubscriptionUsage,
                                      final Set<TrackingRecordId> existingTrackingIds,
                                      final LocalDate targetDate,
                                      final LocalDate rawUsageStartDate,
@@ -99,13 +78,8 @@ public class SubscriptionUsageInArrear {
         this.targetDate = targetDate;
         this.rawUsageStartDate = rawUsageStartDate;
         this.internalTenantContext = internalTenantContext;
-        // Extract raw usage for that subscription and sort it by date
-        this.rawSubscriptionUsage = Ordering.<RawUsage>from(RAW_USAGE_DATE_COMPARATOR).sortedCopy(Iterables.filter(rawUsage, new Predicate<RawUsage>() {
-            @Override
-            public boolean apply(final RawUsage input) {
-                return input.getSubscriptionId().equals(subscriptionBillingEvents.get(0).getSubscription().getId());
-            }
-        }));
+        // Raw usage for that subscription, sorted by date
+        this.rawSubscriptionUsage = rawSubscriptionUsage;
         this.existingTrackingIds = existingTrackingIds;
         this.usageDetailMode = usageDetailMode;
     }
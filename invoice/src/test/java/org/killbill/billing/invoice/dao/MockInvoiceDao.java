@@ -172,6 +172,50 @@ public class MockInvoiceDao extends MockEntityDaoBase<InvoiceModelDao, Invoice,
         return invoicesForAccount;
     }
 
+    @Override
+    public List<InvoiceModelDao> getInvoicesByAccountWithServicePeriodAfter(final LocalDate cutoffDate, final InternalTenantContext context) {
+        final List<InvoiceModelDao> invoicesForAccount = new ArrayList<InvoiceModelDao>();
+        synchronized (monitor) {
+            final UUID accountId = accountRecordIds.inverse().get(context.getAccountRecordId());
+            for (final InvoiceModelDao invoice : getAll(context)) {
+                if (accountId.equals(invoice.getAccountId()) && !invoice.isMigrated() && !InvoiceStatus.VOID.equals(invoice.getStatus()) &&
+                    (!invoice.getTargetDate().isBefore(cutoffDate) ||
+                     InvoiceStatus.DRAFT.equals(invoice.getStatus()) ||
+                     hasItemWithServicePeriodAfter(invoice, cutoffDate))) {
+                    invoicesForAccount.add(invoice);
+                }
+            }
+        }
+
+        return invoicesForAccount;
+    }
+
+    // Mirrors the SQL: items ending on or after the cutoff date, or linked to such an item, or with such an adjustment
+    private boolean hasItemWithServicePeriodAfter(final InvoiceModelDao invoice, final LocalDate cutoffDate) {
+        for (final InvoiceItemModelDao item : invoice.getInvoiceItems()) {
+            if (isServicePeriodAfter(item, cutoffDate)) {
+                return true;
+            }
+
+            final InvoiceItemModelDao linkedItem = item.getLinkedItemId() != null ? items.get(item.getLinkedItemId()) : null;
+            if (linkedItem != null && isServicePeriodAfter(linkedItem, cutoffDate)) {
+                return true;
+            }
+
+            for (final InvoiceItemModelDao adjustmentItem : items.values()) {
+                if (item.getId().equals(adjustmentItem.getLinkedItemId()) && isServicePeriodAfter(adjustmentItem, cutoffDate)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean isServicePeriodAfter(final InvoiceItemModelDao item, final LocalDate cutoffDate) {
+        final LocalDate servicePeriodEndDate = item.getEndDate() != null ? item.getEndDate() : item.getStartDate();
+        return servicePeriodEndDate != null && !servicePeriodEndDate.isBefore(cutoffDate);
+    }
+
     @Override
     public List<InvoiceModelDao> getInvoicesBySubscription(final UUID subscriptionId, final InternalTenantContext context) {
         final List<InvoiceModelDao> result = new ArrayList<InvoiceModelDao>();
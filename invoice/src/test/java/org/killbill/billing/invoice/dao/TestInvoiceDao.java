@@ -70,7 +70,11 @@ import org.killbill.billing.junction.BillingEvent;
 import org.killbill.billing.junction.BillingEventSet;
 import org.killbill.billing.subscription.api.SubscriptionBase;
 import org.killbill.billing.subscription.api.SubscriptionBaseTransitionType;
+import org.killbill.billing.util.api.AuditLevel;
+import org.killbill.billing.util.audit.AuditLog;
+import org.killbill.billing.util.audit.ChangeType;
 import org.killbill.billing.util.currency.KillBillMoney;
+import org.killbill.billing.util.dao.TableName;
 import org.killbill.clock.ClockMock;
 import org.mockito.Mockito;
 import org.skife.jdbi.v2.exceptions.TransactionFailedException;
@@ -1876,4 +1880,43 @@ public class TestInvoiceDao extends InvoiceTestSuiteWithEmbeddedDB {
         assertEquals(targetInvoice.getInvoiceItems().get(0).getId(), recurringItem1.getId());
     }
 
+    @Test(groups = "slow")
+    public void testCreateInvoiceWithBatchedItems() throws InvoiceApiException {
+        final UUID accountId = account.getId();
+        final InvoiceModelDao invoice = new InvoiceModelDao(accountId, clock.getUTCToday(), clock.getUTCToday(), Currency.USD, false);
+
+        // More items than the maximum number of ids per query, to go through several chunks
+        final List<InvoiceItemModelDao> externalCharges = new ArrayList<InvoiceItemModelDao>();
+        for (int i = 0; i < 1001; i++) {
+            final InvoiceItemModelDao externalCharge = new InvoiceItemModelDao(new ExternalChargeInvoiceItem(invoice.getId(), accountId, null, "charge-" + i, clock.getUTCToday(), clock.getUTCToday(), BigDecimal.ONE, Currency.USD, null));
+            externalCharges.add(externalCharge);
+            invoice.addInvoiceItem(externalCharge);
+        }
+        // The adjusted item is part of the same batch
+        final InvoiceItemModelDao itemAdjustment = new InvoiceItemModelDao(new ItemAdjInvoiceItem(new ExternalChargeInvoiceItem(externalCharges.get(0).getId(), invoice.getId(), accountId, null, "charge-0", clock.getUTCToday(), clock.getUTCToday(), BigDecimal.ONE, Currency.USD, null),
+                                                                                                 clock.getUTCToday(), BigDecimal.ONE.negate(), Currency.USD));
+        invoice.addInvoiceItem(itemAdjustment);
+
+        final List<InvoiceItemModelDao> createdItems = invoiceDao.createInvoices(ImmutableList.<InvoiceModelDao>of(invoice), ImmutableSet.of(), context);
+        assertEquals(createdItems.size(), 1002);
+        // Items are returned in the order they were specified
+        assertEquals(createdItems.get(0).getId(), externalCharges.get(0).getId());
+        assertEquals(createdItems.get(1000).getId(), externalCharges.get(1000).getId());
+        assertEquals(createdItems.get(1001).getId(), itemAdjustment.getId());
+        for (final InvoiceItemModelDao createdItem : createdItems) {
+            assertNotNull(createdItem.getRecordId());
+        }
+
+        final InvoiceModelDao savedInvoice = invoiceDao.getById(invoice.getId(), context);
+        assertEquals(savedInvoice.getInvoiceItems().size(), 1002);
+        assertEquals(InvoiceModelDaoHelper.getRawBalanceForRegularInvoice(savedInvoice).compareTo(new BigDecimal("1000")), 0);
+
+        // Each item has its own history and audit rows
+        for (final InvoiceItemModelDao createdItem : ImmutableList.<InvoiceItemModelDao>of(createdItems.get(0), createdItems.get(1000), createdItems.get(1001))) {
+            final List<AuditLog> auditLogs = auditDao.getAuditLogsForId(TableName.INVOICE_ITEMS, createdItem.getId(), AuditLevel.FULL, context);
+            assertEquals(auditLogs.size(), 1);
+            assertEquals(auditLogs.get(0).getChangeType(), ChangeType.INSERT);
+        }
+    }
+
 }
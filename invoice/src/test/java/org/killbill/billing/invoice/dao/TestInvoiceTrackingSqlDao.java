@@ -56,7 +56,7 @@ public class TestInvoiceTrackingSqlDao extends InvoiceTestSuiteWithEmbeddedDB {
         inputs.add(input3);
         inputs.add(input4);
 
-        dao.create(inputs, internalCallContext);
+        dao.createTrackingIds(inputs, internalCallContext);
 
         final List<InvoiceTrackingModelDao> result = dao.getTrackingsByDateRange(startRange.toDate(), endRange.toDate(), internalCallContext);
         Assert.assertEquals(result.size(), 3);
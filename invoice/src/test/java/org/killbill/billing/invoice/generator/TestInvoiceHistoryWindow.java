@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.generator;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.invoice.InvoiceTestSuiteNoDB;
+import org.killbill.billing.invoice.MockBillingEventSet;
+import org.killbill.billing.invoice.api.InvoiceItem;
+import org.killbill.billing.invoice.model.RecurringInvoiceItem;
+import org.killbill.billing.invoice.model.RepairAdjInvoiceItem;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestInvoiceHistoryWindow extends InvoiceTestSuiteNoDB {
+
+    private final UUID invoiceId = UUID.randomUUID();
+    private final UUID accountId = UUID.randomUUID();
+    private final UUID bundleId = UUID.randomUUID();
+    private final UUID subscriptionId = UUID.randomUUID();
+
+    @Test(groups = "fast")
+    public void testFilterItemsPriorToCutoffDate() {
+        final LocalDate cutoffDate = new LocalDate(2017, 6, 1);
+        final InvoiceHistoryWindow invoiceHistoryWindow = new InvoiceHistoryWindow(cutoffDate, new MockBillingEventSet());
+        Assert.assertEquals(invoiceHistoryWindow.getInitialReconciliationDate(), cutoffDate);
+
+        // Only the items ending on or after the cutoff date would have been loaded
+        final InvoiceItem may = createRecurringItem(new LocalDate(2017, 5, 1), new LocalDate(2017, 6, 1));
+        final InvoiceItem june = createRecurringItem(new LocalDate(2017, 6, 1), new LocalDate(2017, 7, 1));
+        final InvoiceItem mayRepair = new RepairAdjInvoiceItem(invoiceId, accountId, new LocalDate(2017, 5, 15), new LocalDate(2017, 6, 1), BigDecimal.ONE.negate(), Currency.USD, may.getId());
+        final List<InvoiceItem> existingItems = new ArrayList<InvoiceItem>();
+        existingItems.add(may);
+        existingItems.add(june);
+        existingItems.add(mayRepair);
+
+        final InvoiceItem proposedApril = createRecurringItem(new LocalDate(2017, 4, 1), new LocalDate(2017, 5, 1));
+        final InvoiceItem proposedMay = createRecurringItem(new LocalDate(2017, 5, 1), new LocalDate(2017, 6, 1));
+        final InvoiceItem proposedJune = createRecurringItem(new LocalDate(2017, 6, 1), new LocalDate(2017, 7, 1));
+        final InvoiceItem proposedJuly = createRecurringItem(new LocalDate(2017, 7, 1), new LocalDate(2017, 8, 1));
+        final List<InvoiceItem> proposedItems = new ArrayList<InvoiceItem>();
+        proposedItems.add(proposedApril);
+        proposedItems.add(proposedMay);
+        proposedItems.add(proposedJune);
+        proposedItems.add(proposedJuly);
+
+        Assert.assertTrue(invoiceHistoryWindow.filterItems(existingItems, proposedItems));
+
+        Assert.assertEquals(existingItems.size(), 1);
+        Assert.assertEquals(existingItems.get(0), june);
+        Assert.assertEquals(proposedItems.size(), 2);
+        Assert.assertEquals(proposedItems.get(0), proposedJune);
+        Assert.assertEquals(proposedItems.get(1), proposedJuly);
+    }
+
+    @Test(groups = "fast")
+    public void testInsufficientHistory() {
+        final LocalDate cutoffDate = new LocalDate(2017, 6, 1);
+        final InvoiceHistoryWindow invoiceHistoryWindow = new InvoiceHistoryWindow(cutoffDate, new MockBillingEventSet());
+
+        // The existing item straddles the cutoff date: previous items (which weren't loaded) could overlap it
+        final List<InvoiceItem> existingItems = new ArrayList<InvoiceItem>();
+        existingItems.add(createRecurringItem(new LocalDate(2017, 5, 15), new LocalDate(2017, 6, 15)));
+        final List<InvoiceItem> proposedItems = new ArrayList<InvoiceItem>();
+        proposedItems.add(createRecurringItem(new LocalDate(2017, 5, 1), new LocalDate(2017, 6, 1)));
+        proposedItems.add(createRecurringItem(new LocalDate(2017, 6, 1), new LocalDate(2017, 7, 1)));
+
+        Assert.assertNull(invoiceHistoryWindow.computeReconciliationDates(existingItems, proposedItems));
+        Assert.assertFalse(invoiceHistoryWindow.filterItems(existingItems, proposedItems));
+        Assert.assertEquals(existingItems.size(), 1);
+        Assert.assertEquals(proposedItems.size(), 2);
+    }
+
+    private InvoiceItem createRecurringItem(final LocalDate startDate, final LocalDate endDate) {
+        return new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, "product", "plan", "phase",
+                                        startDate, endDate, BigDecimal.TEN, BigDecimal.TEN, Currency.USD);
+    }
+}
@@ -37,6 +37,7 @@ import org.killbill.billing.invoice.InvoiceTestSuiteNoDB;
 import org.killbill.billing.invoice.api.Invoice;
 import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.invoice.generator.InvoiceWithMetadata.SubscriptionFutureNotificationDates;
+import org.killbill.billing.invoice.generator.InvoiceWithMetadata.TrackingRecordId;
 import org.killbill.billing.invoice.model.DefaultInvoice;
 import org.killbill.billing.invoice.model.RecurringInvoiceItem;
 import org.killbill.billing.junction.BillingEvent;
@@ -140,4 +141,27 @@ public class TestInvoiceWithMetadata extends InvoiceTestSuiteNoDB {
         Assert.assertEquals(futureNotificationDates.getNextRecurringDate().compareTo(invoiceDate.plusMonths(1)), 0 );
     }
 
+    @Test(groups = "fast")
+    public void testSimilarTrackingRecordKey() {
+        final UUID subscriptionId = UUID.randomUUID();
+        final LocalDate recordDate = new LocalDate(2016, 11, 15);
+        final TrackingRecordId trackingRecordId = new TrackingRecordId("tracking-1", UUID.randomUUID(), subscriptionId, "unit", recordDate);
+
+        // Same usage record, attached to a different invoice
+        final TrackingRecordId similarTrackingRecordId = new TrackingRecordId("tracking-1", UUID.randomUUID(), subscriptionId, "unit", recordDate);
+        Assert.assertTrue(trackingRecordId.isSimilarRecord(similarTrackingRecordId));
+        Assert.assertNotEquals(trackingRecordId, similarTrackingRecordId);
+        Assert.assertEquals(trackingRecordId.getSimilarRecordKey(), similarTrackingRecordId.getSimilarRecordKey());
+        Assert.assertEquals(trackingRecordId.getSimilarRecordKey().hashCode(), similarTrackingRecordId.getSimilarRecordKey().hashCode());
+
+        final TrackingRecordId[] otherTrackingRecordIds = {new TrackingRecordId("tracking-2", trackingRecordId.getInvoiceId(), subscriptionId, "unit", recordDate),
+                                                           new TrackingRecordId("tracking-1", trackingRecordId.getInvoiceId(), UUID.randomUUID(), "unit", recordDate),
+                                                           new TrackingRecordId("tracking-1", trackingRecordId.getInvoiceId(), subscriptionId, "other-unit", recordDate),
+                                                           new TrackingRecordId("tracking-1", trackingRecordId.getInvoiceId(), subscriptionId, "unit", recordDate.plusDays(1)),
+                                                           new TrackingRecordId(null, trackingRecordId.getInvoiceId(), subscriptionId, "unit", recordDate)};
+        for (final TrackingRecordId otherTrackingRecordId : otherTrackingRecordIds) {
+            Assert.assertFalse(trackingRecordId.isSimilarRecord(otherTrackingRecordId));
+            Assert.assertNotEquals(trackingRecordId.getSimilarRecordKey(), otherTrackingRecordId.getSimilarRecordKey());
+        }
+    }
 }
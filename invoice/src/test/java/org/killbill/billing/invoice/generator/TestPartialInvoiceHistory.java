@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.generator;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.invoice.InvoiceTestSuiteNoDB;
+import org.killbill.billing.invoice.MockBillingEventSet;
+import org.killbill.billing.invoice.api.Invoice;
+import org.killbill.billing.invoice.model.DefaultInvoice;
+import org.killbill.billing.junction.BillingEvent;
+import org.killbill.billing.subscription.api.SubscriptionBase;
+import org.killbill.billing.subscription.api.SubscriptionBaseTransitionType;
+import org.killbill.billing.subscription.api.user.SubscriptionBaseTransition;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+
+public class TestPartialInvoiceHistory extends InvoiceTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testFullInvoiceHistoryIsLoadedOnce() {
+        final UUID accountId = UUID.randomUUID();
+        final Invoice oldInvoice = new DefaultInvoice(accountId, new LocalDate(2016, 1, 1), new LocalDate(2016, 1, 1), Currency.USD);
+        final Invoice recentInvoice = new DefaultInvoice(accountId, new LocalDate(2017, 6, 1), new LocalDate(2017, 6, 1), Currency.USD);
+        final Invoice dryRunInvoice = new DefaultInvoice(accountId, new LocalDate(2017, 7, 1), new LocalDate(2017, 7, 1), Currency.USD);
+
+        final AtomicInteger nbLoads = new AtomicInteger();
+        final PartialInvoiceHistory partialInvoiceHistory = new PartialInvoiceHistory(new LocalDate(2017, 1, 1),
+                                                                                      new Supplier<List<Invoice>>() {
+                                                                                          @Override
+                                                                                          public List<Invoice> get() {
+                                                                                              nbLoads.incrementAndGet();
+                                                                                              return ImmutableList.<Invoice>of(oldInvoice, recentInvoice);
+                                                                                          }
+                                                                                      });
+        Assert.assertEquals(nbLoads.get(), 0);
+
+        // Invoices only known in memory are kept, invoices on disk aren't duplicated
+        final List<Invoice> fullInvoiceHistory = partialInvoiceHistory.getFullInvoiceHistory(ImmutableList.<Invoice>of(recentInvoice, dryRunInvoice));
+        Assert.assertEquals(fullInvoiceHistory, ImmutableList.<Invoice>of(oldInvoice, recentInvoice, dryRunInvoice));
+
+        Assert.assertEquals(partialInvoiceHistory.getFullInvoiceHistory(null), ImmutableList.<Invoice>of(oldInvoice, recentInvoice));
+        Assert.assertEquals(nbLoads.get(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testBackdatedChangeRequiresFullHistory() {
+        final PartialInvoiceHistory partialInvoiceHistory = new PartialInvoiceHistory(new LocalDate(2017, 1, 1),
+                                                                                      new Supplier<List<Invoice>>() {
+                                                                                          @Override
+                                                                                          public List<Invoice> get() {
+                                                                                              return ImmutableList.<Invoice>of();
+                                                                                          }
+                                                                                      });
+        final Invoice recentInvoice = Mockito.mock(Invoice.class);
+        Mockito.when(recentInvoice.getCreatedDate()).thenReturn(new DateTime(2017, 6, 1, 0, 0, DateTimeZone.UTC));
+
+        // Subscription created long before the cutoff date, last invoiced in June
+        final SubscriptionBaseTransition creation = createTransition(new DateTime(2015, 1, 1, 0, 0, DateTimeZone.UTC), new DateTime(2015, 1, 1, 0, 0, DateTimeZone.UTC));
+        final SubscriptionBase subscription = Mockito.mock(SubscriptionBase.class);
+        Mockito.when(subscription.getId()).thenReturn(UUID.randomUUID());
+        Mockito.when(subscription.getAllTransitions()).thenReturn(ImmutableList.<SubscriptionBaseTransition>of(creation));
+        final MockBillingEventSet events = new MockBillingEventSet();
+        events.add(createBillingEvent(subscription, creation.getEffectiveTransitionTime(), SubscriptionBaseTransitionType.CREATE));
+
+        Assert.assertFalse(partialInvoiceHistory.hasChangesPriorToCutoffDate(events, ImmutableList.<Invoice>of(recentInvoice), internalCallContext));
+        // Nothing invoiced since the cutoff date
+        Assert.assertTrue(partialInvoiceHistory.hasChangesPriorToCutoffDate(events, ImmutableList.<Invoice>of(), internalCallContext));
+
+        // Change plan made in July, effective in 2016
+        final SubscriptionBaseTransition backdatedChange = createTransition(new DateTime(2016, 3, 1, 0, 0, DateTimeZone.UTC), new DateTime(2017, 7, 1, 0, 0, DateTimeZone.UTC));
+        Mockito.when(subscription.getAllTransitions()).thenReturn(ImmutableList.<SubscriptionBaseTransition>of(creation, backdatedChange));
+        Assert.assertTrue(partialInvoiceHistory.hasChangesPriorToCutoffDate(events, ImmutableList.<Invoice>of(recentInvoice), internalCallContext));
+
+        // Change plan made in July, effective after the cutoff date
+        final SubscriptionBaseTransition recentChange = createTransition(new DateTime(2017, 3, 1, 0, 0, DateTimeZone.UTC), new DateTime(2017, 7, 1, 0, 0, DateTimeZone.UTC));
+        Mockito.when(subscription.getAllTransitions()).thenReturn(ImmutableList.<SubscriptionBaseTransition>of(creation, recentChange));
+        Assert.assertFalse(partialInvoiceHistory.hasChangesPriorToCutoffDate(events, ImmutableList.<Invoice>of(recentInvoice), internalCallContext));
+
+        // Billing disabled before the cutoff date (the blocking state creation date isn't known)
+        final MockBillingEventSet eventsWithBlocking = new MockBillingEventSet();
+        eventsWithBlocking.add(createBillingEvent(subscription, new DateTime(2016, 5, 1, 0, 0, DateTimeZone.UTC), SubscriptionBaseTransitionType.START_BILLING_DISABLED));
+        Assert.assertTrue(partialInvoiceHistory.hasChangesPriorToCutoffDate(eventsWithBlocking, ImmutableList.<Invoice>of(recentInvoice), internalCallContext));
+    }
+
+    private SubscriptionBaseTransition createTransition(final DateTime effectiveDate, final DateTime createdDate) {
+        final SubscriptionBaseTransition transition = Mockito.mock(SubscriptionBaseTransition.class);
+        Mockito.when(transition.getEffectiveTransitionTime()).thenReturn(effectiveDate);
+        Mockito.when(transition.getCreatedDate()).thenReturn(createdDate);
+        return transition;
+    }
+
+    private BillingEvent createBillingEvent(final SubscriptionBase subscription, final DateTime effectiveDate, final SubscriptionBaseTransitionType type) {
+        final BillingEvent event = Mockito.mock(BillingEvent.class);
+        Mockito.when(event.getSubscription()).thenReturn(subscription);
+        Mockito.when(event.getEffectiveDate()).thenReturn(effectiveDate);
+        Mockito.when(event.getTransitionType()).thenReturn(type);
+        return event;
+    }
+}
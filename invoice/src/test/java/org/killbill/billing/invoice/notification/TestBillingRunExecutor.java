@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.notification;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.invoice.InvoiceTestSuiteNoDB;
+import org.killbill.billing.util.config.definition.InvoiceConfig;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestBillingRunExecutor extends InvoiceTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testDisabled() throws Exception {
+        final BillingRunExecutor billingRunExecutor = createBillingRunExecutor(0);
+
+        final AtomicInteger nbRuns = new AtomicInteger();
+        billingRunExecutor.execute(1L, clock.getUTCNow(), clock.getUTCNow(), "RUN", new CountingRunnable(nbRuns));
+
+        Assert.assertEquals(nbRuns.get(), 1);
+        Assert.assertTrue(billingRunExecutor.getRunReports().isEmpty());
+        billingRunExecutor.stop();
+    }
+
+    @Test(groups = "fast")
+    public void testCoalescePendingRuns() throws Exception {
+        final BillingRunExecutor billingRunExecutor = createBillingRunExecutor(2);
+        final ExecutorService callers = Executors.newFixedThreadPool(3);
+        try {
+            final DateTime targetDate = clock.getUTCNow();
+            final CountDownLatch blockingRunStarted = new CountDownLatch(1);
+            final CountDownLatch releaseBlockingRun = new CountDownLatch(1);
+
+            // Account 2 and account 4 share the same lane: keep it busy
+            final Future<?> blockingRun = callers.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    billingRunExecutor.execute(2L, targetDate, targetDate, "RUN", new Runnable() {
+                        @Override
+                        public void run() {
+                            blockingRunStarted.countDown();
+                            try {
+                                releaseBlockingRun.await();
+                            } catch (final InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                    });
+                    return null;
+                }
+            });
+            Assert.assertTrue(blockingRunStarted.await(10, TimeUnit.SECONDS));
+
+            final AtomicInteger nbRuns = new AtomicInteger();
+            final Future<?> firstRun = callers.submit(new ExecuteCallable(billingRunExecutor, 4L, targetDate, new CountingRunnable(nbRuns)));
+            // Wait for the first run to be queued
+            while (billingRunExecutor.getRunReports().get(0).getNbRuns() < 2) {
+                Thread.sleep(10);
+            }
+            final Future<?> secondRun = callers.submit(new ExecuteCallable(billingRunExecutor, 4L, targetDate, new CountingRunnable(nbRuns)));
+            while (billingRunExecutor.getRunReports().get(0).getNbCoalesced() < 1) {
+                Thread.sleep(10);
+            }
+
+            releaseBlockingRun.countDown();
+            blockingRun.get(10, TimeUnit.SECONDS);
+            firstRun.get(10, TimeUnit.SECONDS);
+            secondRun.get(10, TimeUnit.SECONDS);
+
+            Assert.assertEquals(nbRuns.get(), 1);
+            final BillingRunExecutor.BillingRunReport report = billingRunExecutor.getRunReports().get(0);
+            Assert.assertEquals(report.getTargetDate(), targetDate);
+            Assert.assertEquals(report.getNbNotifications(), 3);
+            Assert.assertEquals(report.getNbRuns(), 2);
+            Assert.assertEquals(report.getNbCoalesced(), 1);
+            Assert.assertEquals(report.getNbFailed(), 0);
+        } finally {
+            callers.shutdownNow();
+            billingRunExecutor.stop();
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testFailuresArePropagated() throws Exception {
+        final BillingRunExecutor billingRunExecutor = createBillingRunExecutor(2);
+        try {
+            billingRunExecutor.execute(1L, clock.getUTCNow(), clock.getUTCNow(), "RUN", new Runnable() {
+                @Override
+                public void run() {
+                    throw new IllegalStateException("Failed run");
+                }
+            });
+            Assert.fail("The run should have failed");
+        } catch (final IllegalStateException e) {
+            Assert.assertEquals(e.getMessage(), "Failed run");
+        } finally {
+            billingRunExecutor.stop();
+        }
+        Assert.assertEquals(billingRunExecutor.getRunReports().get(0).getNbFailed(), 1);
+    }
+
+    private BillingRunExecutor createBillingRunExecutor(final int nbThreads) {
+        final InvoiceConfig config = Mockito.mock(InvoiceConfig.class);
+        Mockito.when(config.getBillingRunNbThreads()).thenReturn(nbThreads);
+        final BillingRunExecutor billingRunExecutor = new BillingRunExecutor(config, clock);
+        billingRunExecutor.initialize();
+        return billingRunExecutor;
+    }
+
+    private static final class CountingRunnable implements Runnable {
+
+        private final AtomicInteger counter;
+
+        private CountingRunnable(final AtomicInteger counter) {
+            this.counter = counter;
+        }
+
+        @Override
+        public void run() {
+            counter.incrementAndGet();
+        }
+    }
+
+    private static final class ExecuteCallable implements Callable<Void> {
+
+        private final BillingRunExecutor billingRunExecutor;
+        private final Long accountRecordId;
+        private final DateTime targetDate;
+        private final Runnable task;
+
+        private ExecuteCallable(final BillingRunExecutor billingRunExecutor, final Long accountRecordId, final DateTime targetDate, final Runnable task) {
+            this.billingRunExecutor = billingRunExecutor;
+            this.accountRecordId = accountRecordId;
+            this.targetDate = targetDate;
+            this.task = task;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            billingRunExecutor.execute(accountRecordId, targetDate, targetDate, "RUN", task);
+            return null;
+        }
+    }
+}
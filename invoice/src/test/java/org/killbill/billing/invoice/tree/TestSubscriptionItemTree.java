@@ -98,7 +98,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final InvoiceItem newItem21 = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, startRepairDate21, endRepairDate22, amount, rate, currency);
         final InvoiceItem repair22 = new RepairAdjInvoiceItem(invoiceId, accountId, startRepairDate21, endRepairDate22, amount.negate(), currency, newItem2.getId());
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         tree.addItem(initial);
         tree.addItem(newItem1);
         tree.addItem(repair1);
@@ -129,7 +129,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         existingItems.add(recurring1);
         existingItems.add(recurring2);
 
-        SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        SubscriptionItemTree tree = createSubscriptionItemTree();
         for (InvoiceItem e : existingItems) {
             tree.addItem(e);
         }
@@ -154,7 +154,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         existingItems.addAll(tree.getView());
 
         assertEquals(existingItems.size(), 5);
-        tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        tree = createSubscriptionItemTree();
         for (InvoiceItem e : existingItems) {
             tree.addItem(e);
         }
@@ -196,20 +196,20 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         expectedResult.add(expected2);
 
         // First test with items in order
-        SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        SubscriptionItemTree tree = createSubscriptionItemTree();
         tree.addItem(initial);
         tree.addItem(newItem);
         tree.addItem(repair);
         tree.build();
         verifyResult(tree.getView(), expectedResult);
-        tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        tree = createSubscriptionItemTree();
         tree.addItem(repair);
         tree.addItem(newItem);
         tree.addItem(initial);
         tree.build();
         verifyResult(tree.getView(), expectedResult);
 
-        tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        tree = createSubscriptionItemTree();
         tree.addItem(repair);
         tree.addItem(initial);
         tree.addItem(newItem);
@@ -228,7 +228,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final InvoiceItem tooEarlyRepair = new RepairAdjInvoiceItem(invoiceId, accountId, startDate.minusDays(1), endDate, rate.negate(), currency, initial.getId());
         final InvoiceItem tooLateRepair = new RepairAdjInvoiceItem(invoiceId, accountId, startDate, endDate.plusDays(1), rate.negate(), currency, initial.getId());
 
-        SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        SubscriptionItemTree tree = createSubscriptionItemTree();
         tree.addItem(initial);
         tree.addItem(tooEarlyRepair);
         try {
@@ -237,7 +237,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         } catch (final IllegalStateException e) {
         }
 
-        tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        tree = createSubscriptionItemTree();
         tree.addItem(initial);
         tree.addItem(tooLateRepair);
         try {
@@ -256,7 +256,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
 
         final InvoiceItem repair = new RepairAdjInvoiceItem(invoiceId, accountId, startDate.minusDays(1), endDate, rate.negate(), currency, UUID.randomUUID());
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         tree.addItem(repair);
         try {
             tree.build();
@@ -300,7 +300,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         expectedResult.add(expected3);
 
         // First test with items in order
-        SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        SubscriptionItemTree tree = createSubscriptionItemTree();
         tree.addItem(initial);
         tree.addItem(newItem1);
         tree.addItem(repair1);
@@ -309,7 +309,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         tree.build();
         verifyResult(tree.getView(), expectedResult);
 
-        tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        tree = createSubscriptionItemTree();
         tree.addItem(repair2);
         tree.addItem(newItem1);
         tree.addItem(newItem2);
@@ -318,7 +318,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         tree.build();
         verifyResult(tree.getView(), expectedResult);
 
-        tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        tree = createSubscriptionItemTree();
         tree.addItem(repair1);
         tree.addItem(newItem1);
         tree.addItem(initial);
@@ -356,7 +356,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         expectedResult.add(expected3);
 
         // First test with items in order
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         tree.addItem(initial);
         tree.addItem(block1);
         tree.addItem(block2);
@@ -387,7 +387,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         expectedResult.add(expected1);
         expectedResult.add(expected2);
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         tree.addItem(first);
         tree.addItem(second);
         tree.addItem(block1);
@@ -419,7 +419,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         expectedResult.add(monthly1);
         expectedResult.add(monthly2);
 
-        SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        SubscriptionItemTree tree = createSubscriptionItemTree();
         tree.addItem(annual);
         tree.addItem(repair);
         tree.addItem(monthly1);
@@ -427,7 +427,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         tree.build();
         verifyResult(tree.getView(), expectedResult);
 
-        tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        tree = createSubscriptionItemTree();
         tree.addItem(monthly1);
         tree.addItem(repair);
         tree.addItem(annual);
@@ -435,7 +435,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         tree.build();
         verifyResult(tree.getView(), expectedResult);
 
-        tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        tree = createSubscriptionItemTree();
         tree.addItem(monthly1);
         tree.addItem(monthly2);
         tree.addItem(annual);
@@ -473,7 +473,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         expectedResult.add(annual);
 
         // First test with items in order
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         tree.addItem(monthly1);
         tree.addItem(monthly2);
         tree.addItem(repair);
@@ -510,7 +510,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         expectedResult.add(annual);
 
         // First test with items in order
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         tree.addItem(monthly1);
         tree.addItem(monthly2);
         tree.addItem(repair);
@@ -531,7 +531,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final InvoiceItem recurring1 = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, startDate1, endDate, amount, rate, currency);
         final InvoiceItem recurring2 = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, startDate2, endDate, amount, rate, currency);
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         tree.addItem(recurring1);
         tree.addItem(recurring2);
 
@@ -553,7 +553,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final InvoiceItem recurring1 = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, startDate1, endDate, amount, rate, currency);
         final InvoiceItem recurring2 = new RecurringInvoiceItem(UUID.randomUUID(), accountId, bundleId, subscriptionId, productName, planName, phaseName, startDate1, endDate, amount, rate, currency);
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         tree.addItem(recurring1);
         tree.addItem(recurring2);
 
@@ -591,7 +591,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final InvoiceItem repair2 = new RepairAdjInvoiceItem(invoiceId, accountId, repairDate2, endDate, amount2.negate(), currency, initial.getId());
 
         // Out-of-order insertion to show ordering doesn't matter
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         tree.addItem(repair1);
         tree.addItem(repair2);
         tree.addItem(initial);
@@ -625,7 +625,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final InvoiceItem repair1 = new RepairAdjInvoiceItem(invoiceId, accountId, repairDate2, endDate, amount1.negate(), currency, initial.getId());
 
         // Out-of-order insertion to show ordering doesn't matter
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         tree.addItem(repair1);
         tree.addItem(initial);
         tree.addItem(newItem1);
@@ -664,7 +664,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final InvoiceItem repair2 = new RepairAdjInvoiceItem(invoiceId, accountId, changeDate, monthlyAlignmentDate, amount2.negate(), currency, newItem1.getId());
         final InvoiceItem newItem2 = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, changeDate, endDate, amount1, rate1, currency);
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         tree.addItem(initial);
         tree.addItem(newItem1);
         tree.addItem(repair1);
@@ -706,7 +706,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         expectedResult.add(monthly1);
         expectedResult.add(monthly3);
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         tree.addItem(monthly1);
         tree.addItem(monthly2);
         tree.addItem(repairMonthly2);
@@ -749,7 +749,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         expectedResult.add(monthly2New);
         expectedResult.add(monthly3);
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         tree.addItem(monthly1);
         tree.addItem(monthly2);
         tree.addItem(repairMonthly2);
@@ -794,7 +794,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         expectedResult.add(monthly3);
 
         // First test with items in order
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         tree.addItem(monthly1);
         tree.addItem(repair11);
         tree.addItem(repair12);
@@ -843,7 +843,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         expectedResult.add(monthly3);
 
         // First test with items in order
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         tree.addItem(monthly1);
         tree.addItem(repair11);
 
@@ -868,7 +868,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final BigDecimal monthlyRate = new BigDecimal("12.00");
         final BigDecimal monthlyAmount = monthlyRate;
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         tree.flatten(true);
 
         final InvoiceItem proposed1 = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, startDate, endDate, monthlyAmount, monthlyRate, currency);
@@ -889,7 +889,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final BigDecimal monthlyRate = new BigDecimal("12.00");
         final BigDecimal monthlyAmount = monthlyRate;
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         final InvoiceItem monthly1 = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, startDate, endDate, monthlyAmount, monthlyRate, currency);
         tree.addItem(monthly1);
         tree.flatten(true);
@@ -915,7 +915,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final BigDecimal monthlyRate2 = new BigDecimal("15.00");
         final BigDecimal monthlyAmount2 = monthlyRate2;
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         final InvoiceItem monthly1 = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, startDate, endDate, monthlyAmount1, monthlyRate1, currency);
         tree.addItem(monthly1);
         tree.flatten(true);
@@ -942,7 +942,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final BigDecimal monthlyRate1 = new BigDecimal("12.00");
         final BigDecimal monthlyAmount1 = monthlyRate1;
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         final InvoiceItem monthly1 = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, startDate, endDate, monthlyAmount1, monthlyRate1, currency);
         tree.addItem(monthly1);
         tree.flatten(true);
@@ -968,7 +968,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final BigDecimal monthlyRate1 = new BigDecimal("12.00");
         final BigDecimal monthlyAmount1 = monthlyRate1;
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         final InvoiceItem monthly1 = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, startDate, endDate, monthlyAmount1, monthlyRate1, currency);
         tree.addItem(monthly1);
         tree.flatten(true);
@@ -994,7 +994,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final BigDecimal monthlyRate1 = new BigDecimal("12.00");
         final BigDecimal monthlyAmount1 = monthlyRate1;
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         final InvoiceItem monthly1 = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, startDate, endDate, monthlyAmount1, monthlyRate1, currency);
         tree.addItem(monthly1);
         tree.flatten(true);
@@ -1025,7 +1025,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final BigDecimal monthlyRate = new BigDecimal("12.00");
         final BigDecimal monthlyAmount = monthlyRate;
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         final InvoiceItem monthly = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, startDate, endDate, monthlyAmount, monthlyRate, currency);
         tree.addItem(monthly);
         tree.flatten(true);
@@ -1047,7 +1047,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         verifyResult(tree.getView(), expectedResult);
 
         // Dot it again but with proposed items out of order
-        final SubscriptionItemTree treeAgain = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree treeAgain = createSubscriptionItemTree();
         final InvoiceItem monthlyAgain = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, startDate, endDate, monthlyAmount, monthlyRate, currency);
         treeAgain.addItem(monthlyAgain);
         treeAgain.flatten(true);
@@ -1077,7 +1077,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final BigDecimal monthlyRate2 = new BigDecimal("20.00");
         final BigDecimal monthlyAmount2 = monthlyRate1;
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         final InvoiceItem monthly1 = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, startDate, endDate, monthlyAmount1, monthlyRate1, currency);
         tree.addItem(monthly1);
         tree.flatten(true);
@@ -1112,7 +1112,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final BigDecimal rate3 = new BigDecimal("29.95");
         final BigDecimal proratedAmount3 = new BigDecimal("23.19");
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         final InvoiceItem initial = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, startDate, endDate, amount1, rate1, currency);
         final InvoiceItem newItem1 = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, "foo", "foo", "foo", change1, endDate, proratedAmount2, rate2, currency);
         final InvoiceItem repair1 = new RepairAdjInvoiceItem(invoiceId, accountId, change1, endDate, new BigDecimal("-483.86"), currency, initial.getId());
@@ -1147,7 +1147,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final BigDecimal monthlyAmount = monthlyRate;
         final BigDecimal fixedAmount = new BigDecimal("5.00");
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         final InvoiceItem monthly = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, startDate, endDate, monthlyAmount, monthlyRate, currency);
         final InvoiceItem fixed = new FixedPriceInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, startDate, fixedAmount, currency);
         tree.addItem(monthly);
@@ -1173,7 +1173,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final BigDecimal monthlyAmount = monthlyRate;
         final BigDecimal fixedAmount = new BigDecimal("5.00");
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         final InvoiceItem monthly = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, startDate, endDate, monthlyAmount, monthlyRate, currency);
         tree.addItem(monthly);
         tree.flatten(true);
@@ -1201,7 +1201,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final BigDecimal rate1 = new BigDecimal("12.00");
         final BigDecimal amount1 = rate1;
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         final InvoiceItem initial = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, startDate, endDate, amount1, rate1, currency);
         final InvoiceItem itemAdj = new ItemAdjInvoiceItem(initial, itemAdjDate, new BigDecimal("-2.00"), currency);
         tree.addItem(initial);
@@ -1231,7 +1231,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final BigDecimal rate1 = new BigDecimal("12.00");
         final BigDecimal amount1 = rate1;
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         final InvoiceItem initial = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, startDate, endDate, amount1, rate1, currency);
         final InvoiceItem itemAdj = new ItemAdjInvoiceItem(initial, itemAdjDate, new BigDecimal("-10.00"), currency);
         tree.addItem(initial);
@@ -1268,7 +1268,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final InvoiceItem monthly2 = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, endMonthly1, endMonthly2, monthlyAmount, monthlyRate, currency);
 
         // First test with items in order
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         tree.addItem(monthly1);
         tree.addItem(monthly2);
         tree.flatten(true);
@@ -1291,7 +1291,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
 
     @Test(groups = "fast")
     public void verifyJson() throws IOException {
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         final UUID id1 = UUID.fromString("e8ba6ce7-9bd4-417d-af53-70951ecaa99f");
         final InvoiceItem yearly1 = new RecurringInvoiceItem(id1, new DateTime(), invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, new LocalDate("2014-01-01"), new LocalDate("2015-01-01"), BigDecimal.TEN, BigDecimal.TEN, currency);
         tree.addItem(yearly1);
@@ -1322,7 +1322,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final BigDecimal monthlyRate1 = new BigDecimal("12.00");
         final BigDecimal monthlyAmount1 = monthlyRate1;
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
 
         final InvoiceItem existing1 = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, startDate, endDate, monthlyAmount1, monthlyRate1, currency);
         tree.addItem(existing1);
@@ -1353,7 +1353,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final BigDecimal monthlyRate1 = new BigDecimal("12.00");
         final BigDecimal monthlyAmount1 = monthlyRate1;
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
 
         final InvoiceItem existing1 = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, startDate, endDate, monthlyAmount1, monthlyRate1, currency);
         tree.addItem(existing1);
@@ -1380,7 +1380,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final BigDecimal rate = new BigDecimal("12.00");
         final BigDecimal amount = rate;
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
 
         final InvoiceItem wrongInitialItem = new RecurringInvoiceItem(invoiceId,
                                                                       accountId,
@@ -1440,6 +1440,10 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         //printTree(tree);
     }
 
+    protected SubscriptionItemTree createSubscriptionItemTree() {
+        return new SubscriptionItemTree(subscriptionId, invoiceId);
+    }
+
     private void verifyResult(final List<InvoiceItem> result, final List<InvoiceItem> expectedResult) {
         assertEquals(result.size(), expectedResult.size());
         for (int i = 0; i < expectedResult.size(); i++) {
@@ -1466,7 +1470,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         int iteration = 0;
         do {
 
-            SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+            SubscriptionItemTree tree = createSubscriptionItemTree();
             for (InvoiceItem e : existingItems) {
                 tree.addItem(e);
             }
@@ -1504,7 +1508,7 @@ public class TestSubscriptionItemTree extends InvoiceTestSuiteNoDB {
         final BigDecimal monthlyRate1 = new BigDecimal("12.00");
         final BigDecimal monthlyRate2 = new BigDecimal("24.00");
 
-        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId);
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
         final InvoiceItem freeMonthly = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, startDate, endDate, BigDecimal.ZERO, BigDecimal.ZERO, currency);
         tree.addItem(freeMonthly);
         final InvoiceItem payingMonthly1 = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, productName, planName, phaseName, startDate, endDate, monthlyRate1, monthlyRate1, currency);
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.invoice.tree;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.invoice.api.InvoiceItem;
+import org.killbill.billing.invoice.api.InvoiceItemType;
+import org.killbill.billing.invoice.model.ItemAdjInvoiceItem;
+import org.killbill.billing.invoice.model.RecurringInvoiceItem;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Runs the SubscriptionItemTree test suite against the ItemsIntervalIndex and verifies it generates the same items as
+ * the ItemsNodeInterval tree on random billing histories.
+ */
+public class TestSubscriptionItemTreeWithIntervalIndex extends TestSubscriptionItemTree {
+
+    private static final int NB_SCENARIOS = 300;
+
+    private final UUID invoiceId = UUID.randomUUID();
+    private final UUID accountId = UUID.randomUUID();
+    private final UUID subscriptionId = UUID.randomUUID();
+    private final UUID bundleId = UUID.randomUUID();
+    private final Currency currency = Currency.USD;
+
+    @Override
+    protected SubscriptionItemTree createSubscriptionItemTree() {
+        return new SubscriptionItemTree(subscriptionId, invoiceId, true);
+    }
+
+    @Override
+    @Test(groups = "fast", enabled = false, description = "The interval index isn't serialized")
+    public void verifyJson() throws IOException {
+    }
+
+    @Override
+    @Test(groups = "fast", enabled = false, description = "The interval index doesn't expose the tree structure")
+    public void testWithWrongInitialItem() throws IOException {
+    }
+
+    @Test(groups = "fast")
+    public void testTreeEquality() {
+        final InvoiceItem first = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, null, "foo", "foo-recurring", new LocalDate(2017, 1, 1), new LocalDate(2017, 2, 1), BigDecimal.TEN, BigDecimal.TEN, currency);
+        final InvoiceItem second = new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, null, "foo", "foo-recurring", new LocalDate(2017, 2, 1), new LocalDate(2017, 3, 1), BigDecimal.TEN, BigDecimal.TEN, currency);
+
+        final SubscriptionItemTree tree = createSubscriptionItemTree();
+        tree.addItem(first);
+        tree.addItem(second);
+        final SubscriptionItemTree sameTree = createSubscriptionItemTree();
+        sameTree.addItem(first);
+        sameTree.addItem(second);
+        final SubscriptionItemTree otherTree = createSubscriptionItemTree();
+        otherTree.addItem(first);
+
+        Assert.assertEquals(tree, sameTree);
+        Assert.assertEquals(tree.hashCode(), sameTree.hashCode());
+        Assert.assertNotEquals(tree, otherTree);
+    }
+
+    @Test(groups = "fast")
+    public void testRandomBillingHistories() {
+        final Random random = new Random(8675309L);
+        for (int i = 0; i < NB_SCENARIOS; i++) {
+            verifyRandomBillingHistory(random);
+        }
+    }
+
+    // Simulate successive invoice runs for a subscription whose plan changes are moved around (e.g. backdated), with item adjustments
+    private void verifyRandomBillingHistory(final Random random) {
+        final LocalDate startDate = new LocalDate(2017, 1, 1).plusDays(random.nextInt(28));
+        final TreeMap<LocalDate, Integer> planChanges = new TreeMap<LocalDate, Integer>();
+        planChanges.put(startDate, 0);
+        LocalDate endDate = startDate.plusMonths(1 + random.nextInt(12));
+
+        final List<InvoiceItem> existingItems = new ArrayList<InvoiceItem>();
+        final int nbRuns = 2 + random.nextInt(8);
+        for (int run = 0; run < nbRuns; run++) {
+            final List<InvoiceItem> proposedItems = proposeItems(planChanges, endDate);
+
+            final List<InvoiceItem> result = mergeItems(false, existingItems, proposedItems);
+            final List<InvoiceItem> resultWithIntervalIndex = mergeItems(true, existingItems, proposedItems);
+            if (result == null || resultWithIntervalIndex == null) {
+                Assert.assertNull(result, String.format("Unexpected failure with the interval index, existingItems=%s, proposedItems=%s", existingItems, proposedItems));
+                Assert.assertNull(resultWithIntervalIndex, String.format("Unexpected success with the interval index, existingItems=%s, proposedItems=%s", existingItems, proposedItems));
+                return;
+            }
+
+            Assert.assertEquals(resultWithIntervalIndex.size(), result.size(), String.format("existingItems=%s, proposedItems=%s", existingItems, proposedItems));
+            for (int i = 0; i < result.size(); i++) {
+                Assert.assertTrue(resultWithIntervalIndex.get(i).matches(result.get(i)), String.format("Expected %s, got %s", result.get(i), resultWithIntervalIndex.get(i)));
+            }
+            existingItems.addAll(result);
+
+            if (random.nextInt(4) == 0) {
+                addItemAdjustment(random, existingItems);
+            }
+
+            // Change the subscription for the next run
+            switch (random.nextInt(4)) {
+                case 0:
+                    planChanges.put(randomDate(random, startDate, endDate), 1 + random.nextInt(3));
+                    break;
+                case 1:
+                    if (planChanges.size() > 1) {
+                        planChanges.remove(planChanges.lastKey());
+                    }
+                    break;
+                case 2:
+                    endDate = randomDate(random, startDate, endDate);
+                    break;
+                default:
+                    endDate = endDate.plusMonths(1);
+                    break;
+            }
+        }
+    }
+
+    private List<InvoiceItem> mergeItems(final boolean useIntervalIndex, final List<InvoiceItem> existingItems, final List<InvoiceItem> proposedItems) {
+        final SubscriptionItemTree tree = new SubscriptionItemTree(subscriptionId, invoiceId, useIntervalIndex);
+        try {
+            for (final InvoiceItem existingItem : existingItems) {
+                tree.addItem(existingItem);
+            }
+            tree.build();
+            tree.flatten(true);
+
+            for (final InvoiceItem proposedItem : proposedItems) {
+                tree.mergeProposedItem(proposedItem);
+            }
+            tree.buildForMerge();
+            return tree.getView();
+        } catch (final IllegalStateException e) {
+            return null;
+        }
+    }
+
+    // Monthly in advance items, aligned on the first of the month
+    private List<InvoiceItem> proposeItems(final TreeMap<LocalDate, Integer> planChanges, final LocalDate endDate) {
+        final List<InvoiceItem> proposedItems = new ArrayList<InvoiceItem>();
+        for (final Entry<LocalDate, Integer> planChange : planChanges.entrySet()) {
+            final LocalDate nextPlanChangeDate = planChanges.higherKey(planChange.getKey());
+            final LocalDate planEndDate = nextPlanChangeDate == null || nextPlanChangeDate.compareTo(endDate) > 0 ? endDate : nextPlanChangeDate;
+            final String planName = "plan-" + planChange.getValue();
+            final BigDecimal rate = BigDecimal.TEN.multiply(BigDecimal.valueOf(planChange.getValue() + 1));
+
+            LocalDate periodStartDate = planChange.getKey();
+            while (periodStartDate.compareTo(planEndDate) < 0) {
+                final LocalDate monthStartDate = periodStartDate.withDayOfMonth(1);
+                final LocalDate nextMonthStartDate = monthStartDate.plusMonths(1);
+                final LocalDate periodEndDate = nextMonthStartDate.compareTo(planEndDate) < 0 ? nextMonthStartDate : planEndDate;
+                final BigDecimal amount = rate.multiply(BigDecimal.valueOf(Days.daysBetween(periodStartDate, periodEndDate).getDays()))
+                                              .divide(BigDecimal.valueOf(Days.daysBetween(monthStartDate, nextMonthStartDate).getDays()), 2, RoundingMode.HALF_UP);
+                proposedItems.add(new RecurringInvoiceItem(invoiceId, accountId, bundleId, subscriptionId, "product", planName, planName + "-evergreen",
+                                                           periodStartDate, periodEndDate, amount, rate, currency));
+                periodStartDate = periodEndDate;
+            }
+        }
+        return proposedItems;
+    }
+
+    private void addItemAdjustment(final Random random, final List<InvoiceItem> existingItems) {
+        final List<InvoiceItem> recurringItems = new ArrayList<InvoiceItem>();
+        for (final InvoiceItem existingItem : existingItems) {
+            if (existingItem.getInvoiceItemType() == InvoiceItemType.RECURRING && existingItem.getAmount().compareTo(BigDecimal.ONE) > 0) {
+                recurringItems.add(existingItem);
+            }
+        }
+        if (recurringItems.isEmpty()) {
+            return;
+        }
+
+        final InvoiceItem adjustedItem = recurringItems.get(random.nextInt(recurringItems.size()));
+        final BigDecimal amount = random.nextBoolean() ? adjustedItem.getAmount() : BigDecimal.ONE;
+        existingItems.add(new ItemAdjInvoiceItem(adjustedItem, adjustedItem.getStartDate(), amount.negate(), currency));
+    }
+
+    private LocalDate randomDate(final Random random, final LocalDate startDate, final LocalDate endDate) {
+        return startDate.plusDays(1 + random.nextInt(Math.max(1, Days.daysBetween(startDate, endDate).getDays())));
+    }
+}
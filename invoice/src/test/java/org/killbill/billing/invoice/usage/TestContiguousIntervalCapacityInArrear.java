@@ -26,6 +26,7 @@ import java.util.Set;
 
 import org.joda.time.DateTimeZone;
 import org.joda.time.LocalDate;
+import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.catalog.DefaultLimit;
 import org.killbill.billing.catalog.DefaultTier;
 import org.killbill.billing.catalog.DefaultUnit;
@@ -39,19 +40,24 @@ import org.killbill.billing.invoice.api.InvoiceItem;
 import org.killbill.billing.invoice.generator.InvoiceWithMetadata.TrackingRecordId;
 import org.killbill.billing.invoice.model.FixedPriceInvoiceItem;
 import org.killbill.billing.invoice.model.UsageInvoiceItem;
+import org.killbill.billing.invoice.usage.ContiguousIntervalUsageInArrear.RolledUpUnitsWithTracking;
 import org.killbill.billing.invoice.usage.ContiguousIntervalUsageInArrear.UsageInArrearItemsAndNextNotificationDate;
 import org.killbill.billing.invoice.usage.details.UsageCapacityInArrearAggregate;
 import org.killbill.billing.invoice.usage.details.UsageInArrearTierUnitDetail;
 import org.killbill.billing.junction.BillingEvent;
+import org.killbill.billing.usage.InternalUserApi;
 import org.killbill.billing.usage.RawUsage;
 import org.killbill.billing.usage.api.RolledUpUnit;
 import org.killbill.billing.usage.api.svcs.DefaultRawUsage;
 import org.killbill.billing.util.config.definition.InvoiceConfig.UsageDetailMode;
+import org.mockito.Mockito;
 import org.testng.annotations.Test;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
@@ -245,6 +251,76 @@ public class TestContiguousIntervalCapacityInArrear extends TestUsageInArrearBas
         assertTrue(result.get(1).getEndDate().compareTo(endDate) == 0);
     }
 
+    @Test(groups = "fast")
+    public void testRolledUpUsageWithAggregatedRawUsage() {
+        final LocalDate startDate = new LocalDate(2014, 03, 20);
+        final LocalDate endDate = new LocalDate(2014, 04, 15);
+
+        // Aggregated (or compacted) raw usage carries both the total and the max of the records of the day
+        final List<RawUsage> rawUsages = new ArrayList<RawUsage>();
+        rawUsages.add(new DefaultRawUsage(subscriptionId, new LocalDate(2014, 03, 20), "unit1", 300L, 130L, ImmutableSet.<String>of("tracking-1", "tracking-2")));
+        rawUsages.add(new DefaultRawUsage(subscriptionId, new LocalDate(2014, 03, 21), "unit1", 100L, 100L, ImmutableSet.<String>of("tracking-3")));
+
+        final DefaultUnit unit1 = new DefaultUnit().setName("unit1");
+        final DefaultLimit limit1 = new DefaultLimit().setUnit(unit1).setMax((double) -1);
+        final DefaultTier tier = createDefaultTierWithLimits(BigDecimal.TEN, limit1);
+        final DefaultUsage usage = createCapacityInArrearUsage(usageName, BillingPeriod.MONTHLY, tier);
+
+        final BillingEvent event1 = createMockBillingEvent(startDate.toDateTimeAtStartOfDay(DateTimeZone.UTC), BillingPeriod.MONTHLY, Collections.<Usage>emptyList());
+        final BillingEvent event2 = createMockBillingEvent(endDate.toDateTimeAtStartOfDay(DateTimeZone.UTC), BillingPeriod.MONTHLY, Collections.<Usage>emptyList());
+        final ContiguousIntervalCapacityUsageInArrear intervalCapacityInArrear = createContiguousIntervalCapacityInArrear(usage, rawUsages, endDate, true, event1, event2);
+
+        final RolledUpUnitsWithTracking rolledUpUsage = intervalCapacityInArrear.getRolledUpUsage();
+        assertEquals(rolledUpUsage.getUsage().size(), 1);
+        assertEquals(rolledUpUsage.getUsage().get(0).getRolledUpUnits().size(), 1);
+        // Capacity is billed on the max of the records, not on their total
+        assertEquals(rolledUpUsage.getUsage().get(0).getRolledUpUnits().get(0).getAmount(), (Long) 130L);
+
+        // One tracking record per tracking id
+        assertEquals(rolledUpUsage.getTrackingIds().size(), 3);
+        final Set<String> trackingIds = ImmutableSet.copyOf(Iterables.transform(rolledUpUsage.getTrackingIds(), new Function<TrackingRecordId, String>() {
+            @Override
+            public String apply(final TrackingRecordId input) {
+                return input.getTrackingId();
+            }
+        }));
+        assertEquals(trackingIds, ImmutableSet.<String>of("tracking-1", "tracking-2", "tracking-3"));
+    }
+
+    @Test(groups = "fast")
+    public void testRolledUpUsageWithStreamedAggregatedRawUsage() {
+        final LocalDate startDate = new LocalDate(2014, 03, 20);
+        final LocalDate endDate = new LocalDate(2014, 04, 15);
+
+        // The aggregated rows are streamed without tracking ids, which are looked up separately
+        final InternalUserApi usageApi = Mockito.mock(InternalUserApi.class);
+        Mockito.when(usageApi.getAggregatedRawUsageForSubscription(Mockito.eq(subscriptionId), Mockito.<LocalDate>any(), Mockito.<LocalDate>any(), Mockito.<Set<String>>any(), Mockito.<InternalTenantContext>any()))
+               .thenReturn(ImmutableList.<RawUsage>of(new DefaultRawUsage(subscriptionId, new LocalDate(2014, 03, 20), "unit1", 300L, 130L, ImmutableSet.<String>of()),
+                                                      new DefaultRawUsage(subscriptionId, new LocalDate(2014, 03, 21), "unit1", 100L, 100L, ImmutableSet.<String>of())).iterator());
+        Mockito.when(usageApi.getTrackingIdsForSubscription(Mockito.eq(subscriptionId), Mockito.<LocalDate>any(), Mockito.<LocalDate>any(), Mockito.<Set<String>>any(), Mockito.<InternalTenantContext>any()))
+               .thenReturn(ImmutableList.<RawUsage>of(new DefaultRawUsage(subscriptionId, new LocalDate(2014, 03, 20), "unit1", null, null, ImmutableSet.<String>of("tracking-1", "tracking-2")),
+                                                      new DefaultRawUsage(subscriptionId, new LocalDate(2014, 03, 21), "unit1", null, null, ImmutableSet.<String>of("tracking-3"))));
+        final AggregatedSubscriptionRawUsage rawUsages = new AggregatedSubscriptionRawUsage(usageApi, subscriptionId, startDate, endDate, ImmutableSet.<String>of("unit1"), internalCallContext);
+
+        final DefaultUnit unit1 = new DefaultUnit().setName("unit1");
+        final DefaultLimit limit1 = new DefaultLimit().setUnit(unit1).setMax((double) -1);
+        final DefaultTier tier = createDefaultTierWithLimits(BigDecimal.TEN, limit1);
+        final DefaultUsage usage = createCapacityInArrearUsage(usageName, BillingPeriod.MONTHLY, tier);
+
+        final BillingEvent event1 = createMockBillingEvent(startDate.toDateTimeAtStartOfDay(DateTimeZone.UTC), BillingPeriod.MONTHLY, Collections.<Usage>emptyList());
+        final BillingEvent event2 = createMockBillingEvent(endDate.toDateTimeAtStartOfDay(DateTimeZone.UTC), BillingPeriod.MONTHLY, Collections.<Usage>emptyList());
+        final ContiguousIntervalCapacityUsageInArrear intervalCapacityInArrear = createContiguousIntervalCapacityInArrear(usage, rawUsages, endDate, true, event1, event2);
+
+        final RolledUpUnitsWithTracking rolledUpUsage = intervalCapacityInArrear.getRolledUpUsage();
+        assertEquals(rolledUpUsage.getUsage().size(), 1);
+        assertEquals(rolledUpUsage.getUsage().get(0).getRolledUpUnits().get(0).getAmount(), (Long) 130L);
+        assertEquals(rolledUpUsage.getTrackingIds().size(), 3);
+
+        // One query for the usage and one for the tracking ids, for the whole interval
+        Mockito.verify(usageApi, Mockito.times(1)).getAggregatedRawUsageForSubscription(Mockito.eq(subscriptionId), Mockito.<LocalDate>any(), Mockito.<LocalDate>any(), Mockito.<Set<String>>any(), Mockito.<InternalTenantContext>any());
+        Mockito.verify(usageApi, Mockito.times(1)).getTrackingIdsForSubscription(Mockito.eq(subscriptionId), Mockito.<LocalDate>any(), Mockito.<LocalDate>any(), Mockito.<Set<String>>any(), Mockito.<InternalTenantContext>any());
+    }
+
     @Test(groups = "fast")
     public void testMultipleItemsAndTiersAggregateMode() throws CatalogApiException, IOException, InvoiceApiException {
         testMultipleItemsAndTiers(UsageDetailMode.AGGREGATE);
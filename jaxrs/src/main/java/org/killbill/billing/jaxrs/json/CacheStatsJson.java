@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.jaxrs.json;
+
+import org.killbill.billing.util.cache.CacheStats;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.swagger.annotations.ApiModel;
+
+@ApiModel(value="CacheStats")
+public class CacheStatsJson {
+
+    private final String cacheName;
+    private final Long size;
+    private final Long hits;
+    private final Long misses;
+    private final Double hitRatio;
+    private final Long coalescedLoads;
+    private final Long evictions;
+    private final Long loads;
+    private final Double loadMeanMs;
+    private final Double loadP99Ms;
+    private final Double loadMaxMs;
+    private final Long approximateSizeInBytes;
+
+    @JsonCreator
+    public CacheStatsJson(@JsonProperty("cacheName") final String cacheName,
+                          @JsonProperty("size") final Long size,
+                          @JsonProperty("hits") final Long hits,
+                          @JsonProperty("misses") final Long misses,
+                          @JsonProperty("hitRatio") final Double hitRatio,
+                          @JsonProperty("coalescedLoads") final Long coalescedLoads,
+                          @JsonProperty("evictions") final Long evictions,
+                          @JsonProperty("loads") final Long loads,
+                          @JsonProperty("loadMeanMs") final Double loadMeanMs,
+                          @JsonProperty("loadP99Ms") final Double loadP99Ms,
+                          @JsonProperty("loadMaxMs") final Double loadMaxMs,
+                          @JsonProperty("approximateSizeInBytes") final Long approximateSizeInBytes) {
+        this.cacheName = cacheName;
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+        this.hitRatio = hitRatio;
+        this.coalescedLoads = coalescedLoads;
+        this.evictions = evictions;
+        this.loads = loads;
+        this.loadMeanMs = loadMeanMs;
+        this.loadP99Ms = loadP99Ms;
+        this.loadMaxMs = loadMaxMs;
+        this.approximateSizeInBytes = approximateSizeInBytes;
+    }
+
+    public CacheStatsJson(final CacheStats cacheStats) {
+        this(cacheStats.getCacheName(),
+             toNullIfNotSupported(cacheStats.getSize()),
+             cacheStats.getHits(),
+             cacheStats.getMisses(),
+             cacheStats.getHitRatio(),
+             cacheStats.getCoalescedLoads(),
+             toNullIfNotSupported(cacheStats.getEvictions()),
+             cacheStats.getLoads(),
+             cacheStats.getLoadMeanMs(),
+             cacheStats.getLoadP99Ms(),
+             cacheStats.getLoadMaxMs(),
+             toNullIfNotSupported(cacheStats.getApproximateSizeInBytes()));
+    }
+
+    private static Long toNullIfNotSupported(final long value) {
+        return value == CacheStats.NOT_SUPPORTED ? null : value;
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public Long getHits() {
+        return hits;
+    }
+
+    public Long getMisses() {
+        return misses;
+    }
+
+    public Double getHitRatio() {
+        return hitRatio;
+    }
+
+    public Long getCoalescedLoads() {
+        return coalescedLoads;
+    }
+
+    public Long getEvictions() {
+        return evictions;
+    }
+
+    public Long getLoads() {
+        return loads;
+    }
+
+    public Double getLoadMeanMs() {
+        return loadMeanMs;
+    }
+
+    public Double getLoadP99Ms() {
+        return loadP99Ms;
+    }
+
+    public Double getLoadMaxMs() {
+        return loadMaxMs;
+    }
+
+    public Long getApproximateSizeInBytes() {
+        return approximateSizeInBytes;
+    }
+}
@@ -59,6 +59,7 @@ import org.killbill.billing.account.api.Account;
 import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.account.api.AccountData;
 import org.killbill.billing.account.api.AccountEmail;
+import org.killbill.billing.account.api.AccountInternalApi;
 import org.killbill.billing.account.api.AccountUserApi;
 import org.killbill.billing.catalog.api.BillingActionPolicy;
 import org.killbill.billing.catalog.api.CatalogApiException;
@@ -168,6 +169,7 @@ public class AccountResource extends JaxRsResourceBase {
     private final JaxrsConfig jaxrsConfig;
     private final RecordIdApi recordIdApi;
     private final NotificationQueueService notificationQueueService;
+    private final AccountInternalApi accountInternalApi;
 
     @Inject
     public AccountResource(final JaxrsUriBuilder uriBuilder,
@@ -186,7 +188,8 @@ public class AccountResource extends JaxRsResourceBase {
                            final JaxrsConfig jaxrsConfig,
                            final Context context,
                            final RecordIdApi recordIdApi,
-                           final NotificationQueueService notificationQueueService) {
+                           final NotificationQueueService notificationQueueService,
+                           final AccountInternalApi accountInternalApi) {
         super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, accountApi, paymentApi, invoicePaymentApi, subscriptionApi, clock, context);
         this.subscriptionApi = subscriptionApi;
         this.invoiceApi = invoiceApi;
@@ -197,6 +200,7 @@ public class AccountResource extends JaxRsResourceBase {
         this.jaxrsConfig = jaxrsConfig;
         this.recordIdApi = recordIdApi;
         this.notificationQueueService = notificationQueueService;
+        this.accountInternalApi = accountInternalApi;
     }
 
     @TimedResource
@@ -226,15 +230,19 @@ public class AccountResource extends JaxRsResourceBase {
     @ApiResponses(value = {})
     public Response getAccounts(@QueryParam(QUERY_SEARCH_OFFSET) @DefaultValue("0") final Long offset,
                                 @QueryParam(QUERY_SEARCH_LIMIT) @DefaultValue("100") final Long limit,
+                                @QueryParam(QUERY_SEARCH_PAGE_TOKEN) final String pageToken,
                                 @QueryParam(QUERY_ACCOUNT_WITH_BALANCE) @DefaultValue("false") final Boolean accountWithBalance,
                                 @QueryParam(QUERY_ACCOUNT_WITH_BALANCE_AND_CBA) @DefaultValue("false") final Boolean accountWithBalanceAndCBA,
                                 @QueryParam(QUERY_AUDIT) @DefaultValue("NONE") final AuditMode auditMode,
                                 @javax.ws.rs.core.Context final HttpServletRequest request) throws AccountApiException {
         final TenantContext tenantContext = context.createTenantContextNoAccountId(request);
-        final Pagination<Account> accounts = accountUserApi.getAccounts(offset, limit, tenantContext);
-        final URI nextPageUri = uriBuilder.nextPage(AccountResource.class, "getAccounts", accounts.getNextOffset(), limit, ImmutableMap.<String, String>of(QUERY_ACCOUNT_WITH_BALANCE, accountWithBalance.toString(),
-                                                                                                                                                           QUERY_ACCOUNT_WITH_BALANCE_AND_CBA, accountWithBalanceAndCBA.toString(),
-                                                                                                                                                           QUERY_AUDIT, auditMode.getLevel().toString()));
+        final Long lastRecordId = JaxrsUriBuilder.decodePageToken(pageToken);
+        final Pagination<Account> accounts = lastRecordId == null ?
+                                             accountUserApi.getAccounts(offset, limit, tenantContext) :
+                                             accountInternalApi.getAccounts(offset, lastRecordId, limit, context.createInternalTenantContextNoAccountId(request));
+        final URI nextPageUri = uriBuilder.nextPage(AccountResource.class, "getAccounts", accounts, limit, ImmutableMap.<String, String>of(QUERY_ACCOUNT_WITH_BALANCE, accountWithBalance.toString(),
+                                                                                                                                           QUERY_ACCOUNT_WITH_BALANCE_AND_CBA, accountWithBalanceAndCBA.toString(),
+                                                                                                                                           QUERY_AUDIT, auditMode.getLevel().toString()));
         return buildStreamingPaginationResponse(accounts,
                                                 new Function<Account, AccountJson>() {
                                                     @Override
@@ -1165,7 +1173,9 @@ public class AccountResource extends JaxRsResourceBase {
     public Response getCustomFields(@PathParam(ID_PARAM_NAME) final UUID accountId,
                                     @QueryParam(QUERY_AUDIT) @DefaultValue("NONE") final AuditMode auditMode,
                                     @javax.ws.rs.core.Context final HttpServletRequest request) {
-        return super.getCustomFields(accountId, auditMode, context.createTenantContextWithAccountId(accountId, request));
+        final TenantContext tenantContext = context.createTenantContextWithAccountId(accountId, request);
+        final List<CustomField> customFields = customFieldUserApi.getCustomFieldsForObject(accountId, ObjectType.ACCOUNT, tenantContext);
+        return createCustomFieldResponse(accountId, customFields, auditMode, tenantContext);
     }
 
     @TimedResource
@@ -1183,7 +1193,7 @@ public class AccountResource extends JaxRsResourceBase {
         final List<CustomField> customFields = objectType != null ?
                                                customFieldUserApi.getCustomFieldsForAccountType(accountId, objectType, tenantContext) :
                                                customFieldUserApi.getCustomFieldsForAccount(accountId, tenantContext);
-        return createCustomFieldResponse(customFields, auditMode, tenantContext);
+        return createCustomFieldResponse(accountId, customFields, auditMode, tenantContext);
     }
 
     @TimedResource
@@ -21,6 +21,8 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
@@ -52,6 +54,7 @@ import org.killbill.billing.catalog.api.Catalog;
 import org.killbill.billing.invoice.api.InvoiceApiException;
 import org.killbill.billing.invoice.api.InvoiceUserApi;
 import org.killbill.billing.jaxrs.json.AdminPaymentJson;
+import org.killbill.billing.jaxrs.json.CacheStatsJson;
 import org.killbill.billing.jaxrs.util.Context;
 import org.killbill.billing.jaxrs.util.JaxrsUriBuilder;
 import org.killbill.billing.payment.api.AdminPaymentApi;
@@ -73,6 +76,7 @@ import org.killbill.billing.util.api.TagUserApi;
 import org.killbill.billing.util.cache.Cachable.CacheType;
 import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.cache.CacheStats;
 import org.killbill.billing.util.callcontext.CallContext;
 import org.killbill.billing.util.callcontext.TenantContext;
 import org.killbill.billing.util.config.tenant.PerTenantConfig;
@@ -89,7 +93,6 @@ import org.killbill.notificationq.api.NotificationQueue;
 import org.killbill.notificationq.api.NotificationQueueService;
 
 import com.fasterxml.jackson.core.JsonGenerator;
-import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
@@ -323,6 +326,19 @@ public class AdminResource extends JaxRsResourceBase {
                        .build();
     }
 
+    @GET
+    @Path("/" + CACHE + "/" + STATS)
+    @Produces(APPLICATION_JSON)
+    @ApiOperation(value = "Retrieve the statistics of each cache", response = CacheStatsJson.class, responseContainer = "List")
+    @ApiResponses(value = {@ApiResponse(code = 200, message = "Successful operation")})
+    public Response getCacheStats(@javax.ws.rs.core.Context final HttpServletRequest request) {
+        final List<CacheStatsJson> result = new LinkedList<CacheStatsJson>();
+        for (final CacheStats cacheStats : cacheControllerDispatcher.getStats()) {
+            result.add(new CacheStatsJson(cacheStats));
+        }
+        return Response.status(Status.OK).entity(result).build();
+    }
+
     @DELETE
     @Path("/" + CACHE)
     @Produces(APPLICATION_JSON)
@@ -389,20 +405,13 @@ public class AdminResource extends JaxRsResourceBase {
         // getting Tenant Record Id
         final Long tenantRecordId = recordIdApi.getRecordId(tenantContext.getTenantId(), ObjectType.TENANT, tenantContext);
 
-        final Function<String, Boolean> tenantKeysMatcher = new Function<String, Boolean>() {
-            @Override
-            public Boolean apply(@Nullable final String key) {
-                return key != null && key.endsWith("::" + tenantRecordId);
-            }
-        };
-
         // clear tenant-record-id cache by tenantId
         final CacheController<String, Long> tenantRecordIdCacheController = cacheControllerDispatcher.getCacheController(CacheType.TENANT_RECORD_ID);
         tenantRecordIdCacheController.remove(currentTenant.getId().toString());
 
         // clear tenant-payment-state-machine-config cache by tenantRecordId
         final CacheController<String, Object> tenantPaymentStateMachineConfigCacheController = cacheControllerDispatcher.getCacheController(CacheType.TENANT_PAYMENT_STATE_MACHINE_CONFIG);
-        tenantPaymentStateMachineConfigCacheController.remove(tenantKeysMatcher);
+        tenantPaymentStateMachineConfigCacheController.removeByTenantRecordId(tenantRecordId);
 
         // clear tenant cache by tenantApiKey
         final CacheController<String, Tenant> tenantCacheController = cacheControllerDispatcher.getCacheController(CacheType.TENANT);
@@ -410,7 +419,7 @@ public class AdminResource extends JaxRsResourceBase {
 
         // clear tenant-kv cache by tenantRecordId
         final CacheController<String, String> tenantKVCacheController = cacheControllerDispatcher.getCacheController(CacheType.TENANT_KV);
-        tenantKVCacheController.remove(tenantKeysMatcher);
+        tenantKVCacheController.removeByTenantRecordId(tenantRecordId);
 
         // clear tenant-config cache by tenantRecordId
         final CacheController<Long, PerTenantConfig> tenantConfigCacheController = cacheControllerDispatcher.getCacheController(CacheType.TENANT_CONFIG);
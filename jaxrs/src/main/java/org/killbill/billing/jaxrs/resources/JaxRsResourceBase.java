@@ -257,6 +257,19 @@ public abstract class JaxRsResourceBase implements JaxrsResource {
         return Response.status(Response.Status.OK).entity(result).build();
     }
 
+    // For custom fields belonging to a single account: retrieve all audit logs in bulk
+    protected Response createCustomFieldResponse(final UUID accountId, final Iterable<CustomField> fields, final AuditMode auditMode, final TenantContext context) {
+        final AccountAuditLogsForObjectType customFieldsAuditLogs = auditUserApi.getAccountAuditLogs(accountId, ObjectType.CUSTOM_FIELD, auditMode.getLevel(), context);
+
+        final Collection<CustomFieldJson> result = new LinkedList<CustomFieldJson>();
+        for (final CustomField cur : fields) {
+            final List<AuditLog> auditLogs = customFieldsAuditLogs.getAuditLogs(cur.getId());
+            result.add(new CustomFieldJson(cur, auditLogs));
+        }
+
+        return Response.status(Response.Status.OK).entity(result).build();
+    }
+
     protected Response createCustomFields(final UUID id,
                                           final List<CustomFieldJson> customFields,
                                           final CallContext context,
@@ -46,6 +46,8 @@ public interface JaxrsResource {
     String HDR_CREATED_BY = "X-Killbill-CreatedBy";
     String HDR_REASON = "X-Killbill-Reason";
     String HDR_COMMENT = "X-Killbill-Comment";
+    String HDR_FLOW_ID = "X-Killbill-Flow-Id";
+    String HDR_REQUEST_ID = "X-Request-Id";
     String HDR_PAGINATION_CURRENT_OFFSET = "X-Killbill-Pagination-CurrentOffset";
     String HDR_PAGINATION_NEXT_OFFSET = "X-Killbill-Pagination-NextOffset";
     String HDR_PAGINATION_TOTAL_NB_RECORDS = "X-Killbill-Pagination-TotalNbRecords";
@@ -82,6 +84,7 @@ public interface JaxrsResource {
     String QUERY_ENTITLEMENT_POLICY = "entitlementPolicy";
     String QUERY_SEARCH_OFFSET = "offset";
     String QUERY_SEARCH_LIMIT = "limit";
+    String QUERY_SEARCH_PAGE_TOKEN = "pageToken";
     String QUERY_ENTITLEMENT_EFFECTIVE_FROM_DT = "effectiveFromDate";
     String QUERY_FORCE_NEW_BCD_WITH_PAST_EFFECTIVE_DATE = "forceNewBcdWithPastEffectiveDate";
 
@@ -241,6 +244,7 @@ public interface JaxrsResource {
 
     String USAGES = "usages";
     String USAGES_PATH = PREFIX + "/" + USAGES;
+    String BULK = "bulk";
 
     String EXPORT = "export";
     String EXPORT_PATH = PREFIX + "/" + EXPORT;
@@ -292,6 +296,7 @@ public interface JaxrsResource {
     String TRANSFER_CREDIT = "transferCredit";
 
     String CACHE = "cache";
+    String STATS = "stats";
     String HEALTHCHECK = "healthcheck";
 
     String QUERY_INCLUDED_DELETED = "includedDeleted";
@@ -40,6 +40,7 @@ import org.killbill.billing.account.api.AccountUserApi;
 import org.killbill.billing.jaxrs.json.AuditLogJson;
 import org.killbill.billing.payment.api.InvoicePaymentApi;
 import org.killbill.billing.payment.api.PaymentApi;
+import org.killbill.billing.tag.TagInternalApi;
 import org.killbill.billing.util.api.AuditLevel;
 import org.killbill.billing.util.audit.AuditLogWithHistory;
 import org.killbill.clock.Clock;
@@ -73,6 +74,8 @@ import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 @Api(value = JaxrsResource.TAGS_PATH, description = "Operations on tags", tags="Tag")
 public class TagResource extends JaxRsResourceBase {
 
+    private final TagInternalApi tagInternalApi;
+
     @Inject
     public TagResource(final JaxrsUriBuilder uriBuilder,
                        final TagUserApi tagUserApi,
@@ -82,8 +85,10 @@ public class TagResource extends JaxRsResourceBase {
                        final PaymentApi paymentApi,
                        final InvoicePaymentApi invoicePaymentApi,
                        final Clock clock,
+                       final TagInternalApi tagInternalApi,
                        final Context context) {
         super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, accountUserApi, paymentApi, invoicePaymentApi, null, clock, context);
+        this.tagInternalApi = tagInternalApi;
     }
 
     @TimedResource
@@ -94,11 +99,15 @@ public class TagResource extends JaxRsResourceBase {
     @ApiResponses(value = {})
     public Response getTags(@QueryParam(QUERY_SEARCH_OFFSET) @DefaultValue("0") final Long offset,
                             @QueryParam(QUERY_SEARCH_LIMIT) @DefaultValue("100") final Long limit,
+                            @QueryParam(QUERY_SEARCH_PAGE_TOKEN) final String pageToken,
                             @QueryParam(QUERY_AUDIT) @DefaultValue("NONE") final AuditMode auditMode,
                             @javax.ws.rs.core.Context final HttpServletRequest request) throws TagApiException {
         final TenantContext tenantContext = context.createTenantContextNoAccountId(request);
-        final Pagination<Tag> tags = tagUserApi.getTags(offset, limit, tenantContext);
-        final URI nextPageUri = uriBuilder.nextPage(TagResource.class, "getTags", tags.getNextOffset(), limit, ImmutableMap.<String, String>of(QUERY_AUDIT, auditMode.getLevel().toString()));
+        final Long lastRecordId = JaxrsUriBuilder.decodePageToken(pageToken);
+        final Pagination<Tag> tags = lastRecordId == null ?
+                                     tagUserApi.getTags(offset, limit, tenantContext) :
+                                     tagInternalApi.getTags(offset, lastRecordId, limit, context.createInternalTenantContextNoAccountId(request));
+        final URI nextPageUri = uriBuilder.nextPage(TagResource.class, "getTags", tags, limit, ImmutableMap.<String, String>of(QUERY_AUDIT, auditMode.getLevel().toString()));
 
         final Map<UUID, TagDefinition> tagDefinitionsCache = new HashMap<UUID, TagDefinition>();
         for (final TagDefinition tagDefinition : tagUserApi.getTagDefinitions(tenantContext)) {
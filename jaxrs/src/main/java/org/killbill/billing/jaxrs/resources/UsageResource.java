@@ -48,6 +48,7 @@ import org.killbill.billing.jaxrs.util.Context;
 import org.killbill.billing.jaxrs.util.JaxrsUriBuilder;
 import org.killbill.billing.payment.api.InvoicePaymentApi;
 import org.killbill.billing.payment.api.PaymentApi;
+import org.killbill.billing.usage.InternalUserApi;
 import org.killbill.billing.usage.api.RolledUpUsage;
 import org.killbill.billing.usage.api.SubscriptionUsageRecord;
 import org.killbill.billing.usage.api.UsageApiException;
@@ -80,6 +81,7 @@ import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 public class UsageResource extends JaxRsResourceBase {
 
     private final UsageUserApi usageUserApi;
+    private final InternalUserApi internalUserApi;
     private final EntitlementApi entitlementApi;
 
     @Inject
@@ -89,6 +91,7 @@ public class UsageResource extends JaxRsResourceBase {
                          final AuditUserApi auditUserApi,
                          final AccountUserApi accountUserApi,
                          final UsageUserApi usageUserApi,
+                         final InternalUserApi internalUserApi,
                          final PaymentApi paymentApi,
                          final InvoicePaymentApi invoicePaymentApi,
                          final EntitlementApi entitlementApi,
@@ -96,6 +99,7 @@ public class UsageResource extends JaxRsResourceBase {
                          final Context context) {
         super(uriBuilder, tagUserApi, customFieldUserApi, auditUserApi, accountUserApi, paymentApi, invoicePaymentApi, null, clock, context);
         this.usageUserApi = usageUserApi;
+        this.internalUserApi = internalUserApi;
         this.entitlementApi = entitlementApi;
     }
 
@@ -114,6 +118,54 @@ public class UsageResource extends JaxRsResourceBase {
                                 @javax.ws.rs.core.Context final UriInfo uriInfo) throws EntitlementApiException,
                                                                                         AccountApiException,
                                                                                         UsageApiException {
+        verifySubscriptionUsageRecordJson(json);
+        final CallContext callContext = context.createCallContextNoAccountId(createdBy, reason, comment, request);
+        // Verify subscription exists..
+        final Entitlement entitlement = entitlementApi.getEntitlementForId(json.getSubscriptionId(), callContext);
+        if (!isActiveForRecordDate(entitlement, getHighestRecordDate(json.getUnitUsageRecords()))) {
+            return Response.status(Status.BAD_REQUEST).build();
+        }
+
+        final SubscriptionUsageRecord record = json.toSubscriptionUsageRecord();
+        usageUserApi.recordRolledUpUsage(record, callContext);
+        return Response.status(Status.CREATED).build();
+    }
+
+    @TimedResource
+    @POST
+    @Path("/" + BULK)
+    @Consumes(APPLICATION_JSON)
+    @Produces(APPLICATION_JSON)
+    @ApiOperation(value = "Record usage for multiple subscriptions")
+    @ApiResponses(value = {@ApiResponse(code = 201, message = "Successfully recorded usage data change"),
+                           @ApiResponse(code = 400, message = "Invalid subscription (e.g. inactive)")})
+    public Response recordBulkUsage(final List<SubscriptionUsageRecordJson> json,
+                                    @HeaderParam(HDR_CREATED_BY) final String createdBy,
+                                    @HeaderParam(HDR_REASON) final String reason,
+                                    @HeaderParam(HDR_COMMENT) final String comment,
+                                    @javax.ws.rs.core.Context final HttpServletRequest request,
+                                    @javax.ws.rs.core.Context final UriInfo uriInfo) throws EntitlementApiException,
+                                                                                            AccountApiException,
+                                                                                            UsageApiException {
+        verifyNonNullOrEmpty(json, "SubscriptionUsageRecordJson body should be specified");
+        Preconditions.checkArgument(!json.isEmpty());
+        for (final SubscriptionUsageRecordJson subscriptionUsageRecordJson : json) {
+            verifySubscriptionUsageRecordJson(subscriptionUsageRecordJson);
+        }
+        final CallContext callContext = context.createCallContextNoAccountId(createdBy, reason, comment, request);
+
+        // The usage module verifies that each subscription is active on its highest record date
+        final Iterable<SubscriptionUsageRecord> records = Iterables.transform(json, new Function<SubscriptionUsageRecordJson, SubscriptionUsageRecord>() {
+            @Override
+            public SubscriptionUsageRecord apply(final SubscriptionUsageRecordJson input) {
+                return input.toSubscriptionUsageRecord();
+            }
+        });
+        internalUserApi.recordRolledUpUsage(records, callContext);
+        return Response.status(Status.CREATED).build();
+    }
+
+    private void verifySubscriptionUsageRecordJson(final SubscriptionUsageRecordJson json) {
         verifyNonNullOrEmpty(json, "SubscriptionUsageRecordJson body should be specified");
         verifyNonNullOrEmpty(json.getSubscriptionId(), "SubscriptionUsageRecordJson subscriptionId needs to be set",
                              json.getUnitUsageRecords(), "SubscriptionUsageRecordJson unitUsageRecords needs to be set");
@@ -127,19 +179,10 @@ public class UsageResource extends JaxRsResourceBase {
                 verifyNonNull(usageRecordJson.getRecordDate(), "UsageRecordJson recordDate needs to be set");
             }
         }
-        final CallContext callContext = context.createCallContextNoAccountId(createdBy, reason, comment, request);
-        // Verify subscription exists..
-        final Entitlement entitlement = entitlementApi.getEntitlementForId(json.getSubscriptionId(), callContext);
-        if (entitlement.getEffectiveEndDate() != null) {
-            final LocalDate highestRecordDate = getHighestRecordDate(json.getUnitUsageRecords());
-            if (entitlement.getEffectiveEndDate().compareTo(highestRecordDate) < 0) {
-                return Response.status(Status.BAD_REQUEST).build();
-            }
-        }
+    }
 
-        final SubscriptionUsageRecord record = json.toSubscriptionUsageRecord();
-        usageUserApi.recordRolledUpUsage(record, callContext);
-        return Response.status(Status.CREATED).build();
+    private boolean isActiveForRecordDate(final Entitlement entitlement, final LocalDate highestRecordDate) {
+        return entitlement.getEffectiveEndDate() == null || entitlement.getEffectiveEndDate().compareTo(highestRecordDate) >= 0;
     }
 
     @VisibleForTesting
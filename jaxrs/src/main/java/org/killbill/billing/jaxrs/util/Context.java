@@ -22,6 +22,7 @@ import java.util.UUID;
 
 import javax.servlet.ServletRequest;
 
+import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.jaxrs.resources.JaxrsResource;
 import org.killbill.billing.tenant.api.Tenant;
 import org.killbill.billing.util.UUIDs;
@@ -93,6 +94,10 @@ public class Context {
         return tenantContext;
     }
 
+    public InternalTenantContext createInternalTenantContextNoAccountId(final ServletRequest request) {
+        return internalCallContextFactory.createInternalTenantContextWithoutAccountRecordId(createTenantContextNoAccountId(request));
+    }
+
     // Use REQUEST_ID_HEADER if this is provided and looks like a UUID, if not allocate a random one.
     public static  UUID getOrCreateUserToken() {
         UUID userToken;
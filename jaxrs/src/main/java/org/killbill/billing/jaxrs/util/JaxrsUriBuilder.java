@@ -32,11 +32,20 @@ import javax.ws.rs.core.UriInfo;
 import org.killbill.billing.jaxrs.resources.JaxRsResourceBase;
 import org.killbill.billing.jaxrs.resources.JaxrsResource;
 import org.killbill.billing.util.config.definition.JaxrsConfig;
+import org.killbill.billing.util.entity.DefaultPagination;
+import org.killbill.billing.util.entity.Pagination;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.BaseEncoding;
 
 public class JaxrsUriBuilder {
 
+    private static final String PAGE_TOKEN_PREFIX = "rid:";
+
     private final JaxrsConfig jaxrsConfig;
     private final Map<Class, UriBuilder> classToUriBuilder = new HashMap<Class, UriBuilder>();
     private final Map<String, UriBuilder> classAndMethodToUriBuilder = new HashMap<String, UriBuilder>();
@@ -131,6 +140,40 @@ public class JaxrsUriBuilder {
         return uriBuilder.build();
     }
 
+    // Next page URI which, if the page knows where it ended, seeks from there (see DefaultPaginationSqlDaoHelper) instead of scanning nextOffset records
+    public URI nextPage(final Class<? extends JaxrsResource> theClass, final String getMethodName, final Pagination<?> pagination, final Long limit, final Map<String, String> params) {
+        final Long pageLastRecordId = pagination instanceof DefaultPagination ? ((DefaultPagination) pagination).getPageLastRecordId() : null;
+        if (pageLastRecordId == null) {
+            return nextPage(theClass, getMethodName, pagination.getNextOffset(), limit, params);
+        }
+
+        final Map<String, String> paramsWithPageToken = ImmutableMap.<String, String>builder()
+                                                                    .putAll(params)
+                                                                    .put(JaxRsResourceBase.QUERY_SEARCH_PAGE_TOKEN, encodePageToken(pageLastRecordId))
+                                                                    .build();
+        return nextPage(theClass, getMethodName, pagination.getNextOffset(), limit, paramsWithPageToken);
+    }
+
+    // The token is opaque for clients: it only carries the record id of the last record of the previous page
+    public static String encodePageToken(final Long lastRecordId) {
+        return BaseEncoding.base64Url().omitPadding().encode((PAGE_TOKEN_PREFIX + lastRecordId).getBytes(Charsets.UTF_8));
+    }
+
+    public static Long decodePageToken(@Nullable final String pageToken) {
+        if (Strings.isNullOrEmpty(pageToken)) {
+            return null;
+        }
+
+        try {
+            final String decoded = new String(BaseEncoding.base64Url().omitPadding().decode(pageToken), Charsets.UTF_8);
+            Preconditions.checkArgument(decoded.startsWith(PAGE_TOKEN_PREFIX));
+            return Long.valueOf(decoded.substring(PAGE_TOKEN_PREFIX.length()));
+        } catch (final IllegalArgumentException e) {
+            // Also covers NumberFormatException
+            throw new IllegalArgumentException(String.format("Invalid %s %s", JaxRsResourceBase.QUERY_SEARCH_PAGE_TOKEN, pageToken));
+        }
+    }
+
     private UriBuilder getUriBuilder(final String path, final Class<? extends JaxrsResource> theClassMaybeEnhanced, @Nullable final String getMethodName) {
         final Class theClass = getNonEnhancedClass(theClassMaybeEnhanced);
         return getMethodName != null ? fromPath(path.equals("/") ? path.substring(1) : path, theClass, getMethodName) : fromPath(path, theClass);
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.junction.plumbing.billing;
+
+import java.util.HashSet;
+import java.util.Iterator;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.catalog.api.Catalog;
+import org.killbill.billing.junction.BillingEvent;
+import org.killbill.billing.subscription.api.SubscriptionBaseTransitionType;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Local cache of the billing events of an account, keyed by account record id.
+ * <p/>
+ * Billing events are only served if:
+ * <ul>
+ * <li>the account version (see EntityWriteVersions) didn't change, i.e. no subscription, blocking state, tag or account
+ * change was written for that account on this node since they were computed (writes to other tables, e.g. by the invoice
+ * run itself, are ignored)</li>
+ * <li>the catalog is the same (a new catalog version invalidates the cached catalog)</li>
+ * <li>none of the billing events became effective since they were computed (the blocking states of add-ons are computed
+ * against the time at which the billing events were built)</li>
+ * </ul>
+ */
+public class BillingEventSetCache {
+
+    private final Cache<Long, Snapshot> snapshots;
+
+    public BillingEventSetCache(final long maxEntries) {
+        this.snapshots = CacheBuilder.newBuilder()
+                                     .maximumSize(maxEntries)
+                                     .build();
+    }
+
+    @Nullable
+    public DefaultBillingEventSet get(final Long accountRecordId, final Long version, final Catalog catalog, final DateTime utcNow) {
+        final Snapshot snapshot = snapshots.getIfPresent(accountRecordId);
+        if (snapshot == null) {
+            return null;
+        }
+
+        if (snapshot.getVersion().equals(version) && snapshot.getCatalog() == catalog && utcNow.isBefore(snapshot.getExpirationDate())) {
+            return snapshot.getBillingEvents();
+        } else {
+            // Drop it right away, to free up the memory
+            snapshots.asMap().remove(accountRecordId, snapshot);
+            return null;
+        }
+    }
+
+    public void put(final Long accountRecordId, final Long version, final Catalog catalog, final DateTime utcNow, final DateTime maxExpirationDate, final DefaultBillingEventSet billingEvents) {
+        final Snapshot newSnapshot = new Snapshot(version, catalog, computeExpirationDate(billingEvents, utcNow, maxExpirationDate), billingEvents);
+        final Snapshot existingSnapshot = snapshots.asMap().putIfAbsent(accountRecordId, newSnapshot);
+        // Never replace billing events with older ones (computations can race)
+        if (existingSnapshot != null && existingSnapshot.getVersion() <= version) {
+            snapshots.asMap().replace(accountRecordId, existingSnapshot, newSnapshot);
+        }
+    }
+
+    public void invalidate(final Long accountRecordId) {
+        snapshots.invalidate(accountRecordId);
+    }
+
+    public long size() {
+        return snapshots.size();
+    }
+
+    // Throws IllegalStateException if the cached billing events differ from the recomputed ones
+    public static void checkConsistency(final Long accountRecordId, final DefaultBillingEventSet cached, final DefaultBillingEventSet recomputed) {
+        if (cached.isAccountAutoInvoiceOff() != recomputed.isAccountAutoInvoiceOff() ||
+            cached.isAccountAutoInvoiceDraft() != recomputed.isAccountAutoInvoiceDraft() ||
+            cached.isAccountAutoInvoiceReuseDraft() != recomputed.isAccountAutoInvoiceReuseDraft() ||
+            !new HashSet<Object>(cached.getSubscriptionIdsWithAutoInvoiceOff()).equals(new HashSet<Object>(recomputed.getSubscriptionIdsWithAutoInvoiceOff())) ||
+            cached.size() != recomputed.size()) {
+            throw new IllegalStateException(String.format("Cached billing events for accountRecordId='%s' are stale: cached=%s, recomputed=%s", accountRecordId, cached, recomputed));
+        }
+
+        final Iterator<BillingEvent> cachedIterator = cached.iterator();
+        final Iterator<BillingEvent> recomputedIterator = recomputed.iterator();
+        while (cachedIterator.hasNext()) {
+            final BillingEvent cachedEvent = cachedIterator.next();
+            final BillingEvent recomputedEvent = recomputedIterator.next();
+            if (!isSameBillingEvent(cachedEvent, recomputedEvent)) {
+                throw new IllegalStateException(String.format("Cached billing event for accountRecordId='%s' is stale: cached=%s, recomputed=%s", accountRecordId, cachedEvent, recomputedEvent));
+            }
+        }
+    }
+
+    private static boolean isSameBillingEvent(final BillingEvent cached, final BillingEvent recomputed) {
+        // Events generated by the BlockingCalculator get a new total ordering each time they are computed
+        final boolean isBlockingEvent = recomputed.getTransitionType() == SubscriptionBaseTransitionType.START_BILLING_DISABLED ||
+                                        recomputed.getTransitionType() == SubscriptionBaseTransitionType.END_BILLING_DISABLED;
+        return cached.getSubscription().getId().equals(recomputed.getSubscription().getId()) &&
+               cached.getEffectiveDate().compareTo(recomputed.getEffectiveDate()) == 0 &&
+               cached.getTransitionType() == recomputed.getTransitionType() &&
+               cached.getBillCycleDayLocal() == recomputed.getBillCycleDayLocal() &&
+               cached.getBillingAlignment() == recomputed.getBillingAlignment() &&
+               cached.getBillingPeriod() == recomputed.getBillingPeriod() &&
+               cached.getCurrency() == recomputed.getCurrency() &&
+               Objects.equal(cached.getPlan(), recomputed.getPlan()) &&
+               Objects.equal(cached.getPlanPhase(), recomputed.getPlanPhase()) &&
+               Objects.equal(cached.getFixedPrice(), recomputed.getFixedPrice()) &&
+               (isBlockingEvent || Objects.equal(cached.getTotalOrdering(), recomputed.getTotalOrdering()));
+    }
+
+    private static DateTime computeExpirationDate(final DefaultBillingEventSet billingEvents, final DateTime utcNow, final DateTime maxExpirationDate) {
+        DateTime expirationDate = maxExpirationDate;
+        for (final BillingEvent billingEvent : billingEvents) {
+            if (billingEvent.getEffectiveDate().isAfter(utcNow) && billingEvent.getEffectiveDate().isBefore(expirationDate)) {
+                expirationDate = billingEvent.getEffectiveDate();
+            }
+        }
+        return expirationDate;
+    }
+
+    private static final class Snapshot {
+
+        private final Long version;
+        private final Catalog catalog;
+        private final DateTime expirationDate;
+        private final DefaultBillingEventSet billingEvents;
+
+        private Snapshot(final Long version, final Catalog catalog, final DateTime expirationDate, final DefaultBillingEventSet billingEvents) {
+            this.version = version;
+            this.catalog = catalog;
+            this.expirationDate = expirationDate;
+            this.billingEvents = billingEvents;
+        }
+
+        public Long getVersion() {
+            return version;
+        }
+
+        public Catalog getCatalog() {
+            return catalog;
+        }
+
+        public DateTime getExpirationDate() {
+            return expirationDate;
+        }
+
+        public DefaultBillingEventSet getBillingEvents() {
+            return billingEvents;
+        }
+    }
+}
@@ -53,6 +53,15 @@ public class DefaultBillingEventSet extends TreeSet<BillingEvent> implements Sor
         this.subscriptionIdsWithAutoInvoiceOff = new ArrayList<UUID>();
     }
 
+    // Shallow copy (billing events are immutable)
+    public DefaultBillingEventSet(final DefaultBillingEventSet billingEventSet) {
+        super(billingEventSet);
+        this.accountAutoInvoiceOff = billingEventSet.isAccountAutoInvoiceOff();
+        this.accountAutoInvoiceDraft = billingEventSet.isAccountAutoInvoiceDraft();
+        this.accountAutoInvoiceReuseDraft = billingEventSet.isAccountAutoInvoiceReuseDraft();
+        this.subscriptionIdsWithAutoInvoiceOff = new ArrayList<UUID>(billingEventSet.getSubscriptionIdsWithAutoInvoiceOff());
+    }
+
     @Override
     public boolean isAccountAutoInvoiceOff() {
         return accountAutoInvoiceOff;
@@ -26,9 +26,11 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 
+import org.joda.time.DateTime;
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.account.api.AccountApiException;
 import org.killbill.billing.account.api.AccountInternalApi;
@@ -57,14 +59,21 @@ import org.killbill.billing.subscription.api.user.SubscriptionBaseBundle;
 import org.killbill.billing.tag.TagInternalApi;
 import org.killbill.billing.util.UUIDs;
 import org.killbill.billing.util.bcd.BillCycleDayCalculator;
+import org.killbill.billing.util.config.definition.JunctionConfig;
+import org.killbill.billing.util.dao.TableName;
+import org.killbill.billing.util.entity.dao.EntityWriteVersions;
+import org.killbill.billing.util.nodes.dao.NodeInfoDao;
 import org.killbill.billing.util.tag.ControlTagType;
 import org.killbill.billing.util.tag.Tag;
+import org.killbill.clock.Clock;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
@@ -73,29 +82,86 @@ import com.google.inject.Inject;
 public class DefaultInternalBillingApi implements BillingInternalApi {
 
     private static final Logger log = LoggerFactory.getLogger(DefaultInternalBillingApi.class);
+
+    // Tables the billing events are computed from (catalog changes are detected separately)
+    private static final TableName[] BILLING_EVENTS_TABLES = {TableName.ACCOUNT,
+                                                              TableName.BUNDLES,
+                                                              TableName.SUBSCRIPTIONS,
+                                                              TableName.SUBSCRIPTION_EVENTS,
+                                                              TableName.BLOCKING_STATES,
+                                                              TableName.TAG};
+
     private final AccountInternalApi accountApi;
     private final SubscriptionBaseInternalApi subscriptionApi;
     private final CatalogInternalApi catalogInternalApi;
     private final BlockingCalculator blockCalculator;
     private final TagInternalApi tagApi;
+    private final JunctionConfig junctionConfig;
+    private final Clock clock;
+    private final BillingEventSetCache billingEventSetCache;
+    // Cached billing events are only invalidated by the writes made on this node: they aren't served while other nodes are running
+    private final Supplier<Boolean> isSingleNode;
 
     @Inject
     public DefaultInternalBillingApi(final AccountInternalApi accountApi,
                                      final SubscriptionBaseInternalApi subscriptionApi,
                                      final BlockingCalculator blockCalculator,
                                      final CatalogInternalApi catalogInternalApi,
-                                     final TagInternalApi tagApi) {
+                                     final TagInternalApi tagApi,
+                                     final NodeInfoDao nodeInfoDao,
+                                     final JunctionConfig junctionConfig,
+                                     final Clock clock) {
         this.accountApi = accountApi;
         this.subscriptionApi = subscriptionApi;
         this.catalogInternalApi = catalogInternalApi;
         this.blockCalculator = blockCalculator;
         this.tagApi = tagApi;
+        this.junctionConfig = junctionConfig;
+        this.clock = clock;
+        this.billingEventSetCache = new BillingEventSetCache(junctionConfig.getBillingEventsCacheMaxEntries());
+        this.isSingleNode = Suppliers.memoizeWithExpiration(new Supplier<Boolean>() {
+                                                                @Override
+                                                                public Boolean get() {
+                                                                    return nodeInfoDao.getAll().size() <= 1;
+                                                                }
+                                                            },
+                                                            junctionConfig.getBillingEventsCacheNodesCheckInterval().getMillis(),
+                                                            TimeUnit.MILLISECONDS);
     }
 
     @Override
     public BillingEventSet getBillingEventsForAccountAndUpdateAccountBCD(final UUID accountId, final DryRunArguments dryRunArguments, final InternalCallContext context) throws CatalogApiException, AccountApiException, SubscriptionBaseApiException {
         final Catalog fullCatalog = catalogInternalApi.getFullCatalog(true, true, context);
 
+        // Dry runs inject events which aren't on disk: these are never cached
+        if (dryRunArguments != null || !junctionConfig.isBillingEventsCacheEnabled() || !isSingleNode.get()) {
+            return computeBillingEventsForAccountAndUpdateAccountBCD(accountId, dryRunArguments, fullCatalog, context);
+        }
+
+        // Retrieve the version first: anything written while the billing events are computed will invalidate them
+        final Long version = EntityWriteVersions.getVersion(context, BILLING_EVENTS_TABLES);
+        final DateTime utcNow = clock.getUTCNow();
+
+        final DefaultBillingEventSet cachedBillingEvents = billingEventSetCache.get(context.getAccountRecordId(), version, fullCatalog, utcNow);
+        if (cachedBillingEvents != null) {
+            if (junctionConfig.isBillingEventsCacheConsistencyCheckEnabled()) {
+                final DefaultBillingEventSet recomputedBillingEvents = computeBillingEventsForAccountAndUpdateAccountBCD(accountId, null, fullCatalog, context);
+                BillingEventSetCache.checkConsistency(context.getAccountRecordId(), cachedBillingEvents, recomputedBillingEvents);
+            }
+
+            log.info("Using cached billing events for accountId='{}'", accountId);
+            return new DefaultBillingEventSet(cachedBillingEvents);
+        }
+
+        final DefaultBillingEventSet result = computeBillingEventsForAccountAndUpdateAccountBCD(accountId, null, fullCatalog, context);
+        final DateTime maxExpirationDate = utcNow.plus(junctionConfig.getBillingEventsCacheTimeToLive().getMillis());
+        billingEventSetCache.put(context.getAccountRecordId(), version, fullCatalog, utcNow, maxExpirationDate, result);
+
+        // Callers get their own copy
+        return new DefaultBillingEventSet(result);
+    }
+
+    private DefaultBillingEventSet computeBillingEventsForAccountAndUpdateAccountBCD(final UUID accountId, @Nullable final DryRunArguments dryRunArguments, final Catalog fullCatalog, final InternalCallContext context) throws CatalogApiException, AccountApiException, SubscriptionBaseApiException {
         // Check to see if billing is off for the account
         final List<Tag> tagsForAccount = tagApi.getTagsForAccount(false, context);
         final List<Tag> accountTags = getTagsForObjectType(ObjectType.ACCOUNT, tagsForAccount, null);
@@ -25,7 +25,9 @@ import org.killbill.billing.mock.glue.MockNonEntityDaoModule;
 import org.killbill.billing.mock.glue.MockSubscriptionModule;
 import org.killbill.billing.mock.glue.MockTagModule;
 import org.killbill.billing.platform.api.KillbillConfigSource;
+import org.killbill.billing.util.nodes.dao.NodeInfoDao;
 import org.killbill.clock.ClockMock;
+import org.mockito.Mockito;
 
 public class TestJunctionModuleNoDB extends TestJunctionModule {
 
@@ -47,5 +49,7 @@ public class TestJunctionModuleNoDB extends TestJunctionModule {
         install(new MockSubscriptionModule(configSource));
         install(new MockEntitlementModuleForJunction(configSource));
         install(new MockTagModule(configSource));
+
+        bind(NodeInfoDao.class).toInstance(Mockito.mock(NodeInfoDao.class));
     }
 }
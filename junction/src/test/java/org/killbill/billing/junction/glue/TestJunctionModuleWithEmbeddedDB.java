@@ -28,6 +28,8 @@ import org.killbill.billing.subscription.glue.DefaultSubscriptionModule;
 import org.killbill.billing.util.glue.AuditModule;
 import org.killbill.billing.util.glue.NonEntityDaoModule;
 import org.killbill.billing.util.glue.TagStoreModule;
+import org.killbill.billing.util.nodes.dao.DefaultNodeInfoDao;
+import org.killbill.billing.util.nodes.dao.NodeInfoDao;
 import org.killbill.clock.ClockMock;
 
 public class TestJunctionModuleWithEmbeddedDB extends TestJunctionModule {
@@ -51,6 +53,7 @@ public class TestJunctionModuleWithEmbeddedDB extends TestJunctionModule {
         install(new DefaultSubscriptionModule(configSource));
         install(new TagStoreModule(configSource));
         install(new AuditModule(configSource));
+        bind(NodeInfoDao.class).to(DefaultNodeInfoDao.class).asEagerSingleton();
 
         bind(TestApiListener.class).asEagerSingleton();
     }
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.junction.plumbing.billing;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.killbill.billing.catalog.DefaultPrice;
+import org.killbill.billing.catalog.MockInternationalPrice;
+import org.killbill.billing.catalog.MockPlan;
+import org.killbill.billing.catalog.MockPlanPhase;
+import org.killbill.billing.catalog.api.BillingPeriod;
+import org.killbill.billing.catalog.api.Catalog;
+import org.killbill.billing.catalog.api.CatalogApiException;
+import org.killbill.billing.catalog.api.Currency;
+import org.killbill.billing.catalog.api.PhaseType;
+import org.killbill.billing.catalog.api.Plan;
+import org.killbill.billing.catalog.api.PlanPhase;
+import org.killbill.billing.junction.BillingEvent;
+import org.killbill.billing.junction.JunctionTestSuiteNoDB;
+import org.killbill.billing.subscription.api.SubscriptionBase;
+import org.killbill.billing.subscription.api.SubscriptionBaseTransitionType;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestBillingEventSetCache extends JunctionTestSuiteNoDB {
+
+    private final Plan plan = new MockPlan();
+    private final PlanPhase trialPhase = new MockPlanPhase(new MockInternationalPrice(new DefaultPrice(null, Currency.USD)),
+                                                          new MockInternationalPrice(new DefaultPrice(BigDecimal.ZERO, Currency.USD)),
+                                                          BillingPeriod.MONTHLY, PhaseType.TRIAL);
+
+    @Test(groups = "fast")
+    public void testBillingEventsValidity() throws Exception {
+        final BillingEventSetCache cache = new BillingEventSetCache(10);
+        final Catalog catalog = Mockito.mock(Catalog.class);
+        final DateTime utcNow = clock.getUTCNow();
+        final DateTime nextEventDate = utcNow.plusDays(3);
+
+        final SubscriptionBase subscription = subscription(UUID.randomUUID());
+        final DefaultBillingEventSet billingEvents = new DefaultBillingEventSet(false, false, false);
+        billingEvents.add(createEvent(subscription, utcNow.minusDays(1), SubscriptionBaseTransitionType.CREATE, 1L));
+        billingEvents.add(createEvent(subscription, nextEventDate, SubscriptionBaseTransitionType.PHASE, 2L));
+
+        Assert.assertNull(cache.get(1L, 10L, catalog, utcNow));
+
+        cache.put(1L, 10L, catalog, utcNow, utcNow.plusDays(30), billingEvents);
+        Assert.assertSame(cache.get(1L, 10L, catalog, utcNow), billingEvents);
+        Assert.assertSame(cache.get(1L, 10L, catalog, nextEventDate.minusMillis(1)), billingEvents);
+        Assert.assertNull(cache.get(2L, 10L, catalog, utcNow));
+
+        // Next billing event effective
+        Assert.assertNull(cache.get(1L, 10L, catalog, nextEventDate));
+        Assert.assertEquals(cache.size(), 0);
+
+        // Maximum time to live
+        cache.put(1L, 10L, catalog, utcNow, utcNow.plusDays(1), billingEvents);
+        Assert.assertNull(cache.get(1L, 10L, catalog, utcNow.plusDays(1)));
+
+        // Write for that account
+        cache.put(1L, 10L, catalog, utcNow, utcNow.plusDays(30), billingEvents);
+        Assert.assertNull(cache.get(1L, 11L, catalog, utcNow));
+        Assert.assertEquals(cache.size(), 0);
+
+        // New catalog
+        cache.put(1L, 10L, catalog, utcNow, utcNow.plusDays(30), billingEvents);
+        Assert.assertNull(cache.get(1L, 10L, Mockito.mock(Catalog.class), utcNow));
+        Assert.assertEquals(cache.size(), 0);
+
+        // A computation which started before the last write finishes last
+        final DefaultBillingEventSet newerBillingEvents = new DefaultBillingEventSet(billingEvents);
+        cache.put(1L, 11L, catalog, utcNow, utcNow.plusDays(30), newerBillingEvents);
+        cache.put(1L, 10L, catalog, utcNow, utcNow.plusDays(30), billingEvents);
+        Assert.assertSame(cache.get(1L, 11L, catalog, utcNow), newerBillingEvents);
+
+        cache.invalidate(1L);
+        Assert.assertEquals(cache.size(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testConsistencyCheck() throws Exception {
+        final SubscriptionBase subscription = subscription(UUID.randomUUID());
+        final DateTime startDate = clock.getUTCNow();
+
+        final DefaultBillingEventSet cached = new DefaultBillingEventSet(false, false, false);
+        cached.add(createEvent(subscription, startDate, SubscriptionBaseTransitionType.CREATE, 1L));
+        cached.add(createEvent(subscription, startDate.plusDays(5), SubscriptionBaseTransitionType.START_BILLING_DISABLED, 100L));
+
+        // Blocking events get a new total ordering on each computation
+        final DefaultBillingEventSet recomputed = new DefaultBillingEventSet(false, false, false);
+        recomputed.add(createEvent(subscription, startDate, SubscriptionBaseTransitionType.CREATE, 1L));
+        recomputed.add(createEvent(subscription, startDate.plusDays(5), SubscriptionBaseTransitionType.START_BILLING_DISABLED, 101L));
+        BillingEventSetCache.checkConsistency(1L, cached, recomputed);
+
+        // Missing event
+        final DefaultBillingEventSet recomputedWithNewEvent = new DefaultBillingEventSet(recomputed);
+        recomputedWithNewEvent.add(createEvent(subscription, startDate.plusDays(10), SubscriptionBaseTransitionType.END_BILLING_DISABLED, 102L));
+        try {
+            BillingEventSetCache.checkConsistency(1L, cached, recomputedWithNewEvent);
+            Assert.fail();
+        } catch (final IllegalStateException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Cached billing events for accountRecordId='1' are stale"));
+        }
+
+        // Different event
+        final DefaultBillingEventSet recomputedWithDifferentEvent = new DefaultBillingEventSet(false, false, false);
+        recomputedWithDifferentEvent.add(createEvent(subscription, startDate, SubscriptionBaseTransitionType.CREATE, 1L));
+        recomputedWithDifferentEvent.add(createEvent(subscription, startDate.plusDays(6), SubscriptionBaseTransitionType.START_BILLING_DISABLED, 101L));
+        try {
+            BillingEventSetCache.checkConsistency(1L, cached, recomputedWithDifferentEvent);
+            Assert.fail();
+        } catch (final IllegalStateException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Cached billing event for accountRecordId='1' is stale"));
+        }
+
+        // Different AUTO_INVOICING_OFF subscriptions
+        final DefaultBillingEventSet recomputedWithAutoInvoiceOff = new DefaultBillingEventSet(recomputed);
+        recomputedWithAutoInvoiceOff.getSubscriptionIdsWithAutoInvoiceOff().add(UUID.randomUUID());
+        try {
+            BillingEventSetCache.checkConsistency(1L, cached, recomputedWithAutoInvoiceOff);
+            Assert.fail();
+        } catch (final IllegalStateException e) {
+            Assert.assertTrue(e.getMessage().startsWith("Cached billing events for accountRecordId='1' are stale"));
+        }
+    }
+
+    private BillingEvent createEvent(final SubscriptionBase subscription, final DateTime effectiveDate, final SubscriptionBaseTransitionType type, final long totalOrdering) throws CatalogApiException {
+        return new DefaultBillingEvent(subscription, effectiveDate, true,
+                                       plan, trialPhase, BigDecimal.ZERO,
+                                       Currency.USD, BillingPeriod.NO_BILLING_PERIOD, 1,
+                                       "Test Event", totalOrdering, type, null, false);
+    }
+
+    private SubscriptionBase subscription(final UUID id) {
+        final SubscriptionBase subscription = Mockito.mock(SubscriptionBase.class);
+        Mockito.when(subscription.getId()).thenReturn(id);
+        return subscription;
+    }
+}
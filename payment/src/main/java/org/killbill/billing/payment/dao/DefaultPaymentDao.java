@@ -243,6 +243,11 @@ public class DefaultPaymentDao extends EntityDaoBase<PaymentModelDao, Payment, P
 
     @Override
     public Pagination<PaymentModelDao> getPayments(final String pluginName, final Long offset, final Long limit, final InternalTenantContext context) {
+        return getPayments(pluginName, offset, null, limit, context);
+    }
+
+    @Override
+    public Pagination<PaymentModelDao> getPayments(final String pluginName, final Long offset, @Nullable final Long lastRecordId, final Long limit, final InternalTenantContext context) {
         return paginationHelper.getPagination(PaymentSqlDao.class,
                                               new PaginationIteratorBuilder<PaymentModelDao, Payment, PaymentSqlDao>() {
                                                   @Override
@@ -255,8 +260,24 @@ public class DefaultPaymentDao extends EntityDaoBase<PaymentModelDao, Payment, P
                                                       final Iterator<PaymentModelDao> result = paymentSqlDao.getByPluginName(pluginName, offset, limit, ordering.toString(), context);
                                                       return result;
                                                   }
+
+                                                  @Override
+                                                  public boolean supportsRecordIdPagination() {
+                                                      return true;
+                                                  }
+
+                                                  @Override
+                                                  public Iterator<PaymentModelDao> buildFromRecordId(final PaymentSqlDao paymentSqlDao, final Long lastRecordId, final Long limit, final Ordering ordering, final InternalTenantContext context) {
+                                                      return paymentSqlDao.getByPluginNameFromRecordId(pluginName, lastRecordId, limit, ordering.getComparator(), ordering.toString(), context);
+                                                  }
+
+                                                  @Override
+                                                  public Long getPageLastRecordId(final PaymentSqlDao paymentSqlDao, final Long lastRecordId, final Long pageOffset, final Ordering ordering, final InternalTenantContext context) {
+                                                      return paymentSqlDao.getByPluginNamePageLastRecordId(pluginName, lastRecordId, pageOffset, ordering.getComparator(), ordering.toString(), context);
+                                                  }
                                               },
                                               offset,
+                                              lastRecordId,
                                               limit,
                                               context
                                              );
@@ -88,6 +88,23 @@ public interface PaymentSqlDao extends EntitySqlDao<PaymentModelDao, Payment> {
                                                      @Define("ordering") final String ordering,
                                                      @SmartBindBean final InternalTenantContext context);
 
+    @SqlQuery
+    @SmartFetchSize(shouldStream = true)
+    public Iterator<PaymentModelDao> getByPluginNameFromRecordId(@Bind("pluginName") final String pluginName,
+                                                                 @Bind("lastRecordId") final Long lastRecordId,
+                                                                 @Bind("rowCount") final Long rowCount,
+                                                                 @Define("comparator") final String comparator,
+                                                                 @Define("ordering") final String ordering,
+                                                                 @SmartBindBean final InternalTenantContext context);
+
+    @SqlQuery
+    public Long getByPluginNamePageLastRecordId(@Bind("pluginName") final String pluginName,
+                                                @Bind("lastRecordId") final Long lastRecordId,
+                                                @Bind("pageOffset") final Long pageOffset,
+                                                @Define("comparator") final String comparator,
+                                                @Define("ordering") final String ordering,
+                                                @SmartBindBean final InternalTenantContext context);
+
     @SqlQuery
     public Long getCountByPluginName(@Bind("pluginName") final String pluginName,
                                      @SmartBindBean final InternalTenantContext context);
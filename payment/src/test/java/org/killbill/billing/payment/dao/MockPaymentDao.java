@@ -191,6 +191,11 @@ public class MockPaymentDao extends MockEntityDaoBase<PaymentModelDao, Payment,
         return null;
     }
 
+    @Override
+    public Pagination<PaymentModelDao> getPayments(final String pluginName, final Long offset, final Long lastRecordId, final Long limit, final InternalTenantContext context) {
+        return null;
+    }
+
     @Override
     public Pagination<PaymentModelDao> searchPayments(final String searchKey, final Long offset, final Long limit, final InternalTenantContext context) {
         throw new UnsupportedOperationException();
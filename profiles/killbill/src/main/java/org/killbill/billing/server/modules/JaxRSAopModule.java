@@ -18,7 +18,12 @@
 package org.killbill.billing.server.modules;
 
 import java.lang.reflect.Method;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.inject.Inject;
+import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.HEAD;
@@ -28,13 +33,26 @@ import javax.ws.rs.PUT;
 
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
+import org.apache.shiro.subject.Subject;
+import org.apache.shiro.util.ThreadContext;
 import org.killbill.billing.jaxrs.resources.JaxrsResource;
+import org.killbill.billing.server.security.TenantFilter;
+import org.killbill.billing.tenant.api.Tenant;
+import org.killbill.billing.util.config.definition.JaxrsConfig;
 import org.killbill.billing.util.entity.dao.DBRouterUntyped;
+import org.killbill.billing.util.entity.dao.DBRouterUntyped.THREAD_STATE;
 import org.killbill.billing.util.glue.KillbillApiAopModule;
 import org.killbill.commons.profiling.Profiling.WithProfilingCallback;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.inject.AbstractModule;
 import com.google.inject.matcher.Matcher;
 import com.google.inject.matcher.Matchers;
@@ -43,6 +61,11 @@ public class JaxRSAopModule extends AbstractModule {
 
     private static final Logger logger = LoggerFactory.getLogger(KillbillApiAopModule.class);
 
+    private static final String PROP_METRIC_REG_DB_ROUTER = "killbill.dbRouter";
+
+    // Upper bound on the number of flows tracked for read-your-writes
+    private static final int MAX_RECENT_WRITES = 100000;
+
     private static final Matcher<Method> API_RESOURCE_METHOD_MATCHER = new Matcher<Method>() {
         @Override
         public boolean matches(final Method method) {
@@ -70,29 +93,153 @@ public class JaxRSAopModule extends AbstractModule {
 
     @Override
     protected void configure() {
+        final JaxRsMethodInterceptor jaxRsMethodInterceptor = new JaxRsMethodInterceptor();
+        requestInjection(jaxRsMethodInterceptor);
         bindInterceptor(Matchers.subclassesOf(JaxrsResource.class),
                         API_RESOURCE_METHOD_MATCHER,
-                        new JaxRsMethodInterceptor());
+                        jaxRsMethodInterceptor);
     }
 
+    /**
+     * GET calls are routed to the RO instance, everything else to the RW instance.
+     * <p/>
+     * To guarantee read-your-writes semantics across calls, flows which recently wrote to the database keep reading from the RW
+     * instance until the replication window expires. A flow is identified by the token the client sends in the X-Killbill-Flow-Id
+     * header (or X-Request-Id, for clients propagating it across related calls), scoped to the tenant. Calls without such a token
+     * are only tracked (per authenticated subject and tenant) when org.killbill.jaxrs.readYourWrites.perTenant is set.
+     * Writes are only tracked on the node which served them: a GET call load balanced to another node within the window
+     * may still be routed to the RO instance.
+     */
     public static class JaxRsMethodInterceptor implements MethodInterceptor {
 
+        private final AtomicLong nbReadYourWritesCalls = new AtomicLong(0);
+
+        // Flows of the recent writes (null if read-your-writes tracking is disabled)
+        private Cache<String, Boolean> recentWrites;
+        private boolean readYourWritesPerTenant;
+
+        @Inject
+        public void initialize(final JaxrsConfig jaxrsConfig, final MetricRegistry metricRegistry) {
+            final long readYourWritesWindowMillis = jaxrsConfig.getReadYourWritesWindow().getMillis();
+            if (readYourWritesWindowMillis > 0) {
+                recentWrites = CacheBuilder.newBuilder()
+                                           .maximumSize(MAX_RECENT_WRITES)
+                                           .expireAfterWrite(readYourWritesWindowMillis, TimeUnit.MILLISECONDS)
+                                           .build();
+            }
+            readYourWritesPerTenant = jaxrsConfig.isReadYourWritesPerTenant();
+            registerMetrics(metricRegistry);
+        }
+
         @Override
         public Object invoke(final MethodInvocation invocation) throws Throwable {
-            return DBRouterUntyped.withRODBIAllowed(isRODBIAllowed(invocation),
+            final boolean isGet = invocation.getMethod().getAnnotation(GET.class) != null;
+            final String flowId = getFlowId(invocation);
+            final boolean allowRODBI = isGet && !hasRecentlyWritten(flowId);
+
+            return DBRouterUntyped.withRODBIAllowed(allowRODBI,
                                                     new WithProfilingCallback<Object, Throwable>() {
                                                         @Override
                                                         public Object execute() throws Throwable {
                                                             logger.debug("Entering JAX-RS call {}, arguments: {}", invocation.getMethod(), invocation.getArguments());
-                                                            final Object proceed = invocation.proceed();
-                                                            logger.debug("Exiting  JXA-RS call {}, returning: {}", invocation.getMethod(), proceed);
-                                                            return proceed;
+                                                            try {
+                                                                final Object proceed = invocation.proceed();
+                                                                logger.debug("Exiting  JXA-RS call {}, returning: {}", invocation.getMethod(), proceed);
+                                                                return proceed;
+                                                            } finally {
+                                                                // Any non GET call, or GET call which ended up writing to the database
+                                                                if (!isGet || (allowRODBI && DBRouterUntyped.getCurrentState() == THREAD_STATE.RW_ONLY)) {
+                                                                    recordWrite(flowId);
+                                                                }
+                                                            }
                                                         }
                                                     });
         }
 
-        private boolean isRODBIAllowed(final MethodInvocation invocation) {
-            return invocation.getMethod().getAnnotation(GET.class) != null;
+        private boolean hasRecentlyWritten(final String flowId) {
+            if (recentWrites == null || flowId == null || recentWrites.getIfPresent(flowId) == null) {
+                return false;
+            }
+
+            logger.debug("Flow {} recently wrote to the database, using RW DBI", flowId);
+            nbReadYourWritesCalls.incrementAndGet();
+            return true;
+        }
+
+        private void recordWrite(final String flowId) {
+            if (recentWrites != null && flowId != null) {
+                recentWrites.put(flowId, Boolean.TRUE);
+            }
+        }
+
+        // Client supplied flow token (or subject if per tenant tracking is enabled) and tenant of the call, null if the call can't be tracked
+        private String getFlowId(final MethodInvocation invocation) {
+            if (recentWrites == null) {
+                return null;
+            }
+
+            for (final Object argument : invocation.getArguments()) {
+                if (argument instanceof HttpServletRequest) {
+                    final HttpServletRequest request = (HttpServletRequest) argument;
+                    // See TenantFilter
+                    final Tenant tenant = (Tenant) request.getAttribute(TenantFilter.TENANT);
+                    final UUID tenantId = tenant == null ? null : tenant.getId();
+
+                    String flowToken = request.getHeader(JaxrsResource.HDR_FLOW_ID);
+                    if (Strings.isNullOrEmpty(flowToken)) {
+                        flowToken = request.getHeader(JaxrsResource.HDR_REQUEST_ID);
+                    }
+                    if (!Strings.isNullOrEmpty(flowToken)) {
+                        return tenantId + "::flow::" + flowToken;
+                    }
+
+                    if (!readYourWritesPerTenant) {
+                        return null;
+                    }
+
+                    final Subject subject = ThreadContext.getSubject();
+                    if (subject == null || subject.getPrincipal() == null) {
+                        return null;
+                    }
+                    return tenantId + "::subject::" + subject.getPrincipal();
+                }
+            }
+            return null;
+        }
+
+        private void registerMetrics(final MetricRegistry metricRegistry) {
+            // Make sure we start from a clean state - this is mainly useful for tests
+            metricRegistry.removeMatching(new MetricFilter() {
+                @Override
+                public boolean matches(final String name, final Metric metric) {
+                    return name != null && name.startsWith(PROP_METRIC_REG_DB_ROUTER + ".");
+                }
+            });
+
+            metricRegistry.register(MetricRegistry.name(PROP_METRIC_REG_DB_ROUTER, "roCalls"), new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return DBRouterUntyped.getNbRORoutedCalls();
+                }
+            });
+            metricRegistry.register(MetricRegistry.name(PROP_METRIC_REG_DB_ROUTER, "rwCalls"), new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return DBRouterUntyped.getNbRWRoutedCalls();
+                }
+            });
+            metricRegistry.register(MetricRegistry.name(PROP_METRIC_REG_DB_ROUTER, "roRedirectedCalls"), new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return DBRouterUntyped.getNbRORedirectedCalls();
+                }
+            });
+            metricRegistry.register(MetricRegistry.name(PROP_METRIC_REG_DB_ROUTER, "readYourWritesCalls"), new Gauge<Long>() {
+                @Override
+                public Long getValue() {
+                    return nbReadYourWritesCalls.get();
+                }
+            });
         }
     }
 }
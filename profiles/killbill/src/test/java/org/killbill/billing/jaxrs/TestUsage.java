@@ -46,6 +46,8 @@ import com.google.common.collect.Iterables;
 
 public class TestUsage extends TestJaxrsBase {
 
+    private static final String BULK_USAGES_URI = "/1.0/kb/usages/bulk";
+
     @Test(groups = "slow", description = "Can record and retrieve usage data")
     public void testRecordUsage() throws Exception {
         final Account accountJson = createAccountWithDefaultPaymentMethod();
@@ -217,4 +219,80 @@ public class TestUsage extends TestJaxrsBase {
         }
 
     }
+
+    @Test(groups = "slow", description = "Test tracking ID already exists with bulk usage")
+    public void testRecordBulkUsageTrackingIdExists() throws Exception {
+        final Account accountJson = createAccountWithDefaultPaymentMethod();
+
+        final Subscription base = new Subscription();
+        base.setAccountId(accountJson.getAccountId());
+        base.setProductName("Pistol");
+        base.setProductCategory(ProductCategory.BASE);
+        base.setBillingPeriod(BillingPeriod.MONTHLY);
+        base.setPriceList(PriceListSet.DEFAULT_PRICELIST_NAME);
+
+        final Subscription addOn = new Subscription();
+        addOn.setAccountId(accountJson.getAccountId());
+        addOn.setProductName("Bullets");
+        addOn.setProductCategory(ProductCategory.ADD_ON);
+        addOn.setBillingPeriod(BillingPeriod.NO_BILLING_PERIOD);
+        addOn.setPriceList(PriceListSet.DEFAULT_PRICELIST_NAME);
+
+        final Subscriptions body = new Subscriptions();
+        body.add(base);
+        body.add(addOn);
+
+        final Bundle bundle = subscriptionApi.createSubscriptionWithAddOns(body,
+                                                                           null,
+                                                                           null,
+                                                                           NULL_PLUGIN_PROPERTIES, requestOptions);
+        final UUID addOnSubscriptionId = Iterables.<Subscription>find(bundle.getSubscriptions(),
+                                                                      new Predicate<Subscription>() {
+                                                                          @Override
+                                                                          public boolean apply(final Subscription input) {
+                                                                              return ProductCategory.ADD_ON.equals(input.getProductCategory());
+                                                                          }
+                                                                      }).getSubscriptionId();
+
+        final String trackingId = UUID.randomUUID().toString();
+        final SubscriptionUsageRecord usage1 = createSubscriptionUsageRecord(addOnSubscriptionId, trackingId, 10L);
+        final SubscriptionUsageRecord usage2 = createSubscriptionUsageRecord(addOnSubscriptionId, UUID.randomUUID().toString(), 20L);
+
+        // Duplicate tracking id within the payload
+        try {
+            killBillHttpClient.doPost(BULK_USAGES_URI, ImmutableList.<SubscriptionUsageRecord>of(usage1, usage1), requestOptions);
+            Assert.fail();
+        } catch (final KillBillClientException e) {
+            Assert.assertEquals(e.getBillingException().getCode(), (Integer) ErrorCode.USAGE_RECORD_TRACKING_ID_ALREADY_EXISTS.getCode());
+        }
+
+        usageApi.recordUsage(usage1, requestOptions);
+
+        // Tracking id already recorded: the other record of the payload isn't written either
+        try {
+            killBillHttpClient.doPost(BULK_USAGES_URI, ImmutableList.<SubscriptionUsageRecord>of(usage2, usage1), requestOptions);
+            Assert.fail();
+        } catch (final KillBillClientException e) {
+            Assert.assertEquals(e.getBillingException().getCode(), (Integer) ErrorCode.USAGE_RECORD_TRACKING_ID_ALREADY_EXISTS.getCode());
+        }
+
+        final RolledUpUsage retrievedUsage = usageApi.getUsage(addOnSubscriptionId, "bullets", clock.getUTCToday().minusDays(1), clock.getUTCToday(), requestOptions);
+        Assert.assertEquals((long) retrievedUsage.getRolledUpUnits().get(0).getAmount(), 10);
+    }
+
+    private SubscriptionUsageRecord createSubscriptionUsageRecord(final UUID subscriptionId, final String trackingId, final Long amount) {
+        final UsageRecord usageRecord = new UsageRecord();
+        usageRecord.setAmount(amount);
+        usageRecord.setRecordDate(clock.getUTCToday().minusDays(1));
+
+        final UnitUsageRecord unitUsageRecord = new UnitUsageRecord();
+        unitUsageRecord.setUnitType("bullets");
+        unitUsageRecord.setUsageRecords(ImmutableList.<UsageRecord>of(usageRecord));
+
+        final SubscriptionUsageRecord usage = new SubscriptionUsageRecord();
+        usage.setSubscriptionId(subscriptionId);
+        usage.setTrackingId(trackingId);
+        usage.setUnitUsageRecords(ImmutableList.<UnitUsageRecord>of(unitUsageRecord));
+        return usage;
+    }
 }
@@ -291,6 +291,11 @@ public class DefaultSubscriptionInternalApi extends DefaultSubscriptionBaseCreat
         }
     }
 
+    @Override
+    public SubscriptionBase copySubscription(final SubscriptionBase subscription) {
+        return createSubscriptionForApiUse(subscription);
+    }
+
     @Override
     public SubscriptionBase getBaseSubscription(final UUID bundleId, final InternalTenantContext context) throws SubscriptionBaseApiException {
         try {
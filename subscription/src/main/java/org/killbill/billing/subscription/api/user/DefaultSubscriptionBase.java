@@ -67,6 +67,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 
 public class DefaultSubscriptionBase extends EntityBase implements SubscriptionBase {
@@ -99,6 +100,13 @@ public class DefaultSubscriptionBase extends EntityBase implements SubscriptionB
     //
     private LinkedList<SubscriptionBaseTransition> transitions;
 
+    // State of the last replay of the events, to only replay the new ones when events are appended (see rebuildTransitions)
+    private TransitionsReplay transitionsReplay;
+
+    // Derived from the transitions, reset each time these are rebuilt
+    private List<SubscriptionBaseTransition> allTransitions;
+    private List<SubscriptionBaseTransition> billingTransitions;
+
     // Low level events are ONLY used for Repair APIs
     protected List<SubscriptionBaseEvent> events;
 
@@ -441,12 +449,15 @@ public class DefaultSubscriptionBase extends EntityBase implements SubscriptionB
         if (transitions == null) {
             return Collections.emptyList();
         }
-        final List<SubscriptionBaseTransition> result = new ArrayList<SubscriptionBaseTransition>();
-        final SubscriptionBaseTransitionDataIterator it = new SubscriptionBaseTransitionDataIterator(clock, transitions, Order.ASC_FROM_PAST, Visibility.ALL, TimeLimit.ALL);
-        while (it.hasNext()) {
-            result.add(it.next());
+        if (allTransitions == null) {
+            final List<SubscriptionBaseTransition> result = new ArrayList<SubscriptionBaseTransition>();
+            final SubscriptionBaseTransitionDataIterator it = new SubscriptionBaseTransitionDataIterator(clock, transitions, Order.ASC_FROM_PAST, Visibility.ALL, TimeLimit.ALL);
+            while (it.hasNext()) {
+                result.add(it.next());
+            }
+            allTransitions = ImmutableList.<SubscriptionBaseTransition>copyOf(result);
         }
-        return result;
+        return allTransitions;
     }
 
     @Override
@@ -529,6 +540,9 @@ public class DefaultSubscriptionBase extends EntityBase implements SubscriptionB
         if (transitions == null) {
             return Collections.emptyList();
         }
+        if (billingTransitions != null) {
+            return billingTransitions;
+        }
         final List<SubscriptionBaseTransition> result = new ArrayList<SubscriptionBaseTransition>();
         final SubscriptionBaseTransitionDataIterator it = new SubscriptionBaseTransitionDataIterator(
                 clock, transitions, Order.ASC_FROM_PAST,
@@ -546,7 +560,8 @@ public class DefaultSubscriptionBase extends EntityBase implements SubscriptionB
                 result.add(curTransition);
             }
         }
-        return result;
+        billingTransitions = ImmutableList.<SubscriptionBaseTransition>copyOf(result);
+        return billingTransitions;
     }
 
     public SubscriptionBaseTransitionData getLastTransitionForCurrentPlan() {
@@ -700,35 +715,123 @@ public class DefaultSubscriptionBase extends EntityBase implements SubscriptionB
 
         removeEverythingPastCancelEvent(events);
 
-        final UUID nextUserToken = null;
+        final List<SubscriptionBaseEvent> activeEvents = new ArrayList<SubscriptionBaseEvent>();
+        for (final SubscriptionBaseEvent cur : inputEvents) {
+            if (cur.isActive()) {
+                activeEvents.add(cur);
+            }
+        }
 
-        UUID nextEventId;
-        DateTime nextCreatedDate;
-        EntitlementState nextState = null;
-        String nextPlanName = null;
-        String nextPhaseName = null;
-        Integer nextBillingCycleDayLocal = null;
+        // User APIs append events to the ones previously replayed: only replay the new ones in that case
+        final TransitionsReplay replay;
+        if (transitions != null && transitionsReplay != null && transitionsReplay.canBeExtendedWith(activeEvents, catalog)) {
+            replay = transitionsReplay;
+        } else {
+            replay = new TransitionsReplay(catalog);
+            transitions = new LinkedList<SubscriptionBaseTransition>();
+        }
+        allTransitions = null;
+        billingTransitions = null;
 
-        UUID prevEventId = null;
-        DateTime prevCreatedDate = null;
-        EntitlementState previousState = null;
-        PriceList previousPriceList = null;
-        Plan previousPlan = null;
-        PlanPhase previousPhase = null;
-        Integer previousBillingCycleDayLocal = null;
+        // Force a full replay next time if anything goes wrong
+        transitionsReplay = null;
+        for (int i = replay.getNbReplayedEvents(); i < activeEvents.size(); i++) {
+            transitions.add(replay.replay(activeEvents.get(i)));
+        }
+        transitionsReplay = replay;
+    }
 
-        transitions = new LinkedList<SubscriptionBaseTransition>();
+    // Skip any event after a CANCEL event:
+    //
+    //  * DefaultSubscriptionDao#buildBundleSubscriptions may have added an out-of-order cancellation event (https://github.com/killbill/killbill/issues/897)
+    //  * Hardening against data integrity issues where we have multiple active CANCEL (https://github.com/killbill/killbill/issues/619)
+    //
+    private void removeEverythingPastCancelEvent(final List<SubscriptionBaseEvent> inputEvents) {
+        final SubscriptionBaseEvent cancellationEvent = Iterables.tryFind(inputEvents,
+                                                                          new Predicate<SubscriptionBaseEvent>() {
+                                                                              @Override
+                                                                              public boolean apply(final SubscriptionBaseEvent input) {
+                                                                                  return input.getType() == EventType.API_USER && ((ApiEvent) input).getApiEventType() == ApiEventType.CANCEL;
+                                                                              }
+                                                                          }).orNull();
+        if (cancellationEvent == null) {
+            return;
+        }
 
-        for (final SubscriptionBaseEvent cur : inputEvents) {
-            if (!cur.isActive()) {
+        final Iterator<SubscriptionBaseEvent> it = inputEvents.iterator();
+        while (it.hasNext()) {
+            final SubscriptionBaseEvent input = it.next();
+            if (!input.isActive()) {
                 continue;
             }
 
+            if (input.getId().compareTo(cancellationEvent.getId()) == 0) {
+                // Keep the cancellation event
+            } else if (input.getType() == EventType.API_USER && (((ApiEvent) input).getApiEventType() == ApiEventType.TRANSFER || ((ApiEvent) input).getApiEventType() == ApiEventType.CREATE)) {
+                // Keep the initial event (SOT use-case)
+            } else if (input.getEffectiveDate().compareTo(cancellationEvent.getEffectiveDate()) >= 0) {
+                // Event to ignore past cancellation date
+                it.remove();
+            }
+        }
+    }
+
+    private static boolean isSameEvent(final SubscriptionBaseEvent replayed, final SubscriptionBaseEvent event) {
+        return replayed.getId().equals(event.getId()) &&
+               replayed.getTotalOrdering() == event.getTotalOrdering() &&
+               replayed.getEffectiveDate().compareTo(event.getEffectiveDate()) == 0 &&
+               replayed.getCreatedDate().compareTo(event.getCreatedDate()) == 0 &&
+               (replayed.getType() != EventType.API_USER || ((ApiEvent) replayed).isFromDisk() == ((ApiEvent) event).isFromDisk());
+    }
+
+    // Replays the (sorted, active) events one at a time, keeping track of the state between two transitions
+    private final class TransitionsReplay {
+
+        private final Catalog catalog;
+        private final List<SubscriptionBaseEvent> replayedEvents = new ArrayList<SubscriptionBaseEvent>();
+
+        private EntitlementState nextState = null;
+        private String nextPlanName = null;
+        private String nextPhaseName = null;
+        private Integer nextBillingCycleDayLocal = null;
+
+        private UUID prevEventId = null;
+        private DateTime prevCreatedDate = null;
+        private EntitlementState previousState = null;
+        private PriceList previousPriceList = null;
+        private Plan previousPlan = null;
+        private PlanPhase previousPhase = null;
+        private Integer previousBillingCycleDayLocal = null;
+
+        private TransitionsReplay(final Catalog catalog) {
+            this.catalog = catalog;
+        }
+
+        public int getNbReplayedEvents() {
+            return replayedEvents.size();
+        }
+
+        // The new events can only be appended if the ones already replayed are unchanged and were resolved against the same catalog
+        public boolean canBeExtendedWith(final List<SubscriptionBaseEvent> activeEvents, final Catalog newCatalog) {
+            if (catalog != newCatalog || activeEvents.size() < replayedEvents.size()) {
+                return false;
+            }
+            for (int i = 0; i < replayedEvents.size(); i++) {
+                if (!isSameEvent(replayedEvents.get(i), activeEvents.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public SubscriptionBaseTransition replay(final SubscriptionBaseEvent cur) throws CatalogApiException {
+            final UUID nextUserToken = null;
+
             ApiEventType apiEventType = null;
             boolean isFromDisk = true;
 
-            nextEventId = cur.getId();
-            nextCreatedDate = cur.getCreatedDate();
+            final UUID nextEventId = cur.getId();
+            final DateTime nextCreatedDate = cur.getCreatedDate();
 
             switch (cur.getType()) {
 
@@ -802,8 +905,6 @@ public class DefaultSubscriptionBase extends EntityBase implements SubscriptionB
                     nextUserToken,
                     isFromDisk);
 
-            transitions.add(transition);
-
             previousState = nextState;
             previousPlan = nextPlan;
             previousPhase = nextPhase;
@@ -812,41 +913,8 @@ public class DefaultSubscriptionBase extends EntityBase implements SubscriptionB
             prevCreatedDate = nextCreatedDate;
             previousBillingCycleDayLocal = nextBillingCycleDayLocal;
 
-        }
-    }
-
-    // Skip any event after a CANCEL event:
-    //
-    //  * DefaultSubscriptionDao#buildBundleSubscriptions may have added an out-of-order cancellation event (https://github.com/killbill/killbill/issues/897)
-    //  * Hardening against data integrity issues where we have multiple active CANCEL (https://github.com/killbill/killbill/issues/619)
-    //
-    private void removeEverythingPastCancelEvent(final List<SubscriptionBaseEvent> inputEvents) {
-        final SubscriptionBaseEvent cancellationEvent = Iterables.tryFind(inputEvents,
-                                                                          new Predicate<SubscriptionBaseEvent>() {
-                                                                              @Override
-                                                                              public boolean apply(final SubscriptionBaseEvent input) {
-                                                                                  return input.getType() == EventType.API_USER && ((ApiEvent) input).getApiEventType() == ApiEventType.CANCEL;
-                                                                              }
-                                                                          }).orNull();
-        if (cancellationEvent == null) {
-            return;
-        }
-
-        final Iterator<SubscriptionBaseEvent> it = inputEvents.iterator();
-        while (it.hasNext()) {
-            final SubscriptionBaseEvent input = it.next();
-            if (!input.isActive()) {
-                continue;
-            }
-
-            if (input.getId().compareTo(cancellationEvent.getId()) == 0) {
-                // Keep the cancellation event
-            } else if (input.getType() == EventType.API_USER && (((ApiEvent) input).getApiEventType() == ApiEventType.TRANSFER || ((ApiEvent) input).getApiEventType() == ApiEventType.CREATE)) {
-                // Keep the initial event (SOT use-case)
-            } else if (input.getEffectiveDate().compareTo(cancellationEvent.getEffectiveDate()) >= 0) {
-                // Event to ignore past cancellation date
-                it.remove();
-            }
+            replayedEvents.add(cur);
+            return transition;
         }
     }
 }
@@ -29,6 +29,8 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.UUID;
 
@@ -402,61 +404,46 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
     public Map<UUID, List<DefaultSubscriptionBase>> getSubscriptionsForAccount(final Catalog catalog, final InternalTenantContext context) throws CatalogApiException {
         final Map<UUID, List<DefaultSubscriptionBase>> subscriptionsFromAccountId = getSubscriptionsFromAccountId(context);
 
-        final List<SubscriptionBaseEvent> eventsForAccount = getEventsForAccountId(context);
-
-        final Map<UUID, List<DefaultSubscriptionBase>> result = new HashMap<UUID, List<DefaultSubscriptionBase>>();
-        for (final UUID bundleId : subscriptionsFromAccountId.keySet()) {
-
-            final List<DefaultSubscriptionBase> subscriptionsForBundle = subscriptionsFromAccountId.get(bundleId);
-            final Multimap<UUID, SubscriptionBaseEvent> eventsForSubscriptions = ArrayListMultimap.create();
-
-            for (final SubscriptionBase cur : subscriptionsForBundle) {
-                final Collection<SubscriptionBaseEvent> events = Collections2.filter(eventsForAccount, new Predicate<SubscriptionBaseEvent>() {
-                    @Override
-                    public boolean apply(final SubscriptionBaseEvent input) {
-                        return input.getSubscriptionId().equals(cur.getId());
-
-                    }
-                });
-                eventsForSubscriptions.putAll(cur.getId(), ImmutableList.copyOf(events));
-            }
+        // Group the events of the account by subscription in a single pass
+        final Multimap<UUID, SubscriptionBaseEvent> eventsForSubscriptions = ArrayListMultimap.create();
+        for (final SubscriptionBaseEvent event : getEventsForAccountId(context)) {
+            eventsForSubscriptions.put(event.getSubscriptionId(), event);
+        }
 
-            result.put(bundleId, buildBundleSubscriptions(subscriptionsForBundle, eventsForSubscriptions, null, catalog, context));
+        final Map<UUID, List<DefaultSubscriptionBase>> result = new HashMap<UUID, List<DefaultSubscriptionBase>>(subscriptionsFromAccountId.size());
+        for (final Entry<UUID, List<DefaultSubscriptionBase>> entry : subscriptionsFromAccountId.entrySet()) {
+            result.put(entry.getKey(), buildBundleSubscriptions(entry.getValue(), eventsForSubscriptions, null, catalog, context));
         }
         return result;
     }
 
     private Map<UUID, List<DefaultSubscriptionBase>> getSubscriptionsFromAccountId(final InternalTenantContext context) {
-        final List<DefaultSubscriptionBase> allSubscriptions = transactionalSqlDao.execute(true, new EntitySqlDaoTransactionWrapper<List<DefaultSubscriptionBase>>() {
+        return transactionalSqlDao.execute(true, new EntitySqlDaoTransactionWrapper<Map<UUID, List<DefaultSubscriptionBase>>>() {
             @Override
-            public List<DefaultSubscriptionBase> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
-
+            public Map<UUID, List<DefaultSubscriptionBase>> inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
                 final List<SubscriptionBundleModelDao> bundleModels = entitySqlDaoWrapperFactory.become(BundleSqlDao.class).getByAccountRecordId(context);
+                final Map<UUID, String> bundleExternalKeys = new HashMap<UUID, String>(bundleModels.size());
+                for (final SubscriptionBundleModelDao bundleModel : bundleModels) {
+                    bundleExternalKeys.put(bundleModel.getId(), bundleModel.getExternalKey());
+                }
 
                 final List<SubscriptionModelDao> subscriptionModels = entitySqlDaoWrapperFactory.become(SubscriptionSqlDao.class).getByAccountRecordId(context);
-                return new ArrayList<DefaultSubscriptionBase>(Collections2.transform(subscriptionModels, new Function<SubscriptionModelDao, DefaultSubscriptionBase>() {
-                    @Override
-                    public DefaultSubscriptionBase apply(final SubscriptionModelDao input) {
-                        final SubscriptionBundleModelDao bundleModel = Iterables.find(bundleModels, new Predicate<SubscriptionBundleModelDao>() {
-                            @Override
-                            public boolean apply(final SubscriptionBundleModelDao bundleInput) {
-                                return bundleInput.getId().equals(input.getBundleId());
-                            }
-                        });
-                        return SubscriptionModelDao.toSubscription(input, bundleModel.getExternalKey());
+                final Map<UUID, List<DefaultSubscriptionBase>> result = new HashMap<UUID, List<DefaultSubscriptionBase>>(bundleModels.size());
+                for (final SubscriptionModelDao subscriptionModel : subscriptionModels) {
+                    if (!bundleExternalKeys.containsKey(subscriptionModel.getBundleId())) {
+                        throw new NoSuchElementException(String.format("No bundle %s for subscription %s", subscriptionModel.getBundleId(), subscriptionModel.getId()));
                     }
-                }));
-            }
-        });
 
-        final Map<UUID, List<DefaultSubscriptionBase>> result = new HashMap<UUID, List<DefaultSubscriptionBase>>();
-        for (final DefaultSubscriptionBase subscriptionBase : allSubscriptions) {
-            if (result.get(subscriptionBase.getBundleId()) == null) {
-                result.put(subscriptionBase.getBundleId(), new LinkedList<DefaultSubscriptionBase>());
+                    List<DefaultSubscriptionBase> subscriptionsForBundle = result.get(subscriptionModel.getBundleId());
+                    if (subscriptionsForBundle == null) {
+                        subscriptionsForBundle = new ArrayList<DefaultSubscriptionBase>();
+                        result.put(subscriptionModel.getBundleId(), subscriptionsForBundle);
+                    }
+                    subscriptionsForBundle.add(SubscriptionModelDao.toSubscription(subscriptionModel, bundleExternalKeys.get(subscriptionModel.getBundleId())));
+                }
+                return result;
             }
-            result.get(subscriptionBase.getBundleId()).add(subscriptionBase);
-        }
-        return result;
+        });
     }
 
     @Override
@@ -934,8 +921,8 @@ public class DefaultSubscriptionDao extends EntityDaoBase<SubscriptionBundleMode
                                                                                                   .setFromDisk(false));
 
                         events.add(addOnCancelEvent);
-                        // Finally reload subscription with full set of events
-                        reloaded = createSubscriptionForInternalUse(cur, events, catalog, context);
+                        // Finally reload subscription with full set of events (only the events after the ones already replayed are replayed)
+                        reloaded.rebuildTransitions(events, catalog);
                     }
                     break;
                 default:
@@ -17,6 +17,7 @@
 
 package org.killbill.billing.subscription.api.user;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
@@ -25,6 +26,7 @@ import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.killbill.billing.entitlement.api.Entitlement.EntitlementState;
 import org.killbill.billing.subscription.SubscriptionTestSuiteNoDB;
+import org.killbill.billing.subscription.api.SubscriptionBaseTransitionType;
 import org.killbill.billing.subscription.events.SubscriptionBaseEvent;
 import org.killbill.billing.subscription.events.phase.PhaseEventBuilder;
 import org.killbill.billing.subscription.events.phase.PhaseEventData;
@@ -130,4 +132,90 @@ public class TestDefaultSubscriptionBase extends SubscriptionTestSuiteNoDB {
         Assert.assertEquals(subscriptionBase.getAllTransitions().get(1).getNextState(), EntitlementState.CANCELLED);
         Assert.assertEquals(subscriptionBase.getAllTransitions().get(1).getEffectiveTransitionTime(), new DateTime(2012, 6, 1, 0, 0, DateTimeZone.UTC));
     }
+
+    @Test(groups = "fast")
+    public void testIncrementalRebuild() throws Exception {
+        final DateTime startDate = new DateTime(2012, 5, 1, 0, 0, DateTimeZone.UTC);
+        final DefaultSubscriptionBase subscriptionBase = new DefaultSubscriptionBase(new SubscriptionBuilder().setAlignStartDate(startDate));
+
+        final UUID subscriptionId = UUID.randomUUID();
+        final List<SubscriptionBaseEvent> inputEvents = new LinkedList<SubscriptionBaseEvent>();
+        inputEvents.add(new ApiEventCreate(new ApiEventBuilder().setApiEventType(CREATE)
+                                                                .setEventPlan("laser-scope-monthly")
+                                                                .setEventPlanPhase("laser-scope-monthly-discount")
+                                                                .setEventPriceList("DEFAULT")
+                                                                .setFromDisk(true)
+                                                                .setUuid(UUID.randomUUID())
+                                                                .setSubscriptionId(subscriptionId)
+                                                                .setCreatedDate(startDate)
+                                                                .setUpdatedDate(startDate)
+                                                                .setEffectiveDate(startDate)
+                                                                .setTotalOrdering(3)
+                                                                .setActive(true)));
+        subscriptionBase.rebuildTransitions(inputEvents, catalog);
+
+        final List<SubscriptionBaseTransition> initialTransitions = subscriptionBase.getAllTransitions();
+        Assert.assertEquals(initialTransitions.size(), 1);
+        // Derived lists are only computed once
+        Assert.assertSame(subscriptionBase.getAllTransitions(), initialTransitions);
+        Assert.assertSame(subscriptionBase.getBillingTransitions(), subscriptionBase.getBillingTransitions());
+
+        // Append new events: only these are replayed
+        inputEvents.add(new PhaseEventData(new PhaseEventBuilder().setPhaseName("laser-scope-monthly-evergreen")
+                                                                  .setUuid(UUID.randomUUID())
+                                                                  .setSubscriptionId(subscriptionId)
+                                                                  .setCreatedDate(startDate)
+                                                                  .setUpdatedDate(startDate)
+                                                                  .setEffectiveDate(new DateTime(2012, 6, 1, 0, 0, DateTimeZone.UTC))
+                                                                  .setTotalOrdering(4)
+                                                                  .setActive(true)));
+        inputEvents.add(new ApiEventCancel(new ApiEventBuilder().setApiEventType(ApiEventType.CANCEL)
+                                                                .setEventPlan(null)
+                                                                .setEventPlanPhase(null)
+                                                                .setEventPriceList(null)
+                                                                .setFromDisk(false)
+                                                                .setUuid(UUID.randomUUID())
+                                                                .setSubscriptionId(subscriptionId)
+                                                                .setCreatedDate(startDate)
+                                                                .setUpdatedDate(null)
+                                                                .setEffectiveDate(new DateTime(2012, 7, 1, 0, 0, DateTimeZone.UTC))
+                                                                .setTotalOrdering(0) // In-memory event
+                                                                .setActive(true)));
+        subscriptionBase.rebuildTransitions(inputEvents, catalog);
+
+        final List<SubscriptionBaseTransition> incrementalTransitions = subscriptionBase.getAllTransitions();
+        Assert.assertEquals(incrementalTransitions.size(), 3);
+        Assert.assertSame(incrementalTransitions.get(0), initialTransitions.get(0));
+
+        // Same result as a full replay
+        final DefaultSubscriptionBase otherSubscriptionBase = new DefaultSubscriptionBase(new SubscriptionBuilder().setAlignStartDate(startDate));
+        otherSubscriptionBase.rebuildTransitions(new ArrayList<SubscriptionBaseEvent>(inputEvents), catalog);
+        final List<SubscriptionBaseTransition> fullTransitions = otherSubscriptionBase.getAllTransitions();
+        Assert.assertEquals(fullTransitions.size(), incrementalTransitions.size());
+        for (int i = 0; i < fullTransitions.size(); i++) {
+            Assert.assertEquals(incrementalTransitions.get(i).getId(), fullTransitions.get(i).getId());
+            Assert.assertEquals(incrementalTransitions.get(i).getTransitionType(), fullTransitions.get(i).getTransitionType());
+            Assert.assertEquals(incrementalTransitions.get(i).getPreviousState(), fullTransitions.get(i).getPreviousState());
+            Assert.assertEquals(incrementalTransitions.get(i).getNextState(), fullTransitions.get(i).getNextState());
+            Assert.assertEquals(incrementalTransitions.get(i).getPreviousPhase(), fullTransitions.get(i).getPreviousPhase());
+            Assert.assertEquals(incrementalTransitions.get(i).getNextPhase(), fullTransitions.get(i).getNextPhase());
+        }
+        Assert.assertEquals(incrementalTransitions.get(1).getTransitionType(), SubscriptionBaseTransitionType.PHASE);
+        Assert.assertEquals(incrementalTransitions.get(2).getTransitionType(), SubscriptionBaseTransitionType.CANCEL);
+
+        // Persisting the in-memory event changes its ordering: everything is replayed
+        final SubscriptionBaseEvent cancelEvent = inputEvents.remove(2);
+        inputEvents.add(new ApiEventCancel(new ApiEventBuilder().setApiEventType(ApiEventType.CANCEL)
+                                                                .setFromDisk(true)
+                                                                .setUuid(cancelEvent.getId())
+                                                                .setSubscriptionId(subscriptionId)
+                                                                .setCreatedDate(startDate)
+                                                                .setUpdatedDate(startDate)
+                                                                .setEffectiveDate(cancelEvent.getEffectiveDate())
+                                                                .setTotalOrdering(5)
+                                                                .setActive(true)));
+        subscriptionBase.rebuildTransitions(inputEvents, catalog);
+        Assert.assertEquals(subscriptionBase.getAllTransitions().size(), 3);
+        Assert.assertNotSame(subscriptionBase.getAllTransitions().get(0), initialTransitions.get(0));
+    }
 }
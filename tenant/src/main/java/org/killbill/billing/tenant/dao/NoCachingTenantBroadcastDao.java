@@ -81,6 +81,11 @@ public class NoCachingTenantBroadcastDao extends EntityDaoBase<TenantBroadcastMo
         throw new IllegalStateException("Not implemented by NoCachingTenantBroadcastDao");
     }
 
+    @Override
+    public Pagination<TenantBroadcastModelDao> get(final Long offset, final Long lastRecordId, final Long limit, final InternalTenantContext context) {
+        throw new IllegalStateException("Not implemented by NoCachingTenantBroadcastDao");
+    }
+
     @Override
     public Long getCount(final InternalTenantContext context) {
         throw new IllegalStateException("Not implemented by NoCachingTenantBroadcastDao");
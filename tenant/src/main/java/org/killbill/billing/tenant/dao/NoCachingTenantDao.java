@@ -101,6 +101,11 @@ public class NoCachingTenantDao extends EntityDaoBase<TenantModelDao, Tenant, Te
         throw new IllegalStateException("Not implemented by NoCachingTenantDao");
     }
 
+    @Override
+    public Pagination<TenantModelDao> get(final Long offset, final Long lastRecordId, final Long limit, final InternalTenantContext context) {
+        throw new IllegalStateException("Not implemented by NoCachingTenantDao");
+    }
+
     @Override
     public TenantModelDao getByRecordId(final Long recordId, final InternalTenantContext context) {
         return transactionalSqlDao.execute(true, new EntitySqlDaoTransactionWrapper<TenantModelDao>() {
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.usage;
+
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.platform.api.KillbillService;
+import org.killbill.billing.platform.api.LifecycleHandlerType;
+import org.killbill.billing.platform.api.LifecycleHandlerType.LifecycleLevel;
+import org.killbill.billing.usage.dao.RolledUpUsageDao;
+import org.killbill.billing.usage.dao.RolledUpUsageModelDao;
+import org.killbill.billing.util.UUIDs;
+import org.killbill.billing.util.callcontext.CallOrigin;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.callcontext.UserType;
+import org.killbill.billing.util.config.definition.UsageConfig;
+import org.killbill.clock.Clock;
+import org.killbill.commons.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically moves the old rolled_up_usage records into the rolled_up_usage_daily table: all the records for a given
+ * (subscription, unit type, record date, tracking id) are replaced by a single row holding their total and their max,
+ * which is all the invoicing code needs for both consumable and capacity usage.
+ * <p/>
+ * Reads go through both tables, so compaction is transparent to the usage and invoice APIs.
+ */
+public class RolledUpUsageCompactor implements KillbillService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RolledUpUsageCompactor.class);
+
+    private static final String USAGE_COMPACTOR_SERVICE_NAME = "usage-compactor-service";
+    private static final String USAGE_COMPACTOR_USER_NAME = "RolledUpUsageCompactor";
+
+    private static final int TERMINATION_TIMEOUT_SEC = 5;
+
+    // Only the records which have been read are deleted, the margin just avoids compacting days which are still being recorded
+    private static final int CREATED_DATE_SAFETY_MARGIN_HOURS = 1;
+
+    private final RolledUpUsageDao rolledUpUsageDao;
+    private final InternalCallContextFactory internalCallContextFactory;
+    private final UsageConfig usageConfig;
+    private final Clock clock;
+
+    private ScheduledExecutorService compactorExecutor;
+    private volatile boolean isStopped;
+
+    @Inject
+    public RolledUpUsageCompactor(final RolledUpUsageDao rolledUpUsageDao,
+                                  final InternalCallContextFactory internalCallContextFactory,
+                                  final UsageConfig usageConfig,
+                                  final Clock clock) {
+        this.rolledUpUsageDao = rolledUpUsageDao;
+        this.internalCallContextFactory = internalCallContextFactory;
+        this.usageConfig = usageConfig;
+        this.clock = clock;
+        this.isStopped = false;
+    }
+
+    @Override
+    public String getName() {
+        return USAGE_COMPACTOR_SERVICE_NAME;
+    }
+
+    @Override
+    public int getRegistrationOrdering() {
+        return KILLBILL_SERVICES.INVOICE_SERVICE.getRegistrationOrdering() + 3;
+    }
+
+    @LifecycleHandlerType(LifecycleLevel.INIT_SERVICE)
+    public void initialize() {
+        if (!isEnabled()) {
+            return;
+        }
+        compactorExecutor = Executors.newSingleThreadScheduledExecutor("UsageCompactor");
+    }
+
+    @LifecycleHandlerType(LifecycleLevel.START_SERVICE)
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        final TimeUnit rateUnit = usageConfig.getCompactionRate().getUnit();
+        final long period = usageConfig.getCompactionRate().getPeriod();
+        compactorExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compact();
+                } catch (final RuntimeException e) {
+                    // Don't let the exception cancel the next runs
+                    logger.warn("Failed to compact usage records", e);
+                }
+            }
+        }, period, period, rateUnit);
+    }
+
+    @LifecycleHandlerType(LifecycleLevel.STOP_SERVICE)
+    public void stop() {
+        if (compactorExecutor == null || isStopped) {
+            return;
+        }
+        try {
+            compactorExecutor.shutdown();
+            final boolean success = compactorExecutor.awaitTermination(TERMINATION_TIMEOUT_SEC, TimeUnit.SECONDS);
+            if (!success) {
+                logger.warn("UsageCompactor failed to complete termination within " + TERMINATION_TIMEOUT_SEC + "sec");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("UsageCompactor stop sequence got interrupted");
+        } finally {
+            isStopped = true;
+        }
+    }
+
+    /**
+     * Compact the usage records older than the configured delay, for at most the configured number of accounts
+     *
+     * @return the number of rolled_up_usage records which have been compacted
+     */
+    public int compact() {
+        final DateTime now = clock.getUTCNow();
+        final LocalDate cutoffDate = now.minus(usageConfig.getCompactionDelay().getMillis()).toLocalDate();
+        final DateTime createdBefore = now.minusHours(CREATED_DATE_SAFETY_MARGIN_HOURS);
+
+        int nbCompactedRecords = 0;
+        final List<RolledUpUsageModelDao> accounts = rolledUpUsageDao.getAccountsWithUsageToCompact(cutoffDate, createdBefore, usageConfig.getCompactionNbAccounts());
+        for (final RolledUpUsageModelDao account : accounts) {
+            if (isStopped) {
+                break;
+            }
+            final InternalCallContext context = internalCallContextFactory.createInternalCallContext(account.getTenantRecordId(),
+                                                                                                    account.getAccountRecordId(),
+                                                                                                    USAGE_COMPACTOR_USER_NAME,
+                                                                                                    CallOrigin.INTERNAL,
+                                                                                                    UserType.SYSTEM,
+                                                                                                    UUIDs.randomUUID());
+            nbCompactedRecords += rolledUpUsageDao.compactUsage(cutoffDate, createdBefore, context);
+        }
+        if (nbCompactedRecords > 0) {
+            logger.info("Compacted {} usage records for {} accounts (cutoffDate={})", nbCompactedRecords, accounts.size(), cutoffDate);
+        }
+        return nbCompactedRecords;
+    }
+
+    private boolean isEnabled() {
+        return usageConfig.getCompactionRate().getMillis() > 0;
+    }
+}
@@ -17,40 +17,221 @@
 
 package org.killbill.billing.usage.api.svcs;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.UUID;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 
 import org.joda.time.LocalDate;
+import org.killbill.billing.ErrorCode;
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.entitlement.EntitlementInternalApi;
+import org.killbill.billing.entitlement.api.Entitlement;
+import org.killbill.billing.entitlement.api.EntitlementApiException;
 import org.killbill.billing.usage.InternalUserApi;
 import org.killbill.billing.usage.RawUsage;
+import org.killbill.billing.usage.api.SubscriptionUsageRecord;
+import org.killbill.billing.usage.api.UsageApiException;
+import org.killbill.billing.usage.api.user.DefaultUsageUserApi;
 import org.killbill.billing.usage.dao.RolledUpUsageDao;
 import org.killbill.billing.usage.dao.RolledUpUsageModelDao;
+import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
 
 import com.google.common.base.Function;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 
 public class DefaultInternalUserApi implements InternalUserApi {
 
     private final RolledUpUsageDao rolledUpUsageDao;
+    private final EntitlementInternalApi entitlementInternalApi;
+    private final InternalCallContextFactory internalCallContextFactory;
 
     @Inject
-    public DefaultInternalUserApi(final RolledUpUsageDao rolledUpUsageDao) {
+    public DefaultInternalUserApi(final RolledUpUsageDao rolledUpUsageDao, final EntitlementInternalApi entitlementInternalApi, final InternalCallContextFactory internalCallContextFactory) {
         this.rolledUpUsageDao = rolledUpUsageDao;
+        this.entitlementInternalApi = entitlementInternalApi;
+        this.internalCallContextFactory = internalCallContextFactory;
     }
 
     @Override
     public List<RawUsage> getRawUsageForAccount(final LocalDate stateDate, final LocalDate endDate, final InternalTenantContext internalTenantContext) {
         final List<RolledUpUsageModelDao> usage = rolledUpUsageDao.getRawUsageForAccount(stateDate, endDate, internalTenantContext);
+        final DailyTrackingIds dailyTrackingIds = new DailyTrackingIds(stateDate, endDate, internalTenantContext);
         return ImmutableList.copyOf(Iterables.transform(usage, new Function<RolledUpUsageModelDao, RawUsage>() {
             @Nullable
             @Override
             public RawUsage apply(final RolledUpUsageModelDao input) {
-                return new DefaultRawUsage(input.getSubscriptionId(), input.getRecordDate(), input.getUnitType(), input.getAmount(), input.getTrackingId());
+                if (input.getTrackingId() == null) {
+                    return new DefaultRawUsage(input.getSubscriptionId(), input.getRecordDate(), input.getUnitType(), input.getAmount(), input.getMaxAmount(), dailyTrackingIds.get(input));
+                }
+                return new DefaultRawUsage(input.getSubscriptionId(), input.getRecordDate(), input.getUnitType(), input.getAmount(), input.getMaxAmount(), input.getTrackingId());
             }
         }));
     }
+
+    @Override
+    public Iterator<RawUsage> getAggregatedRawUsageForSubscription(final UUID subscriptionId, final LocalDate startDate, final LocalDate endDate, final Set<String> unitTypes, final InternalTenantContext internalTenantContext) {
+        if (unitTypes.isEmpty()) {
+            return ImmutableSet.<RawUsage>of().iterator();
+        }
+
+        // The rows are already aggregated per (unit type, day) and streamed out of the database
+        return Iterators.transform(rolledUpUsageDao.getAggregatedUsageForSubscription(subscriptionId, startDate, endDate, unitTypes, internalTenantContext), new Function<RolledUpUsageModelDao, RawUsage>() {
+            @Override
+            public RawUsage apply(final RolledUpUsageModelDao input) {
+                return new DefaultRawUsage(input.getSubscriptionId(), input.getRecordDate(), input.getUnitType(), input.getAmount(), input.getMaxAmount(), ImmutableSet.<String>of());
+            }
+        });
+    }
+
+    @Override
+    public List<RawUsage> getTrackingIdsForSubscription(final UUID subscriptionId, final LocalDate startDate, final LocalDate endDate, final Set<String> unitTypes, final InternalTenantContext internalTenantContext) {
+        if (unitTypes.isEmpty()) {
+            return ImmutableList.<RawUsage>of();
+        }
+
+        final Map<List<Object>, RolledUpUsageModelDao> dailyUsages = new LinkedHashMap<List<Object>, RolledUpUsageModelDao>();
+        final Map<List<Object>, Set<String>> trackingIdsPerDailyUsage = new HashMap<List<Object>, Set<String>>();
+        for (final RolledUpUsageModelDao trackingId : rolledUpUsageDao.getTrackingIdsForSubscription(subscriptionId, startDate, endDate, unitTypes, internalTenantContext)) {
+            final List<Object> key = getDailyUsageKey(trackingId);
+            Set<String> trackingIds = trackingIdsPerDailyUsage.get(key);
+            if (trackingIds == null) {
+                trackingIds = new HashSet<String>();
+                trackingIdsPerDailyUsage.put(key, trackingIds);
+                dailyUsages.put(key, trackingId);
+            }
+            trackingIds.add(trackingId.getTrackingId());
+        }
+
+        final List<RawUsage> result = new ArrayList<RawUsage>(dailyUsages.size());
+        for (final Entry<List<Object>, RolledUpUsageModelDao> entry : dailyUsages.entrySet()) {
+            final RolledUpUsageModelDao dailyUsage = entry.getValue();
+            result.add(new DefaultRawUsage(dailyUsage.getSubscriptionId(), dailyUsage.getRecordDate(), dailyUsage.getUnitType(), null, null, trackingIdsPerDailyUsage.get(entry.getKey())));
+        }
+        return result;
+    }
+
+    @Override
+    public void recordRolledUpUsage(final Iterable<SubscriptionUsageRecord> records, final CallContext callContext) throws UsageApiException, EntitlementApiException {
+        // The context is resolved once per subscription (record ids are cached) and the usage is grouped per account
+        final Map<UUID, InternalCallContext> contextPerSubscription = new HashMap<UUID, InternalCallContext>();
+        final Map<Long, InternalCallContext> contextPerAccount = new HashMap<Long, InternalCallContext>();
+        final Map<InternalCallContext, List<RolledUpUsageModelDao>> usagesPerAccount = new LinkedHashMap<InternalCallContext, List<RolledUpUsageModelDao>>();
+        final Map<InternalCallContext, Map<UUID, LocalDate>> highestRecordDatesPerAccount = new HashMap<InternalCallContext, Map<UUID, LocalDate>>();
+        final Map<String, Set<UUID>> subscriptionsPerTrackingId = new HashMap<String, Set<UUID>>();
+        for (final SubscriptionUsageRecord record : records) {
+            InternalCallContext internalCallContext = contextPerSubscription.get(record.getSubscriptionId());
+            if (internalCallContext == null) {
+                final InternalCallContext subscriptionContext = internalCallContextFactory.createInternalCallContext(record.getSubscriptionId(), ObjectType.SUBSCRIPTION, callContext);
+                internalCallContext = contextPerAccount.get(subscriptionContext.getAccountRecordId());
+                if (internalCallContext == null) {
+                    internalCallContext = subscriptionContext;
+                    contextPerAccount.put(internalCallContext.getAccountRecordId(), internalCallContext);
+                    usagesPerAccount.put(internalCallContext, new ArrayList<RolledUpUsageModelDao>());
+                    highestRecordDatesPerAccount.put(internalCallContext, new HashMap<UUID, LocalDate>());
+                }
+                contextPerSubscription.put(record.getSubscriptionId(), internalCallContext);
+            }
+
+            if (!Strings.isNullOrEmpty(record.getTrackingId())) {
+                Set<UUID> subscriptionIds = subscriptionsPerTrackingId.get(record.getTrackingId());
+                if (subscriptionIds == null) {
+                    subscriptionIds = new HashSet<UUID>();
+                    subscriptionsPerTrackingId.put(record.getTrackingId(), subscriptionIds);
+                }
+                if (!subscriptionIds.add(record.getSubscriptionId())) {
+                    throw new UsageApiException(ErrorCode.USAGE_RECORD_TRACKING_ID_ALREADY_EXISTS, record.getTrackingId());
+                }
+            }
+
+            final Map<UUID, LocalDate> highestRecordDates = highestRecordDatesPerAccount.get(internalCallContext);
+            for (final RolledUpUsageModelDao usage : DefaultUsageUserApi.toRolledUpUsageModelDaos(record)) {
+                final LocalDate highestRecordDate = highestRecordDates.get(usage.getSubscriptionId());
+                if (highestRecordDate == null || highestRecordDate.compareTo(usage.getRecordDate()) < 0) {
+                    highestRecordDates.put(usage.getSubscriptionId(), usage.getRecordDate());
+                }
+                usagesPerAccount.get(internalCallContext).add(usage);
+            }
+        }
+
+        if (usagesPerAccount.isEmpty()) {
+            return;
+        }
+
+        // Each subscription needs to be active on its highest record date: only the subscriptions of the payload are looked up, once per account
+        for (final Entry<InternalCallContext, Map<UUID, LocalDate>> entry : highestRecordDatesPerAccount.entrySet()) {
+            final Map<UUID, Entitlement> entitlements = entitlementInternalApi.getEntitlementsForIds(entry.getValue().keySet(), entry.getKey());
+            for (final Entry<UUID, LocalDate> highestRecordDate : entry.getValue().entrySet()) {
+                final LocalDate effectiveEndDate = entitlements.get(highestRecordDate.getKey()).getEffectiveEndDate();
+                if (effectiveEndDate != null && effectiveEndDate.compareTo(highestRecordDate.getValue()) < 0) {
+                    throw new UsageApiException(ErrorCode.SUB_INVALID_SUBSCRIPTION_ID, highestRecordDate.getKey());
+                }
+            }
+        }
+
+        // Check all the tracking ids at once
+        if (!subscriptionsPerTrackingId.isEmpty()) {
+            final InternalTenantContext internalTenantContext = internalCallContextFactory.createInternalTenantContextWithoutAccountRecordId(callContext);
+            for (final RolledUpUsageModelDao existingUsage : rolledUpUsageDao.getRecordsWithTrackingIds(subscriptionsPerTrackingId.keySet(), internalTenantContext)) {
+                final Set<UUID> subscriptionIds = subscriptionsPerTrackingId.get(existingUsage.getTrackingId());
+                if (subscriptionIds != null && subscriptionIds.contains(existingUsage.getSubscriptionId())) {
+                    throw new UsageApiException(ErrorCode.USAGE_RECORD_TRACKING_ID_ALREADY_EXISTS, existingUsage.getTrackingId());
+                }
+            }
+        }
+
+        rolledUpUsageDao.record(usagesPerAccount);
+    }
+
+    private static List<Object> getDailyUsageKey(final RolledUpUsageModelDao usage) {
+        return ImmutableList.<Object>of(usage.getSubscriptionId(), usage.getUnitType(), usage.getRecordDate());
+    }
+
+    // Tracking ids of the compacted days, looked up the first time a compacted day shows up
+    private final class DailyTrackingIds {
+
+        private final LocalDate startDate;
+        private final LocalDate endDate;
+        private final InternalTenantContext context;
+
+        private Map<List<Object>, Set<String>> trackingIdsPerDailyUsage;
+
+        private DailyTrackingIds(final LocalDate startDate, final LocalDate endDate, final InternalTenantContext context) {
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.context = context;
+        }
+
+        public Set<String> get(final RolledUpUsageModelDao dailyUsage) {
+            if (trackingIdsPerDailyUsage == null) {
+                trackingIdsPerDailyUsage = new HashMap<List<Object>, Set<String>>();
+                for (final RolledUpUsageModelDao trackingId : rolledUpUsageDao.getDailyTrackingIdsForAccount(startDate, endDate, context)) {
+                    Set<String> trackingIds = trackingIdsPerDailyUsage.get(getDailyUsageKey(trackingId));
+                    if (trackingIds == null) {
+                        trackingIds = new HashSet<String>();
+                        trackingIdsPerDailyUsage.put(getDailyUsageKey(trackingId), trackingIds);
+                    }
+                    trackingIds.add(trackingId.getTrackingId());
+                }
+            }
+            final Set<String> trackingIds = trackingIdsPerDailyUsage.get(getDailyUsageKey(dailyUsage));
+            return trackingIds == null ? ImmutableSet.<String>of() : trackingIds;
+        }
+    }
 }
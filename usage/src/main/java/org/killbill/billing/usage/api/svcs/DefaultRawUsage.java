@@ -17,25 +17,38 @@
 
 package org.killbill.billing.usage.api.svcs;
 
+import java.util.Set;
 import java.util.UUID;
 
 import org.joda.time.LocalDate;
 import org.killbill.billing.usage.RawUsage;
 
+import com.google.common.collect.ImmutableSet;
+
 public class DefaultRawUsage implements RawUsage {
 
     private final UUID subscriptionId;
     private final LocalDate recordDate;
     private final String unitType;
     private final Long amount;
-    private final String trackingId;
+    private final Long maxAmount;
+    private final Set<String> trackingIds;
 
     public DefaultRawUsage(final UUID subscriptionId, final LocalDate recordDate, final String unitType, final Long amount, final String trackingId) {
+        this(subscriptionId, recordDate, unitType, amount, amount, trackingId);
+    }
+
+    public DefaultRawUsage(final UUID subscriptionId, final LocalDate recordDate, final String unitType, final Long amount, final Long maxAmount, final String trackingId) {
+        this(subscriptionId, recordDate, unitType, amount, maxAmount, trackingId == null ? ImmutableSet.<String>of() : ImmutableSet.<String>of(trackingId));
+    }
+
+    public DefaultRawUsage(final UUID subscriptionId, final LocalDate recordDate, final String unitType, final Long amount, final Long maxAmount, final Set<String> trackingIds) {
         this.subscriptionId = subscriptionId;
         this.recordDate = recordDate;
         this.unitType = unitType;
         this.amount = amount;
-        this.trackingId = trackingId;
+        this.maxAmount = maxAmount;
+        this.trackingIds = trackingIds;
     }
 
     @Override
@@ -58,9 +71,19 @@ public class DefaultRawUsage implements RawUsage {
         return amount;
     }
 
+    @Override
+    public Long getMaxAmount() {
+        return maxAmount;
+    }
+
     @Override
     public String getTrackingId() {
-        return trackingId;
+        return trackingIds.isEmpty() ? null : trackingIds.iterator().next();
+    }
+
+    @Override
+    public Set<String> getTrackingIds() {
+        return trackingIds;
     }
 
     @Override
@@ -70,7 +93,8 @@ public class DefaultRawUsage implements RawUsage {
         sb.append(", recordDate=").append(recordDate);
         sb.append(", unitType='").append(unitType).append('\'');
         sb.append(", amount=").append(amount);
-        sb.append(", trackingId=").append(trackingId);
+        sb.append(", maxAmount=").append(maxAmount);
+        sb.append(", trackingIds=").append(trackingIds);
         sb.append('}');
         return sb.toString();
     }
@@ -65,13 +65,18 @@ public class DefaultUsageUserApi implements UsageUserApi {
             throw new UsageApiException(ErrorCode.USAGE_RECORD_TRACKING_ID_ALREADY_EXISTS, record.getTrackingId());
         }
 
+        rolledUpUsageDao.record(toRolledUpUsageModelDaos(record), internalCallContext);
+    }
+
+    // Also used by the bulk DefaultInternalUserApi#recordRolledUpUsage
+    public static List<RolledUpUsageModelDao> toRolledUpUsageModelDaos(final SubscriptionUsageRecord record) {
         final List<RolledUpUsageModelDao> usages = new ArrayList<RolledUpUsageModelDao>();
         for (final UnitUsageRecord unitUsageRecord : record.getUnitUsageRecord()) {
             for (final UsageRecord usageRecord : unitUsageRecord.getDailyAmount()) {
                 usages.add(new RolledUpUsageModelDao(record.getSubscriptionId(), unitUsageRecord.getUnitType(), usageRecord.getDate(), usageRecord.getAmount(), record.getTrackingId()));
             }
         }
-        rolledUpUsageDao.record(usages, internalCallContext);
+        return usages;
     }
 
     @Override
@@ -18,32 +18,78 @@
 
 package org.killbill.billing.usage.dao;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 import java.util.UUID;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.util.entity.dao.DBRouter;
+import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.IDBI;
+import org.skife.jdbi.v2.TransactionCallback;
+import org.skife.jdbi.v2.TransactionStatus;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 
 import static org.killbill.billing.util.glue.IDBISetup.MAIN_RO_IDBI_NAMED;
 
 public class DefaultRolledUpUsageDao implements RolledUpUsageDao {
 
+    private static final int MAX_RECORD_IDS_PER_DELETE = 1000;
+    // Maximum number of tracking ids in a single IN clause
+    private static final int MAX_TRACKING_IDS_PER_QUERY = 1000;
+
+    private final IDBI dbi;
     private final DBRouter<RolledUpUsageSqlDao> dbRouter;
 
     @Inject
     public DefaultRolledUpUsageDao(final IDBI dbi, @Named(MAIN_RO_IDBI_NAMED) final IDBI roDbi) {
+        this.dbi = dbi;
         this.dbRouter = new DBRouter<RolledUpUsageSqlDao>(dbi, roDbi, RolledUpUsageSqlDao.class);
     }
 
     @Override
     public void record(final Iterable<RolledUpUsageModelDao> usages, final InternalCallContext context) {
-        dbRouter.onDemand(false).create(usages, context);
+        dbRouter.onDemand(false).createUsages(usages, context);
+    }
+
+    @Override
+    public void record(final Map<InternalCallContext, List<RolledUpUsageModelDao>> usagesPerAccount) {
+        // One batch per account (the account record id is bound from the context), all or nothing
+        dbi.inTransaction(new TransactionCallback<Void>() {
+            @Override
+            public Void inTransaction(final Handle handle, final TransactionStatus status) throws Exception {
+                final RolledUpUsageSqlDao rolledUpUsageSqlDao = handle.attach(RolledUpUsageSqlDao.class);
+                for (final Entry<InternalCallContext, List<RolledUpUsageModelDao>> entry : usagesPerAccount.entrySet()) {
+                    rolledUpUsageSqlDao.createUsages(entry.getValue(), entry.getKey());
+                }
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public List<RolledUpUsageModelDao> getRecordsWithTrackingIds(final Collection<String> trackingIds, final InternalTenantContext context) {
+        final RolledUpUsageSqlDao rolledUpUsageSqlDao = dbRouter.onDemand(false);
+        final List<RolledUpUsageModelDao> result = new ArrayList<RolledUpUsageModelDao>();
+        for (final List<String> trackingIdsChunk : Iterables.partition(trackingIds, MAX_TRACKING_IDS_PER_QUERY)) {
+            result.addAll(rolledUpUsageSqlDao.getRecordsWithTrackingIds(trackingIdsChunk, context));
+        }
+        return result;
     }
 
     @Override
@@ -65,4 +111,104 @@ public class DefaultRolledUpUsageDao implements RolledUpUsageDao {
     public List<RolledUpUsageModelDao> getRawUsageForAccount(final LocalDate startDate, final LocalDate endDate, final InternalTenantContext context) {
         return dbRouter.onDemand(true).getRawUsageForAccount(startDate.toDate(), endDate.toDate(), context);
     }
+
+    @Override
+    public Iterator<RolledUpUsageModelDao> getAggregatedUsageForSubscription(final UUID subscriptionId, final LocalDate startDate, final LocalDate endDate, final Collection<String> unitTypes, final InternalTenantContext context) {
+        return dbRouter.onDemand(true).getAggregatedUsageForSubscription(subscriptionId, startDate.toDate(), endDate.toDate(), unitTypes, context);
+    }
+
+    @Override
+    public List<RolledUpUsageModelDao> getTrackingIdsForSubscription(final UUID subscriptionId, final LocalDate startDate, final LocalDate endDate, final Collection<String> unitTypes, final InternalTenantContext context) {
+        return dbRouter.onDemand(true).getTrackingIdsForSubscription(subscriptionId, startDate.toDate(), endDate.toDate(), unitTypes, context);
+    }
+
+    @Override
+    public List<RolledUpUsageModelDao> getDailyTrackingIdsForAccount(final LocalDate startDate, final LocalDate endDate, final InternalTenantContext context) {
+        return dbRouter.onDemand(true).getDailyTrackingIdsForAccount(startDate.toDate(), endDate.toDate(), context);
+    }
+
+    @Override
+    public List<RolledUpUsageModelDao> getAccountsWithUsageToCompact(final LocalDate cutoffDate, final DateTime createdBefore, final int limit) {
+        return dbRouter.onDemand(true).getAccountsWithUsageToCompact(cutoffDate.toDate(), createdBefore.toDate(), limit);
+    }
+
+    @Override
+    public int compactUsage(final LocalDate cutoffDate, final DateTime createdBefore, final InternalCallContext context) {
+        // One transaction per subscription, so that only the records of a single subscription are held in memory
+        int nbDeletedRecords = 0;
+        for (final RolledUpUsageModelDao subscription : dbRouter.onDemand(false).getSubscriptionsWithUsageToCompact(cutoffDate.toDate(), createdBefore.toDate(), context)) {
+            nbDeletedRecords += compactUsage(subscription.getSubscriptionId(), cutoffDate, createdBefore, context);
+        }
+        return nbDeletedRecords;
+    }
+
+    private int compactUsage(final UUID subscriptionId, final LocalDate cutoffDate, final DateTime createdBefore, final InternalCallContext context) {
+        return dbi.inTransaction(new TransactionCallback<Integer>() {
+            @Override
+            public Integer inTransaction(final Handle handle, final TransactionStatus status) throws Exception {
+                final RolledUpUsageSqlDao rolledUpUsageSqlDao = handle.attach(RolledUpUsageSqlDao.class);
+
+                // Records are sorted by (unit type, record date): fold each group into a daily record, and keep its distinct tracking ids aside
+                final List<RolledUpUsageModelDao> dailyUsages = new ArrayList<RolledUpUsageModelDao>();
+                final List<RolledUpUsageModelDao> dailyTrackingIds = new ArrayList<RolledUpUsageModelDao>();
+                final List<Long> compactedRecordIds = new ArrayList<Long>();
+                final Set<String> trackingIds = new LinkedHashSet<String>();
+                RolledUpUsageModelDao dailyUsage = null;
+                for (final RolledUpUsageModelDao usage : rolledUpUsageSqlDao.getUsageToCompact(subscriptionId, cutoffDate.toDate(), createdBefore.toDate(), context)) {
+                    if (dailyUsage != null && isSameDailyUsage(dailyUsage, usage)) {
+                        dailyUsage.setAmount(dailyUsage.getAmount() + usage.getAmount());
+                        dailyUsage.setMaxAmount(Math.max(dailyUsage.getMaxAmount(), usage.getAmount()));
+                    } else {
+                        addDailyTrackingIds(dailyUsage, trackingIds, dailyTrackingIds);
+                        dailyUsage = new RolledUpUsageModelDao(usage.getSubscriptionId(), usage.getUnitType(), usage.getRecordDate(), usage.getAmount(), null);
+                        dailyUsage.setMaxAmount(usage.getAmount());
+                        dailyUsages.add(dailyUsage);
+                    }
+                    trackingIds.add(usage.getTrackingId());
+                    compactedRecordIds.add(usage.getRecordId());
+                }
+                if (dailyUsages.isEmpty()) {
+                    return 0;
+                }
+                addDailyTrackingIds(dailyUsage, trackingIds, dailyTrackingIds);
+
+                // Days compacted by a previous run (records created later on) are updated in place, so that there is a single daily record per day
+                final int[] nbUpdatedDailyUsages = rolledUpUsageSqlDao.updateDailyUsage(dailyUsages, context);
+                final List<RolledUpUsageModelDao> newDailyUsages = new ArrayList<RolledUpUsageModelDao>();
+                for (int i = 0; i < dailyUsages.size(); i++) {
+                    if (nbUpdatedDailyUsages[i] == 0) {
+                        newDailyUsages.add(dailyUsages.get(i));
+                    }
+                }
+                if (!newDailyUsages.isEmpty()) {
+                    rolledUpUsageSqlDao.createDailyUsage(newDailyUsages, context);
+                }
+                rolledUpUsageSqlDao.createDailyTrackingIds(dailyTrackingIds, context);
+
+                // Delete the records we've read, and only those: records inserted concurrently are left for the next run
+                int nbDeletedRecords = 0;
+                for (final List<Long> recordIds : Lists.partition(compactedRecordIds, MAX_RECORD_IDS_PER_DELETE)) {
+                    nbDeletedRecords += rolledUpUsageSqlDao.deleteCompactedUsage(recordIds, context);
+                }
+                return nbDeletedRecords;
+            }
+        });
+    }
+
+    // The tracking ids (looked up to reject duplicates and recorded by invoicing) are kept in their own table, one row per distinct tracking id and day
+    private static void addDailyTrackingIds(@Nullable final RolledUpUsageModelDao dailyUsage, final Set<String> trackingIds, final List<RolledUpUsageModelDao> dailyTrackingIds) {
+        if (dailyUsage == null) {
+            return;
+        }
+        for (final String trackingId : trackingIds) {
+            dailyTrackingIds.add(new RolledUpUsageModelDao(dailyUsage.getSubscriptionId(), dailyUsage.getUnitType(), dailyUsage.getRecordDate(), null, trackingId));
+        }
+        trackingIds.clear();
+    }
+
+    private static boolean isSameDailyUsage(final RolledUpUsageModelDao dailyUsage, final RolledUpUsageModelDao usage) {
+        return dailyUsage.getSubscriptionId().equals(usage.getSubscriptionId()) &&
+               dailyUsage.getUnitType().equals(usage.getUnitType()) &&
+               dailyUsage.getRecordDate().compareTo(usage.getRecordDate()) == 0;
+    }
 }
@@ -16,9 +16,13 @@
 
 package org.killbill.billing.usage.dao;
 
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
+import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
@@ -27,6 +31,10 @@ public interface RolledUpUsageDao {
 
     void record(Iterable<RolledUpUsageModelDao> usages, InternalCallContext context);
 
+    void record(Map<InternalCallContext, List<RolledUpUsageModelDao>> usagesPerAccount);
+
+    List<RolledUpUsageModelDao> getRecordsWithTrackingIds(Collection<String> trackingIds, InternalTenantContext context);
+
     Boolean recordsWithTrackingIdExist(UUID subscriptionId, String trackingId, InternalTenantContext context);
 
     List<RolledUpUsageModelDao> getUsageForSubscription(UUID subscriptionId, LocalDate startDate, LocalDate endDate, String unitType, InternalTenantContext context);
@@ -34,4 +42,17 @@ public interface RolledUpUsageDao {
     List<RolledUpUsageModelDao> getAllUsageForSubscription(UUID subscriptionId, LocalDate startDate, LocalDate endDate, InternalTenantContext context);
 
     List<RolledUpUsageModelDao> getRawUsageForAccount(LocalDate startDate, LocalDate endDate, InternalTenantContext context);
+
+    // Total and max amount per (unit type, day) for that subscription, ordered by day and unit type, without tracking ids
+    Iterator<RolledUpUsageModelDao> getAggregatedUsageForSubscription(UUID subscriptionId, LocalDate startDate, LocalDate endDate, Collection<String> unitTypes, InternalTenantContext context);
+
+    // Distinct (unit type, day and tracking id) of that subscription, compacted days included
+    List<RolledUpUsageModelDao> getTrackingIdsForSubscription(UUID subscriptionId, LocalDate startDate, LocalDate endDate, Collection<String> unitTypes, InternalTenantContext context);
+
+    // Distinct (subscription, unit type, day and tracking id) of the compacted days
+    List<RolledUpUsageModelDao> getDailyTrackingIdsForAccount(LocalDate startDate, LocalDate endDate, InternalTenantContext context);
+
+    List<RolledUpUsageModelDao> getAccountsWithUsageToCompact(LocalDate cutoffDate, DateTime createdBefore, int limit);
+
+    int compactUsage(LocalDate cutoffDate, DateTime createdBefore, InternalCallContext context);
 }
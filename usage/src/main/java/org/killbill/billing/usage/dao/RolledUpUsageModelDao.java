@@ -34,6 +34,8 @@ public class RolledUpUsageModelDao extends EntityModelDaoBase implements EntityM
     private String unitType;
     private LocalDate recordDate;
     private Long amount;
+    // Max amount of the raw records, when the row is a daily aggregate
+    private Long maxAmount;
     private String trackingId;
 
     public RolledUpUsageModelDao() { /* For the DAO mapper */ }
@@ -89,6 +91,14 @@ public class RolledUpUsageModelDao extends EntityModelDaoBase implements EntityM
         this.amount = amount;
     }
 
+    public Long getMaxAmount() {
+        return maxAmount != null ? maxAmount : amount;
+    }
+
+    public void setMaxAmount(final Long maxAmount) {
+        this.maxAmount = maxAmount;
+    }
+
     public String getTrackingId() {
         return trackingId;
     }
@@ -106,6 +116,7 @@ public class RolledUpUsageModelDao extends EntityModelDaoBase implements EntityM
         sb.append(", unitType='").append(unitType).append('\'');
         sb.append(", recordDate=").append(recordDate);
         sb.append(", amount=").append(amount);
+        sb.append(", maxAmount=").append(maxAmount);
         sb.append(", trackingId=").append(trackingId);
         sb.append('}');
         return sb.toString();
@@ -125,6 +136,9 @@ public class RolledUpUsageModelDao extends EntityModelDaoBase implements EntityM
         if (amount != null ? !amount.equals(that.amount) : that.amount != null) {
             return false;
         }
+        if (maxAmount != null ? !maxAmount.equals(that.maxAmount) : that.maxAmount != null) {
+            return false;
+        }
         if (recordDate != null ? !recordDate.equals(that.recordDate) : that.recordDate != null) {
             return false;
         }
@@ -150,6 +164,7 @@ public class RolledUpUsageModelDao extends EntityModelDaoBase implements EntityM
         result = 31 * result + (unitType != null ? unitType.hashCode() : 0);
         result = 31 * result + (recordDate != null ? recordDate.hashCode() : 0);
         result = 31 * result + (amount != null ? amount.hashCode() : 0);
+        result = 31 * result + (maxAmount != null ? maxAmount.hashCode() : 0);
         result = 31 * result + (trackingId != null ? trackingId.hashCode() : 0);
         return result;
     }
@@ -18,7 +18,9 @@
 
 package org.killbill.billing.usage.dao;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 
@@ -27,24 +29,32 @@ import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.util.callcontext.InternalTenantContextBinder;
 import org.killbill.billing.util.entity.Entity;
 import org.killbill.billing.util.entity.dao.EntitySqlDao;
+import org.killbill.commons.jdbi.statement.SmartFetchSize;
 import org.killbill.commons.jdbi.template.KillBillSqlDaoStringTemplate;
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.killbill.commons.jdbi.binder.SmartBindBean;
 import org.skife.jdbi.v2.sqlobject.SqlBatch;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.unstable.BindIn;
 
 @KillBillSqlDaoStringTemplate
 public interface RolledUpUsageSqlDao extends EntitySqlDao<RolledUpUsageModelDao, Entity> {
 
+    // Not audited: not to be confused with EntitySqlDao#create
     @SqlBatch
-    void create(@SmartBindBean Iterable<RolledUpUsageModelDao> usages,
-                @InternalTenantContextBinder final InternalCallContext context);
+    void createUsages(@SmartBindBean Iterable<RolledUpUsageModelDao> usages,
+                      @InternalTenantContextBinder final InternalCallContext context);
 
     @SqlQuery
     Long recordsWithTrackingIdExist(@Bind("subscriptionId") final UUID subscriptionId,
                                     @Bind("trackingId") final String trackingId,
                                     @InternalTenantContextBinder final InternalTenantContext context);
 
+    @SqlQuery
+    List<RolledUpUsageModelDao> getRecordsWithTrackingIds(@BindIn("trackingIds") final Collection<String> trackingIds,
+                                                          @InternalTenantContextBinder final InternalTenantContext context);
+
     @SqlQuery
     List<RolledUpUsageModelDao> getUsageForSubscription(@Bind("subscriptionId") final UUID subscriptionId,
                                                         @Bind("startDate") final Date startDate,
@@ -62,4 +72,56 @@ public interface RolledUpUsageSqlDao extends EntitySqlDao<RolledUpUsageModelDao,
     List<RolledUpUsageModelDao> getRawUsageForAccount(@Bind("startDate") final Date startDate,
                                                       @Bind("endDate") final Date endDate,
                                                       @InternalTenantContextBinder final InternalTenantContext context);
+
+    @SqlQuery
+    @SmartFetchSize(shouldStream = true)
+    Iterator<RolledUpUsageModelDao> getAggregatedUsageForSubscription(@Bind("subscriptionId") final UUID subscriptionId,
+                                                                      @Bind("startDate") final Date startDate,
+                                                                      @Bind("endDate") final Date endDate,
+                                                                      @BindIn("unitTypes") final Collection<String> unitTypes,
+                                                                      @InternalTenantContextBinder final InternalTenantContext context);
+
+    @SqlQuery
+    List<RolledUpUsageModelDao> getTrackingIdsForSubscription(@Bind("subscriptionId") final UUID subscriptionId,
+                                                              @Bind("startDate") final Date startDate,
+                                                              @Bind("endDate") final Date endDate,
+                                                              @BindIn("unitTypes") final Collection<String> unitTypes,
+                                                              @InternalTenantContextBinder final InternalTenantContext context);
+
+    @SqlQuery
+    List<RolledUpUsageModelDao> getAccountsWithUsageToCompact(@Bind("cutoffDate") final Date cutoffDate,
+                                                              @Bind("createdBefore") final Date createdBefore,
+                                                              @Bind("limit") final int limit);
+
+    @SqlQuery
+    List<RolledUpUsageModelDao> getSubscriptionsWithUsageToCompact(@Bind("cutoffDate") final Date cutoffDate,
+                                                                   @Bind("createdBefore") final Date createdBefore,
+                                                                   @InternalTenantContextBinder final InternalTenantContext context);
+
+    @SqlQuery
+    List<RolledUpUsageModelDao> getUsageToCompact(@Bind("subscriptionId") final UUID subscriptionId,
+                                                  @Bind("cutoffDate") final Date cutoffDate,
+                                                  @Bind("createdBefore") final Date createdBefore,
+                                                  @InternalTenantContextBinder final InternalTenantContext context);
+
+    @SqlBatch
+    void createDailyUsage(@SmartBindBean Iterable<RolledUpUsageModelDao> usages,
+                          @InternalTenantContextBinder final InternalCallContext context);
+
+    @SqlBatch
+    int[] updateDailyUsage(@SmartBindBean Iterable<RolledUpUsageModelDao> usages,
+                           @InternalTenantContextBinder final InternalCallContext context);
+
+    @SqlBatch
+    void createDailyTrackingIds(@SmartBindBean Iterable<RolledUpUsageModelDao> trackingIds,
+                                @InternalTenantContextBinder final InternalCallContext context);
+
+    @SqlQuery
+    List<RolledUpUsageModelDao> getDailyTrackingIdsForAccount(@Bind("startDate") final Date startDate,
+                                                              @Bind("endDate") final Date endDate,
+                                                              @InternalTenantContextBinder final InternalTenantContext context);
+
+    @SqlUpdate
+    int deleteCompactedUsage(@BindIn("recordIds") final Collection<Long> recordIds,
+                             @InternalTenantContextBinder final InternalCallContext context);
 }
@@ -20,12 +20,15 @@ package org.killbill.billing.usage.glue;
 
 import org.killbill.billing.platform.api.KillbillConfigSource;
 import org.killbill.billing.usage.InternalUserApi;
+import org.killbill.billing.usage.RolledUpUsageCompactor;
 import org.killbill.billing.usage.api.UsageUserApi;
 import org.killbill.billing.usage.api.svcs.DefaultInternalUserApi;
 import org.killbill.billing.usage.api.user.DefaultUsageUserApi;
 import org.killbill.billing.usage.dao.DefaultRolledUpUsageDao;
 import org.killbill.billing.usage.dao.RolledUpUsageDao;
+import org.killbill.billing.util.config.definition.UsageConfig;
 import org.killbill.billing.util.glue.KillBillModule;
+import org.skife.config.ConfigurationObjectFactory;
 
 public class UsageModule extends KillBillModule {
 
@@ -33,6 +36,11 @@ public class UsageModule extends KillBillModule {
         super(configSource);
     }
 
+    protected void installConfig() {
+        final UsageConfig usageConfig = new ConfigurationObjectFactory(skifeConfigSource).build(UsageConfig.class);
+        bind(UsageConfig.class).toInstance(usageConfig);
+    }
+
     protected void installRolledUpUsageDao() {
         bind(RolledUpUsageDao.class).to(DefaultRolledUpUsageDao.class).asEagerSingleton();
     }
@@ -45,11 +53,17 @@ public class UsageModule extends KillBillModule {
         bind(InternalUserApi.class).to(DefaultInternalUserApi.class).asEagerSingleton();
     }
 
+    protected void installRolledUpUsageCompactor() {
+        bind(RolledUpUsageCompactor.class).asEagerSingleton();
+    }
+
 
     @Override
     protected void configure() {
+        installConfig();
         installRolledUpUsageDao();
         installUsageUserApi();
         installInternalUserApi();
+        installRolledUpUsageCompactor();
     }
 }
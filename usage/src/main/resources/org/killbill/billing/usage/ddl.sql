@@ -20,3 +20,42 @@ CREATE INDEX rolled_up_usage_subscription_id ON rolled_up_usage(subscription_id
 CREATE INDEX rolled_up_usage_tenant_account_record_id ON rolled_up_usage(tenant_record_id, account_record_id);
 CREATE INDEX rolled_up_usage_account_record_id ON rolled_up_usage(account_record_id);
 CREATE INDEX rolled_up_usage_tracking_id_subscription_id_tenant_record_id ON rolled_up_usage(tracking_id, subscription_id, tenant_record_id);
+CREATE INDEX rolled_up_usage_record_date ON rolled_up_usage(record_date);
+
+DROP TABLE IF EXISTS rolled_up_usage_daily;
+CREATE TABLE rolled_up_usage_daily (
+    record_id serial unique,
+    id varchar(36) NOT NULL,
+    subscription_id varchar(36) NOT NULL,
+    unit_type varchar(255) NOT NULL,
+    record_date date NOT NULL,
+    amount bigint NOT NULL,
+    max_amount bigint NOT NULL,
+    created_by varchar(50) NOT NULL,
+    created_date datetime NOT NULL,
+    account_record_id bigint /*! unsigned */ not null,
+    tenant_record_id bigint /*! unsigned */ not null default 0,
+    PRIMARY KEY(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+CREATE UNIQUE INDEX rolled_up_usage_daily_id ON rolled_up_usage_daily(id);
+CREATE UNIQUE INDEX rolled_up_usage_daily_subscription_id_unit_type_record_date ON rolled_up_usage_daily(subscription_id, unit_type, record_date, tenant_record_id);
+CREATE INDEX rolled_up_usage_daily_tenant_account_record_id ON rolled_up_usage_daily(tenant_record_id, account_record_id);
+CREATE INDEX rolled_up_usage_daily_account_record_id_record_date ON rolled_up_usage_daily(account_record_id, record_date);
+
+DROP TABLE IF EXISTS rolled_up_usage_daily_tracking_ids;
+CREATE TABLE rolled_up_usage_daily_tracking_ids (
+    record_id serial unique,
+    subscription_id varchar(36) NOT NULL,
+    unit_type varchar(255) NOT NULL,
+    record_date date NOT NULL,
+    tracking_id varchar(128) NOT NULL,
+    created_by varchar(50) NOT NULL,
+    created_date datetime NOT NULL,
+    account_record_id bigint /*! unsigned */ not null,
+    tenant_record_id bigint /*! unsigned */ not null default 0,
+    PRIMARY KEY(record_id)
+) /*! CHARACTER SET utf8 COLLATE utf8_bin */;
+CREATE INDEX rolled_up_usage_daily_tracking_ids_tracking_id_subscription_id_tenant_record_id ON rolled_up_usage_daily_tracking_ids(tracking_id, subscription_id, tenant_record_id);
+CREATE INDEX rolled_up_usage_daily_tracking_ids_subscription_id_record_date ON rolled_up_usage_daily_tracking_ids(subscription_id, record_date);
+CREATE INDEX rolled_up_usage_daily_tracking_ids_account_record_id_record_date ON rolled_up_usage_daily_tracking_ids(account_record_id, record_date);
+CREATE INDEX rolled_up_usage_daily_tracking_ids_tenant_account_record_id ON rolled_up_usage_daily_tracking_ids(tenant_record_id, account_record_id);
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.usage;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.killbill.billing.usage.dao.RolledUpUsageModelDao;
+import org.killbill.billing.util.UUIDs;
+import org.killbill.billing.util.callcontext.CallOrigin;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.killbill.billing.util.callcontext.UserType;
+import org.killbill.billing.util.config.definition.UsageConfig;
+import org.mockito.Mockito;
+import org.skife.config.TimeSpan;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestRolledUpUsageCompactor extends UsageTestSuiteWithEmbeddedDB {
+
+    @Test(groups = "slow")
+    public void testCompact() {
+        final UUID subscriptionId = UUIDs.randomUUID();
+        final String unitType = "foo";
+        final LocalDate oldRecordDate = new LocalDate(2013, 1, 1);
+        final LocalDate recentRecordDate = new LocalDate(2013, 3, 1);
+        final String trackingId1 = UUIDs.randomUUID().toString();
+        final String trackingId2 = UUIDs.randomUUID().toString();
+
+        clock.setTime(new DateTime(2013, 3, 2, 0, 0, 0, DateTimeZone.UTC));
+        internalCallContext.setCreatedDate(clock.getUTCNow());
+
+        final List<RolledUpUsageModelDao> usages = new ArrayList<RolledUpUsageModelDao>();
+        usages.add(new RolledUpUsageModelDao(subscriptionId, unitType, oldRecordDate, 10L, trackingId1));
+        usages.add(new RolledUpUsageModelDao(subscriptionId, unitType, oldRecordDate, 25L, trackingId1));
+        usages.add(new RolledUpUsageModelDao(subscriptionId, unitType, oldRecordDate, 5L, trackingId1));
+        usages.add(new RolledUpUsageModelDao(subscriptionId, unitType, oldRecordDate, 7L, trackingId2));
+        usages.add(new RolledUpUsageModelDao(subscriptionId, unitType, recentRecordDate, 3L, trackingId2));
+        rolledUpUsageDao.record(usages, internalCallContext);
+
+        final RolledUpUsageCompactor compactor = createCompactor();
+
+        // The records are too recent
+        assertEquals(compactor.compact(), 0);
+
+        // Records older than 90 days are compacted
+        clock.setTime(new DateTime(2013, 5, 1, 0, 0, 0, DateTimeZone.UTC));
+        assertEquals(compactor.compact(), 4);
+        assertEquals(compactor.compact(), 0);
+
+        // The 4 old records (2 tracking ids) are now a single daily record
+        final List<RolledUpUsageModelDao> rawUsage = rolledUpUsageDao.getRawUsageForAccount(oldRecordDate, recentRecordDate.plusDays(1), internalCallContext);
+        assertEquals(rawUsage.size(), 2);
+        final RolledUpUsageModelDao dailyUsage = findUsage(rawUsage, oldRecordDate);
+        assertEquals(dailyUsage.getAmount(), (Long) 47L);
+        assertEquals(dailyUsage.getMaxAmount(), (Long) 25L);
+        assertNull(dailyUsage.getTrackingId());
+        assertEquals(findUsage(rawUsage, recentRecordDate).getAmount(), (Long) 3L);
+        assertEquals(findUsage(rawUsage, recentRecordDate).getTrackingId(), trackingId2);
+
+        // The tracking ids are kept aside, once per day
+        assertEquals(getDailyTrackingIds(oldRecordDate), ImmutableSet.<String>of(trackingId1, trackingId2));
+        assertTrue(rolledUpUsageDao.recordsWithTrackingIdExist(subscriptionId, trackingId1, internalCallContext));
+
+        // Aggregated reads are unchanged by the compaction
+        final List<RolledUpUsageModelDao> aggregatedUsage = ImmutableList.<RolledUpUsageModelDao>copyOf(rolledUpUsageDao.getAggregatedUsageForSubscription(subscriptionId, oldRecordDate, recentRecordDate.plusDays(1), ImmutableSet.<String>of(unitType), internalCallContext));
+        assertEquals(aggregatedUsage.size(), 2);
+        assertEquals(findUsage(aggregatedUsage, oldRecordDate).getAmount(), (Long) 47L);
+
+        // Records created later on for a compacted day are compacted on the next run, into the existing daily record
+        internalCallContext.setCreatedDate(clock.getUTCNow().minusDays(1));
+        final String trackingId3 = UUIDs.randomUUID().toString();
+        rolledUpUsageDao.record(ImmutableList.<RolledUpUsageModelDao>of(new RolledUpUsageModelDao(subscriptionId, unitType, oldRecordDate, 50L, trackingId3)), internalCallContext);
+        assertEquals(compactor.compact(), 1);
+
+        final List<RolledUpUsageModelDao> oldUsage = rolledUpUsageDao.getRawUsageForAccount(oldRecordDate, oldRecordDate.plusDays(1), internalCallContext);
+        assertEquals(oldUsage.size(), 1);
+        assertEquals(oldUsage.get(0).getAmount(), (Long) 97L);
+        assertEquals(oldUsage.get(0).getMaxAmount(), (Long) 50L);
+        assertEquals(getDailyTrackingIds(oldRecordDate), ImmutableSet.<String>of(trackingId1, trackingId2, trackingId3));
+    }
+
+    private Set<String> getDailyTrackingIds(final LocalDate recordDate) {
+        final Set<String> trackingIds = new HashSet<String>();
+        for (final RolledUpUsageModelDao trackingId : rolledUpUsageDao.getDailyTrackingIdsForAccount(recordDate, recordDate.plusDays(1), internalCallContext)) {
+            trackingIds.add(trackingId.getTrackingId());
+        }
+        return trackingIds;
+    }
+
+    private RolledUpUsageModelDao findUsage(final Iterable<RolledUpUsageModelDao> usages, final LocalDate recordDate) {
+        return Iterables.find(usages, new Predicate<RolledUpUsageModelDao>() {
+            @Override
+            public boolean apply(final RolledUpUsageModelDao input) {
+                return input.getRecordDate().compareTo(recordDate) == 0;
+            }
+        });
+    }
+
+    private RolledUpUsageCompactor createCompactor() {
+        final UsageConfig usageConfig = Mockito.mock(UsageConfig.class);
+        Mockito.when(usageConfig.getCompactionDelay()).thenReturn(new TimeSpan("90d"));
+        Mockito.when(usageConfig.getCompactionNbAccounts()).thenReturn(10);
+
+        // All the records belong to the test account
+        final InternalCallContextFactory compactorContextFactory = Mockito.mock(InternalCallContextFactory.class);
+        Mockito.when(compactorContextFactory.createInternalCallContext(Mockito.<Long>any(), Mockito.<Long>any(), Mockito.anyString(), Mockito.<CallOrigin>any(), Mockito.<UserType>any(), Mockito.<UUID>any()))
+               .thenReturn(internalCallContext);
+
+        return new RolledUpUsageCompactor(rolledUpUsageDao, compactorContextFactory, usageConfig, clock);
+    }
+}
@@ -32,6 +32,8 @@ public class UsageTestSuiteWithEmbeddedDB extends GuicyKillbillTestSuiteWithEmbe
 
     @Inject
     protected RolledUpUsageDao rolledUpUsageDao;
+    @Inject
+    protected InternalUserApi internalUserApi;
 
     @BeforeClass(groups = "slow")
     protected void beforeClass() throws Exception {
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.usage.api.svcs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.joda.time.LocalDate;
+import org.killbill.billing.ErrorCode;
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.entitlement.EntitlementInternalApi;
+import org.killbill.billing.entitlement.api.Entitlement;
+import org.killbill.billing.entitlement.api.EntitlementApiException;
+import org.killbill.billing.usage.InternalUserApi;
+import org.killbill.billing.usage.RawUsage;
+import org.killbill.billing.usage.UsageTestSuiteWithEmbeddedDB;
+import org.killbill.billing.usage.api.SubscriptionUsageRecord;
+import org.killbill.billing.usage.api.UnitUsageRecord;
+import org.killbill.billing.usage.api.UsageApiException;
+import org.killbill.billing.usage.api.UsageRecord;
+import org.killbill.billing.usage.dao.RolledUpUsageModelDao;
+import org.killbill.billing.util.UUIDs;
+import org.killbill.billing.util.callcontext.CallContext;
+import org.killbill.billing.util.callcontext.InternalCallContextFactory;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestDefaultInternalUserApi extends UsageTestSuiteWithEmbeddedDB {
+
+    @Test(groups = "slow")
+    public void testAggregatedRawUsageWithUniqueTrackingIds() {
+        final UUID subscriptionId = UUIDs.randomUUID();
+        final String consumableUnitType = "foo";
+        final String capacityUnitType = "bar";
+        final LocalDate startDate = new LocalDate(2013, 1, 1);
+        final LocalDate endDate = new LocalDate(2013, 2, 1);
+
+        // One tracking id per record
+        final List<RolledUpUsageModelDao> usages = new ArrayList<RolledUpUsageModelDao>();
+        final List<String> trackingIds = new ArrayList<String>();
+        for (int i = 1; i <= 10; i++) {
+            final String trackingId = UUIDs.randomUUID().toString();
+            trackingIds.add(trackingId);
+            usages.add(new RolledUpUsageModelDao(subscriptionId, i % 2 == 0 ? consumableUnitType : capacityUnitType, startDate, (long) i, trackingId));
+        }
+        usages.add(new RolledUpUsageModelDao(subscriptionId, consumableUnitType, startDate.plusDays(1), 100L, UUIDs.randomUUID().toString()));
+        rolledUpUsageDao.record(usages, internalCallContext);
+
+        final List<RawUsage> rawUsage = ImmutableList.<RawUsage>copyOf(internalUserApi.getAggregatedRawUsageForSubscription(subscriptionId, startDate, endDate, ImmutableSet.<String>of(consumableUnitType, capacityUnitType), internalCallContext));
+        assertEquals(rawUsage.size(), 3);
+
+        assertEquals(rawUsage.get(0).getSubscriptionId(), subscriptionId);
+        assertEquals(rawUsage.get(0).getDate().compareTo(startDate), 0);
+        assertEquals(rawUsage.get(0).getUnitType(), capacityUnitType);
+        assertEquals(rawUsage.get(0).getAmount(), (Long) 25L);
+        assertEquals(rawUsage.get(0).getMaxAmount(), (Long) 9L);
+        assertTrue(rawUsage.get(0).getTrackingIds().isEmpty());
+
+        assertEquals(rawUsage.get(1).getDate().compareTo(startDate), 0);
+        assertEquals(rawUsage.get(1).getUnitType(), consumableUnitType);
+        assertEquals(rawUsage.get(1).getAmount(), (Long) 30L);
+        assertEquals(rawUsage.get(1).getMaxAmount(), (Long) 10L);
+
+        assertEquals(rawUsage.get(2).getDate().compareTo(startDate.plusDays(1)), 0);
+        assertEquals(rawUsage.get(2).getAmount(), (Long) 100L);
+
+        assertFalse(internalUserApi.getAggregatedRawUsageForSubscription(subscriptionId, startDate, endDate, ImmutableSet.<String>of(), internalCallContext).hasNext());
+
+        // The tracking ids are looked up separately, for the first day only here
+        final List<RawUsage> trackingIdsUsage = internalUserApi.getTrackingIdsForSubscription(subscriptionId, startDate, startDate.plusDays(1), ImmutableSet.<String>of(consumableUnitType, capacityUnitType), internalCallContext);
+        assertEquals(trackingIdsUsage.size(), 2);
+        for (final RawUsage usage : trackingIdsUsage) {
+            if (capacityUnitType.equals(usage.getUnitType())) {
+                assertEquals(usage.getTrackingIds(), ImmutableSet.<String>of(trackingIds.get(0), trackingIds.get(2), trackingIds.get(4), trackingIds.get(6), trackingIds.get(8)));
+            } else {
+                assertEquals(usage.getTrackingIds(), ImmutableSet.<String>of(trackingIds.get(1), trackingIds.get(3), trackingIds.get(5), trackingIds.get(7), trackingIds.get(9)));
+            }
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testRecordBulkUsageWithDuplicateTrackingIds() throws Exception {
+        // Resolve all the subscriptions to the test account
+        final InternalCallContextFactory subscriptionContextFactory = Mockito.mock(InternalCallContextFactory.class);
+        Mockito.when(subscriptionContextFactory.createInternalCallContext(Mockito.<UUID>any(), Mockito.eq(ObjectType.SUBSCRIPTION), Mockito.<CallContext>any())).thenReturn(internalCallContext);
+        Mockito.when(subscriptionContextFactory.createInternalTenantContextWithoutAccountRecordId(Mockito.<CallContext>any())).thenReturn(internalCallContext);
+        final InternalUserApi bulkUserApi = new DefaultInternalUserApi(rolledUpUsageDao, createEntitlementInternalApi(null), subscriptionContextFactory);
+
+        final UUID subscriptionId1 = UUIDs.randomUUID();
+        final UUID subscriptionId2 = UUIDs.randomUUID();
+        final LocalDate recordDate = new LocalDate(2013, 1, 1);
+        final String trackingId1 = UUIDs.randomUUID().toString();
+        final String trackingId2 = UUIDs.randomUUID().toString();
+
+        // Same tracking id twice for a subscription within the payload
+        try {
+            bulkUserApi.recordRolledUpUsage(ImmutableList.<SubscriptionUsageRecord>of(createRecord(subscriptionId1, trackingId1, recordDate, 1L),
+                                                                                      createRecord(subscriptionId1, trackingId1, recordDate.plusDays(1), 2L)),
+                                            callContext);
+            fail();
+        } catch (final UsageApiException e) {
+            assertEquals(e.getCode(), ErrorCode.USAGE_RECORD_TRACKING_ID_ALREADY_EXISTS.getCode());
+        }
+        assertEquals(rolledUpUsageDao.getRecordsWithTrackingIds(ImmutableSet.<String>of(trackingId1), internalCallContext).size(), 0);
+
+        // The same tracking id can be used by different subscriptions
+        bulkUserApi.recordRolledUpUsage(ImmutableList.<SubscriptionUsageRecord>of(createRecord(subscriptionId1, trackingId1, recordDate, 1L),
+                                                                                  createRecord(subscriptionId2, trackingId1, recordDate, 2L)),
+                                        callContext);
+        assertEquals(rolledUpUsageDao.getRecordsWithTrackingIds(ImmutableSet.<String>of(trackingId1), internalCallContext).size(), 2);
+
+        // Tracking id already recorded: nothing from the payload is written
+        try {
+            bulkUserApi.recordRolledUpUsage(ImmutableList.<SubscriptionUsageRecord>of(createRecord(subscriptionId2, trackingId2, recordDate, 3L),
+                                                                                      createRecord(subscriptionId1, trackingId1, recordDate.plusDays(1), 4L)),
+                                            callContext);
+            fail();
+        } catch (final UsageApiException e) {
+            assertEquals(e.getCode(), ErrorCode.USAGE_RECORD_TRACKING_ID_ALREADY_EXISTS.getCode());
+        }
+        assertEquals(rolledUpUsageDao.getRecordsWithTrackingIds(ImmutableSet.<String>of(trackingId2), internalCallContext).size(), 0);
+        assertEquals(rolledUpUsageDao.getRawUsageForAccount(recordDate, recordDate.plusDays(2), internalCallContext).size(), 2);
+    }
+
+    @Test(groups = "slow")
+    public void testRecordBulkUsageForInactiveSubscription() throws Exception {
+        final InternalCallContextFactory subscriptionContextFactory = Mockito.mock(InternalCallContextFactory.class);
+        Mockito.when(subscriptionContextFactory.createInternalCallContext(Mockito.<UUID>any(), Mockito.eq(ObjectType.SUBSCRIPTION), Mockito.<CallContext>any())).thenReturn(internalCallContext);
+        Mockito.when(subscriptionContextFactory.createInternalTenantContextWithoutAccountRecordId(Mockito.<CallContext>any())).thenReturn(internalCallContext);
+        final LocalDate effectiveEndDate = new LocalDate(2013, 1, 1);
+        final InternalUserApi bulkUserApi = new DefaultInternalUserApi(rolledUpUsageDao, createEntitlementInternalApi(effectiveEndDate), subscriptionContextFactory);
+
+        final UUID subscriptionId = UUIDs.randomUUID();
+        final String trackingId1 = UUIDs.randomUUID().toString();
+        final String trackingId2 = UUIDs.randomUUID().toString();
+
+        // Usage recorded after the subscription ended: nothing from the payload is written
+        try {
+            bulkUserApi.recordRolledUpUsage(ImmutableList.<SubscriptionUsageRecord>of(createRecord(subscriptionId, trackingId1, effectiveEndDate, 1L),
+                                                                                      createRecord(subscriptionId, trackingId2, effectiveEndDate.plusDays(1), 2L)),
+                                            callContext);
+            fail();
+        } catch (final UsageApiException e) {
+            assertEquals(e.getCode(), ErrorCode.SUB_INVALID_SUBSCRIPTION_ID.getCode());
+        }
+        assertEquals(rolledUpUsageDao.getRecordsWithTrackingIds(ImmutableSet.<String>of(trackingId1, trackingId2), internalCallContext).size(), 0);
+
+        bulkUserApi.recordRolledUpUsage(ImmutableList.<SubscriptionUsageRecord>of(createRecord(subscriptionId, trackingId1, effectiveEndDate, 1L)), callContext);
+        assertEquals(rolledUpUsageDao.getRecordsWithTrackingIds(ImmutableSet.<String>of(trackingId1, trackingId2), internalCallContext).size(), 1);
+    }
+
+    // Entitlements of all the requested subscriptions, ending on the specified date
+    private EntitlementInternalApi createEntitlementInternalApi(@Nullable final LocalDate effectiveEndDate) throws EntitlementApiException {
+        final EntitlementInternalApi entitlementInternalApi = Mockito.mock(EntitlementInternalApi.class);
+        Mockito.when(entitlementInternalApi.getEntitlementsForIds(Mockito.<Iterable<UUID>>any(), Mockito.<InternalTenantContext>any())).thenAnswer(new Answer<Map<UUID, Entitlement>>() {
+            @Override
+            public Map<UUID, Entitlement> answer(final InvocationOnMock invocation) throws Throwable {
+                final Map<UUID, Entitlement> entitlements = new HashMap<UUID, Entitlement>();
+                for (final UUID entitlementId : (Iterable<UUID>) invocation.getArguments()[0]) {
+                    final Entitlement entitlement = Mockito.mock(Entitlement.class);
+                    Mockito.when(entitlement.getId()).thenReturn(entitlementId);
+                    Mockito.when(entitlement.getEffectiveEndDate()).thenReturn(effectiveEndDate);
+                    entitlements.put(entitlementId, entitlement);
+                }
+                return entitlements;
+            }
+        });
+        return entitlementInternalApi;
+    }
+
+    private SubscriptionUsageRecord createRecord(final UUID subscriptionId, final String trackingId, final LocalDate recordDate, final Long amount) {
+        final List<UsageRecord> usageRecords = ImmutableList.<UsageRecord>of(new UsageRecord(recordDate, amount));
+        return new SubscriptionUsageRecord(subscriptionId, trackingId, ImmutableList.<UnitUsageRecord>of(new UnitUsageRecord("foo", usageRecords)));
+    }
+}
@@ -21,13 +21,21 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
+import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
+import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.usage.UsageTestSuiteWithEmbeddedDB;
 import org.killbill.billing.util.UUIDs;
 import org.skife.jdbi.v2.exceptions.UnableToExecuteStatementException;
 import org.testng.annotations.Test;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 public class TestDefaultRolledUpUsageDao extends UsageTestSuiteWithEmbeddedDB {
@@ -170,4 +178,154 @@ public class TestDefaultRolledUpUsageDao extends UsageTestSuiteWithEmbeddedDB {
         assertEquals(rolledUpUsageDao.recordsWithTrackingIdExist(subscriptionId, trackingId, internalCallContext),
                      Boolean.TRUE);
     }
-}
\ No newline at end of file
+
+    @Test(groups = "slow")
+    public void testAggregatedUsageForAccount() {
+        final UUID subscriptionId = UUIDs.randomUUID();
+        final String consumableUnitType = "foo";
+        final String capacityUnitType = "bar";
+        final String ignoredUnitType = "baz";
+        final LocalDate startDate = new LocalDate(2013, 1, 1);
+        final LocalDate endDate = new LocalDate(2013, 2, 1);
+        final String trackingId1 = UUIDs.randomUUID().toString();
+        final String trackingId2 = UUIDs.randomUUID().toString();
+
+        final List<RolledUpUsageModelDao> usages = new ArrayList<RolledUpUsageModelDao>();
+        usages.add(new RolledUpUsageModelDao(subscriptionId, consumableUnitType, startDate, 10L, trackingId1));
+        usages.add(new RolledUpUsageModelDao(subscriptionId, consumableUnitType, startDate, 5L, trackingId1));
+        usages.add(new RolledUpUsageModelDao(subscriptionId, consumableUnitType, startDate.plusDays(1), 7L, trackingId1));
+        usages.add(new RolledUpUsageModelDao(subscriptionId, capacityUnitType, startDate, 3L, trackingId2));
+        usages.add(new RolledUpUsageModelDao(subscriptionId, capacityUnitType, startDate, 8L, trackingId2));
+        usages.add(new RolledUpUsageModelDao(subscriptionId, ignoredUnitType, startDate, 1L, trackingId2));
+        // Outside of the date range
+        usages.add(new RolledUpUsageModelDao(subscriptionId, consumableUnitType, endDate, 2L, trackingId1));
+        rolledUpUsageDao.record(usages, internalCallContext);
+
+        // One row per day and unit type
+        final List<RolledUpUsageModelDao> aggregatedUsage = ImmutableList.<RolledUpUsageModelDao>copyOf(rolledUpUsageDao.getAggregatedUsageForSubscription(subscriptionId, startDate, endDate, ImmutableSet.<String>of(consumableUnitType, capacityUnitType), internalCallContext));
+        assertEquals(aggregatedUsage.size(), 3);
+        assertEquals(aggregatedUsage.get(0).getSubscriptionId(), subscriptionId);
+        assertEquals(aggregatedUsage.get(0).getUnitType(), capacityUnitType);
+        assertEquals(aggregatedUsage.get(0).getRecordDate().compareTo(startDate), 0);
+        assertEquals(aggregatedUsage.get(0).getAmount(), (Long) 11L);
+        assertEquals(aggregatedUsage.get(0).getMaxAmount(), (Long) 8L);
+        assertNull(aggregatedUsage.get(0).getTrackingId());
+        assertEquals(aggregatedUsage.get(1).getUnitType(), consumableUnitType);
+        assertEquals(aggregatedUsage.get(1).getRecordDate().compareTo(startDate), 0);
+        assertEquals(aggregatedUsage.get(1).getAmount(), (Long) 15L);
+        assertEquals(aggregatedUsage.get(1).getMaxAmount(), (Long) 10L);
+        assertEquals(aggregatedUsage.get(2).getRecordDate().compareTo(startDate.plusDays(1)), 0);
+        assertEquals(aggregatedUsage.get(2).getAmount(), (Long) 7L);
+
+        // One row per day, unit type and tracking id
+        assertEquals(rolledUpUsageDao.getTrackingIdsForSubscription(subscriptionId, startDate, endDate, ImmutableSet.<String>of(consumableUnitType, capacityUnitType), internalCallContext).size(), 3);
+    }
+
+    @Test(groups = "slow")
+    public void testRecordsWithTrackingIds() {
+        final UUID subscriptionId1 = UUIDs.randomUUID();
+        final UUID subscriptionId2 = UUIDs.randomUUID();
+        final String unitType = "foo";
+        final LocalDate recordDate = new LocalDate(2013, 1, 1);
+        final String trackingId1 = UUIDs.randomUUID().toString();
+        final String trackingId2 = UUIDs.randomUUID().toString();
+
+        final List<RolledUpUsageModelDao> usages = new ArrayList<RolledUpUsageModelDao>();
+        usages.add(new RolledUpUsageModelDao(subscriptionId1, unitType, recordDate, 10L, trackingId1));
+        usages.add(new RolledUpUsageModelDao(subscriptionId1, unitType, recordDate.plusDays(1), 5L, trackingId1));
+        usages.add(new RolledUpUsageModelDao(subscriptionId2, unitType, recordDate, 13L, trackingId2));
+        rolledUpUsageDao.record(ImmutableMap.<InternalCallContext, List<RolledUpUsageModelDao>>of(internalCallContext, usages));
+
+        final List<RolledUpUsageModelDao> result = rolledUpUsageDao.getRecordsWithTrackingIds(ImmutableSet.<String>of(trackingId1, UUIDs.randomUUID().toString()), internalCallContext);
+        assertEquals(result.size(), 1);
+        assertEquals(result.get(0).getSubscriptionId(), subscriptionId1);
+        assertEquals(result.get(0).getTrackingId(), trackingId1);
+
+        assertEquals(rolledUpUsageDao.getRawUsageForAccount(recordDate, recordDate.plusDays(2), internalCallContext).size(), 3);
+    }
+
+    @Test(groups = "slow")
+    public void testCompactUsage() {
+        final UUID subscriptionId = UUIDs.randomUUID();
+        final String consumableUnitType = "foo";
+        final String capacityUnitType = "bar";
+        final LocalDate startDate = new LocalDate(2013, 1, 1);
+        final LocalDate cutoffDate = startDate.plusDays(2);
+        final String trackingId1 = UUIDs.randomUUID().toString();
+        final String trackingId2 = UUIDs.randomUUID().toString();
+
+        final List<RolledUpUsageModelDao> usages = new ArrayList<RolledUpUsageModelDao>();
+        usages.add(new RolledUpUsageModelDao(subscriptionId, consumableUnitType, startDate, 10L, trackingId1));
+        usages.add(new RolledUpUsageModelDao(subscriptionId, consumableUnitType, startDate, 5L, trackingId1));
+        usages.add(new RolledUpUsageModelDao(subscriptionId, capacityUnitType, startDate, 3L, trackingId2));
+        usages.add(new RolledUpUsageModelDao(subscriptionId, capacityUnitType, startDate, 8L, trackingId2));
+        // Not old enough to be compacted
+        usages.add(new RolledUpUsageModelDao(subscriptionId, consumableUnitType, cutoffDate, 7L, trackingId1));
+        rolledUpUsageDao.record(usages, internalCallContext);
+
+        final DateTime createdBefore = internalCallContext.getCreatedDate().plusSeconds(1);
+        final List<RolledUpUsageModelDao> accounts = rolledUpUsageDao.getAccountsWithUsageToCompact(cutoffDate, createdBefore, 10);
+        assertEquals(accounts.size(), 1);
+        assertEquals(accounts.get(0).getAccountRecordId(), internalCallContext.getAccountRecordId());
+        assertEquals(accounts.get(0).getTenantRecordId(), internalCallContext.getTenantRecordId());
+
+        // Records created after the createdBefore date are left alone
+        assertEquals(rolledUpUsageDao.compactUsage(cutoffDate, internalCallContext.getCreatedDate().minusSeconds(1), internalCallContext), 0);
+        assertEquals(rolledUpUsageDao.compactUsage(cutoffDate, createdBefore, internalCallContext), 4);
+        assertEquals(rolledUpUsageDao.getAccountsWithUsageToCompact(cutoffDate, createdBefore, 10).size(), 0);
+
+        // Reads go through both the raw and the compacted records
+        assertEquals(rolledUpUsageDao.getRawUsageForAccount(startDate, cutoffDate.plusDays(1), internalCallContext).size(), 3);
+        final List<RolledUpUsageModelDao> capacityRecords = rolledUpUsageDao.getUsageForSubscription(subscriptionId, startDate, cutoffDate, capacityUnitType, internalCallContext);
+        assertEquals(capacityRecords.size(), 1);
+        assertEquals(capacityRecords.get(0).getAmount(), (Long) 11L);
+        assertEquals(capacityRecords.get(0).getMaxAmount(), (Long) 8L);
+        assertNull(capacityRecords.get(0).getTrackingId());
+
+        final List<RolledUpUsageModelDao> aggregatedUsage = ImmutableList.<RolledUpUsageModelDao>copyOf(rolledUpUsageDao.getAggregatedUsageForSubscription(subscriptionId, startDate, cutoffDate.plusDays(1), ImmutableSet.<String>of(consumableUnitType, capacityUnitType), internalCallContext));
+        assertEquals(aggregatedUsage.size(), 3);
+        assertEquals(aggregatedUsage.get(0).getUnitType(), capacityUnitType);
+        assertEquals(aggregatedUsage.get(0).getAmount(), (Long) 11L);
+        assertEquals(aggregatedUsage.get(0).getMaxAmount(), (Long) 8L);
+        assertEquals(aggregatedUsage.get(1).getUnitType(), consumableUnitType);
+        assertEquals(aggregatedUsage.get(1).getAmount(), (Long) 15L);
+        assertEquals(aggregatedUsage.get(2).getAmount(), (Long) 7L);
+
+        // Tracking ids are preserved, once per day
+        assertTrue(rolledUpUsageDao.recordsWithTrackingIdExist(subscriptionId, trackingId2, internalCallContext));
+        assertEquals(rolledUpUsageDao.getRecordsWithTrackingIds(ImmutableSet.<String>of(trackingId1, trackingId2), internalCallContext).size(), 2);
+        final List<RolledUpUsageModelDao> dailyTrackingIds = rolledUpUsageDao.getDailyTrackingIdsForAccount(startDate, cutoffDate, internalCallContext);
+        assertEquals(dailyTrackingIds.size(), 2);
+    }
+
+    @Test(groups = "slow")
+    public void testCompactUsageOfSeveralSubscriptions() {
+        final UUID subscriptionId1 = UUIDs.randomUUID();
+        final UUID subscriptionId2 = UUIDs.randomUUID();
+        final String unitType = "foo";
+        final LocalDate startDate = new LocalDate(2013, 1, 1);
+        final LocalDate cutoffDate = startDate.plusDays(2);
+        final String trackingId = UUIDs.randomUUID().toString();
+
+        // Same unit type, day and tracking id for both subscriptions
+        final List<RolledUpUsageModelDao> usages = new ArrayList<RolledUpUsageModelDao>();
+        usages.add(new RolledUpUsageModelDao(subscriptionId1, unitType, startDate, 10L, trackingId));
+        usages.add(new RolledUpUsageModelDao(subscriptionId2, unitType, startDate, 4L, trackingId));
+        usages.add(new RolledUpUsageModelDao(subscriptionId1, unitType, startDate, 5L, trackingId));
+        usages.add(new RolledUpUsageModelDao(subscriptionId2, unitType, startDate, 6L, trackingId));
+        rolledUpUsageDao.record(usages, internalCallContext);
+
+        final DateTime createdBefore = internalCallContext.getCreatedDate().plusSeconds(1);
+        assertEquals(rolledUpUsageDao.compactUsage(cutoffDate, createdBefore, internalCallContext), 4);
+        assertEquals(rolledUpUsageDao.compactUsage(cutoffDate, createdBefore, internalCallContext), 0);
+
+        final List<RolledUpUsageModelDao> records1 = rolledUpUsageDao.getUsageForSubscription(subscriptionId1, startDate, cutoffDate, unitType, internalCallContext);
+        assertEquals(records1.size(), 1);
+        assertEquals(records1.get(0).getAmount(), (Long) 15L);
+        assertEquals(records1.get(0).getMaxAmount(), (Long) 10L);
+        final List<RolledUpUsageModelDao> records2 = rolledUpUsageDao.getUsageForSubscription(subscriptionId2, startDate, cutoffDate, unitType, internalCallContext);
+        assertEquals(records2.size(), 1);
+        assertEquals(records2.get(0).getAmount(), (Long) 10L);
+        assertEquals(records2.get(0).getMaxAmount(), (Long) 6L);
+    }
+}
@@ -18,6 +18,7 @@
 
 package org.killbill.billing.usage.glue;
 
+import org.killbill.billing.mock.glue.MockEntitlementModule;
 import org.killbill.billing.mock.glue.MockTenantModule;
 import org.killbill.billing.platform.api.KillbillConfigSource;
 import org.killbill.billing.usage.api.UsageUserApi;
@@ -32,6 +33,7 @@ public class TestUsageModule extends UsageModule {
     @Override
     protected void configure() {
         super.configure();
+        install(new MockEntitlementModule(configSource));
     }
 
     protected void installUsageUserApi() {
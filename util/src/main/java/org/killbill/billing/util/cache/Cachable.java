@@ -80,7 +80,7 @@ public @interface Cachable {
         TENANT_CATALOG(TENANT_CATALOG_CACHE_NAME, Long.class, Catalog.class, false),
 
         /* Tenant payment state machine config cache (String -> SerializableStateMachineConfig) */
-        TENANT_PAYMENT_STATE_MACHINE_CONFIG(TENANT_PAYMENT_STATE_MACHINE_CONFIG_CACHE_NAME, String.class, Object.class, false),
+        TENANT_PAYMENT_STATE_MACHINE_CONFIG(TENANT_PAYMENT_STATE_MACHINE_CONFIG_CACHE_NAME, String.class, Object.class, false, true),
 
         /* Tenant overdue config cache (String -> DefaultOverdueConfig) */
         TENANT_OVERDUE_CONFIG(TENANT_OVERDUE_CONFIG_CACHE_NAME, Long.class, Object.class, false),
@@ -89,7 +89,7 @@ public @interface Cachable {
         TENANT_CONFIG(TENANT_CONFIG_CACHE_NAME, Long.class, PerTenantConfig.class, false),
 
         /* Tenant config cache */
-        TENANT_KV(TENANT_KV_CACHE_NAME, String.class, String.class, false),
+        TENANT_KV(TENANT_KV_CACHE_NAME, String.class, String.class, false, true),
 
         /* Tenant cache */
         TENANT(TENANT_CACHE_NAME, String.class, Tenant.class, false),
@@ -113,12 +113,19 @@ public @interface Cachable {
         private final Class keyType;
         private final Class valueType;
         private final boolean isKeyPrefixedWithTableName;
+        // Keys are of the form 'key::tenantRecordId'
+        private final boolean isKeySuffixedWithTenantRecordId;
 
         CacheType(final String cacheName, final Class keyType, final Class valueType, final boolean isKeyPrefixedWithTableName) {
+            this(cacheName, keyType, valueType, isKeyPrefixedWithTableName, false);
+        }
+
+        CacheType(final String cacheName, final Class keyType, final Class valueType, final boolean isKeyPrefixedWithTableName, final boolean isKeySuffixedWithTenantRecordId) {
             this.cacheName = cacheName;
             this.keyType = keyType;
             this.valueType = valueType;
             this.isKeyPrefixedWithTableName = isKeyPrefixedWithTableName;
+            this.isKeySuffixedWithTenantRecordId = isKeySuffixedWithTenantRecordId;
         }
 
         public String getCacheName() {
@@ -135,6 +142,8 @@ public @interface Cachable {
 
         public boolean isKeyPrefixedWithTableName() { return isKeyPrefixedWithTableName; }
 
+        public boolean isKeySuffixedWithTenantRecordId() { return isKeySuffixedWithTenantRecordId; }
+
         public static CacheType findByName(final String input) {
             for (final CacheType cacheType : CacheType.values()) {
                 if (cacheType.cacheName.equals(input)) {
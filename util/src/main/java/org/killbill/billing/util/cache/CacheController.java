@@ -16,7 +16,9 @@
 
 package org.killbill.billing.util.cache;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.killbill.billing.util.cache.Cachable.CacheType;
 
@@ -30,10 +32,16 @@ public interface CacheController<K, V> {
 
     V get(K key, CacheLoaderArgument objectType);
 
+    // Bulk lookup: returns the cached values only (missing keys aren't loaded)
+    Map<K, V> getAll(Collection<K> keys);
+
     boolean remove(K key);
 
     void remove(Function<K, Boolean> keyMatcher);
 
+    // Only supported for caches with keys suffixed with the tenant record id (see CacheType#isKeySuffixedWithTenantRecordId)
+    void removeByTenantRecordId(Long tenantRecordId);
+
     void putIfAbsent(final K key, V value);
 
     int size();
@@ -41,4 +49,7 @@ public interface CacheController<K, V> {
     void removeAll();
 
     CacheType getCacheType();
+
+    // For monitoring purposes only (e.g. the size might be approximate)
+    CacheStats getStats();
 }
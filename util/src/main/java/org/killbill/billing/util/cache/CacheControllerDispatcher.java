@@ -17,6 +17,8 @@
 package org.killbill.billing.util.cache;
 
 import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 
 import javax.inject.Inject;
@@ -48,6 +50,14 @@ public class CacheControllerDispatcher {
         return cast(caches.get(cacheType));
     }
 
+    public List<CacheStats> getStats() {
+        final List<CacheStats> stats = new LinkedList<CacheStats>();
+        for (final CacheController<Object, Object> cacheController : caches.values()) {
+            stats.add(cacheController.getStats());
+        }
+        return stats;
+    }
+
     public void clearAll() {
         for (final CacheController<Object, Object> cacheController : caches.values()) {
             cacheController.removeAll();
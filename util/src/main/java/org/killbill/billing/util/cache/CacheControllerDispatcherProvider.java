@@ -28,9 +28,15 @@ import javax.inject.Inject;
 import javax.inject.Provider;
 
 import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.config.definition.IdMappingCacheConfig;
+import org.killbill.billing.util.config.definition.RedisCacheConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Preconditions;
 
 // Build the abstraction layer between JCache and Kill Bill
@@ -38,14 +44,25 @@ public class CacheControllerDispatcherProvider implements Provider<CacheControll
 
     private static final Logger logger = LoggerFactory.getLogger(CacheControllerDispatcherProvider.class);
 
+    private static final String PROP_METRIC_REG_CACHE_CONTROLLER = "killbill.cache";
+
     private final CacheManager cacheManager;
     private final Set<BaseCacheLoader> cacheLoaders;
+    private final MetricRegistry metricRegistry;
+    private final RedisCacheConfig redisCacheConfig;
+    private final IdMappingCacheConfig idMappingCacheConfig;
 
     @Inject
     public CacheControllerDispatcherProvider(final CacheManager cacheManager,
-                                             final Set<BaseCacheLoader> cacheLoaders) {
+                                             final Set<BaseCacheLoader> cacheLoaders,
+                                             final MetricRegistry metricRegistry,
+                                             final RedisCacheConfig redisCacheConfig,
+                                             final IdMappingCacheConfig idMappingCacheConfig) {
         this.cacheManager = cacheManager;
         this.cacheLoaders = cacheLoaders;
+        this.metricRegistry = metricRegistry;
+        this.redisCacheConfig = redisCacheConfig;
+        this.idMappingCacheConfig = idMappingCacheConfig;
     }
 
     @Override
@@ -54,6 +71,15 @@ public class CacheControllerDispatcherProvider implements Provider<CacheControll
         for (final BaseCacheLoader cacheLoader : cacheLoaders) {
             final CacheType cacheType = cacheLoader.getCacheType();
 
+            if (idMappingCacheConfig.isIdMappingCacheEnabled() && IdMappingCacheController.isSupported(cacheType)) {
+                final IdMappingCacheController<Object> idMappingCacheController = new IdMappingCacheController<Object>(cacheLoader,
+                                                                                                                      idMappingCacheConfig.getIdMappingCacheMaxEntries(),
+                                                                                                                      idMappingCacheConfig.isIdMappingCacheOffHeap());
+                registerMetrics(cacheType, idMappingCacheController);
+                cacheControllers.put(cacheType, (CacheController) idMappingCacheController);
+                continue;
+            }
+
             final Cache cache = cacheManager.getCache(cacheType.getCacheName(), cacheType.getKeyType(), cacheType.getValueType());
             if (cache == null) {
                 logger.warn("Cache for cacheName='{}' not configured", cacheLoader.getCacheType().getCacheName());
@@ -61,10 +87,105 @@ public class CacheControllerDispatcherProvider implements Provider<CacheControll
             }
             Preconditions.checkState(!cache.isClosed(), "Cache '%s' should not be closed", cacheType.getCacheName());
 
-            final CacheController<Object, Object> killBillCacheController = new KillBillCacheController<Object, Object>(cache, cacheLoader);
+            final NearCache<Object, Object> nearCache = isNearCacheEnabled(cacheType) ? new NearCache<Object, Object>(redisCacheConfig.getNearCacheMaxEntries(), redisCacheConfig.getNearCacheTimeToLive().getMillis()) : null;
+            final KillBillCacheController<Object, Object> killBillCacheController = new KillBillCacheController<Object, Object>(cache, cacheLoader, !redisCacheConfig.isRedisCachingEnabled(), nearCache);
+            registerMetrics(cacheType, killBillCacheController);
             cacheControllers.put(cacheType, killBillCacheController);
         }
 
         return new CacheControllerDispatcher(cacheControllers);
     }
+
+    // Local copies are only useful in front of a distributed cache
+    private boolean isNearCacheEnabled(final CacheType cacheType) {
+        return redisCacheConfig.isRedisCachingEnabled() && redisCacheConfig.getNearCacheNames().contains(cacheType.getCacheName());
+    }
+
+    private void registerMetrics(final CacheType cacheType, final KillBillCacheController<Object, Object> killBillCacheController) {
+        final String prefix = MetricRegistry.name(PROP_METRIC_REG_CACHE_CONTROLLER, cacheType.getCacheName());
+
+        // Make sure we start from a clean state - this is mainly useful for tests
+        metricRegistry.removeMatching(new MetricFilter() {
+            @Override
+            public boolean matches(final String name, final Metric metric) {
+                return name != null && name.startsWith(prefix + ".");
+            }
+        });
+
+        metricRegistry.register(MetricRegistry.name(prefix, "hits"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return killBillCacheController.getNbHits();
+            }
+        });
+        metricRegistry.register(MetricRegistry.name(prefix, "misses"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return killBillCacheController.getNbMisses();
+            }
+        });
+        metricRegistry.register(MetricRegistry.name(prefix, "coalescedLoads"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return killBillCacheController.getNbCoalescedLoads();
+            }
+        });
+        metricRegistry.register(MetricRegistry.name(prefix, "nearCacheHits"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return killBillCacheController.getNbNearCacheHits();
+            }
+        });
+        metricRegistry.register(MetricRegistry.name(prefix, "evictions"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return killBillCacheController.getNbEvictions();
+            }
+        });
+        metricRegistry.register(MetricRegistry.name(prefix, "size"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return killBillCacheController.getApproximateSize();
+            }
+        });
+        metricRegistry.register(MetricRegistry.name(prefix, "loads"), killBillCacheController.getLoadTimer());
+    }
+
+    private void registerMetrics(final CacheType cacheType, final IdMappingCacheController<Object> idMappingCacheController) {
+        final String prefix = MetricRegistry.name(PROP_METRIC_REG_CACHE_CONTROLLER, cacheType.getCacheName());
+
+        // Make sure we start from a clean state - this is mainly useful for tests
+        metricRegistry.removeMatching(new MetricFilter() {
+            @Override
+            public boolean matches(final String name, final Metric metric) {
+                return name != null && name.startsWith(prefix + ".");
+            }
+        });
+
+        metricRegistry.register(MetricRegistry.name(prefix, "hits"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return idMappingCacheController.getNbHits();
+            }
+        });
+        metricRegistry.register(MetricRegistry.name(prefix, "misses"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return idMappingCacheController.getNbMisses();
+            }
+        });
+        metricRegistry.register(MetricRegistry.name(prefix, "evictions"), new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return idMappingCacheController.getNbEvictions();
+            }
+        });
+        metricRegistry.register(MetricRegistry.name(prefix, "size"), new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                return idMappingCacheController.size();
+            }
+        });
+        metricRegistry.register(MetricRegistry.name(prefix, "loads"), idMappingCacheController.getLoadTimer());
+    }
 }
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import org.killbill.billing.util.cache.Cachable.CacheType;
+
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+// Point in time statistics of a cache (counters are since startup), -1 meaning not supported by the underlying cache
+public class CacheStats {
+
+    public static final long NOT_SUPPORTED = -1L;
+
+    private final CacheType cacheType;
+    private final long size;
+    private final long hits;
+    private final long misses;
+    private final long coalescedLoads;
+    private final long evictions;
+    private final long loads;
+    private final double loadMeanMs;
+    private final double loadP99Ms;
+    private final double loadMaxMs;
+    private final long approximateSizeInBytes;
+
+    public CacheStats(final CacheType cacheType,
+                      final long size,
+                      final long hits,
+                      final long misses,
+                      final long coalescedLoads,
+                      final long evictions,
+                      final Timer loadTimer,
+                      final long approximateSizeInBytes) {
+        this.cacheType = cacheType;
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+        this.coalescedLoads = coalescedLoads;
+        this.evictions = evictions;
+        this.approximateSizeInBytes = approximateSizeInBytes;
+
+        // Timer values are in nanoseconds
+        final Snapshot loadLatencies = loadTimer.getSnapshot();
+        this.loads = loadTimer.getCount();
+        this.loadMeanMs = toMillis(loadLatencies.getMean());
+        this.loadP99Ms = toMillis(loadLatencies.get99thPercentile());
+        this.loadMaxMs = toMillis(loadLatencies.getMax());
+    }
+
+    public CacheType getCacheType() {
+        return cacheType;
+    }
+
+    public String getCacheName() {
+        return cacheType.getCacheName();
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public double getHitRatio() {
+        final long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+
+    public long getCoalescedLoads() {
+        return coalescedLoads;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getLoads() {
+        return loads;
+    }
+
+    public double getLoadMeanMs() {
+        return loadMeanMs;
+    }
+
+    public double getLoadP99Ms() {
+        return loadP99Ms;
+    }
+
+    public double getLoadMaxMs() {
+        return loadMaxMs;
+    }
+
+    public long getApproximateSizeInBytes() {
+        return approximateSizeInBytes;
+    }
+
+    private static double toMillis(final double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("CacheStats{");
+        sb.append("cacheName='").append(getCacheName()).append('\'');
+        sb.append(", size=").append(size);
+        sb.append(", hits=").append(hits);
+        sb.append(", misses=").append(misses);
+        sb.append(", coalescedLoads=").append(coalescedLoads);
+        sb.append(", evictions=").append(evictions);
+        sb.append(", loads=").append(loads);
+        sb.append(", loadMeanMs=").append(loadMeanMs);
+        sb.append(", loadP99Ms=").append(loadP99Ms);
+        sb.append(", loadMaxMs=").append(loadMaxMs);
+        sb.append(", approximateSizeInBytes=").append(approximateSizeInBytes);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.dao.TableName;
+
+import com.codahale.metrics.Timer;
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+
+/**
+ * CacheController for the id mapping caches (RECORD_ID, ACCOUNT_RECORD_ID, TENANT_RECORD_ID and OBJECT_ID).
+ * <p/>
+ * Keys and values are stored as primitive longs (a UUID being two longs) in a fixed-size, 4-way set-associative table,
+ * either on-heap or off-heap: each entry costs 40 bytes, instead of several hundred bytes for the String keys, boxed values
+ * and JCache bookkeeping. When a set is full, a random entry of the set is evicted.
+ * <p/>
+ * The mappings between ids and record ids never change, so the cache is always local to the node.
+ */
+public class IdMappingCacheController<V> implements CacheController<String, V> {
+
+    private static final int NB_WAYS = 4;
+    // Slot layout: state, key (2 longs), value (2 longs)
+    private static final int SLOT_SIZE = 5;
+    // Keep the table size (in bytes) under Integer.MAX_VALUE, for direct buffers
+    private static final int MAX_NB_SETS = 1 << 23;
+    private static final int NB_LOCKS = 256;
+
+    private static final long EMPTY = 0L;
+    private static final long OCCUPIED = 1L;
+
+    private static final TableName[] TABLE_NAMES = TableName.values();
+
+    private final BaseCacheLoader<String, V> baseCacheLoader;
+    private final boolean isKeyPrefixedWithTableName;
+    private final boolean isValueUUID;
+    private final LongBuffer slots;
+    private final int nbSets;
+    private final Object[] locks;
+
+    private final AtomicInteger size = new AtomicInteger();
+    // Bumped on each invalidation, so that a load started before an invalidation doesn't cache a stale value
+    private final AtomicLong nbInvalidations = new AtomicLong();
+    private final AtomicLong nbHits = new AtomicLong();
+    private final AtomicLong nbMisses = new AtomicLong();
+    private final AtomicLong nbEvictions = new AtomicLong();
+    // Latency of the cache loader
+    private final Timer loadTimer = new Timer();
+
+    public static boolean isSupported(final CacheType cacheType) {
+        switch (cacheType) {
+            case RECORD_ID:
+            case ACCOUNT_RECORD_ID:
+            case TENANT_RECORD_ID:
+            case OBJECT_ID:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public IdMappingCacheController(final BaseCacheLoader<String, V> baseCacheLoader, final int maxEntries, final boolean offHeap) {
+        Preconditions.checkArgument(isSupported(baseCacheLoader.getCacheType()), "Cache %s isn't an id mapping cache", baseCacheLoader.getCacheType().getCacheName());
+        Preconditions.checkArgument(maxEntries > 0, "maxEntries should be positive");
+
+        this.baseCacheLoader = baseCacheLoader;
+        this.isKeyPrefixedWithTableName = baseCacheLoader.getCacheType().isKeyPrefixedWithTableName();
+        this.isValueUUID = UUID.class.equals(baseCacheLoader.getCacheType().getValueType());
+
+        int sets = 1;
+        while (sets * NB_WAYS < maxEntries && sets < MAX_NB_SETS) {
+            sets <<= 1;
+        }
+        this.nbSets = sets;
+
+        final int nbLongs = nbSets * NB_WAYS * SLOT_SIZE;
+        this.slots = offHeap ? ByteBuffer.allocateDirect(nbLongs * 8).asLongBuffer() : LongBuffer.allocate(nbLongs);
+
+        this.locks = new Object[NB_LOCKS];
+        for (int i = 0; i < NB_LOCKS; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @Override
+    public List<String> getKeys() {
+        final List<String> keys = new LinkedList<String>();
+        for (int set = 0; set < nbSets; set++) {
+            synchronized (lockFor(set)) {
+                for (int way = 0; way < NB_WAYS; way++) {
+                    final int slot = slotIndex(set, way);
+                    if (slots.get(slot) == OCCUPIED) {
+                        keys.add(decodeKey(slots.get(slot + 1), slots.get(slot + 2)));
+                    }
+                }
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public boolean isKeyInCache(final String key) {
+        final long[] encodedKey = encodeKey(key);
+        return encodedKey != null && getIfPresent(encodedKey) != null;
+    }
+
+    @Override
+    public V get(final String key, final CacheLoaderArgument cacheLoaderArgument) {
+        if (key == null) {
+            return null;
+        }
+
+        final long[] encodedKey = encodeKey(key);
+        if (encodedKey == null) {
+            // Unexpected key format, bypass the cache
+            return computeValue(key, cacheLoaderArgument);
+        }
+
+        final V cachedValue = getIfPresent(encodedKey);
+        if (cachedValue != null) {
+            nbHits.incrementAndGet();
+            return cachedValue;
+        }
+        nbMisses.incrementAndGet();
+
+        final long nbInvalidationsBeforeLoad = nbInvalidations.get();
+        final V value = computeValue(key, cacheLoaderArgument);
+        if (value != null && store(encodedKey, value) && nbInvalidations.get() != nbInvalidationsBeforeLoad) {
+            // The value may have been computed from stale data
+            remove(encodedKey);
+        }
+        return value;
+    }
+
+    @Override
+    public Map<String, V> getAll(final Collection<String> keys) {
+        final Map<String, V> values = new HashMap<String, V>();
+        for (final String key : keys) {
+            final long[] encodedKey = encodeKey(key);
+            final V value = encodedKey == null ? null : getIfPresent(encodedKey);
+            if (value != null) {
+                values.put(key, value);
+                nbHits.incrementAndGet();
+            } else {
+                nbMisses.incrementAndGet();
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public boolean remove(final String key) {
+        nbInvalidations.incrementAndGet();
+        final long[] encodedKey = encodeKey(key);
+        return encodedKey != null && remove(encodedKey);
+    }
+
+    @Override
+    public void remove(final Function<String, Boolean> keyMatcher) {
+        nbInvalidations.incrementAndGet();
+        for (int set = 0; set < nbSets; set++) {
+            synchronized (lockFor(set)) {
+                for (int way = 0; way < NB_WAYS; way++) {
+                    final int slot = slotIndex(set, way);
+                    if (slots.get(slot) == OCCUPIED && keyMatcher.apply(decodeKey(slots.get(slot + 1), slots.get(slot + 2))) == Boolean.TRUE) {
+                        slots.put(slot, EMPTY);
+                        size.decrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void removeByTenantRecordId(final Long tenantRecordId) {
+        Preconditions.checkState(getCacheType().isKeySuffixedWithTenantRecordId(), "Cache %s keys aren't suffixed with the tenant record id", getCacheType().getCacheName());
+    }
+
+    @Override
+    public void putIfAbsent(final String key, final V value) {
+        final long[] encodedKey = encodeKey(key);
+        if (encodedKey != null) {
+            store(encodedKey, value);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public void removeAll() {
+        nbInvalidations.incrementAndGet();
+        for (int set = 0; set < nbSets; set++) {
+            synchronized (lockFor(set)) {
+                for (int way = 0; way < NB_WAYS; way++) {
+                    final int slot = slotIndex(set, way);
+                    if (slots.get(slot) == OCCUPIED) {
+                        slots.put(slot, EMPTY);
+                        size.decrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public CacheType getCacheType() {
+        return baseCacheLoader.getCacheType();
+    }
+
+    // Number of lookups served by the cache
+    public long getNbHits() {
+        return nbHits.get();
+    }
+
+    // Number of lookups not served by the cache
+    public long getNbMisses() {
+        return nbMisses.get();
+    }
+
+    // Number of entries dropped to make room for new ones
+    public long getNbEvictions() {
+        return nbEvictions.get();
+    }
+
+    public Timer getLoadTimer() {
+        return loadTimer;
+    }
+
+    @Override
+    public CacheStats getStats() {
+        // The table is allocated upfront: report its full size
+        return new CacheStats(getCacheType(),
+                              size(),
+                              getNbHits(),
+                              getNbMisses(),
+                              0,
+                              getNbEvictions(),
+                              loadTimer,
+                              slots.capacity() * 8L);
+    }
+
+    private V getIfPresent(final long[] encodedKey) {
+        final int set = setFor(encodedKey);
+        synchronized (lockFor(set)) {
+            final int slot = findSlot(set, encodedKey);
+            return slot < 0 ? null : decodeValue(slots.get(slot + 3), slots.get(slot + 4));
+        }
+    }
+
+    // Returns true if the value was stored
+    private boolean store(final long[] encodedKey, final V value) {
+        final long[] encodedValue = encodeValue(value);
+        if (encodedValue == null) {
+            return false;
+        }
+
+        final int set = setFor(encodedKey);
+        synchronized (lockFor(set)) {
+            if (findSlot(set, encodedKey) >= 0) {
+                return false;
+            }
+
+            int slot = -1;
+            for (int way = 0; way < NB_WAYS; way++) {
+                if (slots.get(slotIndex(set, way)) == EMPTY) {
+                    slot = slotIndex(set, way);
+                    break;
+                }
+            }
+            if (slot < 0) {
+                slot = slotIndex(set, ThreadLocalRandom.current().nextInt(NB_WAYS));
+                nbEvictions.incrementAndGet();
+            } else {
+                size.incrementAndGet();
+            }
+
+            slots.put(slot + 1, encodedKey[0]);
+            slots.put(slot + 2, encodedKey[1]);
+            slots.put(slot + 3, encodedValue[0]);
+            slots.put(slot + 4, encodedValue[1]);
+            slots.put(slot, OCCUPIED);
+            return true;
+        }
+    }
+
+    private boolean remove(final long[] encodedKey) {
+        final int set = setFor(encodedKey);
+        synchronized (lockFor(set)) {
+            final int slot = findSlot(set, encodedKey);
+            if (slot < 0) {
+                return false;
+            }
+            slots.put(slot, EMPTY);
+            size.decrementAndGet();
+            return true;
+        }
+    }
+
+    // Must be called under the set lock
+    private int findSlot(final int set, final long[] encodedKey) {
+        for (int way = 0; way < NB_WAYS; way++) {
+            final int slot = slotIndex(set, way);
+            if (slots.get(slot) == OCCUPIED && slots.get(slot + 1) == encodedKey[0] && slots.get(slot + 2) == encodedKey[1]) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int slotIndex(final int set, final int way) {
+        return (set * NB_WAYS + way) * SLOT_SIZE;
+    }
+
+    private int setFor(final long[] encodedKey) {
+        // MurmurHash3 finalizer
+        long h = encodedKey[0] * 0x9E3779B97F4A7C15L ^ encodedKey[1];
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) (h & (nbSets - 1));
+    }
+
+    private Object lockFor(final int set) {
+        return locks[set & (NB_LOCKS - 1)];
+    }
+
+    // Keys are either 'UUID' or 'TABLE_NAME::recordId' (see CacheType#isKeyPrefixedWithTableName). Returns null for unexpected keys
+    private long[] encodeKey(final String key) {
+        if (key == null) {
+            return null;
+        }
+
+        try {
+            if (isKeyPrefixedWithTableName) {
+                final int separatorIndex = key.indexOf(CacheControllerDispatcher.CACHE_KEY_SEPARATOR);
+                if (separatorIndex < 0) {
+                    return null;
+                }
+                final TableName tableName = TableName.valueOf(key.substring(0, separatorIndex));
+                final long recordId = Long.parseLong(key.substring(separatorIndex + CacheControllerDispatcher.CACHE_KEY_SEPARATOR.length()));
+                return new long[]{tableName.ordinal(), recordId};
+            } else {
+                final UUID id = UUID.fromString(key);
+                return new long[]{id.getMostSignificantBits(), id.getLeastSignificantBits()};
+            }
+        } catch (final IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private String decodeKey(final long first, final long second) {
+        if (isKeyPrefixedWithTableName) {
+            return TABLE_NAMES[(int) first] + CacheControllerDispatcher.CACHE_KEY_SEPARATOR + second;
+        } else {
+            return new UUID(first, second).toString();
+        }
+    }
+
+    private long[] encodeValue(final V value) {
+        if (isValueUUID && value instanceof UUID) {
+            return new long[]{((UUID) value).getMostSignificantBits(), ((UUID) value).getLeastSignificantBits()};
+        } else if (!isValueUUID && value instanceof Long) {
+            return new long[]{(Long) value, 0L};
+        } else {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V decodeValue(final long first, final long second) {
+        return (V) (isValueUUID ? new UUID(first, second) : Long.valueOf(first));
+    }
+
+    private V computeValue(final String key, final CacheLoaderArgument cacheLoaderArgument) {
+        final Timer.Context loadTimerContext = loadTimer.time();
+        try {
+            return baseCacheLoader.compute(key, cacheLoaderArgument);
+        } catch (final Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            loadTimerContext.stop();
+        }
+    }
+}
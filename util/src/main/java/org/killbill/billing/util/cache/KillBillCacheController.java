@@ -18,32 +18,105 @@
 
 package org.killbill.billing.util.cache;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
+import javax.annotation.Nullable;
 import javax.cache.Cache;
 import javax.cache.Cache.Entry;
 import javax.cache.CacheException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.killbill.billing.util.cache.Cachable.CacheType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.Timer;
 import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
 
 public class KillBillCacheController<K, V> implements CacheController<K, V> {
 
     private static final Logger logger = LoggerFactory.getLogger(KillBillCacheController.class);
 
+    // Number of entries serialized to estimate the size of the cache
+    private static final int NB_SAMPLED_ENTRIES = 100;
+    // Minimum number of indexed keys for a tenant before the keys no longer in the cache (e.g. evicted) are pruned
+    private static final int MIN_NB_KEYS_BEFORE_PRUNING = 100;
+    // Number of stripes of the per key invalidation counters of the near cache
+    private static final int NB_INVALIDATION_STRIPES = 1024;
+
     private final Cache<K, V> cache;
     private final BaseCacheLoader<K, V> baseCacheLoader;
 
+    // Single-flight loading: at most one computation in flight per key, concurrent callers wait on its result
+    // (the map is internally lock-striped, so loads for different keys don't contend). Invalidations drop the in flight
+    // loads of the keys they remove, so that a load racing with an invalidation of its key doesn't cache a stale value
+    private final ConcurrentMap<K, Future<V>> inFlightLoads = new ConcurrentHashMap<K, Future<V>>();
+
+    // Keys per tenant, for caches with keys suffixed with the tenant record id (null otherwise). Only maintained for local
+    // caches, as keys added by other nodes aren't visible. Entries are never removed from the map: each TenantKeys is also
+    // the lock under which the keys of that tenant are indexed and put in the cache, or removed from both
+    private final ConcurrentMap<Long, TenantKeys> keysByTenantRecordId;
+
+    // Local copy of the entries, in front of a distributed cache (null if disabled)
+    private final NearCache<K, V> nearCache;
+    // Invalidations per key stripe and invalidations of several keys, so that a lookup racing with an invalidation of its
+    // key doesn't populate the near cache with a stale value (null if the near cache is disabled)
+    private final AtomicLongArray nbKeyInvalidations;
+    private final AtomicLong nbBulkInvalidations = new AtomicLong();
+
+    // Entries put and not removed through this controller, so that size() doesn't iterate over the cache: entries put by
+    // other nodes aren't counted, evictions are only accounted for when reported by the statistics MBean
+    private final AtomicLong nbEntries = new AtomicLong();
+    private final AtomicLong nbEvictionsBeforeLastClear = new AtomicLong();
+
+    private final AtomicLong nbHits = new AtomicLong();
+    private final AtomicLong nbMisses = new AtomicLong();
+    private final AtomicLong nbCoalescedLoads = new AtomicLong();
+    private final AtomicLong nbNearCacheHits = new AtomicLong();
+    // Entries dropped by the last clear, which the statistics MBean doesn't report as removals (see getApproximateSize)
+    private final AtomicLong nbEntriesBeforeLastClear = new AtomicLong();
+    // Latency of the cache loader
+    private final Timer loadTimer = new Timer();
+
     public KillBillCacheController(final Cache<K, V> cache, final BaseCacheLoader<K, V> baseCacheLoader) {
+        this(cache, baseCacheLoader, false);
+    }
+
+    public KillBillCacheController(final Cache<K, V> cache, final BaseCacheLoader<K, V> baseCacheLoader, final boolean isLocalCache) {
+        this(cache, baseCacheLoader, isLocalCache, null);
+    }
+
+    public KillBillCacheController(final Cache<K, V> cache, final BaseCacheLoader<K, V> baseCacheLoader, final boolean isLocalCache, @Nullable final NearCache<K, V> nearCache) {
         this.cache = cache;
         this.baseCacheLoader = baseCacheLoader;
+        this.keysByTenantRecordId = isLocalCache && baseCacheLoader.getCacheType().isKeySuffixedWithTenantRecordId() ? new ConcurrentHashMap<Long, TenantKeys>() : null;
+        this.nearCache = nearCache;
+        this.nbKeyInvalidations = nearCache == null ? null : new AtomicLongArray(NB_INVALIDATION_STRIPES);
     }
 
     @Override
@@ -69,12 +142,25 @@ public class KillBillCacheController<K, V> implements CacheController<K, V> {
             return null;
         }
 
+        if (nearCache != null) {
+            final V nearCacheValue = nearCache.get(key);
+            if (nearCacheValue != null) {
+                nbHits.incrementAndGet();
+                nbNearCacheHits.incrementAndGet();
+                return nearCacheValue;
+            }
+        }
+
+        final long nbInvalidationsBeforeLookup = getNbInvalidations(key);
         V value;
         try {
-            if (!isKeyInCache(key)) {
-                value = computeAndCacheValue(key, cacheLoaderArgument);
+            // Single lookup: the cache never contains null values (see BaseCacheLoader.EMPTY_VALUE_PLACEHOLDER)
+            value = getOrEvict(key);
+            if (value != null) {
+                nbHits.incrementAndGet();
             } else {
-                value = cache.get(key);
+                nbMisses.incrementAndGet();
+                value = loadValue(key, cacheLoaderArgument);
             }
         } catch (final CacheException e) {
             logger.warn("Unable to retrieve cached value for key='{}' and cacheLoaderArgument='{}'", key, cacheLoaderArgument, e);
@@ -84,22 +170,94 @@ public class KillBillCacheController<K, V> implements CacheController<K, V> {
         if (value == null || value.equals(BaseCacheLoader.EMPTY_VALUE_PLACEHOLDER)) {
             return null;
         } else {
+            putInNearCache(key, value, nbInvalidationsBeforeLookup);
             return value;
         }
     }
 
+    @Override
+    public Map<K, V> getAll(final Collection<K> keys) {
+        final Map<K, V> values = new HashMap<K, V>();
+        if (keys.isEmpty()) {
+            return values;
+        }
+
+        final Set<K> uniqueKeys = new HashSet<K>(keys);
+        uniqueKeys.remove(null);
+        if (nearCache != null) {
+            for (final K key : ImmutableList.<K>copyOf(uniqueKeys)) {
+                final V nearCacheValue = nearCache.get(key);
+                if (nearCacheValue != null) {
+                    values.put(key, nearCacheValue);
+                    uniqueKeys.remove(key);
+                }
+            }
+            nbNearCacheHits.addAndGet(values.size());
+            if (uniqueKeys.isEmpty()) {
+                nbHits.addAndGet(values.size());
+                return values;
+            }
+        }
+        final int nbNearCacheValues = values.size();
+
+        Map<K, V> cachedValues;
+        try {
+            cachedValues = cache.getAll(uniqueKeys);
+        } catch (final RuntimeException e) {
+            // Look the keys up one by one, so that the unreadable entries are evicted (the misses are only put if absent)
+            logger.warn("Unable to retrieve cached values for keys='{}'", keys, e);
+            cachedValues = new HashMap<K, V>();
+            try {
+                for (final K key : uniqueKeys) {
+                    cachedValues.put(key, getOrEvict(key));
+                }
+            } catch (final CacheException e2) {
+                logger.warn("Unable to retrieve cached values for keys='{}'", keys, e2);
+            }
+        }
+        for (final Map.Entry<K, V> entry : cachedValues.entrySet()) {
+            final V value = entry.getValue();
+            if (value != null && !value.equals(BaseCacheLoader.EMPTY_VALUE_PLACEHOLDER)) {
+                values.put(entry.getKey(), value);
+            }
+        }
+
+        nbHits.addAndGet(values.size());
+        nbMisses.addAndGet(uniqueKeys.size() - (values.size() - nbNearCacheValues));
+        return values;
+    }
+
     @Override
     public void putIfAbsent(final K key, final V value) {
-        cache.putIfAbsent(key, value);
+        final TenantKeys tenantKeys = getOrCreateTenantKeys(key);
+        if (tenantKeys == null) {
+            countPut(cache.putIfAbsent(key, value));
+            return;
+        }
+
+        // Indexed and put atomically, so that a concurrent tenant invalidation cannot miss the key
+        synchronized (tenantKeys) {
+            tenantKeys.add(key);
+            countPut(cache.putIfAbsent(key, value));
+        }
     }
 
     @Override
     public boolean remove(final K key) {
-        if (isKeyInCache(key)) {
-            cache.remove(key);
-            return true;
-        } else {
-            return false;
+        inFlightLoads.remove(key);
+        if (nearCache != null) {
+            nbKeyInvalidations.incrementAndGet(getInvalidationStripe(key));
+            nearCache.invalidate(key);
+        }
+
+        final TenantKeys tenantKeys = getTenantKeys(key);
+        if (tenantKeys == null) {
+            return countRemoval(cache.remove(key));
+        }
+
+        synchronized (tenantKeys) {
+            tenantKeys.remove(key);
+            return countRemoval(cache.remove(key));
         }
     }
 
@@ -111,17 +269,96 @@ public class KillBillCacheController<K, V> implements CacheController<K, V> {
                 toRemove.add((K) key);
             }
         }
-        cache.removeAll(toRemove);
+        for (final K key : inFlightLoads.keySet()) {
+            if (keyMatcher.apply(key) == Boolean.TRUE) {
+                inFlightLoads.remove(key);
+            }
+        }
+        if (nearCache != null) {
+            nbBulkInvalidations.incrementAndGet();
+            nearCache.invalidate(keyMatcher);
+        }
+        // Stale index entries left by concurrent puts are pruned later on
+        removeKeys(toRemove);
+        for (final K key : toRemove) {
+            final TenantKeys tenantKeys = getTenantKeys(key);
+            if (tenantKeys != null) {
+                synchronized (tenantKeys) {
+                    tenantKeys.remove(key);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void removeByTenantRecordId(final Long tenantRecordId) {
+        Preconditions.checkState(getCacheType().isKeySuffixedWithTenantRecordId(), "Cache %s keys aren't suffixed with the tenant record id", getCacheType().getCacheName());
+
+        if (keysByTenantRecordId == null) {
+            // Full scan
+            remove(new Function<K, Boolean>() {
+                @Override
+                public Boolean apply(final K key) {
+                    return tenantRecordId.equals(getTenantRecordId(key));
+                }
+            });
+            return;
+        }
+
+        for (final K key : inFlightLoads.keySet()) {
+            if (tenantRecordId.equals(getTenantRecordId(key))) {
+                inFlightLoads.remove(key);
+            }
+        }
+        if (nearCache != null) {
+            nbBulkInvalidations.incrementAndGet();
+            nearCache.invalidate(new Function<K, Boolean>() {
+                @Override
+                public Boolean apply(final K key) {
+                    return tenantRecordId.equals(getTenantRecordId(key));
+                }
+            });
+        }
+        final TenantKeys tenantKeys = keysByTenantRecordId.get(tenantRecordId);
+        if (tenantKeys != null) {
+            synchronized (tenantKeys) {
+                removeKeys(tenantKeys.getKeys());
+                tenantKeys.clear();
+            }
+        }
     }
 
     @Override
     public void removeAll() {
+        inFlightLoads.clear();
+        if (nearCache != null) {
+            nbBulkInvalidations.incrementAndGet();
+            nearCache.invalidateAll();
+        }
+        // Un-index first: keys put in between are indexed (and removed by the clear), never the other way around
+        if (keysByTenantRecordId != null) {
+            for (final TenantKeys tenantKeys : keysByTenantRecordId.values()) {
+                synchronized (tenantKeys) {
+                    tenantKeys.clear();
+                }
+            }
+        }
+        final long nbPuts = getStatistic("CachePuts");
+        final long nbEvictions = getStatistic("CacheEvictions");
+        if (nbPuts != CacheStats.NOT_SUPPORTED) {
+            nbEntriesBeforeLastClear.set(nbPuts - getStatistic("CacheRemovals") - nbEvictions);
+        }
+        nbEvictionsBeforeLastClear.set(nbEvictions == CacheStats.NOT_SUPPORTED ? 0 : nbEvictions);
+        nbEntries.set(0);
         cache.clear();
     }
 
+    // Number of entries put through this controller (see nbEntries), without iterating over the cache
     @Override
     public int size() {
-        return Iterables.size(cache);
+        final long nbEvictions = getNbEvictions();
+        final long size = nbEntries.get() - (nbEvictions == CacheStats.NOT_SUPPORTED ? 0 : nbEvictions - nbEvictionsBeforeLastClear.get());
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, size));
     }
 
     @Override
@@ -129,27 +366,306 @@ public class KillBillCacheController<K, V> implements CacheController<K, V> {
         return baseCacheLoader.getCacheType();
     }
 
-    private V computeAndCacheValue(final K key, final CacheLoaderArgument cacheLoaderArgument) {
-        final V value = computeValue(key, cacheLoaderArgument);
-        if (value == null) {
+    // Number of lookups served by the cache
+    public long getNbHits() {
+        return nbHits.get();
+    }
+
+    // Number of lookups not served by the cache (including the coalesced ones)
+    public long getNbMisses() {
+        return nbMisses.get();
+    }
+
+    // Number of lookups which waited on a load already in flight instead of computing the value
+    public long getNbCoalescedLoads() {
+        return nbCoalescedLoads.get();
+    }
+
+    // Number of lookups served by the near cache, without going to the underlying cache (subset of the hits)
+    public long getNbNearCacheHits() {
+        return nbNearCacheHits.get();
+    }
+
+    public Timer getLoadTimer() {
+        return loadTimer;
+    }
+
+    // Number of entries evicted by the underlying cache, as reported by its JSR-107 statistics MBean (see enable-statistics
+    // in ehcache.xml): not supported by Redis
+    public long getNbEvictions() {
+        return getStatistic("CacheEvictions");
+    }
+
+    // Number of entries, derived from the JSR-107 statistics MBean so that the cache isn't iterated over: approximate, as
+    // puts replacing an entry are counted as new entries. Not supported by Redis
+    public long getApproximateSize() {
+        final long nbPuts = getStatistic("CachePuts");
+        final long nbRemovals = getStatistic("CacheRemovals");
+        final long nbEvictions = getStatistic("CacheEvictions");
+        if (nbPuts == CacheStats.NOT_SUPPORTED || nbRemovals == CacheStats.NOT_SUPPORTED || nbEvictions == CacheStats.NOT_SUPPORTED) {
+            return CacheStats.NOT_SUPPORTED;
+        }
+        return Math.max(0, nbPuts - nbRemovals - nbEvictions - nbEntriesBeforeLastClear.get());
+    }
+
+    @Override
+    public CacheStats getStats() {
+        final long size = getApproximateSize();
+        return new CacheStats(getCacheType(),
+                              size,
+                              getNbHits(),
+                              getNbMisses(),
+                              getNbCoalescedLoads(),
+                              getNbEvictions(),
+                              loadTimer,
+                              estimateSizeInBytes(size));
+    }
+
+    // Based on the serialized size of a sample of entries
+    private long estimateSizeInBytes(final long size) {
+        if (size == CacheStats.NOT_SUPPORTED) {
+            return CacheStats.NOT_SUPPORTED;
+        } else if (size == 0) {
+            return 0;
+        }
+
+        long nbSampledBytes = 0;
+        int nbSampledEntries = 0;
+        for (final Entry<K, V> entry : Iterables.limit(cache, NB_SAMPLED_ENTRIES)) {
+            if (entry == null) {
+                continue;
+            }
+
+            final CountingOutputStream countingOutputStream = new CountingOutputStream(ByteStreams.nullOutputStream());
+            try {
+                final ObjectOutputStream objectOutputStream = new ObjectOutputStream(countingOutputStream);
+                objectOutputStream.writeObject(entry.getKey());
+                objectOutputStream.writeObject(entry.getValue());
+                objectOutputStream.flush();
+            } catch (final IOException e) {
+                // Not serializable
+                continue;
+            }
+            nbSampledBytes += countingOutputStream.getCount();
+            nbSampledEntries++;
+        }
+
+        return nbSampledEntries == 0 ? CacheStats.NOT_SUPPORTED : nbSampledBytes * size / nbSampledEntries;
+    }
+
+    private long getStatistic(final String attributeName) {
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName query = new ObjectName("javax.cache:type=CacheStatistics,Cache=" + getCacheType().getCacheName() + ",*");
+            for (final ObjectName statisticsName : mBeanServer.queryNames(query, null)) {
+                return (Long) mBeanServer.getAttribute(statisticsName, attributeName);
+            }
+        } catch (final JMException e) {
+            logger.debug("Unable to retrieve {} for cache {}", attributeName, getCacheType().getCacheName(), e);
+        }
+        return CacheStats.NOT_SUPPORTED;
+    }
+
+    private void putInNearCache(final K key, final V value, final long nbInvalidationsBeforeLookup) {
+        if (nearCache == null) {
+            return;
+        }
+
+        nearCache.put(key, value);
+        // An invalidation of that key raced with the lookup: the value may be stale
+        if (getNbInvalidations(key) != nbInvalidationsBeforeLookup) {
+            nearCache.invalidate(key);
+        }
+    }
+
+    // Removed one by one, to account for the entries actually removed
+    private void removeKeys(final Iterable<K> keys) {
+        for (final K key : keys) {
+            countRemoval(cache.remove(key));
+        }
+    }
+
+    private void countPut(final boolean isPut) {
+        if (isPut) {
+            nbEntries.incrementAndGet();
+        }
+    }
+
+    private boolean countRemoval(final boolean isRemoved) {
+        if (isRemoved) {
+            nbEntries.decrementAndGet();
+        }
+        return isRemoved;
+    }
+
+    private long getNbInvalidations(final K key) {
+        if (nearCache == null) {
+            return 0;
+        }
+        return nbBulkInvalidations.get() + nbKeyInvalidations.get(getInvalidationStripe(key));
+    }
+
+    private int getInvalidationStripe(final K key) {
+        return (key.hashCode() & Integer.MAX_VALUE) % NB_INVALIDATION_STRIPES;
+    }
+
+    private TenantKeys getTenantKeys(final K key) {
+        if (keysByTenantRecordId == null) {
             return null;
         }
 
-        // Race condition, we may compute it for nothing
-        putIfAbsent(key, value);
+        final Long tenantRecordId = getTenantRecordId(key);
+        return tenantRecordId == null ? null : keysByTenantRecordId.get(tenantRecordId);
+    }
 
-        return value;
+    private TenantKeys getOrCreateTenantKeys(final K key) {
+        if (keysByTenantRecordId == null) {
+            return null;
+        }
+
+        final Long tenantRecordId = getTenantRecordId(key);
+        if (tenantRecordId == null) {
+            return null;
+        }
+
+        final TenantKeys tenantKeys = keysByTenantRecordId.get(tenantRecordId);
+        if (tenantKeys != null) {
+            return tenantKeys;
+        }
+
+        final TenantKeys newTenantKeys = new TenantKeys();
+        final TenantKeys existingTenantKeys = keysByTenantRecordId.putIfAbsent(tenantRecordId, newTenantKeys);
+        return existingTenantKeys == null ? newTenantKeys : existingTenantKeys;
+    }
+
+    private Long getTenantRecordId(final K key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+
+        final String stringKey = (String) key;
+        final int separatorIndex = stringKey.lastIndexOf(CacheControllerDispatcher.CACHE_KEY_SEPARATOR);
+        if (separatorIndex < 0) {
+            return null;
+        }
+
+        try {
+            return Long.valueOf(stringKey.substring(separatorIndex + CacheControllerDispatcher.CACHE_KEY_SEPARATOR.length()));
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Entries which cannot be read back (e.g. written by a previous version with an incompatible serialized form, see the
+    // serialVersionUID of the cached classes) are evicted and treated as misses, so that they get overwritten by the reloaded
+    // value instead of failing on each lookup
+    private V getOrEvict(final K key) {
+        try {
+            return cache.get(key);
+        } catch (final RuntimeException e) {
+            logger.warn("Unable to read cached value for key='{}', evicting it", key, e);
+            countRemoval(cache.remove(key));
+            return null;
+        }
+    }
+
+    private V loadValue(final K key, final CacheLoaderArgument cacheLoaderArgument) {
+        final FutureTask<V> load = new FutureTask<V>(new Callable<V>() {
+            @Override
+            public V call() {
+                return computeValue(key, cacheLoaderArgument);
+            }
+        });
+
+        final Future<V> inFlightLoad = inFlightLoads.putIfAbsent(key, load);
+        if (inFlightLoad != null) {
+            nbCoalescedLoads.incrementAndGet();
+            return waitForLoad(inFlightLoad);
+        }
+
+        try {
+            load.run();
+            final V value = waitForLoad(load);
+            if (value != null) {
+                putIfAbsent(key, value);
+                // The load was dropped by an invalidation of that key: the value may have been computed from stale data
+                if (inFlightLoads.get(key) != load) {
+                    countRemoval(cache.remove(key, value));
+                }
+            }
+            return value;
+        } finally {
+            inFlightLoads.remove(key, load);
+        }
+    }
+
+    private V waitForLoad(final Future<V> load) {
+        try {
+            return load.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            } else {
+                throw new RuntimeException(e.getCause());
+            }
+        }
     }
 
     private V computeValue(final K key, final CacheLoaderArgument cacheLoaderArgument) {
         final V value;
+        final Timer.Context loadTimerContext = loadTimer.time();
         try {
             value = baseCacheLoader.compute(key, cacheLoaderArgument);
         } catch (final Exception e) {
             // Remove noisy log (might be expected, see https://github.com/killbill/killbill/issues/842)
             //logger.warn("Unable to compute cached value for key='{}' and cacheLoaderArgument='{}'", key, cacheLoaderArgument, e);
             throw new RuntimeException(e);
+        } finally {
+            loadTimerContext.stop();
         }
         return value;
     }
+
+    // Keys of a tenant, guarded by the instance lock
+    private final class TenantKeys {
+
+        private final Set<K> keys = new HashSet<K>();
+        private int nbKeysBeforePruning = MIN_NB_KEYS_BEFORE_PRUNING;
+
+        void add(final K key) {
+            if (keys.add(key) && keys.size() >= nbKeysBeforePruning) {
+                prune();
+            }
+        }
+
+        void remove(final K key) {
+            keys.remove(key);
+        }
+
+        Set<K> getKeys() {
+            return ImmutableSet.<K>copyOf(keys);
+        }
+
+        void clear() {
+            keys.clear();
+            nbKeysBeforePruning = MIN_NB_KEYS_BEFORE_PRUNING;
+        }
+
+        // Drop the keys evicted by the cache, so that the index doesn't grow unbounded. As the threshold doubles
+        // with the number of live keys, the cost of pruning is amortized over the puts
+        private void prune() {
+            final Iterator<K> iterator = keys.iterator();
+            while (iterator.hasNext()) {
+                if (!cache.containsKey(iterator.next())) {
+                    iterator.remove();
+                }
+            }
+            nbKeysBeforePruning = Math.max(MIN_NB_KEYS_BEFORE_PRUNING, 2 * keys.size());
+        }
+    }
 }
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Function;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Bounded local (per node) copy of the entries of a distributed cache (i.e. Redis), to avoid a network round trip
+ * and a deserialization for each lookup.
+ * <p/>
+ * Entries are dropped when invalidated through the KillBillCacheController (which is what the tenant broadcast
+ * mechanism does on each node) or when they expire: it should only be used for immutable data, or for data invalidated
+ * on each node.
+ */
+public class NearCache<K, V> {
+
+    private final Cache<K, V> entries;
+
+    public NearCache(final long maxEntries, final long timeToLiveMillis) {
+        this.entries = CacheBuilder.newBuilder()
+                                   .maximumSize(maxEntries)
+                                   .expireAfterWrite(timeToLiveMillis, TimeUnit.MILLISECONDS)
+                                   .build();
+    }
+
+    public V get(final K key) {
+        return entries.getIfPresent(key);
+    }
+
+    public void put(final K key, final V value) {
+        entries.put(key, value);
+    }
+
+    public void invalidate(final K key) {
+        entries.invalidate(key);
+    }
+
+    public void invalidate(final Function<K, Boolean> keyMatcher) {
+        final Set<K> toRemove = new HashSet<K>();
+        for (final K key : entries.asMap().keySet()) {
+            if (keyMatcher.apply(key) == Boolean.TRUE) {
+                toRemove.add(key);
+            }
+        }
+        entries.invalidateAll(toRemove);
+    }
+
+    public void invalidateAll() {
+        entries.invalidateAll();
+    }
+
+    public long size() {
+        return entries.size();
+    }
+}
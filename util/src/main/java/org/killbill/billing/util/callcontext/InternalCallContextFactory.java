@@ -18,6 +18,10 @@
 
 package org.killbill.billing.util.callcontext;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
@@ -363,6 +367,22 @@ public class InternalCallContextFactory {
         }
     }
 
+    // Bulk version of getRecordIdFromObject: objects which don't exist (or belong to another tenant) are absent from the returned map
+    public Map<UUID, Long> getRecordIdsFromObjects(final Collection<UUID> objectIds, final ObjectType objectType, final TenantContext context) {
+        final Long realTenantRecordId = getTenantRecordIdSafe(context);
+        if (realTenantRecordId == null) {
+            throw new ObjectDoesNotExist(String.format("Tenant id=%s doesn't exist!", context.getTenantId()));
+        }
+
+        final List<UUID> objectIdsForTenant = new ArrayList<UUID>(objectIds.size());
+        for (final Map.Entry<UUID, Long> entry : nonEntityDao.retrieveTenantRecordIdsFromObjects(objectIds, objectType, tenantRecordIdCacheController).entrySet()) {
+            if (realTenantRecordId.equals(entry.getValue())) {
+                objectIdsForTenant.add(entry.getKey());
+            }
+        }
+        return nonEntityDao.retrieveRecordIdsFromObjects(objectIdsForTenant, objectType, recordIdCacheController);
+    }
+
     //
     // Safe NonEntityDao private wrappers
     //
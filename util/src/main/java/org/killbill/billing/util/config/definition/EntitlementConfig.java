@@ -0,0 +1,46 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.config.definition;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+import org.skife.config.Description;
+import org.skife.config.TimeSpan;
+
+public interface EntitlementConfig extends KillbillConfig {
+
+    @Config("org.killbill.entitlement.eventsStreams.cache.enabled")
+    @Default("false")
+    @Description("Whether the per account EventsStream snapshots should be cached locally (they are invalidated by the writes made on this node, so they are only served when a single node is running)")
+    public boolean isAccountEventsStreamsCacheEnabled();
+
+    @Config("org.killbill.entitlement.eventsStreams.cache.maxEntries")
+    @Default("1000")
+    @Description("Maximum number of accounts for which EventsStream snapshots are cached")
+    public int getAccountEventsStreamsCacheMaxEntries();
+
+    @Config("org.killbill.entitlement.eventsStreams.cache.ttl")
+    @Default("30s")
+    @Description("Maximum time an EventsStream snapshot is served from the cache, also how often the number of running nodes is checked")
+    public TimeSpan getAccountEventsStreamsCacheTimeToLive();
+
+    @Config("org.killbill.entitlement.globalLock.retries")
+    @Default("50")
+    @Description("Maximum number of times the system will retry to grab global lock (with a 100ms wait each time)")
+    public int getMaxGlobalLockRetries();
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.config.definition;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+import org.skife.config.Description;
+
+public interface IdMappingCacheConfig extends KillbillConfig {
+
+    @Config("org.killbill.cache.idMapping.enabled")
+    @Default("false")
+    @Description("Whether the record-id, account-record-id, tenant-record-id and object-id caches should use the compact id mapping cache instead of JCache")
+    public boolean isIdMappingCacheEnabled();
+
+    @Config("org.killbill.cache.idMapping.maxEntries")
+    @Default("1000000")
+    @Description("Maximum number of entries per id mapping cache")
+    public int getIdMappingCacheMaxEntries();
+
+    @Config("org.killbill.cache.idMapping.offHeap")
+    @Default("false")
+    @Description("Whether the id mapping caches should be stored off-heap")
+    public boolean isIdMappingCacheOffHeap();
+}
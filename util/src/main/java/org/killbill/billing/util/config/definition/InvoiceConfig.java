@@ -83,11 +83,36 @@ public interface InvoiceConfig extends KillbillConfig {
     @Description("Maximum number of past billing periods we use to fetch raw usage data (usage optimization)")
     int getMaxRawUsagePreviousPeriod(@Param("dummy") final InternalTenantContext tenantContext);
 
+    @Config("org.killbill.invoice.aggregateRawUsage")
+    @Default("false")
+    @Description("Whether to aggregate the raw usage per subscription, unit type and day while streaming it out of the database instead of loading each usage record")
+    boolean isRawUsageAggregationEnabled();
+
+    @Config("org.killbill.invoice.maxInvoiceHistoryMonths")
+    @Default("-1")
+    @Description("Maximum number of months of past invoices loaded when generating an invoice, the full history is still loaded for invoice plugins and when a billing change effective before that window was made since the last invoice (-1 to always load the full history)")
+    int getMaxInvoiceHistoryMonths();
+
+    @Config("org.killbill.invoice.maxInvoiceHistoryMonths")
+    @Default("-1")
+    @Description("Maximum number of months of past invoices loaded when generating an invoice, the full history is still loaded for invoice plugins and when a billing change effective before that window was made since the last invoice (-1 to always load the full history)")
+    int getMaxInvoiceHistoryMonths(@Param("dummy") final InternalTenantContext tenantContext);
+
     @Config("org.killbill.invoice.globalLock.retries")
     @Default("50")
     @Description("Maximum number of times the system will retry to grab global lock (with a 100ms wait each time)")
     int getMaxGlobalLockRetries();
 
+    @Config("org.killbill.invoice.billingRun.nbThreads")
+    @Default("0")
+    @Description("Number of threads processing the due next billing date notifications, notifications for a given account are always processed by the same thread and are only acknowledged once processed (0 to process them in the notification queue threads)")
+    int getBillingRunNbThreads();
+
+    @Config("org.killbill.invoice.tree.intervalIndex")
+    @Default("false")
+    @Description("Whether to use the array backed interval index instead of the linked tree when reconciling existing and proposed recurring items")
+    boolean isIntervalIndexEnabled();
+
     @Config("org.killbill.invoice.plugin")
     @Default("")
     @Description("Default invoice plugin names")
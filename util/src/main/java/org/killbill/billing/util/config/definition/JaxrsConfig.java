@@ -49,4 +49,14 @@ public interface JaxrsConfig extends KillbillConfig {
     @DefaultNull
     @Description("Base host address to use for redirect URLs")
     String getJaxrsLocationHost();
+
+    @Config("org.killbill.jaxrs.readYourWrites.window")
+    @Default("10s")
+    @Description("Period (should be larger than the replication lag) during which GET calls from the flow (X-Killbill-Flow-Id or X-Request-Id header) of a previous write are sent to the RW instance (0 to disable). Writes are tracked per node")
+    TimeSpan getReadYourWritesWindow();
+
+    @Config("org.killbill.jaxrs.readYourWrites.perTenant")
+    @Default("false")
+    @Description("Whether calls without a flow header should be tracked per subject and tenant for read-your-writes (any write then sends all GET calls from that subject and tenant to the RW instance)")
+    boolean isReadYourWritesPerTenant();
 }
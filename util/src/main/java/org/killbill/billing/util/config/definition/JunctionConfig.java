@@ -0,0 +1,51 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.config.definition;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+import org.skife.config.Description;
+import org.skife.config.TimeSpan;
+
+public interface JunctionConfig extends KillbillConfig {
+
+    @Config("org.killbill.junction.billingEvents.cache.enabled")
+    @Default("false")
+    @Description("Whether the per account billing events should be cached locally (they are invalidated by the writes made on this node, so they are only served when a single node is running)")
+    public boolean isBillingEventsCacheEnabled();
+
+    @Config("org.killbill.junction.billingEvents.cache.maxEntries")
+    @Default("1000")
+    @Description("Maximum number of accounts for which billing events are cached")
+    public int getBillingEventsCacheMaxEntries();
+
+    @Config("org.killbill.junction.billingEvents.cache.ttl")
+    @Default("1h")
+    @Description("Maximum time cached billing events are served from the cache")
+    public TimeSpan getBillingEventsCacheTimeToLive();
+
+    @Config("org.killbill.junction.billingEvents.cache.nodesCheckInterval")
+    @Default("30s")
+    @Description("How often the number of running nodes is checked, i.e. how long cached billing events can be served after another node started")
+    public TimeSpan getBillingEventsCacheNodesCheckInterval();
+
+    @Config("org.killbill.junction.billingEvents.cache.consistencyCheck")
+    @Default("false")
+    @Description("Whether cached billing events should be verified against a full recomputation on each read (for testing only)")
+    public boolean isBillingEventsCacheConsistencyCheckEnabled();
+}
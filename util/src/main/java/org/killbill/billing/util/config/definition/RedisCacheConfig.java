@@ -17,9 +17,12 @@
 
 package org.killbill.billing.util.config.definition;
 
+import java.util.List;
+
 import org.skife.config.Config;
 import org.skife.config.Default;
 import org.skife.config.Description;
+import org.skife.config.TimeSpan;
 
 public interface RedisCacheConfig extends KillbillConfig {
 
@@ -37,4 +40,19 @@ public interface RedisCacheConfig extends KillbillConfig {
     @Default("1")
     @Description("Minimum number of connections")
     public int getConnectionMinimumIdleSize();
+
+    @Config("org.killbill.cache.config.redis.nearCache.cacheNames")
+    @Default("overridden-plan,tenant-catalog")
+    @Description("Caches to keep a local copy of in front of Redis: only list caches with immutable entries, or invalidated on each node (tenant caches). Entries evicted through the admin API (e.g. account-immutable) are only cleared from the local copy of the node serving the call")
+    public List<String> getNearCacheNames();
+
+    @Config("org.killbill.cache.config.redis.nearCache.maxEntries")
+    @Default("10000")
+    @Description("Max number of entries in the local copy of each near cache")
+    public long getNearCacheMaxEntries();
+
+    @Config("org.killbill.cache.config.redis.nearCache.ttl")
+    @Default("10m")
+    @Description("Time to live of the entries in the local copy of each near cache")
+    public TimeSpan getNearCacheTimeToLive();
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.config.definition;
+
+import org.skife.config.Config;
+import org.skife.config.Default;
+import org.skife.config.Description;
+import org.skife.config.TimeSpan;
+
+public interface UsageConfig extends KillbillConfig {
+
+    @Config("org.killbill.usage.compaction.rate")
+    @Default("0s")
+    @Description("Rate at which the usage compaction task is scheduled (0s to disable)")
+    public TimeSpan getCompactionRate();
+
+    @Config("org.killbill.usage.compaction.delay")
+    @Default("90d")
+    @Description("Age of the usage records (based on the record date) after which they are compacted into daily aggregates")
+    public TimeSpan getCompactionDelay();
+
+    @Config("org.killbill.usage.compaction.nbAccounts")
+    @Default("100")
+    @Description("Max number of accounts compacted on each run of the usage compaction task")
+    public int getCompactionNbAccounts();
+}
@@ -24,6 +24,7 @@ import java.util.List;
 import org.killbill.commons.jdbi.template.KillBillSqlDaoStringTemplate;
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.killbill.commons.jdbi.binder.SmartBindBean;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 import org.skife.jdbi.v2.sqlobject.customizers.Define;
@@ -53,6 +54,10 @@ public interface AuditSqlDao {
     public void insertAuditFromTransaction(@SmartBindBean final EntityAudit audit,
                                            @SmartBindBean final InternalCallContext context);
 
+    @SqlBatch
+    public void insertAuditsFromTransaction(@SmartBindBean final Iterable<EntityAudit> audits,
+                                            @SmartBindBean final InternalCallContext context);
+
     @SqlQuery
     @SmartFetchSize(shouldStream = true)
     public Iterator<AuditLogModelDao> getAuditLogsForAccountRecordId(@SmartBindBean final InternalTenantContext context);
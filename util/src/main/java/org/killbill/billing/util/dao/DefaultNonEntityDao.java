@@ -18,6 +18,12 @@
 
 package org.killbill.billing.util.dao;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
@@ -38,20 +44,29 @@ import org.skife.jdbi.v2.IDBI;
 import org.skife.jdbi.v2.sqlobject.SqlObjectBuilder;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 
 import static org.killbill.billing.util.glue.IDBISetup.MAIN_RO_IDBI_NAMED;
 
 public class DefaultNonEntityDao implements NonEntityDao {
 
+    // Maximum number of ids in a single IN clause
+    private static final int MAX_IDS_PER_QUERY = 1000;
+
     private final DBRouter<NonEntitySqlDao> dbRouter;
     private final WithCaching<String, Long> withCachingObjectId;
     private final WithCaching<String, UUID> withCachingRecordId;
+    private final WithBulkCaching<UUID, Long> withBulkCachingObjectId;
+    private final WithBulkCaching<Long, UUID> withBulkCachingRecordId;
 
     @Inject
     public DefaultNonEntityDao(final IDBI dbi, @Named(MAIN_RO_IDBI_NAMED) final IDBI roDbi) {
         this.dbRouter = new DBRouter<NonEntitySqlDao>(dbi, roDbi, NonEntitySqlDao.class);
         this.withCachingObjectId = new WithCaching<String, Long>();
         this.withCachingRecordId = new WithCaching<String, UUID>();
+        this.withBulkCachingObjectId = new WithBulkCaching<UUID, Long>();
+        this.withBulkCachingRecordId = new WithBulkCaching<Long, UUID>();
     }
 
     @Override
@@ -160,6 +175,86 @@ public class DefaultNonEntityDao implements NonEntityDao {
         }, String.valueOf(recordId), objectType, tableName, cache);
     }
 
+    @Override
+    public Map<UUID, Long> retrieveRecordIdsFromObjects(final Collection<UUID> objectIds, final ObjectType objectType, @Nullable final CacheController<String, Long> cache) {
+        final TableName tableName = TableName.fromObjectType(objectType);
+        Preconditions.checkNotNull(tableName, "%s is not a valid ObjectType", objectType);
+
+        return withBulkCachingObjectId.withCaching(new BulkOperationRetrieval<UUID, Long>() {
+            @Override
+            public Map<UUID, Long> doRetrieve(final List<UUID> objectIds) {
+                return toRecordIdsByIds(dbRouter.onDemand(true).getRecordIdsFromObjects(toStrings(objectIds), tableName.getTableName()));
+            }
+        }, objectIds, objectType, tableName, cache);
+    }
+
+    @Override
+    public Map<UUID, Long> retrieveAccountRecordIdsFromObjects(final Collection<UUID> objectIds, final ObjectType objectType, @Nullable final CacheController<String, Long> cache) {
+        final TableName tableName = TableName.fromObjectType(objectType);
+        Preconditions.checkNotNull(tableName, "%s is not a valid ObjectType", objectType);
+
+        switch (tableName) {
+            case TENANT:
+            case TAG_DEFINITIONS:
+            case TAG_DEFINITION_HISTORY:
+                return ImmutableMap.<UUID, Long>of();
+            default:
+                break;
+        }
+
+        return withBulkCachingObjectId.withCaching(new BulkOperationRetrieval<UUID, Long>() {
+            @Override
+            public Map<UUID, Long> doRetrieve(final List<UUID> objectIds) {
+                final NonEntitySqlDao nonEntitySqlDao = dbRouter.onDemand(true);
+                if (tableName == TableName.ACCOUNT) {
+                    return toRecordIdsByIds(nonEntitySqlDao.getRecordIdsFromObjects(toStrings(objectIds), tableName.getTableName()));
+                } else {
+                    return toRecordIdsByIds(nonEntitySqlDao.getAccountRecordIdsFromObjectsOtherThanAccount(toStrings(objectIds), tableName.getTableName()));
+                }
+            }
+        }, objectIds, objectType, tableName, cache);
+    }
+
+    @Override
+    public Map<UUID, Long> retrieveTenantRecordIdsFromObjects(final Collection<UUID> objectIds, final ObjectType objectType, @Nullable final CacheController<String, Long> cache) {
+        final TableName tableName = TableName.fromObjectType(objectType);
+        Preconditions.checkNotNull(tableName, "%s is not a valid ObjectType", objectType);
+
+        return withBulkCachingObjectId.withCaching(new BulkOperationRetrieval<UUID, Long>() {
+            @Override
+            public Map<UUID, Long> doRetrieve(final List<UUID> objectIds) {
+                final NonEntitySqlDao nonEntitySqlDao = dbRouter.onDemand(true);
+                if (tableName == TableName.TENANT) {
+                    return toRecordIdsByIds(nonEntitySqlDao.getRecordIdsFromObjects(toStrings(objectIds), tableName.getTableName()));
+                } else {
+                    return toRecordIdsByIds(nonEntitySqlDao.getTenantRecordIdsFromObjectsOtherThanTenant(toStrings(objectIds), tableName.getTableName()));
+                }
+            }
+        }, objectIds, objectType, tableName, cache);
+    }
+
+    @Override
+    public Map<Long, UUID> retrieveIdsFromObjects(final Collection<Long> recordIds, final ObjectType objectType, @Nullable final CacheController<String, UUID> cache) {
+        final TableName tableName = TableName.fromObjectType(objectType);
+        Preconditions.checkNotNull(tableName, "%s is not a valid ObjectType", objectType);
+
+        final Collection<Long> recordIdsToRetrieve = new ArrayList<Long>(recordIds);
+        if (objectType == ObjectType.TENANT) {
+            recordIdsToRetrieve.remove(InternalCallContextFactory.INTERNAL_TENANT_RECORD_ID);
+        }
+
+        return withBulkCachingRecordId.withCaching(new BulkOperationRetrieval<Long, UUID>() {
+            @Override
+            public Map<Long, UUID> doRetrieve(final List<Long> recordIds) {
+                final Map<Long, UUID> idsByRecordIds = new HashMap<Long, UUID>();
+                for (final RecordIdIdMappings mapping : dbRouter.onDemand(true).getIdsFromObjects(recordIds, tableName.getTableName())) {
+                    idsByRecordIds.put(mapping.getRecordId(), mapping.getId());
+                }
+                return idsByRecordIds;
+            }
+        }, recordIdsToRetrieve, objectType, tableName, cache);
+    }
+
     @Override
     public Long retrieveLastHistoryRecordIdFromTransaction(@Nullable final Long targetRecordId, final TableName tableName, final NonEntitySqlDao transactional) {
         // There is no caching here because the value returned changes as we add more history records, and so we would need some cache invalidation
@@ -171,11 +266,32 @@ public class DefaultNonEntityDao implements NonEntityDao {
         return dbRouter.onDemand(true).getHistoryTargetRecordId(recordId, tableName.getTableName());
     }
 
+    private static List<String> toStrings(final List<UUID> objectIds) {
+        final List<String> result = new ArrayList<String>(objectIds.size());
+        for (final UUID objectId : objectIds) {
+            result.add(objectId.toString());
+        }
+        return result;
+    }
+
+    private static Map<UUID, Long> toRecordIdsByIds(final Iterable<RecordIdIdMappings> mappings) {
+        final Map<UUID, Long> recordIdsByIds = new HashMap<UUID, Long>();
+        for (final RecordIdIdMappings mapping : mappings) {
+            recordIdsByIds.put(mapping.getId(), mapping.getRecordId());
+        }
+        return recordIdsByIds;
+    }
+
     private interface OperationRetrieval<TypeOut> {
 
         public TypeOut doRetrieve(final ObjectType objectType);
     }
 
+    private interface BulkOperationRetrieval<TypeIn, TypeOut> {
+
+        public Map<TypeIn, TypeOut> doRetrieve(final List<TypeIn> objectOrRecordIds);
+    }
+
     // 'cache' will be null for the CacheLoader classes -- or if cache is not configured.
     private class WithCaching<TypeIn, TypeOut> {
 
@@ -201,4 +317,62 @@ public class DefaultNonEntityDao implements NonEntityDao {
             return result;
         }
     }
+
+    // Bulk version of WithCaching: one cache lookup for all keys, then IN queries (by chunks) for the misses
+    private class WithBulkCaching<TypeIn, TypeOut> {
+
+        private Map<TypeIn, TypeOut> withCaching(final BulkOperationRetrieval<TypeIn, TypeOut> op, final Collection<TypeIn> objectOrRecordIds, final ObjectType objectType, final TableName tableName, @Nullable final CacheController<String, TypeOut> cache) {
+            final Map<TypeIn, TypeOut> result = new HashMap<TypeIn, TypeOut>();
+
+            final Map<String, TypeIn> objectOrRecordIdsByKey = new LinkedHashMap<String, TypeIn>();
+            for (final TypeIn objectOrRecordId : objectOrRecordIds) {
+                if (objectOrRecordId != null) {
+                    objectOrRecordIdsByKey.put(buildKey(objectOrRecordId, tableName, cache), objectOrRecordId);
+                }
+            }
+            if (objectOrRecordIdsByKey.isEmpty()) {
+                return result;
+            }
+
+            final List<TypeIn> misses = new ArrayList<TypeIn>();
+            if (cache != null) {
+                final Map<String, TypeOut> cachedValues = cache.getAll(objectOrRecordIdsByKey.keySet());
+                for (final Map.Entry<String, TypeIn> entry : objectOrRecordIdsByKey.entrySet()) {
+                    final TypeOut cachedValue = cachedValues.get(entry.getKey());
+                    if (cachedValue != null) {
+                        result.put(entry.getValue(), cachedValue);
+                    } else {
+                        misses.add(entry.getValue());
+                    }
+                }
+            } else {
+                misses.addAll(objectOrRecordIdsByKey.values());
+            }
+
+            final Profiling<Map<TypeIn, TypeOut>, RuntimeException> prof = new Profiling<Map<TypeIn, TypeOut>, RuntimeException>();
+            for (final List<TypeIn> chunk : Iterables.partition(misses, MAX_IDS_PER_QUERY)) {
+                final Map<TypeIn, TypeOut> retrieved = prof.executeWithProfiling(ProfilingFeatureType.DAO_DETAILS, "NonEntityDao (type = " + objectType + ") bulk cache miss", new WithProfilingCallback<Map<TypeIn, TypeOut>, RuntimeException>() {
+                    @Override
+                    public Map<TypeIn, TypeOut> execute() throws RuntimeException {
+                        return op.doRetrieve(chunk);
+                    }
+                });
+
+                for (final Map.Entry<TypeIn, TypeOut> entry : retrieved.entrySet()) {
+                    result.put(entry.getKey(), entry.getValue());
+                    if (cache != null && entry.getValue() != null) {
+                        cache.putIfAbsent(buildKey(entry.getKey(), tableName, cache), entry.getValue());
+                    }
+                }
+            }
+
+            return result;
+        }
+
+        private String buildKey(final TypeIn objectOrRecordId, final TableName tableName, @Nullable final CacheController<String, TypeOut> cache) {
+            return (cache != null && cache.getCacheType().isKeyPrefixedWithTableName()) ?
+                   tableName + CacheControllerDispatcher.CACHE_KEY_SEPARATOR + objectOrRecordId.toString() :
+                   objectOrRecordId.toString();
+        }
+    }
 }
@@ -16,6 +16,7 @@
 
 package org.killbill.billing.util.dao;
 
+import java.util.Map;
 import java.util.UUID;
 
 import org.joda.time.DateTime;
@@ -32,6 +33,8 @@ public class EntityHistoryModelDao<M extends EntityModelDao<E>, E extends Entity
     private M entity;
     private ChangeType changeType;
     private Long historyRecordId;
+    // Entity properties captured when the history row was queued (see EntityHistoryBinder)
+    private Map<String, Object> entityProperties;
 
     public EntityHistoryModelDao(final UUID id, final M src, final Long targetRecordId, final ChangeType type, final Long historyRecordId, final DateTime createdDate) {
         super(id, createdDate, createdDate);
@@ -76,4 +79,12 @@ public class EntityHistoryModelDao<M extends EntityModelDao<E>, E extends Entity
     public void setHistoryRecordId(final Long historyRecordId) {
         this.historyRecordId = historyRecordId;
     }
+
+    public Map<String, Object> getEntityProperties() {
+        return entityProperties;
+    }
+
+    public void setEntityProperties(final Map<String, Object> entityProperties) {
+        this.entityProperties = entityProperties;
+    }
 }
@@ -18,6 +18,7 @@
 
 package org.killbill.billing.util.dao;
 
+import java.util.Collection;
 import java.util.UUID;
 
 import org.killbill.billing.callcontext.InternalTenantContext;
@@ -28,6 +29,7 @@ import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.customizers.Define;
 import org.skife.jdbi.v2.sqlobject.mixins.CloseMe;
 import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
+import org.skife.jdbi.v2.unstable.BindIn;
 
 @KillBillSqlDaoStringTemplate
 public interface NonEntitySqlDao extends Transactional<NonEntitySqlDao>, CloseMe {
@@ -38,6 +40,12 @@ public interface NonEntitySqlDao extends Transactional<NonEntitySqlDao>, CloseMe
     @SqlQuery
     public UUID getIdFromObject(@Bind("recordId") Long recordId, @Define("tableName") final String tableName);
 
+    @SqlQuery
+    public Iterable<RecordIdIdMappings> getRecordIdsFromObjects(@BindIn("ids") Collection<String> ids, @Define("tableName") final String tableName);
+
+    @SqlQuery
+    public Iterable<RecordIdIdMappings> getIdsFromObjects(@BindIn("recordIds") Collection<Long> recordIds, @Define("tableName") final String tableName);
+
     @SqlQuery
     public Long getAccountRecordIdFromAccount(@Bind("id") String id);
 
@@ -47,12 +55,20 @@ public interface NonEntitySqlDao extends Transactional<NonEntitySqlDao>, CloseMe
     @SqlQuery
     public Long getAccountRecordIdFromObjectOtherThanAccount(@Bind("id") String id, @Define("tableName") final String tableName);
 
+    // The account_record_id is returned as record_id
+    @SqlQuery
+    public Iterable<RecordIdIdMappings> getAccountRecordIdsFromObjectsOtherThanAccount(@BindIn("ids") Collection<String> ids, @Define("tableName") final String tableName);
+
     @SqlQuery
     public Long getTenantRecordIdFromTenant(@Bind("id") String id);
 
     @SqlQuery
     public Long getTenantRecordIdFromObjectOtherThanTenant(@Bind("id") String id, @Define("tableName") final String tableName);
 
+    // The tenant_record_id is returned as record_id
+    @SqlQuery
+    public Iterable<RecordIdIdMappings> getTenantRecordIdsFromObjectsOtherThanTenant(@BindIn("ids") Collection<String> ids, @Define("tableName") final String tableName);
+
     @SqlQuery
     public Long getLastHistoryRecordId(@Bind("targetRecordId") Long targetRecordId, @Define("tableName") final String tableName);
 
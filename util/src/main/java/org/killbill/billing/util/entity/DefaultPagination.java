@@ -35,6 +35,7 @@ public class DefaultPagination<T> implements Pagination<T>, Closeable {
     private final Long limit;
     private final Long totalNbRecords;
     private final Long maxNbRecords;
+    private final Long pageLastRecordId;
     private final Iterator<T> delegateIterator;
 
     // Builders when the streaming API can't be used (should only be used for tests)
@@ -59,7 +60,12 @@ public class DefaultPagination<T> implements Pagination<T>, Closeable {
 
     // Constructor for DAO -> API bridge
     public DefaultPagination(final Pagination original, final Long limit, final Iterator<T> delegate) {
-        this(original.getCurrentOffset(), limit, original.getTotalNbRecords(), original.getMaxNbRecords(), delegate);
+        this(original.getCurrentOffset(),
+             limit,
+             original.getTotalNbRecords(),
+             original.getMaxNbRecords(),
+             original instanceof DefaultPagination ? ((DefaultPagination) original).getPageLastRecordId() : null,
+             delegate);
     }
 
     // Constructor for DAO getAll calls
@@ -70,11 +76,18 @@ public class DefaultPagination<T> implements Pagination<T>, Closeable {
     public DefaultPagination(final Long currentOffset, final Long limit,
                              @Nullable final Long totalNbRecords, @Nullable final Long maxNbRecords,
                              final Iterator<T> delegateIterator) {
+        this(currentOffset, limit, totalNbRecords, maxNbRecords, null, delegateIterator);
+    }
+
+    public DefaultPagination(final Long currentOffset, final Long limit,
+                             @Nullable final Long totalNbRecords, @Nullable final Long maxNbRecords,
+                             @Nullable final Long pageLastRecordId, final Iterator<T> delegateIterator) {
         this.currentOffset = currentOffset;
         // See DefaultPaginationSqlDaoHelper
         this.limit = Math.abs(limit);
         this.totalNbRecords = totalNbRecords;
         this.maxNbRecords = maxNbRecords;
+        this.pageLastRecordId = pageLastRecordId;
         this.delegateIterator = delegateIterator;
     }
 
@@ -125,6 +138,11 @@ public class DefaultPagination<T> implements Pagination<T>, Closeable {
         return totalNbRecords;
     }
 
+    // Record id of the last record of the page, to seek the next page from (null if unknown or if the page isn't full)
+    public Long getPageLastRecordId() {
+        return pageLastRecordId;
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("DefaultPagination{");
@@ -17,6 +17,8 @@
 
 package org.killbill.billing.util.entity.dao;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.killbill.commons.profiling.Profiling.WithProfilingCallback;
 import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.IDBI;
@@ -40,6 +42,11 @@ public class DBRouterUntyped {
         }
     };
 
+    // Routing statistics, shared by all routers
+    private static final AtomicLong NB_RO_ROUTED_CALLS = new AtomicLong(0);
+    private static final AtomicLong NB_RW_ROUTED_CALLS = new AtomicLong(0);
+    private static final AtomicLong NB_RO_REDIRECTED_CALLS = new AtomicLong(0);
+
     protected final IDBI dbi;
     protected final IDBI roDbi;
 
@@ -65,20 +72,39 @@ public class DBRouterUntyped {
         return CURRENT_THREAD_STATE.get();
     }
 
+    // Number of calls sent to the RO instance
+    public static long getNbRORoutedCalls() {
+        return NB_RO_ROUTED_CALLS.get();
+    }
+
+    // Number of calls sent to the RW instance (including the redirected ones)
+    public static long getNbRWRoutedCalls() {
+        return NB_RW_ROUTED_CALLS.get();
+    }
+
+    // Number of RO requests which were sent to the RW instance because of a previous write
+    public static long getNbRORedirectedCalls() {
+        return NB_RO_REDIRECTED_CALLS.get();
+    }
+
     boolean shouldUseRODBI(final boolean requestedRO) {
         if (requestedRO) {
             if (isRODBIAllowed()) {
                 logger.debug("Using RO DBI");
+                NB_RO_ROUTED_CALLS.incrementAndGet();
                 return true;
             } else {
                 // Redirect to the rw instance, to work-around any replication delay
                 logger.debug("RO DBI requested, but thread state is {}, using RW DBI", getCurrentState());
+                NB_RO_REDIRECTED_CALLS.incrementAndGet();
+                NB_RW_ROUTED_CALLS.incrementAndGet();
                 return false;
             }
         } else {
             // Disable RO DBI for future calls in this thread
             disallowRODBI();
             logger.debug("Using RW DBI");
+            NB_RW_ROUTED_CALLS.incrementAndGet();
             return false;
         }
     }
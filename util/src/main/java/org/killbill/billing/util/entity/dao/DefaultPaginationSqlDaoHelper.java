@@ -51,6 +51,16 @@ public class DefaultPaginationSqlDaoHelper {
                                                                                                                      final Long offset,
                                                                                                                      final Long limitMaybeNegative,
                                                                                                                      @Nullable final InternalTenantContext context) {
+        return getPagination(sqlDaoClazz, paginationIteratorBuilder, offset, null, limitMaybeNegative, context);
+    }
+
+    // When lastRecordId is specified (and supported by the builder), the page is read by seeking past that record instead of scanning offset records
+    public <E extends Entity, M extends EntityModelDao<E>, S extends EntitySqlDao<M, E>> Pagination<M> getPagination(final Class<? extends EntitySqlDao<M, E>> sqlDaoClazz,
+                                                                                                                     final PaginationIteratorBuilder<M, E, S> paginationIteratorBuilder,
+                                                                                                                     final Long offset,
+                                                                                                                     @Nullable final Long lastRecordId,
+                                                                                                                     final Long limitMaybeNegative,
+                                                                                                                     @Nullable final InternalTenantContext context) {
         // Use a negative limit as a hint to go backwards. It's a bit awkward -- using a negative offset instead would be more intuitive,
         // but it is non-deterministic for the first page unfortunately (limit 0 offset 50: ASC or DESC?)
         final Ordering ordering = limitMaybeNegative >= 0 ? Ordering.ASC : Ordering.DESC;
@@ -102,11 +112,29 @@ public class DefaultPaginationSqlDaoHelper {
                 maxNbRecords = sqlDao.getCount(context);
             }
         }
-        final Iterator<M> results = paginationIteratorBuilder.build((S) sqlDao, offset, limit, ordering, context);
+
+        // Record id of the last record of this page, which the next page can seek from. Needs to be computed before
+        // streaming the results out (the connection will be busy), but only scans the primary key.
+        final boolean seekFromRecordId = lastRecordId != null && paginationIteratorBuilder.supportsRecordIdPagination();
+        final Long pageLastRecordId;
+        if (!paginationIteratorBuilder.supportsRecordIdPagination() || limit == 0) {
+            pageLastRecordId = null;
+        } else if (seekFromRecordId) {
+            pageLastRecordId = paginationIteratorBuilder.getPageLastRecordId((S) sqlDao, lastRecordId, limit - 1, ordering, context);
+        } else {
+            pageLastRecordId = paginationIteratorBuilder.getPageLastRecordId((S) sqlDao, ordering.getRecordIdBeforeFirst(), offset + limit - 1, ordering, context);
+        }
+
+        final Iterator<M> results;
+        if (seekFromRecordId) {
+            results = paginationIteratorBuilder.buildFromRecordId((S) sqlDao, lastRecordId, limit, ordering, context);
+        } else {
+            results = paginationIteratorBuilder.build((S) sqlDao, offset, limit, ordering, context);
+        }
 
         final Long totalNbRecords = totalNbRecordsOrNull == null ? maxNbRecords : totalNbRecordsOrNull;
 
-        return new DefaultPagination<M>(offset, limit, totalNbRecords, maxNbRecords, results);
+        return new DefaultPagination<M>(offset, limit, totalNbRecords, maxNbRecords, pageLastRecordId, results);
     }
 
     public abstract static class PaginationIteratorBuilder<M extends EntityModelDao<E>, E extends Entity, S extends EntitySqlDao<M, E>> {
@@ -117,10 +145,41 @@ public class DefaultPaginationSqlDaoHelper {
         public abstract Long getCount(final S sqlDao, final InternalTenantContext context);
 
         public abstract Iterator<M> build(final S sqlDao, final Long offset, final Long limit, final Ordering ordering, final InternalTenantContext context);
+
+        // Keyset pagination, for queries ordered by record_id
+        public boolean supportsRecordIdPagination() {
+            return false;
+        }
+
+        public Iterator<M> buildFromRecordId(final S sqlDao, final Long lastRecordId, final Long limit, final Ordering ordering, final InternalTenantContext context) {
+            throw new UnsupportedOperationException();
+        }
+
+        public Long getPageLastRecordId(final S sqlDao, final Long lastRecordId, final Long pageOffset, final Ordering ordering, final InternalTenantContext context) {
+            throw new UnsupportedOperationException();
+        }
     }
 
     public enum Ordering {
-        ASC,
-        DESC
+        ASC(">", 0L),
+        DESC("<", Long.MAX_VALUE);
+
+        private final String comparator;
+        private final Long recordIdBeforeFirst;
+
+        Ordering(final String comparator, final Long recordIdBeforeFirst) {
+            this.comparator = comparator;
+            this.recordIdBeforeFirst = recordIdBeforeFirst;
+        }
+
+        // Comparator to seek the records after a given record id
+        public String getComparator() {
+            return comparator;
+        }
+
+        // Record id to seek from to start at the first record
+        public Long getRecordIdBeforeFirst() {
+            return recordIdBeforeFirst;
+        }
     }
 }
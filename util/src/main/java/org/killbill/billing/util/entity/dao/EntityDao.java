@@ -18,6 +18,8 @@ package org.killbill.billing.util.entity.dao;
 
 import java.util.UUID;
 
+import javax.annotation.Nullable;
+
 import org.killbill.billing.BillingExceptionBase;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
@@ -38,6 +40,9 @@ public interface EntityDao<M extends EntityModelDao<E>, E extends Entity, U exte
 
     public Pagination<M> get(Long offset, Long limit, InternalTenantContext context);
 
+    // Same as get, but seeks past lastRecordId (if not null) instead of scanning offset records
+    public Pagination<M> get(Long offset, @Nullable Long lastRecordId, Long limit, InternalTenantContext context);
+
     public Long getCount(InternalTenantContext context);
 
     public void test(InternalTenantContext context);
@@ -25,6 +25,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 
+import javax.annotation.Nullable;
+
 import org.killbill.billing.BillingExceptionBase;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
@@ -185,6 +187,11 @@ public abstract class EntityDaoBase<M extends EntityModelDao<E>, E extends Entit
 
     @Override
     public Pagination<M> get(final Long offset, final Long limit, final InternalTenantContext context) {
+        return get(offset, null, limit, context);
+    }
+
+    @Override
+    public Pagination<M> get(final Long offset, @Nullable final Long lastRecordId, final Long limit, final InternalTenantContext context) {
         return paginationHelper.getPagination(realSqlDao,
                                               new PaginationIteratorBuilder<M, E, EntitySqlDao<M, E>>() {
                                                   @Override
@@ -197,8 +204,24 @@ public abstract class EntityDaoBase<M extends EntityModelDao<E>, E extends Entit
                                                   public Iterator<M> build(final EntitySqlDao<M, E> sqlDao, final Long offset, final Long limit, final Ordering ordering, final InternalTenantContext context) {
                                                       return sqlDao.get(offset, limit, getNaturalOrderingColumns(), ordering.toString(), context);
                                                   }
+
+                                                  @Override
+                                                  public boolean supportsRecordIdPagination() {
+                                                      return "record_id".equals(getNaturalOrderingColumns());
+                                                  }
+
+                                                  @Override
+                                                  public Iterator<M> buildFromRecordId(final EntitySqlDao<M, E> sqlDao, final Long lastRecordId, final Long limit, final Ordering ordering, final InternalTenantContext context) {
+                                                      return sqlDao.getFromRecordId(lastRecordId, limit, ordering.getComparator(), ordering.toString(), context);
+                                                  }
+
+                                                  @Override
+                                                  public Long getPageLastRecordId(final EntitySqlDao<M, E> sqlDao, final Long lastRecordId, final Long pageOffset, final Ordering ordering, final InternalTenantContext context) {
+                                                      return sqlDao.getPageLastRecordId(lastRecordId, pageOffset, ordering.getComparator(), ordering.toString(), context);
+                                                  }
                                               },
                                               offset,
+                                              lastRecordId,
                                               limit,
                                               context);
     }
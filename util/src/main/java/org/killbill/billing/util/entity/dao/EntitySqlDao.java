@@ -18,6 +18,7 @@
 
 package org.killbill.billing.util.entity.dao;
 
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 
@@ -35,24 +36,39 @@ import org.killbill.commons.jdbi.statement.SmartFetchSize;
 import org.killbill.commons.jdbi.template.KillBillSqlDaoStringTemplate;
 import org.skife.jdbi.v2.sqlobject.Bind;
 import org.killbill.commons.jdbi.binder.SmartBindBean;
+import org.skife.jdbi.v2.sqlobject.GetGeneratedKeys;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
 import org.skife.jdbi.v2.sqlobject.SqlQuery;
 import org.skife.jdbi.v2.sqlobject.SqlUpdate;
 import org.skife.jdbi.v2.sqlobject.customizers.Define;
 import org.skife.jdbi.v2.sqlobject.mixins.CloseMe;
 import org.skife.jdbi.v2.sqlobject.mixins.Transactional;
+import org.skife.jdbi.v2.unstable.BindIn;
+import org.skife.jdbi.v2.util.LongMapper;
 
 @KillBillSqlDaoStringTemplate
 public interface EntitySqlDao<M extends EntityModelDao<E>, E extends Entity> extends AuditSqlDao, HistorySqlDao<M, E>, Transactional<EntitySqlDao<M, E>>, CloseMe {
 
+    // The record id is returned to the wrapper, which overrides it with the created entity (see EntitySqlDaoWrapperInvocationHandler)
     @SqlUpdate
+    @GetGeneratedKeys(LongMapper.class)
     @Audited(ChangeType.INSERT)
     public Object create(@SmartBindBean final M entity,
                          @SmartBindBean final InternalCallContext context) throws EntityPersistenceException;
 
+    @SqlBatch
+    @Audited(ChangeType.INSERT)
+    public void create(@SmartBindBean final Iterable<M> entities,
+                       @SmartBindBean final InternalCallContext context) throws EntityPersistenceException;
+
     @SqlQuery
     public M getById(@Bind("id") final String id,
                      @SmartBindBean final InternalTenantContext context);
 
+    @SqlQuery
+    public List<M> getByIds(@BindIn("ids") final Collection<String> ids,
+                            @SmartBindBean final InternalTenantContext context);
+
     @SqlQuery
     public M getByRecordId(@Bind("recordId") final Long recordId,
                            @SmartBindBean final InternalTenantContext context);
@@ -94,6 +110,21 @@ public interface EntitySqlDao<M extends EntityModelDao<E>, E extends Entity> ext
                            @Define("ordering") final String ordering,
                            @SmartBindBean final InternalTenantContext context);
 
+    @SqlQuery
+    @SmartFetchSize(shouldStream = true)
+    public Iterator<M> getFromRecordId(@Bind("lastRecordId") final Long lastRecordId,
+                                       @Bind("rowCount") final Long rowCount,
+                                       @Define("comparator") final String comparator,
+                                       @Define("ordering") final String ordering,
+                                       @SmartBindBean final InternalTenantContext context);
+
+    @SqlQuery
+    public Long getPageLastRecordId(@Bind("lastRecordId") final Long lastRecordId,
+                                    @Bind("pageOffset") final Long pageOffset,
+                                    @Define("comparator") final String comparator,
+                                    @Define("ordering") final String ordering,
+                                    @SmartBindBean final InternalTenantContext context);
+
     @SqlQuery
     public Long getCount(@SmartBindBean final InternalTenantContext context);
 
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.entity.dao;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.util.audit.ChangeType;
+import org.killbill.billing.util.cache.CacheControllerDispatcher;
+import org.killbill.billing.util.dao.EntityAudit;
+import org.killbill.billing.util.dao.EntityHistoryModelDao;
+import org.killbill.billing.util.dao.RecordIdIdMappings;
+import org.killbill.billing.util.dao.TableName;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * History and audit entries generated during a transaction. Instead of inserting one history row and one audit_log row
+ * per audited call, entries are queued and written in batches right before the transaction commits: the history rows first,
+ * as the audit entries point to their record ids.
+ *
+ * @see EntitySqlDaoTransactionalJdbiWrapper
+ */
+class EntitySqlDaoAuditBuffer {
+
+    // Maximum number of ids in a single IN clause
+    private static final int MAX_IDS_PER_QUERY = 1000;
+
+    private final List<BufferedAudit> bufferedAudits = new ArrayList<BufferedAudit>();
+
+    private final CacheControllerDispatcher cacheControllerDispatcher;
+
+    EntitySqlDaoAuditBuffer(@Nullable final CacheControllerDispatcher cacheControllerDispatcher) {
+        this.cacheControllerDispatcher = cacheControllerDispatcher;
+    }
+
+    /**
+     * Queue the audit entry of an entity without history table (the audit entry points to the entity record id).
+     */
+    void add(final EntitySqlDao sqlDao, final TableName tableName, final Long entityRecordId, final ChangeType changeType, final InternalCallContext context) {
+        bufferedAudits.add(new BufferedAudit(sqlDao, tableName, entityRecordId, null, changeType, context));
+    }
+
+    /**
+     * Queue the history row of an entity and its audit entry (the audit entry points to the history record id).
+     */
+    void add(final EntitySqlDao sqlDao, final TableName tableName, final Long entityRecordId, final EntityHistoryModelDao history, final ChangeType changeType, final InternalCallContext context) {
+        bufferedAudits.add(new BufferedAudit(sqlDao, tableName, entityRecordId, history, changeType, context));
+    }
+
+    void flush() {
+        insertHistories();
+        insertAudits();
+
+        for (final BufferedAudit bufferedAudit : bufferedAudits) {
+            EntitySqlDaoWrapperInvocationHandler.invalidateAuditLogsCache(cacheControllerDispatcher, bufferedAudit.tableName, bufferedAudit.entityRecordId);
+        }
+        bufferedAudits.clear();
+    }
+
+    /**
+     * Insert all queued history rows: consecutive rows for the same table sharing the same context are inserted in a single batch.
+     */
+    private void insertHistories() {
+        int batchStart = 0;
+        while (batchStart < bufferedAudits.size()) {
+            final BufferedAudit first = bufferedAudits.get(batchStart);
+            if (first.history == null) {
+                batchStart++;
+                continue;
+            }
+
+            final List<BufferedAudit> batch = new ArrayList<BufferedAudit>();
+            int batchEnd = batchStart;
+            while (batchEnd < bufferedAudits.size() && isSameHistoryBatch(first, bufferedAudits.get(batchEnd))) {
+                batch.add(bufferedAudits.get(batchEnd));
+                batchEnd++;
+            }
+
+            if (batch.size() == 1) {
+                first.targetRecordId = first.sqlDao.addHistoryFromTransaction(first.history, first.context);
+            } else {
+                insertHistories(batch);
+            }
+            batchStart = batchEnd;
+        }
+    }
+
+    private void insertHistories(final List<BufferedAudit> batch) {
+        final BufferedAudit first = batch.get(0);
+
+        final List<EntityHistoryModelDao> histories = new ArrayList<EntityHistoryModelDao>(batch.size());
+        final Set<Long> entityRecordIds = new LinkedHashSet<Long>();
+        for (final BufferedAudit bufferedAudit : batch) {
+            histories.add(bufferedAudit.history);
+            entityRecordIds.add(bufferedAudit.entityRecordId);
+        }
+        first.sqlDao.addHistoriesFromTransaction(histories, first.context);
+
+        // The history rows are identified by their id, as an entity may have other history rows than the ones we've just inserted
+        final Map<UUID, Long> historyRecordIdByHistoryId = new HashMap<UUID, Long>();
+        for (final List<Long> entityRecordIdsChunk : Lists.partition(ImmutableList.<Long>copyOf(entityRecordIds), MAX_IDS_PER_QUERY)) {
+            for (final RecordIdIdMappings mapping : (List<RecordIdIdMappings>) first.sqlDao.getHistoryRecordIdIdMappingsByTargetRecordIds(entityRecordIdsChunk, first.context)) {
+                historyRecordIdByHistoryId.put(mapping.getId(), mapping.getRecordId());
+            }
+        }
+        for (final BufferedAudit bufferedAudit : batch) {
+            bufferedAudit.targetRecordId = historyRecordIdByHistoryId.get(bufferedAudit.history.getId());
+            Preconditions.checkState(bufferedAudit.targetRecordId != null, "Unable to find the history record id of %s", bufferedAudit.history.getId());
+        }
+    }
+
+    private boolean isSameHistoryBatch(final BufferedAudit first, final BufferedAudit other) {
+        return other.history != null && other.tableName == first.tableName && other.context == first.context;
+    }
+
+    /**
+     * Insert all queued audit entries: consecutive entries sharing the same context (usually all of them)
+     * are inserted in a single batch.
+     */
+    private void insertAudits() {
+        int batchStart = 0;
+        while (batchStart < bufferedAudits.size()) {
+            final BufferedAudit first = bufferedAudits.get(batchStart);
+
+            final List<EntityAudit> audits = new ArrayList<EntityAudit>();
+            int batchEnd = batchStart;
+            while (batchEnd < bufferedAudits.size() && bufferedAudits.get(batchEnd).context == first.context) {
+                audits.add(bufferedAudits.get(batchEnd).toEntityAudit());
+                batchEnd++;
+            }
+
+            if (audits.size() == 1) {
+                first.sqlDao.insertAuditFromTransaction(audits.get(0), first.context);
+            } else {
+                first.sqlDao.insertAuditsFromTransaction(audits, first.context);
+            }
+            batchStart = batchEnd;
+        }
+    }
+
+    private static final class BufferedAudit {
+
+        private final EntitySqlDao sqlDao;
+        private final TableName tableName;
+        private final Long entityRecordId;
+        private final EntityHistoryModelDao history;
+        private final ChangeType changeType;
+        private final InternalCallContext context;
+        // Record id the audit entry points to: the history record id (known once the history row is inserted) or the entity record id
+        private Long targetRecordId;
+
+        private BufferedAudit(final EntitySqlDao sqlDao, final TableName tableName, final Long entityRecordId, @Nullable final EntityHistoryModelDao history, final ChangeType changeType, final InternalCallContext context) {
+            this.sqlDao = sqlDao;
+            this.tableName = tableName;
+            this.entityRecordId = entityRecordId;
+            this.history = history;
+            this.changeType = changeType;
+            this.context = context;
+            this.targetRecordId = history == null ? entityRecordId : null;
+        }
+
+        private EntityAudit toEntityAudit() {
+            final TableName destinationTableName = MoreObjects.firstNonNull(tableName.getHistoryTableName(), tableName);
+            return new EntityAudit(destinationTableName, targetRecordId, changeType, context.getCreatedDate());
+        }
+    }
+}
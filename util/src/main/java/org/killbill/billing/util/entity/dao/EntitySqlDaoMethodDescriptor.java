@@ -0,0 +1,431 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.entity.dao;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.util.cache.Cachable;
+import org.killbill.billing.util.cache.CachableKey;
+import org.killbill.billing.util.dao.TableName;
+import org.killbill.billing.util.entity.Entity;
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.GetGeneratedKeys;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
+import org.skife.jdbi.v2.sqlobject.SqlUpdate;
+import org.skife.jdbi.v2.unstable.BindIn;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableList.Builder;
+
+/**
+ * Everything EntitySqlDaoWrapperInvocationHandler needs to know about a given (EntitySqlDao class, method) pair.
+ * <p/>
+ * It is computed once via reflection and shared by all the handlers, which are created for each transaction (see EntitySqlDaoWrapperFactory#become).
+ */
+final class EntitySqlDaoMethodDescriptor {
+
+    private static final ConcurrentMap<Class<?>, ConcurrentMap<Method, EntitySqlDaoMethodDescriptor>> descriptorsBySqlDaoClass = new ConcurrentHashMap<Class<?>, ConcurrentMap<Method, EntitySqlDaoMethodDescriptor>>();
+
+    private enum EntityIdArgumentType {
+        // Entity or Iterable<Entity>, depending on the runtime value
+        ENTITY_OR_ENTITIES,
+        // @Bind("id") String
+        BIND_ID,
+        // @BindIn("ids") Collection<String>
+        BIND_IN_IDS
+    }
+
+    private final Class<?> sqlDaoClass;
+    private final Method method;
+    private final Audited auditedAnnotation;
+    private final Cachable cachableAnnotation;
+    private final boolean requestCachable;
+    // Whether the method modifies the database (audited or not)
+    private final boolean write;
+    private final ObjectType objectType;
+    private final TableName tableName;
+    private final boolean getById;
+    // Whether the method returns the record id generated by the database (e.g. create calls)
+    private final boolean generatedKeys;
+    private final boolean softDeletionSupported;
+    // Index of the arguments making the cache key, ordered by @CachableKey position
+    private final int[] cachableKeyArgumentIndexes;
+    private final int tenantContextArgumentIndex;
+    private final int callContextArgumentIndex;
+    // Arguments which can hold the entity ids, in the order they are inspected
+    private final int[] entityIdArgumentIndexes;
+    private final EntityIdArgumentType[] entityIdArgumentTypes;
+
+    private final String profilingId;
+    private final String rawProfilingId;
+    private final String historyAndAuditProfilingId;
+
+    static EntitySqlDaoMethodDescriptor get(final Class<?> sqlDaoClass, final Method method) throws InstantiationException, IllegalAccessException {
+        ConcurrentMap<Method, EntitySqlDaoMethodDescriptor> descriptorsByMethod = descriptorsBySqlDaoClass.get(sqlDaoClass);
+        if (descriptorsByMethod == null) {
+            descriptorsBySqlDaoClass.putIfAbsent(sqlDaoClass, new ConcurrentHashMap<Method, EntitySqlDaoMethodDescriptor>());
+            descriptorsByMethod = descriptorsBySqlDaoClass.get(sqlDaoClass);
+        }
+
+        EntitySqlDaoMethodDescriptor descriptor = descriptorsByMethod.get(method);
+        if (descriptor == null) {
+            // Racing threads will compute the same descriptor
+            descriptor = new EntitySqlDaoMethodDescriptor(sqlDaoClass, method);
+            descriptorsByMethod.put(method, descriptor);
+        }
+        return descriptor;
+    }
+
+    private EntitySqlDaoMethodDescriptor(final Class<?> sqlDaoClass, final Method method) throws InstantiationException, IllegalAccessException {
+        this.sqlDaoClass = sqlDaoClass;
+        this.method = method;
+        this.auditedAnnotation = method.getAnnotation(Audited.class);
+        this.cachableAnnotation = method.getAnnotation(Cachable.class);
+        this.requestCachable = isRequestCachable(sqlDaoClass, method);
+        this.write = auditedAnnotation != null || method.isAnnotationPresent(SqlUpdate.class) || method.isAnnotationPresent(SqlBatch.class);
+        this.getById = "getById".equals(method.getName());
+        this.generatedKeys = method.isAnnotationPresent(GetGeneratedKeys.class);
+
+        final Class<? extends EntityModelDao<?>> entityModelDaoClass = getEntityModelDaoClass(sqlDaoClass);
+        // Only needed to build the cache loader argument
+        this.objectType = cachableAnnotation != null && entityModelDaoClass != null ? entityModelDaoClass.newInstance().getTableName().getObjectType() : null;
+        // Writes are attributed to the table of the model (see EntityWriteVersions)
+        this.tableName = write ? getTableName(entityModelDaoClass) : null;
+        // Soft deletion is only implemented for entities with an is_active flag (andCheckSoftDeletionWithComma), assume it is supported if we can't tell
+        this.softDeletionSupported = entityModelDaoClass == null || hasIsActiveFlag(entityModelDaoClass);
+
+        final Class<?>[] parameterTypes = method.getParameterTypes();
+        final Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+
+        final Map<Integer, Integer> cachableKeyArgumentIndexByPosition = new TreeMap<Integer, Integer>();
+        final List<Integer> entityIdArgumentIndexes = new ArrayList<Integer>();
+        final List<EntityIdArgumentType> entityIdArgumentTypes = new ArrayList<EntityIdArgumentType>();
+        int tenantContextArgumentIndex = -1;
+        int callContextArgumentIndex = -1;
+        for (int i = 0; i < parameterTypes.length; i++) {
+            final Class<?> parameterType = parameterTypes[i];
+            if (tenantContextArgumentIndex == -1 && InternalTenantContext.class.isAssignableFrom(parameterType)) {
+                tenantContextArgumentIndex = i;
+            }
+            if (callContextArgumentIndex == -1 && InternalCallContext.class.isAssignableFrom(parameterType)) {
+                callContextArgumentIndex = i;
+            }
+
+            if (mayBeEntityOrEntities(parameterType)) {
+                entityIdArgumentIndexes.add(i);
+                entityIdArgumentTypes.add(EntityIdArgumentType.ENTITY_OR_ENTITIES);
+            }
+
+            for (final Annotation annotation : parameterAnnotations[i]) {
+                if (CachableKey.class.equals(annotation.annotationType())) {
+                    cachableKeyArgumentIndexByPosition.put(((CachableKey) annotation).value(), i);
+                } else if (Bind.class.equals(annotation.annotationType()) && ("id").equals(((Bind) annotation).value())) {
+                    entityIdArgumentIndexes.add(i);
+                    entityIdArgumentTypes.add(EntityIdArgumentType.BIND_ID);
+                } else if (BindIn.class.equals(annotation.annotationType()) && ("ids").equals(((BindIn) annotation).value())) {
+                    entityIdArgumentIndexes.add(i);
+                    entityIdArgumentTypes.add(EntityIdArgumentType.BIND_IN_IDS);
+                }
+            }
+        }
+
+        this.cachableKeyArgumentIndexes = toArray(cachableKeyArgumentIndexByPosition.values());
+        this.tenantContextArgumentIndex = tenantContextArgumentIndex;
+        this.callContextArgumentIndex = callContextArgumentIndex;
+        this.entityIdArgumentIndexes = toArray(entityIdArgumentIndexes);
+        this.entityIdArgumentTypes = entityIdArgumentTypes.toArray(new EntityIdArgumentType[entityIdArgumentTypes.size()]);
+
+        this.profilingId = sqlDaoClass.getSimpleName() + ": " + method.getName();
+        this.rawProfilingId = sqlDaoClass.getSimpleName() + " (raw): " + method.getName();
+        this.historyAndAuditProfilingId = sqlDaoClass.getSimpleName() + " (history/audit)";
+    }
+
+    Audited getAuditedAnnotation() {
+        return auditedAnnotation;
+    }
+
+    Cachable getCachableAnnotation() {
+        return cachableAnnotation;
+    }
+
+    boolean isRequestCachable() {
+        return requestCachable;
+    }
+
+    boolean isWrite() {
+        return write;
+    }
+
+    ObjectType getObjectType() {
+        return objectType;
+    }
+
+    @Nullable
+    TableName getTableName() {
+        return tableName;
+    }
+
+    boolean isGetById() {
+        return getById;
+    }
+
+    boolean hasGeneratedKeys() {
+        return generatedKeys;
+    }
+
+    boolean isSoftDeletionSupported() {
+        return softDeletionSupported;
+    }
+
+    String getProfilingId() {
+        return profilingId;
+    }
+
+    String getRawProfilingId() {
+        return rawProfilingId;
+    }
+
+    String getHistoryAndAuditProfilingId() {
+        return historyAndAuditProfilingId;
+    }
+
+    Object[] getCacheKeyPieces(final Object[] args) {
+        final Object[] keyPieces = new Object[cachableKeyArgumentIndexes.length];
+        for (int i = 0; i < cachableKeyArgumentIndexes.length; i++) {
+            keyPieces[i] = args[cachableKeyArgumentIndexes[i]];
+        }
+        return keyPieces;
+    }
+
+    // All arguments but the context, which holds the request cache
+    List<Object> getRequestCacheKey(final Object[] args) {
+        final List<Object> key = new ArrayList<Object>(args.length + 2);
+        key.add(sqlDaoClass);
+        key.add(method);
+        for (final Object arg : args) {
+            if (!(arg instanceof InternalTenantContext)) {
+                key.add(arg);
+            }
+        }
+        return key;
+    }
+
+    @Nullable
+    InternalTenantContext getTenantContext(final Object[] args) {
+        if (tenantContextArgumentIndex >= 0) {
+            return (InternalTenantContext) args[tenantContextArgumentIndex];
+        }
+        // Context not declared as such (shouldn't happen)
+        for (final Object arg : args) {
+            if (arg instanceof InternalTenantContext) {
+                return (InternalTenantContext) arg;
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    InternalCallContext getCallContext(final Object[] args) {
+        if (callContextArgumentIndex >= 0) {
+            return (InternalCallContext) args[callContextArgumentIndex];
+        }
+        // Context not declared as such (shouldn't happen)
+        for (final Object arg : args) {
+            if (arg instanceof InternalCallContext) {
+                return (InternalCallContext) arg;
+            }
+        }
+        return null;
+    }
+
+    List<String> getEntityIds(final Object[] args) {
+        for (int i = 0; i < entityIdArgumentIndexes.length; i++) {
+            final Object arg = args[entityIdArgumentIndexes[i]];
+            switch (entityIdArgumentTypes[i]) {
+                case ENTITY_OR_ENTITIES:
+                    // Assume the first argument of type Entity is our type of Entity (type U here)
+                    // This is true for e.g. create calls
+                    if (arg instanceof Entity) {
+                        return ImmutableList.<String>of(((Entity) arg).getId().toString());
+                    }
+                    // For Batch calls, the first argument will be of type List<Entity>
+                    if (arg instanceof Iterable) {
+                        final List<String> entityIds = extractEntityIdsFromBatchArgument((Iterable) arg);
+                        if (entityIds != null) {
+                            return entityIds;
+                        }
+                    }
+                    break;
+                case BIND_ID:
+                    if (arg instanceof String) {
+                        return ImmutableList.<String>of((String) arg);
+                    }
+                    break;
+                case BIND_IN_IDS:
+                    if (arg instanceof Collection) {
+                        return ImmutableList.<String>copyOf((Collection) arg);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return ImmutableList.<String>of();
+    }
+
+    // The entity passed to e.g. create calls, if any
+    @Nullable
+    Entity getEntity(final Object[] args) {
+        for (int i = 0; i < entityIdArgumentIndexes.length; i++) {
+            final Object arg = args[entityIdArgumentIndexes[i]];
+            if (entityIdArgumentTypes[i] == EntityIdArgumentType.ENTITY_OR_ENTITIES && arg instanceof Entity) {
+                return (Entity) arg;
+            }
+        }
+        return null;
+    }
+
+    private static List<String> extractEntityIdsFromBatchArgument(final Iterable arg) {
+        final Builder<String> entityIds = new Builder<String>();
+        for (final Object object : arg) {
+            if (!(object instanceof Entity)) {
+                // No good - ignore
+                return null;
+            } else {
+                entityIds.add(((Entity) object).getId().toString());
+            }
+        }
+        return entityIds.build();
+    }
+
+    // Conservative: the check on the actual value is done at runtime
+    private static boolean mayBeEntityOrEntities(final Class<?> parameterType) {
+        return Entity.class.isAssignableFrom(parameterType) ||
+               parameterType.isAssignableFrom(Entity.class) ||
+               Iterable.class.isAssignableFrom(parameterType) ||
+               parameterType.isAssignableFrom(Iterable.class);
+    }
+
+    // Generic reads (e.g. getByAccountRecordId) are opted in by redeclaring them in the Sql dao, but the proxy can hand us the EntitySqlDao method
+    private static boolean isRequestCachable(final Class<?> sqlDaoClass, final Method method) {
+        if (method.isAnnotationPresent(RequestCachable.class)) {
+            return true;
+        }
+        try {
+            return sqlDaoClass.getMethod(method.getName(), method.getParameterTypes()).isAnnotationPresent(RequestCachable.class);
+        } catch (final NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static boolean hasIsActiveFlag(final Class<?> clz) {
+        try {
+            clz.getMethod("getIsActive");
+            return true;
+        } catch (final NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static int[] toArray(final Collection<Integer> integers) {
+        final int[] result = new int[integers.size()];
+        int i = 0;
+        for (final Integer integer : integers) {
+            result[i++] = integer;
+        }
+        return result;
+    }
+
+    @Nullable
+    private static TableName getTableName(@Nullable final Class<? extends EntityModelDao<?>> entityModelDaoClass) {
+        if (entityModelDaoClass == null) {
+            return null;
+        }
+
+        try {
+            return entityModelDaoClass.newInstance().getTableName();
+        } catch (final InstantiationException e) {
+            return null;
+        } catch (final IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Extract the EntityModelDao class from sqlDaoClass by looking at the type parameters of EntitySqlDao
+     *
+     * @return the EntityModelDao class associated to that sqlDaoClass, null if it cannot be determined
+     */
+    private static Class<? extends EntityModelDao<?>> getEntityModelDaoClass(final Class<?> sqlDaoClass) {
+        int foundIndexForEntitySqlDao = -1;
+        // If the sqlDaoClass implements multiple interfaces, first figure out which one is the EntitySqlDao
+        for (int i = 0; i < sqlDaoClass.getGenericInterfaces().length; i++) {
+            final Type type = sqlDaoClass.getGenericInterfaces()[0];
+            if (!(type instanceof java.lang.reflect.ParameterizedType)) {
+                // AuditSqlDao for example won't extend EntitySqlDao
+                return null;
+            }
+
+            if (EntitySqlDao.class.getName().equals(((Class) ((java.lang.reflect.ParameterizedType) type).getRawType()).getName())) {
+                foundIndexForEntitySqlDao = i;
+                break;
+            }
+        }
+        // Find out from the parameters of the EntitySqlDao which one is the EntityModelDao, and extract his (sub)type
+        if (foundIndexForEntitySqlDao >= 0) {
+            final Type[] types = ((java.lang.reflect.ParameterizedType) sqlDaoClass.getGenericInterfaces()[foundIndexForEntitySqlDao]).getActualTypeArguments();
+            int foundIndexForEntityModelDao = -1;
+            for (int i = 0; i < types.length; i++) {
+                if (!(types[i] instanceof Class)) {
+                    // e.g. EntitySqlDao<EntityModelDao<Entity>, Entity>
+                    continue;
+                }
+                final Class clz = ((Class) types[i]);
+                final Type[] genericInterfaces = clz.getGenericInterfaces();
+                for (final Type genericInterface : genericInterfaces) {
+                    if (genericInterface instanceof ParameterizedType) {
+                        if (EntityModelDao.class.getName().equals(((Class) ((ParameterizedType) genericInterface).getRawType()).getName())) {
+                            foundIndexForEntityModelDao = i;
+                            break;
+                        }
+                    }
+                }
+            }
+
+            if (foundIndexForEntityModelDao >= 0) {
+                return (Class<? extends EntityModelDao<?>>) types[foundIndexForEntityModelDao];
+            }
+        }
+        return null;
+    }
+}
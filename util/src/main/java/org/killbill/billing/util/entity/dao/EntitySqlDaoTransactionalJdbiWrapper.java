@@ -63,6 +63,8 @@ public class EntitySqlDaoTransactionalJdbiWrapper {
         private final Handle h;
         private final EntitySqlDaoTransactionWrapper<ReturnType> entitySqlDaoTransactionWrapper;
 
+        private EntitySqlDaoWrapperFactory factoryEntitySqlDao;
+
         JdbiTransaction(final Handle h, final EntitySqlDaoTransactionWrapper<ReturnType> entitySqlDaoTransactionWrapper) {
             this.h = h;
             this.entitySqlDaoTransactionWrapper = entitySqlDaoTransactionWrapper;
@@ -70,8 +72,17 @@ public class EntitySqlDaoTransactionalJdbiWrapper {
 
         @Override
         public ReturnType inTransaction(final EntitySqlDao<M, E> transactionalSqlDao, final TransactionStatus status) throws Exception {
-            final EntitySqlDaoWrapperFactory factoryEntitySqlDao = new EntitySqlDaoWrapperFactory(h, clock, cacheControllerDispatcher, internalCallContextFactory);
-            return entitySqlDaoTransactionWrapper.inTransaction(factoryEntitySqlDao);
+            factoryEntitySqlDao = new EntitySqlDaoWrapperFactory(h, clock, cacheControllerDispatcher, internalCallContextFactory);
+            final ReturnType returnType = entitySqlDaoTransactionWrapper.inTransaction(factoryEntitySqlDao);
+            factoryEntitySqlDao.flushAudits();
+            return returnType;
+        }
+
+        // Needs to happen once the transaction is committed (or rolled back)
+        void recordCompletedWrites() {
+            if (factoryEntitySqlDao != null) {
+                factoryEntitySqlDao.recordCompletedWrites();
+            }
         }
     }
 
@@ -95,9 +106,14 @@ public class EntitySqlDaoTransactionalJdbiWrapper {
             // Note that if the pool isn't used (tests or PostgreSQL), the transaction level will depend on the DB configuration
             //return entitySqlDao.inTransaction(TransactionIsolationLevel.READ_COMMITTED, new JdbiTransaction<ReturnType, EntityModelDao<Entity>, Entity>(handle, entitySqlDaoTransactionWrapper));
             logger.debug("Starting transaction {}", debugInfo);
-            final ReturnType returnType = entitySqlDao.inTransaction(new JdbiTransaction<ReturnType, EntityModelDao<Entity>, Entity>(handle, entitySqlDaoTransactionWrapper));
-            logger.debug("Exiting  transaction {}, returning {}", debugInfo, returnType);
-            return returnType;
+            final JdbiTransaction<ReturnType, EntityModelDao<Entity>, Entity> transaction = new JdbiTransaction<ReturnType, EntityModelDao<Entity>, Entity>(handle, entitySqlDaoTransactionWrapper);
+            try {
+                final ReturnType returnType = entitySqlDao.inTransaction(transaction);
+                logger.debug("Exiting  transaction {}, returning {}", debugInfo, returnType);
+                return returnType;
+            } finally {
+                transaction.recordCompletedWrites();
+            }
         } finally {
             handle.close();
             logger.debug("DBI handle closed,  transaction: {}", debugInfo);
@@ -19,6 +19,8 @@
 package org.killbill.billing.util.entity.dao;
 
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
@@ -40,12 +42,15 @@ public class EntitySqlDaoWrapperFactory {
     private final CacheControllerDispatcher cacheControllerDispatcher;
 
     private final InternalCallContextFactory internalCallContextFactory;
+    private final EntitySqlDaoAuditBuffer auditBuffer;
+    private final List<EntityWriteVersions.Write> writes = new ArrayList<EntityWriteVersions.Write>();
 
     public EntitySqlDaoWrapperFactory(final Handle handle, final Clock clock, final CacheControllerDispatcher cacheControllerDispatcher, final InternalCallContextFactory internalCallContextFactory) {
         this.handle = handle;
         this.clock = clock;
         this.cacheControllerDispatcher = cacheControllerDispatcher;
         this.internalCallContextFactory = internalCallContextFactory;
+        this.auditBuffer = new EntitySqlDaoAuditBuffer(cacheControllerDispatcher);
     }
 
     /**
@@ -67,13 +72,26 @@ public class EntitySqlDaoWrapperFactory {
         return handle;
     }
 
+    // Write the audit entries queued by the wrapped EntitySqlDao objects (needs to happen before the transaction commits)
+    void flushAudits() {
+        auditBuffer.flush();
+    }
+
+    // Account for the writes of the transaction once it is over (committed or rolled back), see EntityWriteVersions
+    void recordCompletedWrites() {
+        for (final EntityWriteVersions.Write write : writes) {
+            write.record();
+        }
+        writes.clear();
+    }
+
     private <NewSqlDao extends EntitySqlDao<NewEntityModelDao, NewEntity>,
             NewEntityModelDao extends EntityModelDao<NewEntity>,
             NewEntity extends Entity> NewSqlDao create(final Class<NewSqlDao> newSqlDaoClass, final NewSqlDao newSqlDao) {
         final ClassLoader classLoader = newSqlDao.getClass().getClassLoader();
         final Class[] interfacesToImplement = {newSqlDaoClass};
         final EntitySqlDaoWrapperInvocationHandler<NewSqlDao, NewEntityModelDao, NewEntity> wrapperInvocationHandler =
-                new EntitySqlDaoWrapperInvocationHandler<NewSqlDao, NewEntityModelDao, NewEntity>(newSqlDaoClass, newSqlDao, handle, clock, cacheControllerDispatcher, internalCallContextFactory);
+                new EntitySqlDaoWrapperInvocationHandler<NewSqlDao, NewEntityModelDao, NewEntity>(newSqlDaoClass, newSqlDao, handle, clock, cacheControllerDispatcher, internalCallContextFactory, auditBuffer, writes);
 
         final Object newSqlDaoObject = Proxy.newProxyInstance(classLoader, interfacesToImplement, wrapperInvocationHandler);
         return newSqlDaoClass.cast(newSqlDaoObject);
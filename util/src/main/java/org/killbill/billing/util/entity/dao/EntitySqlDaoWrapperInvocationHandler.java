@@ -18,23 +18,19 @@
 
 package org.killbill.billing.util.entity.dao;
 
-import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 import javax.annotation.Nullable;
 
@@ -42,14 +38,12 @@ import org.killbill.billing.ObjectType;
 import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.util.audit.ChangeType;
-import org.killbill.billing.util.cache.Cachable;
 import org.killbill.billing.util.cache.Cachable.CacheType;
-import org.killbill.billing.util.cache.CachableKey;
 import org.killbill.billing.util.cache.CacheController;
 import org.killbill.billing.util.cache.CacheControllerDispatcher;
 import org.killbill.billing.util.cache.CacheLoaderArgument;
 import org.killbill.billing.util.callcontext.InternalCallContextFactory;
-import org.killbill.billing.util.dao.EntityAudit;
+import org.killbill.billing.util.dao.EntityHistoryBinder.EntityHistoryBinderFactory;
 import org.killbill.billing.util.dao.EntityHistoryModelDao;
 import org.killbill.billing.util.dao.TableName;
 import org.killbill.billing.util.entity.Entity;
@@ -62,18 +56,13 @@ import org.skife.jdbi.v2.Handle;
 import org.skife.jdbi.v2.StatementContext;
 import org.skife.jdbi.v2.exceptions.DBIException;
 import org.skife.jdbi.v2.exceptions.StatementException;
-import org.skife.jdbi.v2.sqlobject.Bind;
-import org.skife.jdbi.v2.unstable.BindIn;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Preconditions;
-import com.google.common.base.Predicate;
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableList.Builder;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Iterables;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 
 /**
  * Wraps an instance of EntitySqlDao, performing extra work around each method (Sql query)
@@ -86,7 +75,13 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
 
     private final Logger logger = LoggerFactory.getLogger(EntitySqlDaoWrapperInvocationHandler.class);
 
-    private final Map<String, Annotation[][]> parameterAnnotationsByMethod = new ConcurrentHashMap<String, Annotation[][]>();
+    // Bound the memory held by long-lived contexts (e.g. bus handlers iterating over a large account)
+    private static final int MAX_REQUEST_CACHE_ENTRIES = 1000;
+    private static final Object NULL_RESULT = new Object();
+    // Maximum number of ids in a single IN clause
+    private static final int MAX_IDS_PER_QUERY = 1000;
+    // The accounts table doesn't have an account_record_id column either, but its record id is the account record id
+    private static final Set<TableName> TABLES_WITHOUT_ACCOUNT_RECORD_ID = ImmutableSet.<TableName>of(TableName.TAG_DEFINITIONS, TableName.TENANT, TableName.TENANT_KVS, TableName.TENANT_BROADCASTS);
 
     private final Class<S> sqlDaoClass;
     private final S sqlDao;
@@ -95,6 +90,9 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
     private final CacheControllerDispatcher cacheControllerDispatcher;
     private final Clock clock;
     private final InternalCallContextFactory internalCallContextFactory;
+    private final EntitySqlDaoAuditBuffer auditBuffer;
+    // Writes made during the transaction (see EntityWriteVersions)
+    private final Collection<EntityWriteVersions.Write> writes;
     private final Profiling<Object, Throwable> prof;
 
     public EntitySqlDaoWrapperInvocationHandler(final Class<S> sqlDaoClass,
@@ -103,23 +101,29 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
                                                 final Clock clock,
                                                 // Special DAO that don't require caching can invoke EntitySqlDaoWrapperInvocationHandler with no caching (e.g NoCachingTenantDao)
                                                 @Nullable final CacheControllerDispatcher cacheControllerDispatcher,
-                                                final InternalCallContextFactory internalCallContextFactory) {
+                                                final InternalCallContextFactory internalCallContextFactory,
+                                                final EntitySqlDaoAuditBuffer auditBuffer,
+                                                final Collection<EntityWriteVersions.Write> writes) {
         this.sqlDaoClass = sqlDaoClass;
         this.sqlDao = sqlDao;
         this.handle = handle;
         this.clock = clock;
         this.cacheControllerDispatcher = cacheControllerDispatcher;
         this.internalCallContextFactory = internalCallContextFactory;
+        this.auditBuffer = auditBuffer;
+        this.writes = writes;
         this.prof = new Profiling<Object, Throwable>();
     }
 
     @Override
     public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
         try {
-            return prof.executeWithProfiling(ProfilingFeatureType.DAO, getProfilingId(null, method), new WithProfilingCallback<Object, Throwable>() {
+            // PERF: annotations, argument positions, etc. are only looked up once per method
+            final EntitySqlDaoMethodDescriptor descriptor = EntitySqlDaoMethodDescriptor.get(sqlDaoClass, method);
+            return prof.executeWithProfiling(ProfilingFeatureType.DAO, descriptor.getProfilingId(), new WithProfilingCallback<Object, Throwable>() {
                 @Override
                 public Object execute() throws Throwable {
-                    return invokeSafely(proxy, method, args);
+                    return invokeSafely(descriptor, method, args);
                 }
             });
         } catch (final Throwable t) {
@@ -187,23 +191,97 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
         errorDuringTransaction(t, method, null);
     }
 
-    private Object invokeSafely(final Object proxy, final Method method, final Object[] args) throws Throwable {
+    private Object invokeSafely(final EntitySqlDaoMethodDescriptor descriptor, final Method method, final Object[] args) throws Throwable {
+        if (descriptor.isWrite()) {
+            // Results memoized for that account (by any request) are potentially stale now
+            final InternalTenantContext context = descriptor.getTenantContext(args);
+            try {
+                return invokeWrite(descriptor, method, args);
+            } finally {
+                EntityWriteVersions.recordWrite(context, descriptor.getTableName());
+                writes.add(new EntityWriteVersions.Write(context, descriptor.getTableName()));
+            }
+        } else if (descriptor.isRequestCachable()) {
+            return invokeWithRequestCaching(descriptor, method, args);
+        } else {
+            return invokeRead(descriptor, method, args);
+        }
+    }
 
-        final Audited auditedAnnotation = method.getAnnotation(Audited.class);
-        final Cachable cachableAnnotation = method.getAnnotation(Cachable.class);
+    private Object invokeWrite(final EntitySqlDaoMethodDescriptor descriptor, final Method method, final Object[] args) throws Throwable {
+        if (descriptor.getAuditedAnnotation() != null) {
+            return invokeWithAuditAndHistory(descriptor, method, args);
+        } else {
+            return invokeRaw(descriptor, method, args);
+        }
+    }
 
+    private Object invokeRead(final EntitySqlDaoMethodDescriptor descriptor, final Method method, final Object[] args) throws Throwable {
         // This can't be AUDIT'ed and CACHABLE'd at the same time as we only cache 'get'
-        if (auditedAnnotation != null) {
-            return invokeWithAuditAndHistory(auditedAnnotation, method, args);
-        } else if (cachableAnnotation != null && cacheControllerDispatcher != null) {
-            return invokeWithCaching(cachableAnnotation, method, args);
+        if (descriptor.getCachableAnnotation() != null && cacheControllerDispatcher != null) {
+            return invokeWithCaching(descriptor, method, args);
         } else {
-            return invokeRaw(method, args);
+            return invokeRaw(descriptor, method, args);
+        }
+    }
+
+    // Memoize the result for the lifetime of the context (i.e. the API call or the bus event), see RequestCachable
+    private Object invokeWithRequestCaching(final EntitySqlDaoMethodDescriptor descriptor, final Method method, final Object[] args) throws Throwable {
+        final InternalTenantContext context = descriptor.getTenantContext(args);
+        if (context == null) {
+            return invokeRead(descriptor, method, args);
+        }
+
+        final Map<Object, Object> requestCache = context.getRequestCache();
+        final List<Object> key = descriptor.getRequestCacheKey(args);
+        // Taken before the query, so that a concurrent write invalidates the result
+        final long version = EntityWriteVersions.getVersion(context);
+        final RequestCacheEntry cachedEntry = (RequestCacheEntry) requestCache.get(key);
+        if (cachedEntry != null && cachedEntry.getVersion() == version) {
+            return cachedEntry.getResult();
+        }
+
+        final Object result = invokeRead(descriptor, method, args);
+        if (cachedEntry != null || requestCache.size() < MAX_REQUEST_CACHE_ENTRIES) {
+            requestCache.put(key, new RequestCacheEntry(version, result));
+        }
+        return result;
+    }
+
+    private static final class RequestCacheEntry {
+
+        private final long version;
+        private final Object result;
+
+        private RequestCacheEntry(final long version, @Nullable final Object result) {
+            this.version = version;
+            if (result == null) {
+                this.result = NULL_RESULT;
+            } else if (result instanceof List) {
+                // Callers are free to modify the returned list
+                this.result = new ArrayList<Object>((Collection<?>) result);
+            } else {
+                this.result = result;
+            }
+        }
+
+        long getVersion() {
+            return version;
+        }
+
+        Object getResult() {
+            if (result == NULL_RESULT) {
+                return null;
+            } else if (result instanceof List) {
+                return new ArrayList<Object>((Collection<?>) result);
+            } else {
+                return result;
+            }
         }
     }
 
-    private Object invokeRaw(final Method method, final Object[] args) throws Throwable {
-        return prof.executeWithProfiling(ProfilingFeatureType.DAO_DETAILS, getProfilingId("raw", method), new WithProfilingCallback<Object, Throwable>() {
+    private Object invokeRaw(final EntitySqlDaoMethodDescriptor descriptor, final Method method, final Object[] args) throws Throwable {
+        return prof.executeWithProfiling(ProfilingFeatureType.DAO_DETAILS, descriptor.getRawProfilingId(), new WithProfilingCallback<Object, Throwable>() {
             @Override
             public Object execute() throws Throwable {
                 // Real jdbc call
@@ -212,7 +290,7 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
                 // the object after it was created, which means this method is (by pattern) first called right after object creation and contains all the goodies we care
                 // about (record_id, account_record_id, object_id, tenant_record_id)
                 //
-                if (result != null && method.getName().equals("getById")) {
+                if (result != null && descriptor.isGetById()) {
                     populateCacheOnGetByIdInvocation((M) result);
                 }
                 return result;
@@ -220,107 +298,39 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
         });
     }
 
-    private Object invokeWithCaching(final Cachable cachableAnnotation, final Method method, final Object[] args)
+    private Object invokeWithCaching(final EntitySqlDaoMethodDescriptor descriptor, final Method method, final Object[] args)
             throws Throwable {
-        final ObjectType objectType = getObjectType();
-        final CacheType cacheType = cachableAnnotation.value();
+        final ObjectType objectType = descriptor.getObjectType();
+        final CacheType cacheType = descriptor.getCachableAnnotation().value();
         final CacheController<Object, Object> cache = cacheControllerDispatcher.getCacheController(cacheType);
         // TODO Change NonEntityDao to take in TableName instead to cache things like TenantBroadcastModelDao (no ObjectType)
         if (cache != null && objectType != null) {
-            // Find all arguments marked with @CachableKey
-            final Map<Integer, Object> keyPieces = new LinkedHashMap<Integer, Object>();
-            final Annotation[][] annotations = getAnnotations(method);
-            for (int i = 0; i < annotations.length; i++) {
-                for (int j = 0; j < annotations[i].length; j++) {
-                    final Annotation annotation = annotations[i][j];
-                    if (CachableKey.class.equals(annotation.annotationType())) {
-                        // CachableKey position starts at 1
-                        keyPieces.put(((CachableKey) annotation).value() - 1, args[i]);
-                        break;
-                    }
-                }
-            }
+            // Build the Cache key from all arguments marked with @CachableKey
+            final String cacheKey = buildCacheKey(descriptor.getCacheKeyPieces(args));
 
-            // Build the Cache key
-            final String cacheKey = buildCacheKey(keyPieces);
-
-            final InternalTenantContext internalTenantContext = (InternalTenantContext) Iterables.find(ImmutableList.copyOf(args), new Predicate<Object>() {
-                @Override
-                public boolean apply(final Object input) {
-                    return input instanceof InternalTenantContext;
-                }
-            }, null);
+            final InternalTenantContext internalTenantContext = descriptor.getTenantContext(args);
             final CacheLoaderArgument cacheLoaderArgument = new CacheLoaderArgument(objectType, args, internalTenantContext, handle);
             return cache.get(cacheKey, cacheLoaderArgument);
         } else {
-            return invokeRaw(method, args);
+            return invokeRaw(descriptor, method, args);
         }
     }
 
-    /**
-     * Extract object from sqlDaoClass by looking at first parameter type (EntityModelDao) and
-     * constructing an empty object so we can call the getObjectType method on it.
-     *
-     * @return the objectType associated to that handler
-     * @throws InstantiationException
-     * @throws IllegalAccessException
-     * @throws ClassNotFoundException
-     */
-    private ObjectType getObjectType() throws InstantiationException, IllegalAccessException, ClassNotFoundException {
-
-        int foundIndexForEntitySqlDao = -1;
-        // If the sqlDaoClass implements multiple interfaces, first figure out which one is the EntitySqlDao
-        for (int i = 0; i < sqlDaoClass.getGenericInterfaces().length; i++) {
-            final Type type = sqlDaoClass.getGenericInterfaces()[0];
-            if (!(type instanceof java.lang.reflect.ParameterizedType)) {
-                // AuditSqlDao for example won't extend EntitySqlDao
-                return null;
-            }
+    private Object invokeWithAuditAndHistory(final EntitySqlDaoMethodDescriptor descriptor, final Method method, final Object[] args) throws Throwable {
+        final InternalCallContext context = descriptor.getCallContext(args);
+        final List<String> entityIds = descriptor.getEntityIds(args);
 
-            if (EntitySqlDao.class.getName().equals(((Class) ((java.lang.reflect.ParameterizedType) type).getRawType()).getName())) {
-                foundIndexForEntitySqlDao = i;
-                break;
-            }
-        }
-        // Find out from the parameters of the EntitySqlDao which one is the EntityModelDao, and extract his (sub)type to finally return the ObjectType
-        if (foundIndexForEntitySqlDao >= 0) {
-            final Type[] types = ((java.lang.reflect.ParameterizedType) sqlDaoClass.getGenericInterfaces()[foundIndexForEntitySqlDao]).getActualTypeArguments();
-            int foundIndexForEntityModelDao = -1;
-            for (int i = 0; i < types.length; i++) {
-                final Class clz = ((Class) types[i]);
-                final Type[] genericInterfaces = clz.getGenericInterfaces();
-                for (final Type genericInterface : genericInterfaces) {
-                    if (genericInterface instanceof ParameterizedType) {
-                        if (EntityModelDao.class.getName().equals(((Class) ((ParameterizedType) genericInterface).getRawType()).getName())) {
-                            foundIndexForEntityModelDao = i;
-                            break;
-                        }
-                    }
-                }
-            }
+        final ChangeType changeType = descriptor.getAuditedAnnotation().value();
 
-            if (foundIndexForEntityModelDao >= 0) {
-                final String modelClassName = ((Class) types[foundIndexForEntityModelDao]).getName();
-
-                final Class<? extends EntityModelDao<?>> clz = (Class<? extends EntityModelDao<?>>) Class.forName(modelClassName);
-
-                final EntityModelDao<?> modelDao = (EntityModelDao<?>) clz.newInstance();
-                return modelDao.getTableName().getObjectType();
-            }
+        // PERF: batch inserts (e.g. invoice items) are re-hydrated at once
+        if (changeType == ChangeType.INSERT && entityIds.size() > 1) {
+            return invokeBatchInsertWithAuditAndHistory(descriptor, method, args, entityIds, context);
         }
-        return null;
-    }
-
-    private Object invokeWithAuditAndHistory(final Audited auditedAnnotation, final Method method, final Object[] args) throws Throwable {
-        final InternalCallContext context = retrieveContextFromArguments(args);
-        final List<String> entityIds = retrieveEntityIdsFromArguments(method, args);
-
-        final ChangeType changeType = auditedAnnotation.value();
 
         // Get the current state before deletion for the history tables
         final Map<String, M> deletedEntities = new HashMap<String, M>();
         // Unfortunately, we cannot just look at DELETE as "markAsInactive" operations are often treated as UPDATE
-        if (changeType == ChangeType.UPDATE || changeType == ChangeType.DELETE) {
+        if (changeType == ChangeType.DELETE || (changeType == ChangeType.UPDATE && descriptor.isSoftDeletionSupported())) {
             for (final String entityId : entityIds) {
                 deletedEntities.put(entityId, sqlDao.getById(entityId, context));
                 printSQLWarnings();
@@ -328,16 +338,19 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
         }
 
         // Real jdbc call
-        final Object obj = prof.executeWithProfiling(ProfilingFeatureType.DAO_DETAILS, getProfilingId("raw", method), new WithProfilingCallback<Object, Throwable>() {
+        final Object obj = prof.executeWithProfiling(ProfilingFeatureType.DAO_DETAILS, descriptor.getRawProfilingId(), new WithProfilingCallback<Object, Throwable>() {
             @Override
             public Object execute() throws Throwable {
                 return executeJDBCCall(method, args);
             }
         });
 
+        // PERF: for create calls, the entity is the model we've just written (no need to read it back)
+        final M createdEntity = changeType == ChangeType.INSERT ? getCreatedEntity(descriptor, args, obj, context) : null;
+
         M m = null;
         for (final String entityId : entityIds) {
-            m = updateHistoryAndAudit(entityId, deletedEntities.get(entityId), changeType, context);
+            m = updateHistoryAndAudit(descriptor, entityId, createdEntity != null ? createdEntity : deletedEntities.get(entityId), changeType, context);
         }
 
         // PERF: override the return value with the reHydrated entity to avoid an extra 'get' in the transaction,
@@ -350,6 +363,37 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
         }
     }
 
+    private Object invokeBatchInsertWithAuditAndHistory(final EntitySqlDaoMethodDescriptor descriptor, final Method method, final Object[] args, final List<String> entityIds, final InternalCallContext context) throws Throwable {
+        // Real jdbc call
+        final Object obj = prof.executeWithProfiling(ProfilingFeatureType.DAO_DETAILS, descriptor.getRawProfilingId(), new WithProfilingCallback<Object, Throwable>() {
+            @Override
+            public Object execute() throws Throwable {
+                return executeJDBCCall(method, args);
+            }
+        });
+
+        prof.executeWithProfiling(ProfilingFeatureType.DAO_DETAILS, descriptor.getHistoryAndAuditProfilingId(), new WithProfilingCallback<Object, Throwable>() {
+            @Override
+            public Object execute() throws Throwable {
+                final List<M> reHydratedEntities = new ArrayList<M>(entityIds.size());
+                for (final List<String> entityIdsChunk : Lists.partition(entityIds, MAX_IDS_PER_QUERY)) {
+                    reHydratedEntities.addAll(sqlDao.getByIds(entityIdsChunk, context));
+                    printSQLWarnings();
+                }
+                Preconditions.checkState(reHydratedEntities.size() == entityIds.size(), "Unable to re-hydrate all entities: %s", entityIds);
+
+                for (final M reHydratedEntity : reHydratedEntities) {
+                    // History and audit rows are buffered and inserted in batches (see EntitySqlDaoAuditBuffer)
+                    insertHistoryAndAudits(reHydratedEntity.getTableName(), reHydratedEntity, reHydratedEntity.getRecordId(), ChangeType.INSERT, context);
+                }
+                return null;
+            }
+        });
+
+        // jDBI will return the number of rows modified
+        return obj;
+    }
+
     private Object executeJDBCCall(final Method method, final Object[] args) throws IllegalAccessException, InvocationTargetException {
         final Object invoke = method.invoke(sqlDao, args);
         printSQLWarnings();
@@ -399,32 +443,22 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
                rawKey;
     }
 
-    private M updateHistoryAndAudit(final String entityId, @Nullable final M deletedEntity, final ChangeType changeType, final InternalCallContext context) throws Throwable {
-        final Object reHydratedEntity = prof.executeWithProfiling(ProfilingFeatureType.DAO_DETAILS, getProfilingId("history/audit", null), new WithProfilingCallback<Object, Throwable>() {
+    // knownEntity is either the created entity or the entity before deletion
+    private M updateHistoryAndAudit(final EntitySqlDaoMethodDescriptor descriptor, final String entityId, @Nullable final M knownEntity, final ChangeType changeType, final InternalCallContext context) throws Throwable {
+        final Object reHydratedEntity = prof.executeWithProfiling(ProfilingFeatureType.DAO_DETAILS, descriptor.getHistoryAndAuditProfilingId(), new WithProfilingCallback<Object, Throwable>() {
             @Override
             public M execute() throws Throwable {
                 final M reHydratedEntity;
-                if (changeType == ChangeType.DELETE) {
-                    reHydratedEntity = deletedEntity;
+                if (changeType == ChangeType.DELETE || (changeType == ChangeType.INSERT && knownEntity != null)) {
+                    reHydratedEntity = knownEntity;
                 } else {
                     // See note above regarding "markAsInactive" operations
-                    reHydratedEntity = MoreObjects.firstNonNull(sqlDao.getById(entityId, context), deletedEntity);
+                    reHydratedEntity = MoreObjects.firstNonNull(sqlDao.getById(entityId, context), knownEntity);
                     printSQLWarnings();
                 }
                 Preconditions.checkNotNull(reHydratedEntity, "reHydratedEntity cannot be null");
-                final Long entityRecordId = reHydratedEntity.getRecordId();
-                final TableName tableName = reHydratedEntity.getTableName();
 
-                // Note: audit entries point to the history record id
-                final Long historyRecordId;
-                if (tableName.getHistoryTableName() != null) {
-                    historyRecordId = insertHistory(entityRecordId, reHydratedEntity, changeType, context);
-                } else {
-                    historyRecordId = entityRecordId;
-                }
-
-                // Make sure to re-hydrate the object (especially needed for create calls)
-                insertAudits(tableName, reHydratedEntity, entityRecordId, historyRecordId, changeType, context);
+                insertHistoryAndAudits(reHydratedEntity.getTableName(), reHydratedEntity, reHydratedEntity.getRecordId(), changeType, context);
                 return reHydratedEntity;
             }
         });
@@ -432,88 +466,26 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
         return (M) reHydratedEntity;
     }
 
-    private List<String> retrieveEntityIdsFromArguments(final Method method, final Object[] args) {
-        final Annotation[][] parameterAnnotations = getAnnotations(method);
-
-        int i = -1;
-        for (final Object arg : args) {
-            i++;
-
-            // Assume the first argument of type Entity is our type of Entity (type U here)
-            // This is true for e.g. create calls
-            if (arg instanceof Entity) {
-                return ImmutableList.<String>of(((Entity) arg).getId().toString());
-            }
-
-            // For Batch calls, the first argument will be of type List<Entity>
-            if (arg instanceof Iterable) {
-                final Builder<String> entityIds = extractEntityIdsFromBatchArgument((Iterable) arg);
-                if (entityIds != null) {
-                    return entityIds.build();
-                }
-            }
-
-            for (final Annotation annotation : parameterAnnotations[i]) {
-                if (arg instanceof String && Bind.class.equals(annotation.annotationType()) && ("id").equals(((Bind) annotation).value())) {
-                    return ImmutableList.<String>of((String) arg);
-                } else if (arg instanceof Collection && BindIn.class.equals(annotation.annotationType()) && ("ids").equals(((BindIn) annotation).value())) {
-                    return ImmutableList.<String>copyOf((Collection) arg);
-                }
-            }
-        }
-        return ImmutableList.<String>of();
-    }
-
-    private Annotation[][] getAnnotations(final Method method) {
-        // Expensive to compute
-        final String methodString = method.toString();
-
-        // Method.getParameterAnnotations() generates lots of garbage objects
-        Annotation[][] parameterAnnotations = parameterAnnotationsByMethod.get(methodString);
-        if (parameterAnnotations == null) {
-            parameterAnnotations = method.getParameterAnnotations();
-            parameterAnnotationsByMethod.put(methodString, parameterAnnotations);
-        }
-        return parameterAnnotations;
-    }
-
-    private Builder<String> extractEntityIdsFromBatchArgument(final Iterable arg) {
-        final Iterator iterator = arg.iterator();
-        final Builder<String> entityIds = new Builder<String>();
-        while (iterator.hasNext()) {
-            final Object object = iterator.next();
-            if (!(object instanceof Entity)) {
-                // No good - ignore
-                return null;
-            } else {
-                entityIds.add(((Entity) object).getId().toString());
-            }
+    // The entity written by a create call, along with the record ids generated by the database (see EntitySqlDao#create)
+    @Nullable
+    private M getCreatedEntity(final EntitySqlDaoMethodDescriptor descriptor, final Object[] args, @Nullable final Object recordId, final InternalCallContext context) {
+        final Entity entity = descriptor.getEntity(args);
+        if (!descriptor.hasGeneratedKeys() || !(entity instanceof EntityModelDaoBase) || !(recordId instanceof Number)) {
+            return null;
         }
 
-        return entityIds;
-    }
-
-    private InternalCallContext retrieveContextFromArguments(final Object[] args) {
-        for (final Object arg : args) {
-            if (!(arg instanceof InternalCallContext)) {
-                continue;
-            }
-            return (InternalCallContext) arg;
+        final M createdEntity = (M) entity;
+        final EntityModelDaoBase model = (EntityModelDaoBase) entity;
+        // Note: this sets the account record id as well for accounts (see AccountModelDao)
+        model.setRecordId(((Number) recordId).longValue());
+        model.setTenantRecordId(context.getTenantRecordId());
+        if (model.getAccountRecordId() == null && !TABLES_WITHOUT_ACCOUNT_RECORD_ID.contains(createdEntity.getTableName())) {
+            model.setAccountRecordId(context.getAccountRecordId());
         }
-        return null;
+        return createdEntity;
     }
 
-    private Long insertHistory(final Long entityRecordId, final M entityModelDao, final ChangeType changeType, final InternalCallContext context) {
-        final EntityHistoryModelDao<M, E> history = new EntityHistoryModelDao<M, E>(entityModelDao, entityRecordId, changeType, null, context.getCreatedDate());
-        final Long recordId = sqlDao.addHistoryFromTransaction(history, context);
-        printSQLWarnings();
-        return recordId;
-    }
-
-    private void insertAudits(final TableName tableName, final M entityModelDao, final Long entityRecordId, final Long historyRecordId, final ChangeType changeType, final InternalCallContext contextMaybeWithoutAccountRecordId) {
-        final TableName destinationTableName = MoreObjects.firstNonNull(tableName.getHistoryTableName(), tableName);
-        final EntityAudit audit = new EntityAudit(destinationTableName, historyRecordId, changeType, contextMaybeWithoutAccountRecordId.getCreatedDate());
-
+    private void insertHistoryAndAudits(final TableName tableName, final M entityModelDao, final Long entityRecordId, final ChangeType changeType, final InternalCallContext contextMaybeWithoutAccountRecordId) {
         final InternalCallContext context;
         // Populate the account record id when creating the account record
         if (TableName.ACCOUNT.equals(tableName) && ChangeType.INSERT.equals(changeType)) {
@@ -523,54 +495,53 @@ public class EntitySqlDaoWrapperInvocationHandler<S extends EntitySqlDao<M, E>,
         } else {
             context = contextMaybeWithoutAccountRecordId;
         }
-        sqlDao.insertAuditFromTransaction(audit, context);
-        printSQLWarnings();
+
+        // PERF: the history and audit rows (and the cache invalidation) are deferred until the end of the transaction, see EntitySqlDaoTransactionalJdbiWrapper
+        if (tableName.getHistoryTableName() != null) {
+            // Note: audit entries point to the history record id
+            final EntityHistoryModelDao<M, E> history = new EntityHistoryModelDao<M, E>(entityModelDao, entityRecordId, changeType, null, contextMaybeWithoutAccountRecordId.getCreatedDate());
+            // The entity may be modified before the history row gets inserted
+            history.setEntityProperties(EntityHistoryBinderFactory.getEntityProperties(entityModelDao));
+            auditBuffer.add(sqlDao, tableName, entityRecordId, history, changeType, context);
+        } else {
+            auditBuffer.add(sqlDao, tableName, entityRecordId, changeType, context);
+        }
+    }
+
+    static void invalidateAuditLogsCache(@Nullable final CacheControllerDispatcher cacheControllerDispatcher, final TableName tableName, final Long entityRecordId) {
+        if (cacheControllerDispatcher == null) {
+            return;
+        }
 
         // We need to invalidate the caches. There is a small window of doom here where caches will be stale.
         // TODO Knowledge on how the key is constructed is also in AuditSqlDao
         if (tableName.getHistoryTableName() != null) {
             final CacheController<String, List> cacheController = cacheControllerDispatcher.getCacheController(CacheType.AUDIT_LOG_VIA_HISTORY);
             if (cacheController != null) {
-                final String key = buildCacheKey(ImmutableMap.<Integer, Object>of(0, tableName.getHistoryTableName(), 1, tableName.getHistoryTableName(), 2, entityRecordId));
+                final String key = buildCacheKey(new Object[]{tableName.getHistoryTableName(), tableName.getHistoryTableName(), entityRecordId});
                 cacheController.remove(key);
             }
         } else {
             final CacheController<String, List> cacheController = cacheControllerDispatcher.getCacheController(CacheType.AUDIT_LOG);
             if (cacheController != null) {
-                final String key = buildCacheKey(ImmutableMap.<Integer, Object>of(0, tableName, 1, entityRecordId));
+                final String key = buildCacheKey(new Object[]{tableName, entityRecordId});
                 cacheController.remove(key);
             }
         }
     }
 
-    private String buildCacheKey(final Map<Integer, Object> keyPieces) {
+    private static String buildCacheKey(final Object[] keyPieces) {
         final StringBuilder cacheKey = new StringBuilder();
-        for (int i = 0; i < keyPieces.size(); i++) {
+        for (int i = 0; i < keyPieces.length; i++) {
             // To normalize the arguments and avoid casing issues, we make all pieces of the key uppercase.
             // Since the database engine may be case insensitive and we use arguments of the SQL method call
             // to build the key, the key has to be case insensitive as well.
-            final String str = String.valueOf(keyPieces.get(i)).toUpperCase();
+            final String str = String.valueOf(keyPieces[i]).toUpperCase();
             cacheKey.append(str);
-            if (i < keyPieces.size() - 1) {
+            if (i < keyPieces.length - 1) {
                 cacheKey.append(CacheControllerDispatcher.CACHE_KEY_SEPARATOR);
             }
         }
         return cacheKey.toString();
     }
-
-    private String getProfilingId(@Nullable final String prefix, @Nullable final Method method) {
-        final StringBuilder stringBuilder = new StringBuilder().append(sqlDaoClass.getSimpleName());
-
-        if (prefix != null) {
-            stringBuilder.append(" (")
-                         .append(prefix)
-                         .append(")");
-        }
-
-        if (method != null) {
-            stringBuilder.append(": ").append(method.getName());
-        }
-
-        return stringBuilder.toString();
-    }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.entity.dao;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.Nullable;
+
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.util.dao.TableName;
+
+/**
+ * Write counters of the accounts and tenants, used to detect the cached data made stale by a write issued on this node,
+ * through any context: request cache entries (see RequestCachable) or local snapshots of account data (e.g. the
+ * entitlement EventsStream snapshots). Writes made by other nodes are not seen.
+ * <p/>
+ * Writes are accounted for when issued (for the reads made later on in the same transaction) and again once their
+ * transaction is over (for the reads made by concurrent transactions before the commit). Counters are striped to bound
+ * the memory used: a collision only causes a spurious miss.
+ * <p/>
+ * Account writes are also counted per table (the table of the model of the SqlDao issuing the write), for cached data
+ * only derived from a few tables (e.g. the junction billing events).
+ */
+public final class EntityWriteVersions {
+
+    private static final int NB_STRIPES = 4096;
+
+    // Writes made with an account context, per account
+    private static final AtomicLongArray accountWrites = new AtomicLongArray(NB_STRIPES);
+    // Writes made with an account context, per account and table
+    private static final AtomicLongArray accountTableWrites = new AtomicLongArray(NB_STRIPES);
+    // Writes made with an account context through a SqlDao without model (the table isn't known), per account
+    private static final AtomicLongArray accountUntypedWrites = new AtomicLongArray(NB_STRIPES);
+    // Writes made with a tenant only context, per tenant
+    private static final AtomicLongArray tenantWrites = new AtomicLongArray(NB_STRIPES);
+    // All writes, per tenant
+    private static final AtomicLongArray allTenantWrites = new AtomicLongArray(NB_STRIPES);
+    // Writes made without any context
+    private static final AtomicLong unscopedWrites = new AtomicLong();
+
+    private EntityWriteVersions() {
+    }
+
+    // Changes whenever a write which could affect a read made with that context is issued or completed. Reads made with
+    // an account context only see the writes of that account (or of the tenant itself), tenant only reads see all writes
+    // of the tenant
+    public static long getVersion(final InternalTenantContext context) {
+        final long version;
+        if (context.getAccountRecordId() != null) {
+            version = accountWrites.get(accountStripe(context)) + tenantWrites.get(tenantStripe(context));
+        } else {
+            version = allTenantWrites.get(tenantStripe(context));
+        }
+        return version + unscopedWrites.get();
+    }
+
+    // Same as above, but only accounting for the account writes made to these tables
+    public static long getVersion(final InternalTenantContext context, final TableName... tableNames) {
+        if (context.getAccountRecordId() == null) {
+            return getVersion(context);
+        }
+
+        long version = accountUntypedWrites.get(accountStripe(context)) + tenantWrites.get(tenantStripe(context)) + unscopedWrites.get();
+        for (final TableName tableName : tableNames) {
+            version += accountTableWrites.get(accountTableStripe(context, tableName));
+        }
+        return version;
+    }
+
+    static void recordWrite(@Nullable final InternalTenantContext context, @Nullable final TableName tableName) {
+        if (context == null) {
+            unscopedWrites.incrementAndGet();
+            return;
+        }
+
+        if (context.getAccountRecordId() != null) {
+            accountWrites.incrementAndGet(accountStripe(context));
+            if (tableName == null) {
+                accountUntypedWrites.incrementAndGet(accountStripe(context));
+            } else {
+                accountTableWrites.incrementAndGet(accountTableStripe(context, tableName));
+            }
+        } else {
+            tenantWrites.incrementAndGet(tenantStripe(context));
+        }
+        allTenantWrites.incrementAndGet(tenantStripe(context));
+    }
+
+    // Write made during a transaction, accounted for again once the transaction is over
+    static final class Write {
+
+        private final InternalTenantContext context;
+        private final TableName tableName;
+
+        Write(@Nullable final InternalTenantContext context, @Nullable final TableName tableName) {
+            this.context = context;
+            this.tableName = tableName;
+        }
+
+        void record() {
+            recordWrite(context, tableName);
+        }
+    }
+
+    private static int accountStripe(final InternalTenantContext context) {
+        return stripe(31 * hashCode(context.getTenantRecordId()) + context.getAccountRecordId().hashCode());
+    }
+
+    private static int accountTableStripe(final InternalTenantContext context, final TableName tableName) {
+        return stripe(31 * accountStripe(context) + tableName.ordinal());
+    }
+
+    private static int tenantStripe(final InternalTenantContext context) {
+        return stripe(hashCode(context.getTenantRecordId()));
+    }
+
+    private static int hashCode(@Nullable final Long recordId) {
+        return recordId == null ? 0 : recordId.hashCode();
+    }
+
+    private static int stripe(final int hashCode) {
+        // Record ids are sequential: consecutive accounts land in distinct stripes
+        return hashCode & (NB_STRIPES - 1);
+    }
+}
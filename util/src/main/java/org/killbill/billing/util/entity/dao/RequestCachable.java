@@ -0,0 +1,39 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.entity.dao;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The <code>RequestCachable</code> annotation memoizes the result of a read-only Sql dao method for the lifetime of the
+ * InternalTenantContext instance passed as argument (i.e. the API call or bus event), so that the same query issued
+ * several times across modules during one operation (e.g. an invoice run) only hits the database once.
+ * <p/>
+ * Any write (<code>@Audited</code>, <code>@SqlUpdate</code> or <code>@SqlBatch</code> method) made on this node for the
+ * same account (or tenant), through any context, invalidates the memoized results (see EntityWriteVersions). Only use it for methods returning a single model or a List of models that callers
+ * don't modify (Lists are copied).
+ * <p/>
+ * Generic EntitySqlDao reads (e.g. getByAccountRecordId) are opted in by redeclaring them in the Sql dao.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+public @interface RequestCachable {
+}
@@ -42,6 +42,7 @@ import org.killbill.billing.util.cache.TenantOverdueConfigCacheLoader;
 import org.killbill.billing.util.cache.TenantRecordIdCacheLoader;
 import org.killbill.billing.util.cache.TenantStateMachineConfigCacheLoader;
 import org.killbill.billing.util.config.definition.EhCacheConfig;
+import org.killbill.billing.util.config.definition.IdMappingCacheConfig;
 import org.killbill.billing.util.config.definition.RedisCacheConfig;
 import org.redisson.api.RedissonClient;
 import org.skife.config.ConfigurationObjectFactory;
@@ -66,6 +67,9 @@ public class CacheModule extends KillBillModule {
         final RedisCacheConfig redisCacheConfig = new ConfigurationObjectFactory(skifeConfigSource).build(RedisCacheConfig.class);
         bind(RedisCacheConfig.class).toInstance(redisCacheConfig);
 
+        final IdMappingCacheConfig idMappingCacheConfig = new ConfigurationObjectFactory(skifeConfigSource).build(IdMappingCacheConfig.class);
+        bind(IdMappingCacheConfig.class).toInstance(idMappingCacheConfig);
+
         if (redisCacheConfig.isRedisCachingEnabled()) {
             bind(RedissonClient.class).annotatedWith(Names.named(REDIS_CACHE_CLIENT)).toProvider(RedissonCacheClientProvider.class).asEagerSingleton();
             bind(CacheManager.class).toProvider(Redis107CacheManagerProvider.class).asEagerSingleton();
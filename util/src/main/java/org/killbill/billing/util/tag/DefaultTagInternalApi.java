@@ -19,6 +19,7 @@ package org.killbill.billing.util.tag;
 import java.util.List;
 import java.util.UUID;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 
 import org.killbill.billing.ErrorCode;
@@ -27,6 +28,8 @@ import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.tag.TagInternalApi;
 import org.killbill.billing.util.api.TagApiException;
+import org.killbill.billing.util.entity.Pagination;
+import org.killbill.billing.util.entity.dao.DefaultPaginationHelper.SourcePaginationBuilder;
 import org.killbill.billing.util.tag.dao.TagDao;
 import org.killbill.billing.util.tag.dao.TagDefinitionDao;
 import org.killbill.billing.util.tag.dao.TagDefinitionModelDao;
@@ -38,6 +41,8 @@ import com.google.common.collect.Collections2;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 
+import static org.killbill.billing.util.entity.dao.DefaultPaginationHelper.getEntityPaginationNoException;
+
 public class DefaultTagInternalApi implements TagInternalApi {
 
     private final TagDao tagDao;
@@ -96,6 +101,25 @@ public class DefaultTagInternalApi implements TagInternalApi {
         tagDao.deleteTag(objectId, objectType, tagDefinitionId, context);
     }
 
+    @Override
+    public Pagination<Tag> getTags(final Long offset, @Nullable final Long lastRecordId, final Long limit, final InternalTenantContext context) {
+        return getEntityPaginationNoException(limit,
+                                              new SourcePaginationBuilder<TagModelDao, TagApiException>() {
+                                                  @Override
+                                                  public Pagination<TagModelDao> build() {
+                                                      return tagDao.get(offset, lastRecordId, limit, context);
+                                                  }
+                                              },
+                                              new Function<TagModelDao, Tag>() {
+                                                  @Override
+                                                  public Tag apply(final TagModelDao input) {
+                                                      return TagModelDaoHelper.isControlTag(input.getTagDefinitionId()) ?
+                                                             new DefaultControlTag(input.getId(), ControlTagType.getTypeFromId(input.getTagDefinitionId()), input.getObjectType(), input.getObjectId(), input.getCreatedDate()) :
+                                                             new DescriptiveTag(input.getId(), input.getTagDefinitionId(), input.getObjectType(), input.getObjectId(), input.getCreatedDate());
+                                                  }
+                                              });
+    }
+
     private List<Tag> toTagList(final List<TagModelDao> input) {
         return ImmutableList.<Tag>copyOf(Iterables.transform(input, new Function<TagModelDao, Tag>() {
             @Override
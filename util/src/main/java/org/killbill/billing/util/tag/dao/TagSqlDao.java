@@ -30,6 +30,7 @@ import org.killbill.billing.callcontext.InternalTenantContext;
 import org.killbill.billing.util.audit.ChangeType;
 import org.killbill.billing.util.entity.dao.Audited;
 import org.killbill.billing.util.entity.dao.EntitySqlDao;
+import org.killbill.billing.util.entity.dao.RequestCachable;
 import org.killbill.commons.jdbi.template.KillBillSqlDaoStringTemplate;
 import org.killbill.billing.util.tag.Tag;
 
@@ -42,6 +43,7 @@ public interface TagSqlDao extends EntitySqlDao<TagModelDao, Tag> {
                           @SmartBindBean InternalCallContext context);
 
     @SqlQuery
+    @RequestCachable
     List<TagModelDao> getTagsForObject(@Bind("objectId") UUID objectId,
                                        @Bind("objectType") ObjectType objectType,
                                        @SmartBindBean InternalTenantContext internalTenantContext);
@@ -17,6 +17,7 @@
 package org.killbill.billing.util.audit.dao;
 
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.skife.jdbi.v2.Handle;
@@ -34,10 +35,16 @@ import org.killbill.billing.util.audit.AccountAuditLogsForObjectType;
 import org.killbill.billing.util.audit.AuditLog;
 import org.killbill.billing.util.audit.ChangeType;
 import org.killbill.billing.util.dao.TableName;
+import org.killbill.billing.util.entity.dao.EntitySqlDaoTransactionWrapper;
+import org.killbill.billing.util.entity.dao.EntitySqlDaoTransactionalJdbiWrapper;
+import org.killbill.billing.util.entity.dao.EntitySqlDaoWrapperFactory;
 import org.killbill.billing.util.tag.DescriptiveTag;
 import org.killbill.billing.util.tag.Tag;
 import org.killbill.billing.util.tag.dao.TagDefinitionModelDao;
 import org.killbill.billing.util.tag.dao.TagModelDao;
+import org.killbill.billing.util.tag.dao.TagSqlDao;
+
+import com.google.common.collect.ImmutableList;
 
 public class TestDefaultAuditDao extends UtilTestSuiteWithEmbeddedDB {
 
@@ -91,6 +98,94 @@ public class TestDefaultAuditDao extends UtilTestSuiteWithEmbeddedDB {
         Assert.assertEquals(secondAuditLogs.get(1).getChangeType(), ChangeType.DELETE);
     }
 
+    @Test(groups = "slow")
+    public void testBatchInsertAudits() throws Exception {
+        final TagModelDao firstTag = new TagModelDao(clock.getUTCNow(), UUID.randomUUID(), UUID.randomUUID(), ObjectType.ACCOUNT);
+        final TagModelDao secondTag = new TagModelDao(clock.getUTCNow(), UUID.randomUUID(), UUID.randomUUID(), ObjectType.ACCOUNT);
+        final TagModelDao thirdTag = new TagModelDao(clock.getUTCNow(), UUID.randomUUID(), UUID.randomUUID(), ObjectType.ACCOUNT);
+        final List<TagModelDao> tags = ImmutableList.<TagModelDao>of(firstTag, secondTag, thirdTag);
+
+        final EntitySqlDaoTransactionalJdbiWrapper transactionalSqlDao = new EntitySqlDaoTransactionalJdbiWrapper(dbi, roDbi, clock, controlCacheDispatcher, nonEntityDao, internalCallContextFactory);
+        transactionalSqlDao.execute(false, new EntitySqlDaoTransactionWrapper<Void>() {
+            @Override
+            public Void inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                entitySqlDaoWrapperFactory.become(TagSqlDao.class).create(tags, internalCallContext);
+                return null;
+            }
+        });
+
+        // Each entity of the batch should have its own history and audit rows
+        for (final TagModelDao curTag : tags) {
+            for (final AuditLevel level : AuditLevel.values()) {
+                verifyAuditLogsForTag(auditDao.getAuditLogsForId(TableName.TAG, curTag.getId(), level, internalCallContext), level);
+            }
+        }
+    }
+
+    @Test(groups = "slow")
+    public void testAuditsBufferedInTransaction() throws Exception {
+        final TagModelDao firstTag = new TagModelDao(clock.getUTCNow(), UUID.randomUUID(), UUID.randomUUID(), ObjectType.ACCOUNT);
+        final TagModelDao secondTag = new TagModelDao(clock.getUTCNow(), UUID.randomUUID(), UUID.randomUUID(), ObjectType.ACCOUNT);
+
+        final EntitySqlDaoTransactionalJdbiWrapper transactionalSqlDao = new EntitySqlDaoTransactionalJdbiWrapper(dbi, roDbi, clock, controlCacheDispatcher, nonEntityDao, internalCallContextFactory);
+        transactionalSqlDao.execute(false, new EntitySqlDaoTransactionWrapper<Void>() {
+            @Override
+            public Void inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                final TagSqlDao tagSqlDao = entitySqlDaoWrapperFactory.become(TagSqlDao.class);
+                tagSqlDao.create(firstTag, internalCallContext);
+                tagSqlDao.create(secondTag, internalCallContext);
+                tagSqlDao.markTagAsDeleted(secondTag.getId().toString(), internalCallContext);
+                return null;
+            }
+        });
+
+        // The audit rows are only written at the end of the transaction, but each write should have its own
+        verifyAuditLogsForTag(auditDao.getAuditLogsForId(TableName.TAG, firstTag.getId(), AuditLevel.FULL, internalCallContext), AuditLevel.FULL);
+
+        final List<AuditLog> secondTagAuditLogs = auditDao.getAuditLogsForId(TableName.TAG, secondTag.getId(), AuditLevel.FULL, internalCallContext);
+        Assert.assertEquals(secondTagAuditLogs.size(), 2);
+        Assert.assertEquals(secondTagAuditLogs.get(0).getChangeType(), ChangeType.INSERT);
+        Assert.assertEquals(secondTagAuditLogs.get(1).getChangeType(), ChangeType.DELETE);
+    }
+
+    @Test(groups = "slow")
+    public void testHistoryBufferedInTransaction() throws Exception {
+        final TagModelDao firstTag = new TagModelDao(clock.getUTCNow(), UUID.randomUUID(), UUID.randomUUID(), ObjectType.ACCOUNT);
+        final TagModelDao secondTag = new TagModelDao(clock.getUTCNow(), UUID.randomUUID(), UUID.randomUUID(), ObjectType.ACCOUNT);
+        final TagModelDao thirdTag = new TagModelDao(clock.getUTCNow(), UUID.randomUUID(), UUID.randomUUID(), ObjectType.ACCOUNT);
+
+        final EntitySqlDaoTransactionalJdbiWrapper transactionalSqlDao = new EntitySqlDaoTransactionalJdbiWrapper(dbi, roDbi, clock, controlCacheDispatcher, nonEntityDao, internalCallContextFactory);
+        final TagModelDao createdTag = transactionalSqlDao.execute(false, new EntitySqlDaoTransactionWrapper<TagModelDao>() {
+            @Override
+            public TagModelDao inTransaction(final EntitySqlDaoWrapperFactory entitySqlDaoWrapperFactory) throws Exception {
+                final TagSqlDao tagSqlDao = entitySqlDaoWrapperFactory.become(TagSqlDao.class);
+                final TagModelDao createdTag = (TagModelDao) tagSqlDao.create(firstTag, internalCallContext);
+                tagSqlDao.create(ImmutableList.<TagModelDao>of(secondTag, thirdTag), internalCallContext);
+                tagSqlDao.markTagAsDeleted(firstTag.getId().toString(), internalCallContext);
+                return createdTag;
+            }
+        });
+
+        // The created entity isn't read back, but carries the generated record ids
+        final Handle handle = dbi.open();
+        final Long recordId = ((Number) handle.select("select record_id from tags where id = ?", firstTag.getId().toString()).get(0).get("record_id")).longValue();
+        final List<Map<String, Object>> firstTagHistory = handle.select("select h.change_type from tag_history h join audit_log a on a.target_record_id = h.record_id and a.table_name = 'TAG_HISTORY' where h.target_record_id = ? order by h.record_id", recordId);
+        handle.close();
+        Assert.assertEquals(createdTag.getRecordId(), recordId);
+        Assert.assertEquals(createdTag.getTenantRecordId(), internalCallContext.getTenantRecordId());
+        Assert.assertEquals(createdTag.getAccountRecordId(), internalCallContext.getAccountRecordId());
+
+        // The history rows are only written at the end of the transaction, each one with the state of its own write
+        Assert.assertEquals(firstTagHistory.size(), 2);
+        Assert.assertEquals(firstTagHistory.get(0).get("change_type"), ChangeType.INSERT.toString());
+        Assert.assertEquals(firstTagHistory.get(1).get("change_type"), ChangeType.DELETE.toString());
+        for (final TagModelDao tag : ImmutableList.<TagModelDao>of(secondTag, thirdTag)) {
+            final List<AuditLog> auditLogs = auditDao.getAuditLogsForId(TableName.TAG, tag.getId(), AuditLevel.FULL, internalCallContext);
+            Assert.assertEquals(auditLogs.size(), 1);
+            Assert.assertEquals(auditLogs.get(0).getChangeType(), ChangeType.INSERT);
+        }
+    }
+
     private void addTag() throws TagDefinitionApiException, TagApiException {
         // Create a tag definition
         eventsListener.pushExpectedEvent(NextEvent.TAG_DEFINITION);
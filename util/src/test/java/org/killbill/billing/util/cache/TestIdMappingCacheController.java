@@ -0,0 +1,174 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.cache;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.killbill.billing.util.UtilTestSuiteNoDB;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.dao.TableName;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+
+public class TestIdMappingCacheController extends UtilTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testRecordIdCache() {
+        for (final boolean offHeap : new boolean[]{false, true}) {
+            final CountingCacheLoader<Long> baseCacheLoader = new CountingCacheLoader<Long>(CacheType.RECORD_ID) {
+                @Override
+                Long doCompute(final String key) {
+                    return (long) key.hashCode();
+                }
+            };
+            final IdMappingCacheController<Long> cacheController = new IdMappingCacheController<Long>(baseCacheLoader, 100, offHeap);
+
+            final String id = UUID.randomUUID().toString();
+            Assert.assertFalse(cacheController.isKeyInCache(id));
+            Assert.assertEquals(cacheController.get(id, null), Long.valueOf(id.hashCode()));
+            Assert.assertEquals(cacheController.get(id, null), Long.valueOf(id.hashCode()));
+            Assert.assertEquals(baseCacheLoader.getNbComputations(), 1);
+            Assert.assertTrue(cacheController.isKeyInCache(id));
+            Assert.assertEquals(cacheController.getKeys(), ImmutableList.<String>of(id));
+            Assert.assertEquals(cacheController.size(), 1);
+
+            final String otherId = UUID.randomUUID().toString();
+            final Map<String, Long> values = cacheController.getAll(ImmutableList.<String>of(id, otherId));
+            Assert.assertEquals(values.size(), 1);
+            Assert.assertEquals(values.get(id), Long.valueOf(id.hashCode()));
+
+            Assert.assertTrue(cacheController.remove(id));
+            Assert.assertFalse(cacheController.isKeyInCache(id));
+            Assert.assertEquals(cacheController.size(), 0);
+
+            // Not a UUID: bypasses the cache
+            Assert.assertEquals(cacheController.get("foo", null), Long.valueOf("foo".hashCode()));
+            Assert.assertFalse(cacheController.isKeyInCache("foo"));
+        }
+    }
+
+    @Test(groups = "fast")
+    public void testObjectIdCache() {
+        final UUID objectId = UUID.randomUUID();
+        final CountingCacheLoader<UUID> baseCacheLoader = new CountingCacheLoader<UUID>(CacheType.OBJECT_ID) {
+            @Override
+            UUID doCompute(final String key) {
+                return objectId;
+            }
+        };
+        final IdMappingCacheController<UUID> cacheController = new IdMappingCacheController<UUID>(baseCacheLoader, 100, false);
+
+        final String accountKey = TableName.ACCOUNT + CacheControllerDispatcher.CACHE_KEY_SEPARATOR + "12";
+        final String invoiceKey = TableName.INVOICES + CacheControllerDispatcher.CACHE_KEY_SEPARATOR + "12";
+        Assert.assertEquals(cacheController.get(accountKey, null), objectId);
+        cacheController.putIfAbsent(invoiceKey, objectId);
+        Assert.assertEquals(cacheController.get(invoiceKey, null), objectId);
+        Assert.assertEquals(baseCacheLoader.getNbComputations(), 1);
+        Assert.assertEquals(cacheController.size(), 2);
+
+        cacheController.remove(new Function<String, Boolean>() {
+            @Override
+            public Boolean apply(final String key) {
+                return key.startsWith(TableName.ACCOUNT + CacheControllerDispatcher.CACHE_KEY_SEPARATOR);
+            }
+        });
+        Assert.assertFalse(cacheController.isKeyInCache(accountKey));
+        Assert.assertTrue(cacheController.isKeyInCache(invoiceKey));
+
+        cacheController.removeAll();
+        Assert.assertEquals(cacheController.size(), 0);
+        Assert.assertTrue(cacheController.getKeys().isEmpty());
+    }
+
+    @Test(groups = "fast")
+    public void testBoundedSize() {
+        final CountingCacheLoader<Long> baseCacheLoader = new CountingCacheLoader<Long>(CacheType.ACCOUNT_RECORD_ID) {
+            @Override
+            Long doCompute(final String key) {
+                return 1L;
+            }
+        };
+        final IdMappingCacheController<Long> cacheController = new IdMappingCacheController<Long>(baseCacheLoader, 64, false);
+
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(cacheController.get(UUID.randomUUID().toString(), null), (Long) 1L);
+        }
+        Assert.assertEquals(cacheController.size(), 64);
+        Assert.assertEquals(cacheController.getKeys().size(), 64);
+        Assert.assertEquals(cacheController.getNbEvictions(), 1000 - 64);
+    }
+
+    @Test(groups = "fast")
+    public void testStats() {
+        final CountingCacheLoader<Long> baseCacheLoader = new CountingCacheLoader<Long>(CacheType.TENANT_RECORD_ID) {
+            @Override
+            Long doCompute(final String key) {
+                return 1L;
+            }
+        };
+        final IdMappingCacheController<Long> cacheController = new IdMappingCacheController<Long>(baseCacheLoader, 64, false);
+
+        final String id = UUID.randomUUID().toString();
+        cacheController.get(id, null);
+        cacheController.get(id, null);
+        cacheController.get(UUID.randomUUID().toString(), null);
+
+        final CacheStats cacheStats = cacheController.getStats();
+        Assert.assertEquals(cacheStats.getCacheName(), CacheType.TENANT_RECORD_ID.getCacheName());
+        Assert.assertEquals(cacheStats.getSize(), 2);
+        Assert.assertEquals(cacheStats.getHits(), 1);
+        Assert.assertEquals(cacheStats.getMisses(), 2);
+        Assert.assertEquals(cacheStats.getHitRatio(), 1.0 / 3);
+        Assert.assertEquals(cacheStats.getLoads(), 2);
+        Assert.assertEquals(cacheStats.getEvictions(), 0);
+        // 64 entries of 5 longs
+        Assert.assertEquals(cacheStats.getApproximateSizeInBytes(), 64 * 5 * 8);
+    }
+
+    private abstract static class CountingCacheLoader<V> extends BaseCacheLoader<String, V> {
+
+        private final CacheType cacheType;
+        private final AtomicInteger nbComputations = new AtomicInteger();
+
+        private CountingCacheLoader(final CacheType cacheType) {
+            this.cacheType = cacheType;
+        }
+
+        abstract V doCompute(final String key);
+
+        @Override
+        public CacheType getCacheType() {
+            return cacheType;
+        }
+
+        @Override
+        public V compute(final String key, final CacheLoaderArgument cacheLoaderArgument) {
+            nbComputations.incrementAndGet();
+            return doCompute(key);
+        }
+
+        int getNbComputations() {
+            return nbComputations.get();
+        }
+    }
+}
@@ -17,6 +17,17 @@
 
 package org.killbill.billing.util.cache;
 
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import javax.cache.Cache;
 import javax.cache.CacheException;
 
@@ -64,4 +75,311 @@ public class TestKillBillCacheController extends UtilTestSuiteNoDB {
         // This will go back to the cache loader
         Assert.assertEquals(killBillCacheController.get("12", null), new Long(12));
     }
+
+    @Test(groups = "fast")
+    public void testWithUnreadableEntry() {
+        final BlockingCacheLoader baseCacheLoader = new BlockingCacheLoader(new CountDownLatch(1), new CountDownLatch(0));
+        final Cache<String, Long> cache = createCache();
+        // e.g. entry written by a previous version, whose serialized form is no longer compatible
+        Mockito.when(cache.get("12")).thenThrow(new IllegalStateException("Exception for testing")).thenReturn(12L);
+        final KillBillCacheController<String, Long> killBillCacheController = new KillBillCacheController<String, Long>(cache, baseCacheLoader);
+
+        // The entry is evicted and overwritten by the reloaded value
+        Assert.assertEquals(killBillCacheController.get("12", null), new Long(12));
+        Mockito.verify(cache, Mockito.times(1)).remove("12");
+        Assert.assertTrue(killBillCacheController.isKeyInCache("12"));
+        Assert.assertEquals(killBillCacheController.getNbMisses(), 1);
+
+        Assert.assertEquals(killBillCacheController.get("12", null), new Long(12));
+        Assert.assertEquals(baseCacheLoader.getNbComputations(), 1);
+        Assert.assertEquals(killBillCacheController.getNbHits(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testSingleFlightLoad() throws Exception {
+        final int nbCallers = 5;
+        final CountDownLatch loadStarted = new CountDownLatch(1);
+        final CountDownLatch releaseLoad = new CountDownLatch(1);
+        final BlockingCacheLoader baseCacheLoader = new BlockingCacheLoader(loadStarted, releaseLoad);
+        final KillBillCacheController<String, Long> killBillCacheController = new KillBillCacheController<String, Long>(createCache(), baseCacheLoader);
+
+        final ExecutorService callers = Executors.newFixedThreadPool(nbCallers);
+        try {
+            final Future<Long> firstCaller = callers.submit(new GetCallable(killBillCacheController, "12"));
+            Assert.assertTrue(loadStarted.await(10, TimeUnit.SECONDS));
+
+            final Future<?>[] otherCallers = new Future<?>[nbCallers - 1];
+            for (int i = 0; i < otherCallers.length; i++) {
+                otherCallers[i] = callers.submit(new GetCallable(killBillCacheController, "12"));
+            }
+            while (killBillCacheController.getNbCoalescedLoads() < nbCallers - 1) {
+                Thread.sleep(10);
+            }
+
+            releaseLoad.countDown();
+            Assert.assertEquals(firstCaller.get(10, TimeUnit.SECONDS), new Long(12));
+            for (final Future<?> otherCaller : otherCallers) {
+                Assert.assertEquals(otherCaller.get(10, TimeUnit.SECONDS), new Long(12));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+
+        Assert.assertEquals(baseCacheLoader.getNbComputations(), 1);
+        Assert.assertEquals(killBillCacheController.getNbMisses(), nbCallers);
+        Assert.assertEquals(killBillCacheController.getNbHits(), 0);
+
+        // Served by the cache
+        Assert.assertEquals(killBillCacheController.get("12", null), new Long(12));
+        Assert.assertEquals(baseCacheLoader.getNbComputations(), 1);
+        Assert.assertEquals(killBillCacheController.getNbHits(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testInvalidationDuringLoad() throws Exception {
+        final CountDownLatch loadStarted = new CountDownLatch(1);
+        final CountDownLatch releaseLoad = new CountDownLatch(1);
+        final BlockingCacheLoader baseCacheLoader = new BlockingCacheLoader(loadStarted, releaseLoad);
+        final KillBillCacheController<String, Long> killBillCacheController = new KillBillCacheController<String, Long>(createCache(), baseCacheLoader);
+
+        final ExecutorService callers = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Long> caller = callers.submit(new GetCallable(killBillCacheController, "12"));
+            Assert.assertTrue(loadStarted.await(10, TimeUnit.SECONDS));
+
+            // e.g. tenant catalog invalidation while the catalog is being loaded
+            killBillCacheController.removeAll();
+            releaseLoad.countDown();
+            Assert.assertEquals(caller.get(10, TimeUnit.SECONDS), new Long(12));
+        } finally {
+            callers.shutdownNow();
+        }
+
+        // The value computed before the invalidation isn't cached
+        Assert.assertFalse(killBillCacheController.isKeyInCache("12"));
+        Assert.assertEquals(killBillCacheController.get("12", null), new Long(12));
+        Assert.assertEquals(baseCacheLoader.getNbComputations(), 2);
+        Assert.assertTrue(killBillCacheController.isKeyInCache("12"));
+    }
+
+    @Test(groups = "fast")
+    public void testInvalidationOfAnotherKeyDuringLoad() throws Exception {
+        final CountDownLatch loadStarted = new CountDownLatch(1);
+        final CountDownLatch releaseLoad = new CountDownLatch(1);
+        final BlockingCacheLoader baseCacheLoader = new BlockingCacheLoader(loadStarted, releaseLoad);
+        final KillBillCacheController<String, Long> killBillCacheController = new KillBillCacheController<String, Long>(createCache(), baseCacheLoader);
+
+        final ExecutorService callers = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Long> caller = callers.submit(new GetCallable(killBillCacheController, "12"));
+            Assert.assertTrue(loadStarted.await(10, TimeUnit.SECONDS));
+
+            killBillCacheController.remove("13");
+            releaseLoad.countDown();
+            Assert.assertEquals(caller.get(10, TimeUnit.SECONDS), new Long(12));
+        } finally {
+            callers.shutdownNow();
+        }
+
+        // Only invalidations of that key drop the loaded value
+        Assert.assertTrue(killBillCacheController.isKeyInCache("12"));
+        Assert.assertEquals(killBillCacheController.get("12", null), new Long(12));
+        Assert.assertEquals(baseCacheLoader.getNbComputations(), 1);
+    }
+
+    @Test(groups = "fast")
+    public void testRemoveByTenantRecordId() {
+        final BaseCacheLoader<String, Long> baseCacheLoader = new BaseCacheLoader<String, Long>() {
+            @Override
+            public CacheType getCacheType() {
+                return CacheType.TENANT_KV;
+            }
+
+            @Override
+            public Long compute(final String key, final CacheLoaderArgument cacheLoaderArgument) {
+                return (long) key.length();
+            }
+        };
+        final Cache<String, Long> cache = createCache();
+        final KillBillCacheController<String, Long> killBillCacheController = new KillBillCacheController<String, Long>(cache, baseCacheLoader, true);
+
+        killBillCacheController.get("PER_TENANT_CONFIG::1", null);
+        killBillCacheController.get("PLUGIN_CONFIG_foo::1", null);
+        killBillCacheController.get("PER_TENANT_CONFIG::11", null);
+        killBillCacheController.get("PER_TENANT_CONFIG::2", null);
+        Assert.assertEquals(killBillCacheController.size(), 4);
+
+        // The cache keys aren't scanned
+        killBillCacheController.removeByTenantRecordId(1L);
+        Assert.assertEquals(killBillCacheController.size(), 2);
+        Mockito.verify(cache, Mockito.never()).iterator();
+
+        Assert.assertFalse(killBillCacheController.isKeyInCache("PER_TENANT_CONFIG::1"));
+        Assert.assertFalse(killBillCacheController.isKeyInCache("PLUGIN_CONFIG_foo::1"));
+        Assert.assertTrue(killBillCacheController.isKeyInCache("PER_TENANT_CONFIG::11"));
+        Assert.assertTrue(killBillCacheController.isKeyInCache("PER_TENANT_CONFIG::2"));
+
+        // Keys are re-indexed when re-loaded
+        killBillCacheController.get("PER_TENANT_CONFIG::1", null);
+        killBillCacheController.remove("PER_TENANT_CONFIG::2");
+        killBillCacheController.removeByTenantRecordId(1L);
+        killBillCacheController.removeByTenantRecordId(2L);
+        Assert.assertFalse(killBillCacheController.isKeyInCache("PER_TENANT_CONFIG::1"));
+        Assert.assertTrue(killBillCacheController.isKeyInCache("PER_TENANT_CONFIG::11"));
+    }
+
+    @Test(groups = "fast")
+    public void testNearCache() {
+        final BaseCacheLoader<String, Long> baseCacheLoader = new BaseCacheLoader<String, Long>() {
+            @Override
+            public CacheType getCacheType() {
+                return CacheType.TENANT_KV;
+            }
+
+            @Override
+            public Long compute(final String key, final CacheLoaderArgument cacheLoaderArgument) {
+                return (long) key.length();
+            }
+        };
+        final Cache<String, Long> cache = createCache();
+        final NearCache<String, Long> nearCache = new NearCache<String, Long>(100, TimeUnit.MINUTES.toMillis(10));
+        final KillBillCacheController<String, Long> killBillCacheController = new KillBillCacheController<String, Long>(cache, baseCacheLoader, true, nearCache);
+
+        Assert.assertEquals(killBillCacheController.get("PER_TENANT_CONFIG::1", null), (Long) 20L);
+        Assert.assertEquals(killBillCacheController.get("PER_TENANT_CONFIG::1", null), (Long) 20L);
+        Assert.assertEquals(killBillCacheController.get("PER_TENANT_CONFIG::2", null), (Long) 20L);
+        // Second lookup served locally
+        Mockito.verify(cache, Mockito.times(1)).get("PER_TENANT_CONFIG::1");
+        Assert.assertEquals(killBillCacheController.getNbNearCacheHits(), 1);
+        Assert.assertEquals(nearCache.size(), 2);
+
+        // Invalidations (e.g. tenant broadcast) drop the local copies
+        killBillCacheController.removeByTenantRecordId(1L);
+        Assert.assertNull(nearCache.get("PER_TENANT_CONFIG::1"));
+        Assert.assertNotNull(nearCache.get("PER_TENANT_CONFIG::2"));
+        Assert.assertEquals(killBillCacheController.get("PER_TENANT_CONFIG::1", null), (Long) 20L);
+        Mockito.verify(cache, Mockito.times(2)).get("PER_TENANT_CONFIG::1");
+
+        killBillCacheController.remove("PER_TENANT_CONFIG::2");
+        Assert.assertNull(nearCache.get("PER_TENANT_CONFIG::2"));
+
+        killBillCacheController.removeAll();
+        Assert.assertEquals(nearCache.size(), 0);
+    }
+
+    @Test(groups = "fast")
+    public void testStatsWithoutStatisticsMBean() {
+        final BlockingCacheLoader baseCacheLoader = new BlockingCacheLoader(new CountDownLatch(1), new CountDownLatch(0));
+        final Cache<String, Long> cache = createCache();
+        final KillBillCacheController<String, Long> killBillCacheController = new KillBillCacheController<String, Long>(cache, baseCacheLoader);
+        killBillCacheController.get("12", null);
+        killBillCacheController.get("12", null);
+
+        // e.g. Redis: the cache isn't iterated over to compute the size
+        final CacheStats cacheStats = killBillCacheController.getStats();
+        Mockito.verify(cache, Mockito.never()).iterator();
+        Assert.assertEquals(cacheStats.getSize(), CacheStats.NOT_SUPPORTED);
+        Assert.assertEquals(cacheStats.getApproximateSizeInBytes(), CacheStats.NOT_SUPPORTED);
+        Assert.assertEquals(cacheStats.getHits(), 1);
+        Assert.assertEquals(cacheStats.getMisses(), 1);
+    }
+
+    private Cache<String, Long> createCache() {
+        final ConcurrentMap<String, Long> values = new ConcurrentHashMap<String, Long>();
+        final Cache<String, Long> cache = Mockito.mock(Cache.class);
+        Mockito.when(cache.get(Mockito.anyString())).thenAnswer(new Answer<Long>() {
+            @Override
+            public Long answer(final InvocationOnMock invocation) throws Throwable {
+                return values.get((String) invocation.getArguments()[0]);
+            }
+        });
+        Mockito.when(cache.containsKey(Mockito.anyString())).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(final InvocationOnMock invocation) throws Throwable {
+                return values.containsKey((String) invocation.getArguments()[0]);
+            }
+        });
+        Mockito.when(cache.putIfAbsent(Mockito.anyString(), Mockito.anyLong())).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(final InvocationOnMock invocation) throws Throwable {
+                return values.putIfAbsent((String) invocation.getArguments()[0], (Long) invocation.getArguments()[1]) == null;
+            }
+        });
+        Mockito.when(cache.remove(Mockito.anyString(), Mockito.anyLong())).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(final InvocationOnMock invocation) throws Throwable {
+                return values.remove((String) invocation.getArguments()[0], (Long) invocation.getArguments()[1]);
+            }
+        });
+        Mockito.when(cache.remove(Mockito.anyString())).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(final InvocationOnMock invocation) throws Throwable {
+                return values.remove((String) invocation.getArguments()[0]) != null;
+            }
+        });
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                values.keySet().removeAll((Set<String>) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(cache).removeAll(Mockito.anySet());
+        Mockito.doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) throws Throwable {
+                values.clear();
+                return null;
+            }
+        }).when(cache).clear();
+        return cache;
+    }
+
+    private static final class BlockingCacheLoader extends BaseCacheLoader<String, Long> {
+
+        private final CountDownLatch loadStarted;
+        private final CountDownLatch releaseLoad;
+        private final AtomicInteger nbComputations = new AtomicInteger();
+
+        private BlockingCacheLoader(final CountDownLatch loadStarted, final CountDownLatch releaseLoad) {
+            this.loadStarted = loadStarted;
+            this.releaseLoad = releaseLoad;
+        }
+
+        @Override
+        public CacheType getCacheType() {
+            return CacheType.RECORD_ID;
+        }
+
+        @Override
+        public Long compute(final String key, final CacheLoaderArgument cacheLoaderArgument) {
+            nbComputations.incrementAndGet();
+            loadStarted.countDown();
+            try {
+                releaseLoad.await(10, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Long.valueOf(key);
+        }
+
+        public int getNbComputations() {
+            return nbComputations.get();
+        }
+    }
+
+    private static final class GetCallable implements Callable<Long> {
+
+        private final KillBillCacheController<String, Long> killBillCacheController;
+        private final String key;
+
+        private GetCallable(final KillBillCacheController<String, Long> killBillCacheController, final String key) {
+            this.killBillCacheController = killBillCacheController;
+            this.key = key;
+        }
+
+        @Override
+        public Long call() throws Exception {
+            return killBillCacheController.get(key, null);
+        }
+    }
 }
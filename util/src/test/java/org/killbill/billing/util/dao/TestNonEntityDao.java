@@ -18,6 +18,7 @@ package org.killbill.billing.util.dao;
 
 import java.io.IOException;
 import java.util.Date;
+import java.util.Map;
 import java.util.UUID;
 
 import org.skife.jdbi.v2.Handle;
@@ -27,6 +28,10 @@ import org.testng.annotations.Test;
 
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.util.UtilTestSuiteWithEmbeddedDB;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.cache.CacheController;
+
+import com.google.common.collect.ImmutableList;
 
 public class TestNonEntityDao extends UtilTestSuiteWithEmbeddedDB {
 
@@ -91,6 +96,36 @@ public class TestNonEntityDao extends UtilTestSuiteWithEmbeddedDB {
         Assert.assertEquals(resultTenantRecordId, tenantRecordId);
     }
 
+    @Test(groups = "slow")
+    public void testBulkRetrievals() throws IOException {
+        insertAccount();
+        insertTag();
+
+        final UUID unknownId = UUID.randomUUID();
+
+        final Map<UUID, Long> recordIds = nonEntityDao.retrieveRecordIdsFromObjects(ImmutableList.<UUID>of(accountId, unknownId), ObjectType.ACCOUNT, null);
+        Assert.assertEquals(recordIds.size(), 1);
+        Assert.assertEquals(recordIds.get(accountId), accountRecordId);
+
+        final Map<UUID, Long> accountRecordIds = nonEntityDao.retrieveAccountRecordIdsFromObjects(ImmutableList.<UUID>of(tagId, unknownId), ObjectType.TAG, null);
+        Assert.assertEquals(accountRecordIds.size(), 1);
+        Assert.assertEquals(accountRecordIds.get(tagId), accountRecordId);
+
+        final Map<UUID, Long> tenantRecordIds = nonEntityDao.retrieveTenantRecordIdsFromObjects(ImmutableList.<UUID>of(accountId), ObjectType.ACCOUNT, null);
+        Assert.assertEquals(tenantRecordIds.get(accountId), tenantRecordId);
+
+        final Map<Long, UUID> ids = nonEntityDao.retrieveIdsFromObjects(ImmutableList.<Long>of(accountRecordId, -1L), ObjectType.ACCOUNT, null);
+        Assert.assertEquals(ids.size(), 1);
+        Assert.assertEquals(ids.get(accountRecordId), accountId);
+
+        // Cached values are used when available, misses go to the database
+        final CacheController<String, Long> recordIdCacheController = controlCacheDispatcher.getCacheController(CacheType.RECORD_ID);
+        final Map<UUID, Long> cachedRecordIds = nonEntityDao.retrieveRecordIdsFromObjects(ImmutableList.<UUID>of(accountId), ObjectType.ACCOUNT, recordIdCacheController);
+        Assert.assertEquals(cachedRecordIds.get(accountId), accountRecordId);
+        Assert.assertEquals(nonEntityDao.retrieveRecordIdsFromObjects(ImmutableList.<UUID>of(accountId), ObjectType.ACCOUNT, recordIdCacheController), cachedRecordIds);
+        Assert.assertEquals(nonEntityDao.retrieveRecordIdFromObject(accountId, ObjectType.ACCOUNT, recordIdCacheController), accountRecordId);
+    }
+
     private void insertAccount() throws IOException {
         dbi.withHandle(new HandleCallback<Void>() {
             @Override
@@ -24,6 +24,8 @@ import org.testng.annotations.Test;
 
 import org.killbill.billing.api.TestApiListener.NextEvent;
 import org.killbill.billing.util.UtilTestSuiteWithEmbeddedDB;
+import org.killbill.billing.util.entity.DefaultPagination;
+import org.killbill.billing.util.entity.Pagination;
 import org.killbill.billing.util.tag.dao.TagDefinitionModelDao;
 import org.killbill.billing.util.tag.dao.TagDefinitionSqlDao;
 
@@ -75,4 +77,43 @@ public class TestPagination extends UtilTestSuiteWithEmbeddedDB {
             }
         }
     }
+
+    @Test(groups = "slow", description = "Test Pagination: seek to the next page from the last record id")
+    public void testTagDefinitionsKeysetPagination() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            eventsListener.pushExpectedEvent(NextEvent.TAG_DEFINITION);
+            tagDefinitionDao.create("name-" + i, "description-" + i, ObjectType.ACCOUNT.name(), internalCallContext);
+            assertListenerStatus();
+        }
+
+        // First page (offset based) knows where it ended
+        final Pagination<TagDefinitionModelDao> firstPage = tagDefinitionDao.get(0L, 4L, internalCallContext);
+        final List<TagDefinitionModelDao> firstTagDefinitions = ImmutableList.<TagDefinitionModelDao>copyOf(firstPage);
+        Assert.assertEquals(firstTagDefinitions.size(), 4);
+        Assert.assertEquals(((DefaultPagination) firstPage).getPageLastRecordId(), firstTagDefinitions.get(3).getRecordId());
+
+        // Next pages seek from there
+        final Pagination<TagDefinitionModelDao> secondPage = tagDefinitionDao.get(4L, ((DefaultPagination) firstPage).getPageLastRecordId(), 4L, internalCallContext);
+        final List<TagDefinitionModelDao> secondTagDefinitions = ImmutableList.<TagDefinitionModelDao>copyOf(secondPage);
+        Assert.assertEquals(secondTagDefinitions.size(), 4);
+        for (int j = 0; j < secondTagDefinitions.size(); j++) {
+            Assert.assertEquals(secondTagDefinitions.get(j).getName(), "name-" + (4 + j));
+        }
+        Assert.assertEquals(((DefaultPagination) secondPage).getPageLastRecordId(), secondTagDefinitions.get(3).getRecordId());
+
+        // Last (partial) page
+        final Pagination<TagDefinitionModelDao> thirdPage = tagDefinitionDao.get(8L, ((DefaultPagination) secondPage).getPageLastRecordId(), 4L, internalCallContext);
+        final List<TagDefinitionModelDao> thirdTagDefinitions = ImmutableList.<TagDefinitionModelDao>copyOf(thirdPage);
+        Assert.assertEquals(thirdTagDefinitions.size(), 2);
+        Assert.assertEquals(thirdTagDefinitions.get(0).getName(), "name-8");
+        Assert.assertEquals(thirdTagDefinitions.get(1).getName(), "name-9");
+        Assert.assertNull(((DefaultPagination) thirdPage).getPageLastRecordId());
+        Assert.assertNull(thirdPage.getNextOffset());
+
+        // Descending pages (negative limit) seek backwards
+        final List<TagDefinitionModelDao> previousTagDefinitions = ImmutableList.<TagDefinitionModelDao>copyOf(tagDefinitionDao.get(0L, secondTagDefinitions.get(0).getRecordId(), -2L, internalCallContext));
+        Assert.assertEquals(previousTagDefinitions.size(), 2);
+        Assert.assertEquals(previousTagDefinitions.get(0).getName(), "name-3");
+        Assert.assertEquals(previousTagDefinitions.get(1).getName(), "name-2");
+    }
 }
@@ -78,6 +78,11 @@ public class MockEntityDaoBase<M extends EntityModelDao<E>, E extends Entity, U
         return DefaultPagination.<M>build(offset, limit, ImmutableList.<M>copyOf(getAll(context)));
     }
 
+    @Override
+    public Pagination<M> get(final Long offset, final Long lastRecordId, final Long limit, final InternalTenantContext context) {
+        return get(offset, limit, context);
+    }
+
     @Override
     public Long getCount(final InternalTenantContext context) {
         return (long) entities.keySet().size();
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.entity.dao;
+
+import org.killbill.billing.util.UtilTestSuiteNoDB;
+import org.killbill.commons.profiling.Profiling.WithProfilingCallback;
+import org.mockito.Mockito;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.IDBI;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+public class TestDBRouterUntyped extends UtilTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testRoutingStatistics() throws Throwable {
+        final IDBI dbi = Mockito.mock(IDBI.class);
+        final Handle rwHandle = Mockito.mock(Handle.class);
+        Mockito.when(dbi.open()).thenReturn(rwHandle);
+        final IDBI roDbi = Mockito.mock(IDBI.class);
+        final Handle roHandle = Mockito.mock(Handle.class);
+        Mockito.when(roDbi.open()).thenReturn(roHandle);
+
+        final DBRouterUntyped dbRouter = new DBRouterUntyped(dbi, roDbi);
+
+        final long nbRORoutedCalls = DBRouterUntyped.getNbRORoutedCalls();
+        final long nbRWRoutedCalls = DBRouterUntyped.getNbRWRoutedCalls();
+        final long nbRORedirectedCalls = DBRouterUntyped.getNbRORedirectedCalls();
+
+        DBRouterUntyped.withRODBIAllowed(true,
+                                         new WithProfilingCallback<Object, Throwable>() {
+                                             @Override
+                                             public Object execute() throws Throwable {
+                                                 // Read
+                                                 Assert.assertSame(dbRouter.getHandle(true), roHandle);
+                                                 // Write
+                                                 Assert.assertSame(dbRouter.getHandle(false), rwHandle);
+                                                 // Read after write
+                                                 Assert.assertSame(dbRouter.getHandle(true), rwHandle);
+                                                 return null;
+                                             }
+                                         });
+
+        // Counters are global, other tests may run concurrently
+        Assert.assertTrue(DBRouterUntyped.getNbRORoutedCalls() - nbRORoutedCalls >= 1);
+        Assert.assertTrue(DBRouterUntyped.getNbRWRoutedCalls() - nbRWRoutedCalls >= 2);
+        Assert.assertTrue(DBRouterUntyped.getNbRORedirectedCalls() - nbRORedirectedCalls >= 1);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014-2018 Groupon, Inc
+ * Copyright 2014-2018 The Billing Project, LLC
+ *
+ * The Billing Project licenses this file to you under the Apache License, version 2.0
+ * (the "License"); you may not use this file except in compliance with the
+ * License.  You may obtain a copy of the License at:
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.killbill.billing.util.entity.dao;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import org.killbill.billing.ObjectType;
+import org.killbill.billing.callcontext.InternalCallContext;
+import org.killbill.billing.callcontext.InternalTenantContext;
+import org.killbill.billing.util.UtilTestSuiteNoDB;
+import org.killbill.billing.util.audit.ChangeType;
+import org.killbill.billing.util.cache.Cachable.CacheType;
+import org.killbill.billing.util.dao.TableName;
+import org.killbill.billing.util.tag.dao.TagModelDao;
+import org.killbill.billing.util.tag.dao.TagSqlDao;
+import org.mockito.Mockito;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class TestEntitySqlDaoMethodDescriptor extends UtilTestSuiteNoDB {
+
+    @Test(groups = "fast")
+    public void testCachableMethod() throws Exception {
+        final Method method = TagSqlDao.class.getMethod("getRecordId", String.class, InternalTenantContext.class);
+        final EntitySqlDaoMethodDescriptor descriptor = EntitySqlDaoMethodDescriptor.get(TagSqlDao.class, method);
+
+        // Computed only once
+        Assert.assertSame(EntitySqlDaoMethodDescriptor.get(TagSqlDao.class, method), descriptor);
+
+        Assert.assertNull(descriptor.getAuditedAnnotation());
+        Assert.assertEquals(descriptor.getCachableAnnotation().value(), CacheType.RECORD_ID);
+        Assert.assertEquals(descriptor.getObjectType(), ObjectType.TAG);
+        Assert.assertFalse(descriptor.isGetById());
+        Assert.assertEquals(descriptor.getRawProfilingId(), "TagSqlDao (raw): getRecordId");
+
+        final String tagId = UUID.randomUUID().toString();
+        final Object[] args = {tagId, internalCallContext};
+        Assert.assertEquals(descriptor.getCacheKeyPieces(args), new Object[]{tagId});
+        Assert.assertSame(descriptor.getTenantContext(args), internalCallContext);
+    }
+
+    @Test(groups = "fast")
+    public void testAuditedMethods() throws Exception {
+        final TagModelDao firstTag = new TagModelDao(clock.getUTCNow(), UUID.randomUUID(), UUID.randomUUID(), ObjectType.ACCOUNT);
+        final TagModelDao secondTag = new TagModelDao(clock.getUTCNow(), UUID.randomUUID(), UUID.randomUUID(), ObjectType.ACCOUNT);
+
+        final EntitySqlDaoMethodDescriptor create = EntitySqlDaoMethodDescriptor.get(TagSqlDao.class, TagSqlDao.class.getMethod("create", EntityModelDao.class, InternalCallContext.class));
+        Assert.assertEquals(create.getAuditedAnnotation().value(), ChangeType.INSERT);
+        Assert.assertNull(create.getObjectType());
+        Assert.assertEquals(create.getTableName(), TableName.TAG);
+        Assert.assertEquals(create.getEntityIds(new Object[]{firstTag, internalCallContext}), ImmutableList.<String>of(firstTag.getId().toString()));
+        Assert.assertSame(create.getCallContext(new Object[]{firstTag, internalCallContext}), internalCallContext);
+
+        final EntitySqlDaoMethodDescriptor batchCreate = EntitySqlDaoMethodDescriptor.get(TagSqlDao.class, TagSqlDao.class.getMethod("create", Iterable.class, InternalCallContext.class));
+        Assert.assertEquals(batchCreate.getEntityIds(new Object[]{ImmutableList.<TagModelDao>of(firstTag, secondTag), internalCallContext}),
+                            ImmutableList.<String>of(firstTag.getId().toString(), secondTag.getId().toString()));
+
+        final EntitySqlDaoMethodDescriptor delete = EntitySqlDaoMethodDescriptor.get(TagSqlDao.class, TagSqlDao.class.getMethod("markTagAsDeleted", String.class, InternalCallContext.class));
+        Assert.assertEquals(delete.getAuditedAnnotation().value(), ChangeType.DELETE);
+        Assert.assertEquals(delete.getEntityIds(new Object[]{firstTag.getId().toString(), internalCallContext}), ImmutableList.<String>of(firstTag.getId().toString()));
+        // Tags have an is_active flag
+        Assert.assertTrue(delete.isSoftDeletionSupported());
+    }
+
+    @Test(groups = "fast")
+    public void testNonAuditedMethods() throws Exception {
+        final EntitySqlDaoMethodDescriptor getById = EntitySqlDaoMethodDescriptor.get(TagSqlDao.class, TagSqlDao.class.getMethod("getById", String.class, InternalTenantContext.class));
+        Assert.assertNull(getById.getAuditedAnnotation());
+        Assert.assertNull(getById.getCachableAnnotation());
+        Assert.assertTrue(getById.isGetById());
+        Assert.assertNull(getById.getTableName());
+
+        final List<String> ids = ImmutableList.<String>of(UUID.randomUUID().toString(), UUID.randomUUID().toString());
+        final EntitySqlDaoMethodDescriptor getByIds = EntitySqlDaoMethodDescriptor.get(TagSqlDao.class, TagSqlDao.class.getMethod("getByIds", Collection.class, InternalTenantContext.class));
+        Assert.assertEquals(getByIds.getEntityIds(new Object[]{ids, internalCallContext}), ids);
+    }
+
+    @Test(groups = "fast")
+    public void testRequestCachableMethods() throws Exception {
+        final EntitySqlDaoMethodDescriptor getTagsForObject = EntitySqlDaoMethodDescriptor.get(TagSqlDao.class, TagSqlDao.class.getMethod("getTagsForObject", UUID.class, ObjectType.class, InternalTenantContext.class));
+        Assert.assertTrue(getTagsForObject.isRequestCachable());
+        Assert.assertFalse(getTagsForObject.isWrite());
+
+        // The context isn't part of the key
+        final UUID objectId = UUID.randomUUID();
+        Assert.assertEquals(getTagsForObject.getRequestCacheKey(new Object[]{objectId, ObjectType.ACCOUNT, internalCallContext}),
+                            getTagsForObject.getRequestCacheKey(new Object[]{objectId, ObjectType.ACCOUNT, Mockito.mock(InternalTenantContext.class)}));
+        Assert.assertNotEquals(getTagsForObject.getRequestCacheKey(new Object[]{objectId, ObjectType.ACCOUNT, internalCallContext}),
+                               getTagsForObject.getRequestCacheKey(new Object[]{objectId, ObjectType.INVOICE, internalCallContext}));
+
+        final EntitySqlDaoMethodDescriptor getTagsForObjectIncludedDeleted = EntitySqlDaoMethodDescriptor.get(TagSqlDao.class, TagSqlDao.class.getMethod("getTagsForObjectIncludedDeleted", UUID.class, ObjectType.class, InternalTenantContext.class));
+        Assert.assertFalse(getTagsForObjectIncludedDeleted.isRequestCachable());
+        Assert.assertNotEquals(getTagsForObjectIncludedDeleted.getRequestCacheKey(new Object[]{objectId, ObjectType.ACCOUNT, internalCallContext}),
+                               getTagsForObject.getRequestCacheKey(new Object[]{objectId, ObjectType.ACCOUNT, internalCallContext}));
+
+        final EntitySqlDaoMethodDescriptor delete = EntitySqlDaoMethodDescriptor.get(TagSqlDao.class, TagSqlDao.class.getMethod("markTagAsDeleted", String.class, InternalCallContext.class));
+        Assert.assertFalse(delete.isRequestCachable());
+        Assert.assertTrue(delete.isWrite());
+    }
+
+    @Test(groups = "fast")
+    public void testWriteVersionsPerTable() throws Exception {
+        final long accountVersion = EntityWriteVersions.getVersion(internalCallContext);
+        final long tagVersion = EntityWriteVersions.getVersion(internalCallContext, TableName.TAG);
+        final long accountTableVersion = EntityWriteVersions.getVersion(internalCallContext, TableName.ACCOUNT);
+
+        // Tag write
+        EntityWriteVersions.recordWrite(internalCallContext, TableName.TAG);
+        Assert.assertNotEquals(EntityWriteVersions.getVersion(internalCallContext), accountVersion);
+        Assert.assertNotEquals(EntityWriteVersions.getVersion(internalCallContext, TableName.TAG), tagVersion);
+        Assert.assertEquals(EntityWriteVersions.getVersion(internalCallContext, TableName.ACCOUNT), accountTableVersion);
+
+        // Write through a SqlDao without model: the table isn't known
+        EntityWriteVersions.recordWrite(internalCallContext, null);
+        Assert.assertNotEquals(EntityWriteVersions.getVersion(internalCallContext, TableName.ACCOUNT), accountTableVersion);
+    }
+}
@@ -20,12 +20,15 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.tweak.HandleCallback;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import org.killbill.billing.ErrorCode;
 import org.killbill.billing.ObjectType;
 import org.killbill.billing.api.TestApiListener.NextEvent;
+import org.killbill.billing.callcontext.InternalCallContext;
 import org.killbill.billing.util.UtilTestSuiteWithEmbeddedDB;
 import org.killbill.billing.util.api.TagApiException;
 import org.killbill.billing.util.api.TagDefinitionApiException;
@@ -185,4 +188,60 @@ public class TestDefaultTagDao extends UtilTestSuiteWithEmbeddedDB {
         }
     }
 
+    @Test(groups = "slow")
+    public void testGetTagsForObjectIsMemoizedForTheRequest() throws TagApiException {
+        final UUID objectId = UUID.randomUUID();
+        final ObjectType objectType = ObjectType.ACCOUNT;
+
+        eventsListener.pushExpectedEvent(NextEvent.TAG);
+        final Tag tag = new DescriptiveTag(ControlTagType.AUTO_INVOICING_OFF.getId(), objectType, objectId, internalCallContext.getCreatedDate());
+        tagDao.create(new TagModelDao(tag), internalCallContext);
+        assertListenerStatus();
+
+        // e.g. another API call for the same account
+        final InternalCallContext requestContext = new InternalCallContext(internalCallContext, clock.getUTCNow());
+        Assert.assertEquals(tagDao.getTagsForObject(objectId, objectType, false, requestContext).size(), 1);
+
+        // Modified behind the DAO: the request keeps the memoized result, other requests see the change
+        deactivateTags(objectId);
+        Assert.assertEquals(tagDao.getTagsForObject(objectId, objectType, false, requestContext).size(), 1);
+        Assert.assertEquals(tagDao.getTagsForObject(objectId, objectType, false, new InternalCallContext(internalCallContext, clock.getUTCNow())).size(), 0);
+        // Not memoized
+        Assert.assertEquals(tagDao.getTagsForObject(objectId, objectType, true, requestContext).size(), 1);
+    }
+
+    @Test(groups = "slow")
+    public void testGetTagsForObjectIsInvalidatedByWrites() throws TagApiException {
+        final UUID objectId = UUID.randomUUID();
+        final ObjectType objectType = ObjectType.ACCOUNT;
+
+        eventsListener.pushExpectedEvent(NextEvent.TAG);
+        final Tag tag = new DescriptiveTag(ControlTagType.AUTO_INVOICING_OFF.getId(), objectType, objectId, internalCallContext.getCreatedDate());
+        tagDao.create(new TagModelDao(tag), internalCallContext);
+        assertListenerStatus();
+
+        final InternalCallContext requestContext = new InternalCallContext(internalCallContext, clock.getUTCNow());
+        Assert.assertEquals(tagDao.getTagsForObject(objectId, objectType, false, requestContext).size(), 1);
+        deactivateTags(objectId);
+
+        // A write for that account, made through another context, drops the memoized result
+        eventsListener.pushExpectedEvent(NextEvent.TAG);
+        final Tag otherTag = new DescriptiveTag(ControlTagType.AUTO_PAY_OFF.getId(), objectType, objectId, internalCallContext.getCreatedDate());
+        tagDao.create(new TagModelDao(otherTag), new InternalCallContext(internalCallContext, clock.getUTCNow()));
+        assertListenerStatus();
+
+        final List<TagModelDao> tags = tagDao.getTagsForObject(objectId, objectType, false, requestContext);
+        Assert.assertEquals(tags.size(), 1);
+        Assert.assertEquals(tags.get(0).getTagDefinitionId(), ControlTagType.AUTO_PAY_OFF.getId());
+    }
+
+    private void deactivateTags(final UUID objectId) {
+        dbi.withHandle(new HandleCallback<Void>() {
+            @Override
+            public Void withHandle(final Handle handle) throws Exception {
+                handle.execute("update tags set is_active = false where object_id = ?", objectId.toString());
+                return null;
+            }
+        });
+    }
 }